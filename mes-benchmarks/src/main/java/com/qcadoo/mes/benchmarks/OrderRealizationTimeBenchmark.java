@@ -0,0 +1,108 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qcadoo.mes.benchmarks.fixtures.TechnologyTreeFixture;
+import com.qcadoo.mes.benchmarks.stubs.ServiceStubs;
+import com.qcadoo.mes.benchmarks.stubs.StubEntities;
+import com.qcadoo.mes.benchmarks.stubs.Stubs;
+import com.qcadoo.mes.operationTimeCalculations.OrderRealizationTimeServiceImpl;
+import com.qcadoo.mes.technologies.ProductQuantitiesServiceImpl;
+import com.qcadoo.mes.technologies.ProductionLinesService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OrderRealizationTimeBenchmark {
+
+    @Param({ "10", "100", "500" })
+    private int operations;
+
+    @Param({ "3" })
+    private int branching;
+
+    @Param({ "3" })
+    private int materialsPerOperation;
+
+    private TechnologyTreeFixture fixture;
+
+    private OrderRealizationTimeServiceImpl orderRealizationTimeService;
+
+    private BigDecimal plannedQuantity;
+
+    @Setup
+    public void setUp() {
+        fixture = new TechnologyTreeFixture(operations, branching, materialsPerOperation, 42L);
+
+        NumberService numberService = ServiceStubs.numberService();
+
+        ProductQuantitiesServiceImpl productQuantitiesService = new ProductQuantitiesServiceImpl();
+
+        Stubs.inject(productQuantitiesService, "numberService", numberService);
+        Stubs.inject(productQuantitiesService, "dataDefinitionService",
+                StubEntities.dataDefinitionService(fixture.getDataDefinitions()));
+
+        orderRealizationTimeService = new OrderRealizationTimeServiceImpl();
+
+        Stubs.inject(orderRealizationTimeService, "productQuantitiesService", productQuantitiesService);
+        Stubs.inject(orderRealizationTimeService, "numberService", numberService);
+        Stubs.inject(orderRealizationTimeService, "productionLinesService", Stubs.stub(ProductionLinesService.class));
+
+        plannedQuantity = BigDecimal.valueOf(100);
+    }
+
+    @Benchmark
+    public int operationTimeConsumption() {
+        return orderRealizationTimeService.estimateOperationTimeConsumption(fixture.getRoot(), plannedQuantity, true, true,
+                null);
+    }
+
+    @Benchmark
+    public Map<Entity, Integer> operationTimeConsumptions() {
+        return orderRealizationTimeService.estimateOperationTimeConsumptions(fixture.getTechnology(), plannedQuantity, true,
+                true, null);
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qcadoo.mes.basic.CalculationQuantityService;
+import com.qcadoo.mes.benchmarks.fixtures.ResourceSetFixture;
+import com.qcadoo.mes.benchmarks.stubs.ServiceStubs;
+import com.qcadoo.mes.benchmarks.stubs.StubEntities;
+import com.qcadoo.mes.benchmarks.stubs.Stubs;
+import com.qcadoo.mes.materialFlowResources.service.ResourceManagementServiceImpl;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.view.api.ViewDefinitionState;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResourceManagementBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    private int resources;
+
+    @Param({ "10", "100" })
+    private int positions;
+
+    private ResourceSetFixture fixture;
+
+    private ResourceManagementServiceImpl resourceManagementService;
+
+    private ViewDefinitionState view;
+
+    private Entity document;
+
+    @Setup
+    public void setUp() {
+        fixture = new ResourceSetFixture(resources, positions, 42L);
+
+        NumberService numberService = ServiceStubs.numberService();
+
+        CalculationQuantityService calculationQuantityService = new CalculationQuantityService();
+
+        Stubs.inject(calculationQuantityService, "dictionaryService", ServiceStubs.dictionaryService());
+        Stubs.inject(calculationQuantityService, "numberService", numberService);
+
+        resourceManagementService = new ResourceManagementServiceImpl();
+
+        Stubs.inject(resourceManagementService, "dataDefinitionService",
+                StubEntities.dataDefinitionService(fixture.getDataDefinitions()));
+        Stubs.inject(resourceManagementService, "numberService", numberService);
+        Stubs.inject(resourceManagementService, "parameterService", ServiceStubs.parameterService(fixture.getParameter()));
+        Stubs.inject(resourceManagementService, "userService", ServiceStubs.userService());
+        Stubs.inject(resourceManagementService, "calculationQuantityService", calculationQuantityService);
+
+        view = ServiceStubs.viewDefinitionState();
+    }
+
+    /**
+     * Filling resources replaces positions of the document, so every invocation works on a new one.
+     */
+    @Setup(Level.Invocation)
+    public void createDocument() {
+        document = fixture.createDocument();
+    }
+
+    @Benchmark
+    public Entity fillResourcesInDocument() {
+        resourceManagementService.fillResourcesInDocument(view, document);
+
+        return document;
+    }
+
+}
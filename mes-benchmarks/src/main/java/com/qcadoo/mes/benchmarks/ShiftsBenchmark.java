@@ -0,0 +1,83 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qcadoo.mes.basic.ShiftsServiceImpl;
+import com.qcadoo.mes.basic.TimetableExceptionService;
+import com.qcadoo.mes.benchmarks.fixtures.ShiftCalendarFixture;
+import com.qcadoo.mes.benchmarks.stubs.StubEntities;
+import com.qcadoo.mes.benchmarks.stubs.Stubs;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ShiftsBenchmark {
+
+    @Param({ "1", "3", "10" })
+    private int shifts;
+
+    @Param({ "0", "50" })
+    private int exceptionsPerShift;
+
+    @Param({ "3600", "604800" })
+    private long seconds;
+
+    private ShiftCalendarFixture fixture;
+
+    private ShiftsServiceImpl shiftsService;
+
+    @Setup
+    public void setUp() {
+        fixture = new ShiftCalendarFixture(shifts, exceptionsPerShift, 42L);
+
+        shiftsService = new ShiftsServiceImpl();
+
+        Stubs.inject(shiftsService, "dataDefinitionService", StubEntities.dataDefinitionService(fixture.getDataDefinitions()));
+        Stubs.inject(shiftsService, "timetableExceptionService", new TimetableExceptionService());
+    }
+
+    @Benchmark
+    public Date findDateToForOrder() {
+        return shiftsService.findDateToForOrder(fixture.getCalendarStart(), seconds);
+    }
+
+}
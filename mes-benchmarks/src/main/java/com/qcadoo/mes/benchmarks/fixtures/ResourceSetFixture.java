@@ -0,0 +1,192 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.fixtures;
+
+import static com.qcadoo.mes.benchmarks.stubs.StubEntities.dataDefinition;
+import static com.qcadoo.mes.benchmarks.stubs.StubEntities.entity;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.ParameterFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Generated FIFO warehouse with resources of one product and a release document, which positions have to be split over
+ * several resources.
+ */
+public class ResourceSetFixture {
+
+    private static final String L_MATERIAL_FLOW_PLUGIN_IDENTIFIER = "materialFlow";
+
+    private static final String L_LOCATION = "location";
+
+    private static final String L_DOCUMENT_POSITION_PARAMETERS = "documentPositionParameters";
+
+    private static final String L_FILL_RESOURCE_IRRESPECTIVE_OF_CONVERSION = "fillResourceIrrespectiveOfConversion";
+
+    private static final String L_UNIT = "szt";
+
+    private final DataDefinition productDD = dataDefinition(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
+
+    private final DataDefinition parameterDD = dataDefinition(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PARAMETER);
+
+    private final DataDefinition documentPositionParametersDD = dataDefinition(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+            L_DOCUMENT_POSITION_PARAMETERS);
+
+    private final DataDefinition locationDD = dataDefinition(L_MATERIAL_FLOW_PLUGIN_IDENTIFIER, L_LOCATION);
+
+    private final DataDefinition documentDD = dataDefinition(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+            MaterialFlowResourcesConstants.MODEL_DOCUMENT);
+
+    private final DataDefinition positionDD = dataDefinition(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+            MaterialFlowResourcesConstants.MODEL_POSITION);
+
+    private final List<Entity> resources = Lists.newArrayList();
+
+    private final DataDefinition resourceDD = dataDefinition(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+            MaterialFlowResourcesConstants.MODEL_RESOURCE, () -> Lists.newArrayList(resources));
+
+    private final Random random;
+
+    private final Entity product;
+
+    private final Entity warehouse;
+
+    private final Entity parameter;
+
+    private final int positions;
+
+    private final long seed;
+
+    /**
+     * @param resources
+     *            number of resources of the product in the warehouse, ordered by time
+     * @param positions
+     *            number of positions of the released document
+     * @param seed
+     *            seed of generated quantities
+     */
+    public ResourceSetFixture(final int resources, final int positions, final long seed) {
+        this.positions = positions;
+        this.seed = seed;
+
+        random = new Random(seed);
+
+        product = productDD.save(entity(productDD, 1L));
+        product.setField(ProductFields.NUMBER, "P-1");
+        product.setField(ProductFields.UNIT, L_UNIT);
+
+        warehouse = locationDD.save(entity(locationDD, 1L));
+        warehouse.setField(LocationFieldsMFR.ALGORITHM, WarehouseAlgorithm.FIFO.getStringValue());
+
+        Entity documentPositionParameters = documentPositionParametersDD.save(entity(documentPositionParametersDD, 1L));
+        documentPositionParameters.setField(L_FILL_RESOURCE_IRRESPECTIVE_OF_CONVERSION, false);
+
+        parameter = parameterDD.save(entity(parameterDD, 1L));
+        parameter.setField(ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS, documentPositionParameters);
+
+        DateTime time = new DateTime(2018, 1, 1, 0, 0, 0, 0);
+
+        for (long id = 1; id <= resources; id++) {
+            this.resources.add(createResource(id, time.plusMinutes((int) id).toDate()));
+        }
+    }
+
+    private Entity createResource(final Long id, final Date time) {
+        Entity resource = entity(resourceDD, id);
+
+        BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(50));
+
+        resource.setField(ResourceFields.NUMBER, "R-" + id);
+        resource.setField(ResourceFields.LOCATION, warehouse);
+        resource.setField(ResourceFields.PRODUCT, product);
+        resource.setField(ResourceFields.TIME, time);
+        resource.setField(ResourceFields.QUANTITY, quantity);
+        resource.setField(ResourceFields.AVAILABLE_QUANTITY, quantity);
+        resource.setField(ResourceFields.CONVERSION, BigDecimal.ONE);
+        resource.setField(ResourceFields.GIVEN_UNIT, L_UNIT);
+        resource.setField(ResourceFields.WASTE, random.nextInt(10) == 0);
+
+        return resourceDD.save(resource);
+    }
+
+    /**
+     * Creates new document with positions without resources. Positions saved while filling previous document are removed,
+     * so that repeated calls do not accumulate entities.
+     */
+    public Entity createDocument() {
+        for (Entity position : positionDD.find().list().getEntities()) {
+            positionDD.delete(position.getId());
+        }
+
+        Random quantities = new Random(seed);
+
+        Entity document = entity(documentDD, 1L);
+
+        document.setField(DocumentFields.NUMBER, "D-1");
+        document.setField(DocumentFields.LOCATION_FROM, warehouse);
+
+        List<Entity> documentPositions = Lists.newArrayList();
+
+        for (long id = 1; id <= positions; id++) {
+            Entity position = entity(positionDD, id);
+
+            position.setField(PositionFields.DOCUMENT, document);
+            position.setField(PositionFields.PRODUCT, product);
+            position.setField(PositionFields.QUANTITY, BigDecimal.valueOf(1 + quantities.nextInt(200)));
+            position.setField(PositionFields.CONVERSION, BigDecimal.ONE);
+            position.setField(PositionFields.GIVEN_UNIT, L_UNIT);
+
+            documentPositions.add(positionDD.save(position));
+        }
+
+        document.setField(DocumentFields.POSITIONS, documentPositions);
+
+        return document;
+    }
+
+    public Entity getParameter() {
+        return parameter;
+    }
+
+    public DataDefinition[] getDataDefinitions() {
+        return new DataDefinition[] { productDD, parameterDD, locationDD, documentDD, positionDD, resourceDD };
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.fixtures;
+
+import static com.qcadoo.mes.benchmarks.stubs.StubEntities.dataDefinition;
+import static com.qcadoo.mes.benchmarks.stubs.StubEntities.entity;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.constants.TimetableExceptionType;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Generated shifts with one or two working ranges per day and free / work time exceptions spread over the calendar.
+ */
+public class ShiftCalendarFixture {
+
+    private static final String L_TIMETABLE_EXCEPTIONS = "timetableExceptions";
+
+    private static final String L_MODEL_SHIFT_TIMETABLE_EXCEPTION = "shiftTimetableException";
+
+    private static final List<String> L_DAYS = ImmutableList.of("monday", "tuesday", "wensday", "thursday", "friday",
+            "saturday", "sunday");
+
+    private static final int L_CALENDAR_DAYS = 365;
+
+    private final DataDefinition shiftDD = dataDefinition(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT);
+
+    private final DataDefinition exceptionDD = dataDefinition(BasicConstants.PLUGIN_IDENTIFIER,
+            L_MODEL_SHIFT_TIMETABLE_EXCEPTION);
+
+    private final Random random;
+
+    private final Date calendarStart;
+
+    /**
+     * @param shifts
+     *            number of shifts
+     * @param exceptionsPerShift
+     *            number of timetable exceptions of every shift, spread over one year from calendar start
+     * @param seed
+     *            seed of generated hours and exceptions
+     */
+    public ShiftCalendarFixture(final int shifts, final int exceptionsPerShift, final long seed) {
+        random = new Random(seed);
+        calendarStart = new DateTime(2018, 1, 1, 0, 0, 0, 0).toDate();
+
+        for (long id = 1; id <= shifts; id++) {
+            createShift(id, exceptionsPerShift);
+        }
+    }
+
+    private void createShift(final Long id, final int exceptionsPerShift) {
+        Entity shift = entity(shiftDD, id);
+
+        shift.setField(ShiftFields.NAME, "shift " + id);
+
+        for (String day : L_DAYS) {
+            boolean working = random.nextInt(7) < 5;
+
+            shift.setField(day + "Working", working);
+            shift.setField(day + "Hours", working ? generateHours() : "");
+        }
+
+        List<Entity> exceptions = Lists.newArrayList();
+
+        for (long index = 0; index < exceptionsPerShift; index++) {
+            exceptions.add(createException(id * 1000 + index));
+        }
+
+        shift.setField(ShiftFields.TIMETABLE_EXCEPTIONS, exceptions);
+        shift.setField(L_TIMETABLE_EXCEPTIONS, exceptions);
+
+        shiftDD.save(shift);
+    }
+
+    private String generateHours() {
+        int start = 4 + random.nextInt(10);
+        int length = 4 + random.nextInt(5);
+
+        if (random.nextBoolean()) {
+            return String.format("%02d:00-%02d:00", start, start + length);
+        }
+
+        return String.format("%02d:00-%02d:30, %02d:00-%02d:00", start, start + 2, start + 3, start + length + 1);
+    }
+
+    private Entity createException(final Long id) {
+        Entity exception = entity(exceptionDD, id);
+
+        DateTime from = new DateTime(calendarStart).plusDays(random.nextInt(L_CALENDAR_DAYS)).plusHours(random.nextInt(24));
+
+        exception.setField(ShiftTimetableExceptionFields.TYPE, random.nextBoolean() ? TimetableExceptionType.FREE_TIME
+                .getStringValue() : TimetableExceptionType.WORK_TIME.getStringValue());
+        exception.setField(ShiftTimetableExceptionFields.FROM_DATE, from.toDate());
+        exception.setField(ShiftTimetableExceptionFields.TO_DATE, from.plusHours(1 + random.nextInt(48)).toDate());
+
+        return exceptionDD.save(exception);
+    }
+
+    public Date getCalendarStart() {
+        return new Date(calendarStart.getTime());
+    }
+
+    public DataDefinition[] getDataDefinitions() {
+        return new DataDefinition[] { shiftDD, exceptionDD };
+    }
+
+}
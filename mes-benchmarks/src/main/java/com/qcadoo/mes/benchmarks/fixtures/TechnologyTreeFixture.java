@@ -0,0 +1,222 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.fixtures;
+
+import static com.qcadoo.mes.benchmarks.stubs.StubEntities.dataDefinition;
+import static com.qcadoo.mes.benchmarks.stubs.StubEntities.entity;
+import static com.qcadoo.mes.benchmarks.stubs.StubEntities.entityTree;
+import static com.qcadoo.mes.benchmarks.stubs.StubEntities.treeNode;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologyType;
+import com.qcadoo.mes.timeNormsForOperations.constants.TechnologyOperationComponentFieldsTNFO;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTreeNode;
+
+/**
+ * Generated technology with a balanced operation tree. Every operation produces one intermediate product consumed by its
+ * parent and consumes a number of materials drawn from a shared pool, so quantities of the same material are grouped.
+ */
+public class TechnologyTreeFixture {
+
+    private static final String L_ORDERS_PLUGIN_IDENTIFIER = "orders";
+
+    private static final String L_ORDER = "order";
+
+    private static final String L_PLANNED_QUANTITY = "plannedQuantity";
+
+    private static final String L_TECHNOLOGY = "technology";
+
+    private final DataDefinition productDD = dataDefinition(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
+
+    private final DataDefinition technologyDD = dataDefinition(TechnologiesConstants.PLUGIN_IDENTIFIER,
+            TechnologiesConstants.MODEL_TECHNOLOGY);
+
+    private final DataDefinition operationComponentDD = dataDefinition(TechnologiesConstants.PLUGIN_IDENTIFIER,
+            TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT);
+
+    private final DataDefinition operationProductInComponentDD = dataDefinition(TechnologiesConstants.PLUGIN_IDENTIFIER,
+            TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT);
+
+    private final DataDefinition operationProductOutComponentDD = dataDefinition(TechnologiesConstants.PLUGIN_IDENTIFIER,
+            TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT);
+
+    private final DataDefinition orderDD = dataDefinition(L_ORDERS_PLUGIN_IDENTIFIER, L_ORDER);
+
+    private final Random random;
+
+    private final Entity technology;
+
+    private final EntityTreeNode root;
+
+    private final Entity order;
+
+    private long productIds = 0;
+
+    private long operationProductComponentIds = 0;
+
+    /**
+     * @param operations
+     *            number of operations in the tree
+     * @param branching
+     *            maximal number of children of one operation
+     * @param materialsPerOperation
+     *            number of materials consumed by every operation
+     * @param seed
+     *            seed of generated quantities and times
+     */
+    public TechnologyTreeFixture(final int operations, final int branching, final int materialsPerOperation, final long seed) {
+        random = new Random(seed);
+
+        technology = technologyDD.save(entity(technologyDD, 1L));
+
+        Entity technologyProduct = createProduct();
+        technology.setField(TechnologyFields.PRODUCT, technologyProduct);
+        technology.setField(TechnologyFields.TECHNOLOGY_TYPE, TechnologyType.WITH_PATTERN_TECHNOLOGY.getStringValue());
+
+        List<Entity> materials = Lists.newArrayList();
+
+        for (int index = 0; index < Math.max(1, (operations * materialsPerOperation) / 2); index++) {
+            materials.add(createProduct());
+        }
+
+        List<Entity> operationComponents = Lists.newArrayList();
+
+        for (int index = 0; index < operations; index++) {
+            EntityTreeNode parent = (index == 0) ? null : (EntityTreeNode) operationComponents.get((index - 1) / branching);
+            Entity outputProduct = (parent == null) ? technologyProduct : createProduct();
+
+            EntityTreeNode operationComponent = createOperationComponent(index + 1L, parent, outputProduct);
+
+            for (int material = 0; material < materialsPerOperation; material++) {
+                addOperationProductInComponent(operationComponent, materials.get(random.nextInt(materials.size())));
+            }
+
+            operationComponents.add(operationComponent);
+        }
+
+        root = (EntityTreeNode) operationComponents.get(0);
+
+        technology.setField(TechnologyFields.OPERATION_COMPONENTS, entityTree(operationComponents, root));
+
+        order = orderDD.save(entity(orderDD, 1L));
+        order.setField(L_PLANNED_QUANTITY, BigDecimal.valueOf(10 + random.nextInt(1000)));
+        order.setField(L_TECHNOLOGY, technology);
+    }
+
+    private Entity createProduct() {
+        return productDD.save(entity(productDD, ++productIds));
+    }
+
+    private EntityTreeNode createOperationComponent(final Long id, final EntityTreeNode parent, final Entity outputProduct) {
+        EntityTreeNode operationComponent = treeNode(operationComponentDD, id);
+
+        operationComponent.setField(TechnologyOperationComponentFields.TECHNOLOGY, technology);
+        operationComponent.setField(TechnologyOperationComponentFields.PARENT, parent);
+        operationComponent.setField(TechnologyOperationComponentFields.ENTITY_TYPE,
+                TechnologyOperationComponentEntityType.OPERATION.getStringValue());
+        operationComponent.setField(TechnologyOperationComponentFields.CHILDREN, Lists.newArrayList());
+        operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS, Lists.newArrayList());
+        operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS, Lists.newArrayList());
+        operationComponent.setField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE, random.nextBoolean());
+        operationComponent.setField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE, random.nextBoolean());
+        operationComponent.setField(TechnologyOperationComponentFields.QUANTITY_OF_WORKSTATIONS, 1 + random.nextInt(3));
+        operationComponent.setField(TechnologyOperationComponentFieldsTNFO.TJ, 10 + random.nextInt(600));
+        operationComponent.setField(TechnologyOperationComponentFieldsTNFO.TPZ, random.nextInt(1800));
+        operationComponent.setField(TechnologyOperationComponentFieldsTNFO.TIME_NEXT_OPERATION, random.nextInt(120));
+        operationComponent.setField(TechnologyOperationComponentFieldsTNFO.NEXT_OPERATION_AFTER_PRODUCED_TYPE, "01all");
+
+        operationComponentDD.save(operationComponent);
+
+        addOperationProductComponent(operationProductOutComponentDD, operationComponent,
+                TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS, outputProduct,
+                BigDecimal.valueOf(1 + random.nextInt(5)));
+
+        if (parent != null) {
+            children(parent).add(operationComponent);
+
+            addOperationProductInComponent(parent, outputProduct);
+        }
+
+        return operationComponent;
+    }
+
+    private void addOperationProductInComponent(final Entity operationComponent, final Entity product) {
+        addOperationProductComponent(operationProductInComponentDD, operationComponent,
+                TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS, product,
+                BigDecimal.valueOf(1 + random.nextInt(10)));
+    }
+
+    private void addOperationProductComponent(final DataDefinition operationProductComponentDD, final Entity operationComponent,
+            final String operationProductComponentsField, final Entity product, final BigDecimal quantity) {
+        Entity operationProductComponent = entity(operationProductComponentDD, ++operationProductComponentIds);
+
+        operationProductComponent.setField(OperationProductInComponentFields.OPERATION_COMPONENT, operationComponent);
+        operationProductComponent.setField(OperationProductInComponentFields.PRODUCT, product);
+        operationProductComponent.setField(OperationProductInComponentFields.QUANTITY, quantity);
+
+        operationProductComponentDD.save(operationProductComponent);
+
+        operationProductComponents(operationComponent, operationProductComponentsField).add(operationProductComponent);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Entity> children(final Entity operationComponent) {
+        return (List<Entity>) operationComponent.getField(TechnologyOperationComponentFields.CHILDREN);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Entity> operationProductComponents(final Entity operationComponent, final String field) {
+        return (List<Entity>) operationComponent.getField(field);
+    }
+
+    public Entity getTechnology() {
+        return technology;
+    }
+
+    public EntityTreeNode getRoot() {
+        return root;
+    }
+
+    public Entity getOrder() {
+        return order;
+    }
+
+    public DataDefinition[] getDataDefinitions() {
+        return new DataDefinition[] { productDD, technologyDD, operationComponentDD, operationProductInComponentDD,
+                operationProductOutComponentDD, orderDD };
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.stubs;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.model.api.DictionaryService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.security.api.UserService;
+import com.qcadoo.security.constants.QcadooSecurityConstants;
+import com.qcadoo.security.constants.UserFields;
+import com.qcadoo.view.api.ViewDefinitionState;
+
+/**
+ * Stubs of framework services used by benchmarked code.
+ */
+public final class ServiceStubs {
+
+    private static final int L_SCALE = 5;
+
+    private ServiceStubs() {
+    }
+
+    public static NumberService numberService() {
+        return Stubs.stub(NumberService.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMathContext":
+                    return MathContext.DECIMAL64;
+                case "setScale":
+                    if (args[0] == null) {
+                        return null;
+                    }
+
+                    int scale = (args.length > 1) ? (Integer) args[1] : L_SCALE;
+
+                    return ((BigDecimal) args[0]).setScale(scale, RoundingMode.HALF_EVEN);
+                default:
+                    return Stubs.UNHANDLED;
+            }
+        });
+    }
+
+    public static DictionaryService dictionaryService() {
+        return Stubs.stub(DictionaryService.class);
+    }
+
+    public static UserService userService() {
+        Entity user = StubEntities.entity(StubEntities.dataDefinition(QcadooSecurityConstants.PLUGIN_IDENTIFIER,
+                QcadooSecurityConstants.MODEL_USER), 1L);
+
+        user.setField(UserFields.USER_NAME, "benchmark");
+
+        return Stubs.stub(UserService.class, (proxy, method, args) -> {
+            if ("getCurrentUserEntity".equals(method.getName())) {
+                return user;
+            }
+
+            return Stubs.UNHANDLED;
+        });
+    }
+
+    public static ViewDefinitionState viewDefinitionState() {
+        return Stubs.stub(ViewDefinitionState.class);
+    }
+
+    /**
+     * Parameter service returning given parameter entity instead of querying the database.
+     */
+    public static ParameterService parameterService(final Entity parameter) {
+        return new ParameterService() {
+
+            @Override
+            public Entity getParameter() {
+                return parameter;
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,248 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.stubs;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.EntityTreeNode;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+
+/**
+ * In memory replacements of the data definition layer: entities keep their fields in a map, data definitions keep saved
+ * entities by id and answer every search with all (or supplied) entities, without evaluating restrictions.
+ */
+public final class StubEntities {
+
+    private StubEntities() {
+    }
+
+    public static Entity entity(final DataDefinition dataDefinition, final Long id) {
+        return entity(Entity.class, dataDefinition, id);
+    }
+
+    public static EntityTreeNode treeNode(final DataDefinition dataDefinition, final Long id) {
+        return entity(EntityTreeNode.class, dataDefinition, id);
+    }
+
+    private static <T extends Entity> T entity(final Class<T> type, final DataDefinition dataDefinition, final Long id) {
+        Map<String, Object> fields = Maps.newHashMap();
+        Long[] entityId = { id };
+
+        return Stubs.stub(type, (proxy, method, args) -> {
+            String name = method.getName();
+
+            switch (name) {
+                case "getId":
+                    return entityId[0];
+                case "setId":
+                    entityId[0] = (Long) args[0];
+                    return null;
+                case "getDataDefinition":
+                    return dataDefinition;
+                case "setField":
+                    fields.put((String) args[0], args[1]);
+                    return null;
+                case "getField":
+                case "getBelongsToField":
+                case "getStringField":
+                case "getDecimalField":
+                case "getIntegerField":
+                case "getLongField":
+                case "getDateField":
+                    return fields.get(args[0]);
+                case "getBooleanField":
+                    return Boolean.TRUE.equals(fields.get(args[0]));
+                case "getHasManyField":
+                case "getManyToManyField":
+                case "getChildren":
+                    return entityList(fieldValues(fields, "getChildren".equals(name) ? "children" : (String) args[0]));
+                case "getTreeField":
+                    return (EntityTree) fields.get(args[0]);
+                case "getFields":
+                    return fields;
+                case "isValid":
+                    return true;
+                case "getGlobalErrors":
+                    return Collections.emptyList();
+                case "getErrors":
+                    return Collections.emptyMap();
+                case "toString":
+                    return dataDefinition.getName() + "#" + entityId[0];
+                default:
+                    return Stubs.UNHANDLED;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Entity> fieldValues(final Map<String, Object> fields, final String field) {
+        Object value = fields.get(field);
+
+        if (value == null) {
+            return Collections.emptyList();
+        }
+
+        return (List<Entity>) value;
+    }
+
+    public static EntityList entityList(final List<Entity> entities) {
+        return Stubs.stub(EntityList.class, (proxy, method, args) -> {
+            if (Stubs.isDeclaredBy(method, List.class, Collection.class, Iterable.class)) {
+                return Stubs.delegate(entities, method, args);
+            }
+
+            return Stubs.UNHANDLED;
+        });
+    }
+
+    public static EntityTree entityTree(final List<Entity> entities, final EntityTreeNode root) {
+        return Stubs.stub(EntityTree.class, (proxy, method, args) -> {
+            if (Stubs.isDeclaredBy(method, List.class, Collection.class, Iterable.class)) {
+                return Stubs.delegate(entities, method, args);
+            } else if ("getRoot".equals(method.getName())) {
+                return root;
+            }
+
+            return Stubs.UNHANDLED;
+        });
+    }
+
+    /**
+     * Data definition keeping saved entities. Searches return all saved entities.
+     */
+    public static DataDefinition dataDefinition(final String pluginIdentifier, final String name) {
+        Map<Long, Entity> entities = Maps.newLinkedHashMap();
+
+        return dataDefinition(pluginIdentifier, name, entities, () -> Lists.newArrayList(entities.values()));
+    }
+
+    /**
+     * Data definition which answers searches with entities from given supplier.
+     */
+    public static DataDefinition dataDefinition(final String pluginIdentifier, final String name,
+            final Supplier<List<Entity>> searchResults) {
+        return dataDefinition(pluginIdentifier, name, Maps.newLinkedHashMap(), searchResults);
+    }
+
+    private static DataDefinition dataDefinition(final String pluginIdentifier, final String name,
+            final Map<Long, Entity> entities, final Supplier<List<Entity>> searchResults) {
+        long[] sequence = { 0L };
+
+        return Stubs.stub(DataDefinition.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getPluginIdentifier":
+                    return pluginIdentifier;
+                case "create":
+                    return entity((DataDefinition) proxy, (args == null || args.length == 0) ? null : (Long) args[0]);
+                case "get":
+                    return entities.get(args[0]);
+                case "save":
+                    Entity entity = (Entity) args[0];
+
+                    if (entity.getId() == null) {
+                        entity.setId(--sequence[0]);
+                    }
+
+                    entities.put(entity.getId(), entity);
+
+                    return entity;
+                case "delete":
+                    for (Object id : (Object[]) args[0]) {
+                        entities.remove(id);
+                    }
+
+                    return null;
+                case "find":
+                    return searchCriteriaBuilder(searchResults);
+                case "toString":
+                    return pluginIdentifier + "." + name;
+                default:
+                    return Stubs.UNHANDLED;
+            }
+        });
+    }
+
+    public static SearchCriteriaBuilder searchCriteriaBuilder(final Supplier<List<Entity>> searchResults) {
+        return Stubs.stub(SearchCriteriaBuilder.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "list":
+                    return searchResult(searchResults.get());
+                case "uniqueResult":
+                    return null;
+                default:
+                    return Stubs.UNHANDLED;
+            }
+        });
+    }
+
+    private static SearchResult searchResult(final List<Entity> entities) {
+        return Stubs.stub(SearchResult.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getEntities":
+                    return entities;
+                case "getTotalNumberOfEntities":
+                    return entities.size();
+                default:
+                    return Stubs.UNHANDLED;
+            }
+        });
+    }
+
+    public static DataDefinitionService dataDefinitionService(final DataDefinition... dataDefinitions) {
+        Map<String, DataDefinition> dataDefinitionsByName = Maps.newHashMap();
+
+        for (DataDefinition dataDefinition : dataDefinitions) {
+            dataDefinitionsByName.put(dataDefinition.getPluginIdentifier() + "." + dataDefinition.getName(), dataDefinition);
+        }
+
+        return Stubs.stub(DataDefinitionService.class, (proxy, method, args) -> {
+            if ("get".equals(method.getName()) && (args.length == 2)) {
+                DataDefinition dataDefinition = dataDefinitionsByName.get(args[0] + "." + args[1]);
+
+                if (dataDefinition == null) {
+                    throw new IllegalStateException(String.format("No stubbed data definition %s.%s", args[0], args[1]));
+                }
+
+                return dataDefinition;
+            }
+
+            return Stubs.UNHANDLED;
+        });
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.stubs;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Plain dynamic proxies used instead of mocks, so that benchmarked code does not pay for recording invocations.
+ */
+public final class Stubs {
+
+    public static final Object UNHANDLED = new Object();
+
+    public interface Answer {
+
+        Object answer(final Object proxy, final Method method, final Object[] args) throws Throwable;
+
+    }
+
+    private Stubs() {
+    }
+
+    /**
+     * Creates stub of given interfaces. Methods which are not answered (answer returns {@link #UNHANDLED}) return default
+     * value of their return type, or the stub itself for fluent methods.
+     */
+    public static <T> T stub(final Class<T> type, final Answer answer, final Class<?>... additionalTypes) {
+        Class<?>[] types = Lists.asList(type, additionalTypes).toArray(new Class<?>[additionalTypes.length + 1]);
+
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), types, (proxy, method, args) -> {
+            boolean isObjectMethod = method.getDeclaringClass().equals(Object.class);
+
+            if (isObjectMethod && !"toString".equals(method.getName())) {
+                return answerObjectMethod(proxy, method, args);
+            }
+
+            Object result = answer.answer(proxy, method, args);
+
+            if (isObjectMethod && (result == UNHANDLED)) {
+                return answerObjectMethod(proxy, method, args);
+            }
+
+            if (result == UNHANDLED) {
+                return defaultValue(proxy, method.getReturnType());
+            }
+
+            return result;
+        }));
+    }
+
+    public static <T> T stub(final Class<T> type) {
+        return stub(type, (proxy, method, args) -> UNHANDLED);
+    }
+
+    public static Object delegate(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static boolean isDeclaredBy(final Method method, final Class<?>... types) {
+        for (Class<?> type : types) {
+            if (method.getDeclaringClass().equals(type)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public static void inject(final Object target, final String fieldName, final Object value) {
+        Class<?> type = target.getClass();
+
+        while (type != null) {
+            try {
+                Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(target, value);
+
+                return;
+            } catch (NoSuchFieldException e) {
+                type = type.getSuperclass();
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("%s has no field %s", target.getClass().getName(), fieldName));
+    }
+
+    private static Object answerObjectMethod(final Object proxy, final Method method, final Object[] args) {
+        if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+        }
+
+        return "stub@" + Integer.toHexString(System.identityHashCode(proxy));
+    }
+
+    private static Object defaultValue(final Object proxy, final Class<?> returnType) {
+        if (returnType.isInstance(proxy)) {
+            return proxy;
+        } else if (boolean.class.equals(returnType)) {
+            return false;
+        } else if (int.class.equals(returnType)) {
+            return 0;
+        } else if (long.class.equals(returnType)) {
+            return 0L;
+        } else if (double.class.equals(returnType)) {
+            return 0D;
+        } else if (List.class.equals(returnType) || Collection.class.equals(returnType)) {
+            return Lists.newArrayList();
+        } else if (Set.class.equals(returnType)) {
+            return Collections.emptySet();
+        } else if (Map.class.equals(returnType)) {
+            return Collections.emptyMap();
+        }
+
+        return null;
+    }
+
+}
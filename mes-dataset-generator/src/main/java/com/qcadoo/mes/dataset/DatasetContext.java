@@ -0,0 +1,160 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * State shared by generators of one run: connection, parameters, table writers and ids of already generated data.
+ */
+public final class DatasetContext {
+
+    public static final String DATASET_USER = "dataset";
+
+    private static final int L_HISTORY_DAYS = 270;
+
+    private final Connection connection;
+
+    private final DatasetParameters parameters;
+
+    private final List<TableWriter> pendingWriters = new ArrayList<>();
+
+    private final Map<String, Long> loadedRows = new LinkedHashMap<>();
+
+    private final Map<String, Object> generated = new LinkedHashMap<>();
+
+    public DatasetContext(final Connection connection, final DatasetParameters parameters) {
+        this.connection = connection;
+        this.parameters = parameters;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public DatasetParameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Returns random generator of given section. Each section has its own stream, derived from the seed, so that changing
+     * size of one section doesn't change data of the other ones.
+     */
+    public SplittableRandom random(final String section) {
+        return new SplittableRandom(parameters.getSeed() * 31 + section.hashCode());
+    }
+
+    public LocalDateTime startDateTime() {
+        return parameters.getStartDate().atStartOfDay();
+    }
+
+    public LocalDate startDate() {
+        return parameters.getStartDate();
+    }
+
+    /**
+     * Returns the moment which is treated as now. Data before it is finished, data after it is planned.
+     */
+    public LocalDateTime currentDateTime() {
+        return startDateTime().plusDays(L_HISTORY_DAYS);
+    }
+
+    /**
+     * Opens writer of a table with a bigint id column, which has to be left out of the given columns.
+     */
+    public TableWriter table(final String table, final String... columns) throws SQLException, IOException {
+        return register(new TableWriter(connection, table, true, columns));
+    }
+
+    /**
+     * Opens writer of a table without id, e.g. a join table of a many to many relation.
+     */
+    public TableWriter joinTable(final String table, final String... columns) throws SQLException, IOException {
+        return register(new TableWriter(connection, table, false, columns));
+    }
+
+    /**
+     * Loads all pending tables in the order in which their writers were opened, so parents have to be opened before
+     * children.
+     */
+    public void load() throws SQLException, IOException {
+        try {
+            for (TableWriter writer : pendingWriters) {
+                loadedRows.merge(writer.getTable(), writer.copy(), Long::sum);
+            }
+        } finally {
+            for (TableWriter writer : pendingWriters) {
+                writer.discard();
+            }
+
+            pendingWriters.clear();
+        }
+    }
+
+    public Map<String, Long> getLoadedRows() {
+        return Collections.unmodifiableMap(loadedRows);
+    }
+
+    public <T> void put(final String key, final T value) {
+        generated.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(final String key) {
+        T value = (T) generated.get(key);
+
+        if (value == null) {
+            throw new IllegalStateException("Data '" + key + "' hasn't been generated yet");
+        }
+
+        return value;
+    }
+
+    public static BigDecimal decimal(final SplittableRandom random, final double from, final double to, final int scale) {
+        return BigDecimal.valueOf(from + random.nextDouble() * (to - from)).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    public static long pick(final SplittableRandom random, final long[] ids) {
+        return ids[random.nextInt(ids.length)];
+    }
+
+    private TableWriter register(final TableWriter writer) {
+        pendingWriters.add(writer);
+
+        return writer;
+    }
+
+}
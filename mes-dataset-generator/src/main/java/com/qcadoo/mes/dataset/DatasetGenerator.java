@@ -0,0 +1,144 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.qcadoo.mes.dataset.generators.DeliveryGenerator;
+import com.qcadoo.mes.dataset.generators.MasterDataGenerator;
+import com.qcadoo.mes.dataset.generators.OrderGenerator;
+import com.qcadoo.mes.dataset.generators.ProductionLineGenerator;
+import com.qcadoo.mes.dataset.generators.TechnologyGenerator;
+import com.qcadoo.mes.dataset.generators.WarehouseGenerator;
+
+/**
+ * Fills an empty database with a synthetic factory: products, multi level technologies, production lines with shifts,
+ * warehouses with resources, deliveries, master orders, orders and production trackings. The same seed and sizes give the
+ * same data. The schema has to be created by the application first, rows are loaded with COPY in one transaction,
+ * bypassing data definitions and their hooks, so that millions of rows are loaded in minutes.
+ */
+public final class DatasetGenerator {
+
+    private static final List<String> L_NOT_EMPTY_TABLES = Arrays.asList("basic_product", "orders_order",
+            "technologies_technology");
+
+    private DatasetGenerator() {
+    }
+
+    public static void main(final String[] args) throws SQLException, IOException {
+        DatasetParameters parameters;
+
+        try {
+            parameters = DatasetParameters.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(DatasetParameters.usage());
+            System.exit(1);
+
+            return;
+        }
+
+        System.out.println("Generating dataset " + parameters.describe());
+
+        try (Connection connection = DriverManager.getConnection(parameters.getUrl(), parameters.getUser(),
+                parameters.getPassword())) {
+            checkDatabaseIsEmpty(connection);
+
+            connection.setAutoCommit(false);
+
+            long start = System.currentTimeMillis();
+
+            DatasetContext context = new DatasetContext(connection, parameters);
+
+            try {
+                generate(context, Arrays.asList(new MasterDataGenerator(), new TechnologyGenerator(),
+                        new ProductionLineGenerator(), new WarehouseGenerator(), new DeliveryGenerator(),
+                        new OrderGenerator()));
+
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+
+                throw e;
+            }
+
+            connection.setAutoCommit(true);
+
+            analyze(connection);
+
+            long rows = 0;
+
+            for (Map.Entry<String, Long> loadedRows : context.getLoadedRows().entrySet()) {
+                System.out.println(String.format("%-60s %12d", loadedRows.getKey(), loadedRows.getValue()));
+
+                rows += loadedRows.getValue();
+            }
+
+            System.out.println(String.format("Loaded %d rows in %d s", rows, (System.currentTimeMillis() - start) / 1000));
+        }
+    }
+
+    private static void generate(final DatasetContext context, final List<DatasetSection> sections) throws SQLException,
+            IOException {
+        for (DatasetSection section : sections) {
+            long start = System.currentTimeMillis();
+
+            section.generate(context);
+            context.load();
+
+            System.out.println(String.format("Section %s generated in %d ms", section.getName(), System.currentTimeMillis()
+                    - start));
+        }
+    }
+
+    private static void checkDatabaseIsEmpty(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : L_NOT_EMPTY_TABLES) {
+                try (ResultSet resultSet = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM " + table + ")")) {
+                    resultSet.next();
+
+                    if (resultSet.getBoolean(1)) {
+                        throw new IllegalStateException("Table " + table
+                                + " isn't empty, dataset can be generated only into an empty database");
+                    }
+                }
+            }
+        }
+    }
+
+    private static void analyze(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command line parameters of the generator. Sizes of all generated areas are derived from the scale, single sizes can be
+ * overridden with their own options.
+ */
+public final class DatasetParameters {
+
+    public static final String URL = "url";
+
+    public static final String USER = "user";
+
+    public static final String PASSWORD = "password";
+
+    public static final String SEED = "seed";
+
+    public static final String SCALE = "scale";
+
+    public static final String START_DATE = "startDate";
+
+    public static final String PRODUCTS = "products";
+
+    public static final String OPERATIONS = "operations";
+
+    public static final String PRODUCTION_LINES = "productionLines";
+
+    public static final String WAREHOUSES = "warehouses";
+
+    public static final String PALLETS = "pallets";
+
+    public static final String RESOURCES = "resources";
+
+    public static final String SUPPLIERS = "suppliers";
+
+    public static final String DELIVERIES = "deliveries";
+
+    public static final String MASTER_ORDERS = "masterOrders";
+
+    public static final String ORDERS = "orders";
+
+    public static final String TECHNOLOGY_DEPTH = "technologyDepth";
+
+    private static final int L_MAX_PALLETS = 999999;
+
+    private final Map<String, String> values;
+
+    private final int scale;
+
+    private DatasetParameters(final Map<String, String> values) {
+        this.values = values;
+        this.scale = getInteger(SCALE, 1);
+
+        if (scale < 1) {
+            throw new IllegalArgumentException("Scale has to be greater than zero");
+        }
+    }
+
+    public static DatasetParameters parse(final String[] args) {
+        Map<String, String> values = new LinkedHashMap<>();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Unknown argument: " + arg + ", expected --name=value");
+            }
+
+            int separator = arg.indexOf('=');
+
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        if (!values.containsKey(URL)) {
+            throw new IllegalArgumentException("Missing --" + URL + "=jdbc:postgresql://host:port/database");
+        }
+
+        return new DatasetParameters(values);
+    }
+
+    public static String usage() {
+        StringBuilder usage = new StringBuilder();
+
+        usage.append("Usage: java -jar dataset-generator.jar --url=<jdbc url> [--user=<user>] [--password=<password>]\n");
+        usage.append("       [--seed=<seed, default 1>] [--scale=<scale, default 1>] [--startDate=<yyyy-MM-dd>]\n");
+        usage.append("       [--products=<n>] [--operations=<n>] [--productionLines=<n>] [--warehouses=<n>]\n");
+        usage.append("       [--pallets=<n>] [--resources=<n>] [--suppliers=<n>] [--deliveries=<n>]\n");
+        usage.append("       [--masterOrders=<n>] [--orders=<n>] [--technologyDepth=<n>]\n");
+        usage.append("Fills an empty database, created by the application, with a deterministic dataset.\n");
+        usage.append("Scale 1 gives about one and a half million rows.");
+
+        return usage.toString();
+    }
+
+    public String getUrl() {
+        return values.get(URL);
+    }
+
+    public String getUser() {
+        return values.getOrDefault(USER, "postgres");
+    }
+
+    public String getPassword() {
+        return values.getOrDefault(PASSWORD, "postgres");
+    }
+
+    public long getSeed() {
+        return Long.parseLong(values.getOrDefault(SEED, "1"));
+    }
+
+    public LocalDate getStartDate() {
+        return LocalDate.parse(values.getOrDefault(START_DATE, "2024-01-01"));
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public int getProducts() {
+        return getScaled(PRODUCTS, 10000);
+    }
+
+    public int getOperations() {
+        return getScaled(OPERATIONS, 200);
+    }
+
+    public int getProductionLines() {
+        return getScaled(PRODUCTION_LINES, 20);
+    }
+
+    public int getWarehouses() {
+        return getScaled(WAREHOUSES, 10);
+    }
+
+    public int getPallets() {
+        return Math.min(getScaled(PALLETS, 20000), L_MAX_PALLETS);
+    }
+
+    public int getResources() {
+        return getScaled(RESOURCES, 200000);
+    }
+
+    public int getSuppliers() {
+        return getScaled(SUPPLIERS, 200);
+    }
+
+    public int getDeliveries() {
+        return getScaled(DELIVERIES, 20000);
+    }
+
+    public int getMasterOrders() {
+        return getScaled(MASTER_ORDERS, 10000);
+    }
+
+    public int getOrders() {
+        return getScaled(ORDERS, 50000);
+    }
+
+    public int getTechnologyDepth() {
+        return getInteger(TECHNOLOGY_DEPTH, 4);
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+
+        description.put(SEED, getSeed());
+        description.put(SCALE, getScale());
+        description.put(START_DATE, getStartDate());
+        description.put(PRODUCTS, getProducts());
+        description.put(OPERATIONS, getOperations());
+        description.put(PRODUCTION_LINES, getProductionLines());
+        description.put(WAREHOUSES, getWarehouses());
+        description.put(PALLETS, getPallets());
+        description.put(RESOURCES, getResources());
+        description.put(SUPPLIERS, getSuppliers());
+        description.put(DELIVERIES, getDeliveries());
+        description.put(MASTER_ORDERS, getMasterOrders());
+        description.put(ORDERS, getOrders());
+        description.put(TECHNOLOGY_DEPTH, getTechnologyDepth());
+
+        return description;
+    }
+
+    private int getScaled(final String name, final int sizeForScaleOne) {
+        return getInteger(name, sizeForScaleOne * scale);
+    }
+
+    private int getInteger(final String name, final int defaultValue) {
+        String value = values.get(name);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        int integer = Integer.parseInt(value);
+
+        if (integer < 0) {
+            throw new IllegalArgumentException("Value of --" + name + " can't be negative");
+        }
+
+        return integer;
+    }
+
+}
@@ -0,0 +1,218 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.postgresql.PGConnection;
+
+/**
+ * Collects rows of one table in COPY text format. Rows are spooled to a temporary file, because only one COPY can run on a
+ * connection at a time, and are loaded when {@link #copy()} is called. Ids are assigned here, following the current maximum
+ * id of the table, and the id sequence of the table is moved past them after loading.
+ */
+public final class TableWriter {
+
+    private static final int L_BUFFER_SIZE = 1 << 16;
+
+    private static final String L_NULL = "\\N";
+
+    private static final DateTimeFormatter L_TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Connection connection;
+
+    private final String table;
+
+    private final String[] columns;
+
+    private final boolean withId;
+
+    private final Path spoolFile;
+
+    private final Writer spool;
+
+    private final StringBuilder row = new StringBuilder(256);
+
+    private long nextId;
+
+    private long rows;
+
+    TableWriter(final Connection connection, final String table, final boolean withId, final String... columns)
+            throws SQLException, IOException {
+        this.connection = connection;
+        this.table = table;
+        this.columns = columns;
+        this.withId = withId;
+        this.nextId = withId ? queryMaxId() + 1 : 0;
+        this.spoolFile = Files.createTempFile(table, ".copy");
+        this.spool = new BufferedWriter(Files.newBufferedWriter(spoolFile, StandardCharsets.UTF_8), L_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes a row and returns its id (zero for tables without id, e.g. join tables of many to many relations).
+     */
+    public long write(final Object... values) throws IOException {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values for " + table + ", got "
+                    + values.length);
+        }
+
+        long id = 0;
+
+        row.setLength(0);
+
+        if (withId) {
+            id = nextId++;
+
+            row.append(id).append('\t');
+        }
+
+        for (int index = 0; index < values.length; index++) {
+            if (index > 0) {
+                row.append('\t');
+            }
+
+            appendValue(values[index]);
+        }
+
+        row.append('\n');
+
+        spool.append(row);
+
+        rows++;
+
+        return id;
+    }
+
+    /**
+     * Returns id which will be given to the next written row.
+     */
+    public long peekId() {
+        return nextId;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    long copy() throws SQLException, IOException {
+        spool.close();
+
+        StringBuilder sql = new StringBuilder("COPY ").append(table).append(" (");
+
+        if (withId) {
+            sql.append("id, ");
+        }
+
+        sql.append(String.join(", ", columns)).append(") FROM STDIN");
+
+        try (Reader reader = new BufferedReader(Files.newBufferedReader(spoolFile, StandardCharsets.UTF_8), L_BUFFER_SIZE)) {
+            connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql.toString(), reader);
+        } finally {
+            Files.deleteIfExists(spoolFile);
+        }
+
+        if (withId && (rows > 0)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SELECT setval(pg_get_serial_sequence('" + table + "', 'id'), " + (nextId - 1) + ")");
+            }
+        }
+
+        return rows;
+    }
+
+    void discard() throws IOException {
+        spool.close();
+
+        Files.deleteIfExists(spoolFile);
+    }
+
+    private void appendValue(final Object value) {
+        if (value == null) {
+            row.append(L_NULL);
+        } else if (value instanceof Boolean) {
+            row.append((Boolean) value ? 't' : 'f');
+        } else if (value instanceof BigDecimal) {
+            row.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof LocalDateTime) {
+            row.append(L_TIMESTAMP_FORMATTER.format((LocalDateTime) value));
+        } else if (value instanceof LocalDate || value instanceof Number) {
+            row.append(value);
+        } else {
+            appendEscaped(value.toString());
+        }
+    }
+
+    private void appendEscaped(final String value) {
+        for (int index = 0; index < value.length(); index++) {
+            char character = value.charAt(index);
+
+            switch (character) {
+                case '\\':
+                    row.append("\\\\");
+                    break;
+                case '\t':
+                    row.append("\\t");
+                    break;
+                case '\n':
+                    row.append("\\n");
+                    break;
+                case '\r':
+                    row.append("\\r");
+                    break;
+                default:
+                    row.append(character);
+            }
+        }
+    }
+
+    private long queryMaxId() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            resultSet.next();
+
+            return resultSet.getLong(1);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset.generators;
+
+import static com.qcadoo.mes.dataset.DatasetContext.DATASET_USER;
+import static com.qcadoo.mes.dataset.DatasetContext.decimal;
+import static com.qcadoo.mes.dataset.DatasetContext.pick;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import com.qcadoo.mes.dataset.DatasetContext;
+import com.qcadoo.mes.dataset.DatasetSection;
+import com.qcadoo.mes.dataset.TableWriter;
+
+/**
+ * Deliveries of components from suppliers to warehouses. Deliveries before the current date of the dataset are received,
+ * later ones are drafts or approved.
+ */
+public final class DeliveryGenerator implements DatasetSection {
+
+    private static final int L_MAX_PRODUCTS_PER_DELIVERY = 10;
+
+    private static final int L_DELIVERY_DAYS = 365;
+
+    @Override
+    public String getName() {
+        return "deliveries";
+    }
+
+    @Override
+    public void generate(final DatasetContext context) throws SQLException, IOException {
+        SplittableRandom random = context.random(getName());
+        LocalDateTime startDateTime = context.startDateTime();
+        LocalDateTime currentDateTime = context.currentDateTime();
+
+        long[] supplierIds = context.get(MasterDataGenerator.SUPPLIERS);
+        long[] componentIds = context.get(MasterDataGenerator.COMPONENTS);
+        long[] warehouseIds = context.get(WarehouseGenerator.WAREHOUSES);
+
+        if (supplierIds.length == 0) {
+            return;
+        }
+
+        TableWriter deliveries = context.table("deliveries_delivery", "number", "name", "supplier_id", "deliverydate",
+                "state", "location_id", "active", "externalsynchronized", "createdate", "updatedate", "createuser",
+                "updateuser");
+        TableWriter orderedProducts = context.table("deliveries_orderedproduct", "delivery_id", "product_id",
+                "orderedquantity", "priceperunit", "totalprice", "succession", "additionalquantity", "conversion",
+                "deliveredquantity");
+
+        int deliveriesCount = context.getParameters().getDeliveries();
+
+        for (int index = 0; index < deliveriesCount; index++) {
+            String number = String.format("DST-%07d", index + 1);
+            LocalDateTime deliveryDate = startDateTime.plusMinutes(random.nextLong(L_DELIVERY_DAYS * 24L * 60L));
+            boolean received = deliveryDate.isBefore(currentDateTime);
+            String state = received ? "06received" : (random.nextBoolean() ? "01draft" : "05approved");
+            LocalDateTime createDate = deliveryDate.minusDays(random.nextInt(1, 30));
+
+            long deliveryId = deliveries.write(number, "Delivery " + number, pick(random, supplierIds), deliveryDate, state,
+                    pick(random, warehouseIds), true, true, createDate, received ? deliveryDate : createDate, DATASET_USER,
+                    DATASET_USER);
+
+            Set<Long> productIds = new LinkedHashSet<>();
+            int productsCount = random.nextInt(1, L_MAX_PRODUCTS_PER_DELIVERY + 1);
+
+            while (productIds.size() < Math.min(productsCount, componentIds.length)) {
+                productIds.add(pick(random, componentIds));
+            }
+
+            int succession = 1;
+
+            for (long productId : productIds) {
+                BigDecimal quantity = decimal(random, 1, 1000, 5);
+                BigDecimal pricePerUnit = decimal(random, 1, 500, 5);
+
+                orderedProducts.write(deliveryId, productId, quantity, pricePerUnit,
+                        quantity.multiply(pricePerUnit).setScale(5, RoundingMode.HALF_UP), succession++, quantity,
+                        BigDecimal.ONE.setScale(5), received ? quantity : null);
+            }
+        }
+    }
+
+}
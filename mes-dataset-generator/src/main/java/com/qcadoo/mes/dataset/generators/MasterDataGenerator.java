@@ -0,0 +1,222 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset.generators;
+
+import static com.qcadoo.mes.dataset.DatasetContext.DATASET_USER;
+import static com.qcadoo.mes.dataset.DatasetContext.decimal;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import com.qcadoo.mes.dataset.DatasetContext;
+import com.qcadoo.mes.dataset.DatasetParameters;
+import com.qcadoo.mes.dataset.DatasetSection;
+import com.qcadoo.mes.dataset.TableWriter;
+
+/**
+ * Units, suppliers and customers, workstation types, products and operations.
+ */
+public final class MasterDataGenerator implements DatasetSection {
+
+    public static final String COMPONENTS = "components";
+
+    public static final String INTERMEDIATES = "intermediates";
+
+    public static final String FINAL_PRODUCTS = "finalProducts";
+
+    public static final String PRODUCT_UNITS = "productUnits";
+
+    public static final String SUPPLIERS = "suppliers";
+
+    public static final String CUSTOMERS = "customers";
+
+    public static final String OPERATIONS = "operations";
+
+    private static final String[] L_UNITS = { "szt", "kg", "m", "l", "m2", "opak" };
+
+    private static final String[] L_CITIES = { "Warszawa", "Krakow", "Lodz", "Wroclaw", "Poznan", "Gdansk", "Szczecin",
+            "Bydgoszcz", "Lublin", "Bialystok" };
+
+    private static final int L_WORKSTATION_TYPES = 20;
+
+    private static final double L_COMPONENTS_SHARE = 0.6;
+
+    private static final double L_INTERMEDIATES_SHARE = 0.25;
+
+    @Override
+    public String getName() {
+        return "masterData";
+    }
+
+    @Override
+    public void generate(final DatasetContext context) throws SQLException, IOException {
+        DatasetParameters parameters = context.getParameters();
+        SplittableRandom random = context.random(getName());
+        LocalDateTime createDate = context.startDateTime();
+
+        addMissingUnits(context.getConnection());
+
+        TableWriter companies = context.table("basic_company", "number", "name", "tax", "street", "house", "zipcode",
+                "city", "country", "email", "phone", "active", "issupplier", "isreceiver");
+        TableWriter workstationTypes = context.table("basic_workstationtype", "number", "name", "active");
+        TableWriter products = context.table("basic_product", "number", "name", "globaltypeofmaterial", "entitytype",
+                "unit", "nominalcost", "lastpurchasecost", "active", "createdate", "updatedate", "createuser", "updateuser");
+        TableWriter operations = context.table("technologies_operation", "number", "name", "workstationtype_id", "tpz", "tj",
+                "laborhourlycost", "machinehourlycost", "active");
+
+        int suppliersCount = parameters.getSuppliers();
+        int customersCount = Math.max(1, suppliersCount / 2);
+
+        long[] supplierIds = new long[suppliersCount];
+        long[] customerIds = new long[customersCount];
+
+        for (int index = 0; index < suppliersCount + customersCount; index++) {
+            boolean isSupplier = index < suppliersCount;
+            String number = String.format("%s-%06d", isSupplier ? "DOS" : "KL", index + 1);
+
+            long id = companies.write(number, (isSupplier ? "Supplier " : "Customer ") + number,
+                    String.format("%010d", random.nextLong(10000000000L)), "Street " + random.nextInt(1, 200),
+                    String.valueOf(random.nextInt(1, 100)), String.format("%02d-%03d", random.nextInt(100), random.nextInt(1000)),
+                    L_CITIES[random.nextInt(L_CITIES.length)], "Polska", number.toLowerCase() + "@example.com",
+                    String.format("+48 %09d", random.nextInt(1000000000)), true, isSupplier, !isSupplier);
+
+            if (isSupplier) {
+                supplierIds[index] = id;
+            } else {
+                customerIds[index - suppliersCount] = id;
+            }
+        }
+
+        long[] workstationTypeIds = new long[L_WORKSTATION_TYPES];
+
+        for (int index = 0; index < L_WORKSTATION_TYPES; index++) {
+            workstationTypeIds[index] = workstationTypes.write(String.format("TS-%02d", index + 1), "Workstation type "
+                    + (index + 1), true);
+        }
+
+        int productsCount = Math.max(3, parameters.getProducts());
+        int componentsCount = (int) (productsCount * L_COMPONENTS_SHARE);
+        int intermediatesCount = (int) (productsCount * L_INTERMEDIATES_SHARE);
+        int finalProductsCount = productsCount - componentsCount - intermediatesCount;
+
+        long[] componentIds = new long[componentsCount];
+        long[] intermediateIds = new long[intermediatesCount];
+        long[] finalProductIds = new long[finalProductsCount];
+        Map<Long, String> productUnits = new HashMap<>(productsCount * 2);
+
+        for (int index = 0; index < productsCount; index++) {
+            String globalTypeOfMaterial;
+            String prefix;
+
+            if (index < componentsCount) {
+                globalTypeOfMaterial = "01component";
+                prefix = "M";
+            } else if (index < componentsCount + intermediatesCount) {
+                globalTypeOfMaterial = "02intermediate";
+                prefix = "P";
+            } else {
+                globalTypeOfMaterial = "03finalProduct";
+                prefix = "W";
+            }
+
+            String number = String.format("%s-%07d", prefix, index + 1);
+            String unit = "03finalProduct".equals(globalTypeOfMaterial) ? L_UNITS[0] : L_UNITS[random.nextInt(L_UNITS.length)];
+
+            long id = products.write(number, "Product " + number, globalTypeOfMaterial, "01particularProduct", unit,
+                    decimal(random, 1, 500, 5), decimal(random, 1, 500, 5), true, createDate, createDate, DATASET_USER,
+                    DATASET_USER);
+
+            productUnits.put(id, unit);
+
+            if (index < componentsCount) {
+                componentIds[index] = id;
+            } else if (index < componentsCount + intermediatesCount) {
+                intermediateIds[index - componentsCount] = id;
+            } else {
+                finalProductIds[index - componentsCount - intermediatesCount] = id;
+            }
+        }
+
+        int operationsCount = Math.max(1, parameters.getOperations());
+        long[] operationIds = new long[operationsCount];
+
+        for (int index = 0; index < operationsCount; index++) {
+            String number = String.format("OP-%05d", index + 1);
+
+            operationIds[index] = operations.write(number, "Operation " + number,
+                    DatasetContext.pick(random, workstationTypeIds), random.nextInt(0, 3600), random.nextInt(10, 600),
+                    decimal(random, 20, 80, 5), decimal(random, 50, 300, 5), true);
+        }
+
+        context.put(SUPPLIERS, supplierIds);
+        context.put(CUSTOMERS, customerIds);
+        context.put(COMPONENTS, componentIds);
+        context.put(INTERMEDIATES, intermediateIds);
+        context.put(FINAL_PRODUCTS, finalProductIds);
+        context.put(PRODUCT_UNITS, productUnits);
+        context.put(OPERATIONS, operationIds);
+    }
+
+    private void addMissingUnits(final Connection connection) throws SQLException {
+        Long dictionaryId = null;
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id FROM qcadoomodel_dictionary WHERE name = ?")) {
+            statement.setString(1, "units");
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    dictionaryId = resultSet.getLong(1);
+                }
+            }
+        }
+
+        if (dictionaryId == null) {
+            throw new IllegalStateException("Dictionary of units doesn't exist, start the application on this database first");
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO qcadoomodel_dictionaryitem "
+                + "(name, technicalcode, dictionary_id, active, isinteger) SELECT ?, ?, ?, true, ? WHERE NOT EXISTS "
+                + "(SELECT 1 FROM qcadoomodel_dictionaryitem WHERE dictionary_id = ? AND name = ?)")) {
+            for (String unit : L_UNITS) {
+                statement.setString(1, unit);
+                statement.setString(2, unit);
+                statement.setLong(3, dictionaryId);
+                statement.setBoolean(4, L_UNITS[0].equals(unit));
+                statement.setLong(5, dictionaryId);
+                statement.setString(6, unit);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        }
+    }
+
+}
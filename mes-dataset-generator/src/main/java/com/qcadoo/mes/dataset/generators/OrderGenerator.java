@@ -0,0 +1,335 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset.generators;
+
+import static com.qcadoo.mes.dataset.DatasetContext.DATASET_USER;
+import static com.qcadoo.mes.dataset.DatasetContext.decimal;
+import static com.qcadoo.mes.dataset.DatasetContext.pick;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import com.qcadoo.mes.dataset.DatasetContext;
+import com.qcadoo.mes.dataset.DatasetSection;
+import com.qcadoo.mes.dataset.TableWriter;
+
+/**
+ * Master orders of customers, production orders and production trackings. The first orders realize positions of master
+ * orders, the remaining ones are made for stock. State of an order follows its dates compared to the current date of the
+ * dataset, only completed and in progress orders have trackings.
+ */
+public final class OrderGenerator implements DatasetSection {
+
+    private static final String L_PENDING = "01pending";
+
+    private static final String L_ACCEPTED = "02accepted";
+
+    private static final String L_IN_PROGRESS = "03inProgress";
+
+    private static final String L_COMPLETED = "04completed";
+
+    private static final String L_CUMULATED = "02cumulated";
+
+    private static final String L_FOR_EACH = "03forEach";
+
+    private static final int L_ORDER_DAYS = 365;
+
+    private static final int L_MAX_PRODUCTS_PER_MASTER_ORDER = 5;
+
+    private static final int L_MAX_TRACKINGS_PER_ORDER = 4;
+
+    private Writers writers;
+
+    private Set<Long> intermediateIds;
+
+    @Override
+    public String getName() {
+        return "orders";
+    }
+
+    @Override
+    public void generate(final DatasetContext context) throws SQLException, IOException {
+        SplittableRandom random = context.random(getName());
+        LocalDateTime startDateTime = context.startDateTime();
+        LocalDateTime currentDateTime = context.currentDateTime();
+
+        long[] customerIds = context.get(MasterDataGenerator.CUSTOMERS);
+        long[] finalProductIds = context.get(MasterDataGenerator.FINAL_PRODUCTS);
+        Map<Long, TechnologyStructure> technologies = context.get(TechnologyGenerator.TECHNOLOGIES);
+
+        writers = new Writers(context);
+        intermediateIds = new HashSet<>();
+
+        for (long intermediateId : context.<long[]> get(MasterDataGenerator.INTERMEDIATES)) {
+            intermediateIds.add(intermediateId);
+        }
+
+        int ordersCount = context.getParameters().getOrders();
+        int masterOrdersCount = context.getParameters().getMasterOrders();
+
+        for (int index = 0; index < masterOrdersCount; index++) {
+            String number = String.format("ZK-%07d", index + 1);
+            LocalDateTime deadline = startDateTime.plusDays(random.nextInt(14, L_ORDER_DAYS)).withHour(14);
+            LocalDateTime dateOfReceipt = deadline.minusDays(random.nextInt(14, 60));
+            long customerId = pick(random, customerIds);
+            String state;
+
+            if (deadline.isBefore(currentDateTime.minusDays(14))) {
+                state = "03completed";
+            } else if (dateOfReceipt.isBefore(currentDateTime)) {
+                state = "02inExecution";
+            } else {
+                state = "01new";
+            }
+
+            long masterOrderId = writers.masterOrders.write(number, "Master order " + number, deadline, state, customerId,
+                    true, true, false, dateOfReceipt, deadline, dateOfReceipt, dateOfReceipt, dateOfReceipt, DATASET_USER,
+                    DATASET_USER);
+
+            Set<Long> productIds = new LinkedHashSet<>();
+            int productsCount = random.nextInt(1, L_MAX_PRODUCTS_PER_MASTER_ORDER + 1);
+
+            while (productIds.size() < Math.min(productsCount, finalProductIds.length)) {
+                productIds.add(pick(random, finalProductIds));
+            }
+
+            for (long productId : productIds) {
+                TechnologyStructure technology = technologies.get(productId);
+                BigDecimal quantity = BigDecimal.valueOf(random.nextInt(1, 500)).setScale(5);
+
+                if (writers.orders.getRows() < ordersCount) {
+                    LocalDateTime dateFrom = deadline.minusDays(random.nextInt(1, 10)).withHour(6);
+                    Order order = new Order(random, technology, quantity, dateFrom, currentDateTime);
+
+                    long masterOrderProductId = writers.masterOrderProducts.write(productId, technology.getId(),
+                            masterOrderId, quantity, quantity, order.doneQuantity, BigDecimal.ZERO.setScale(5));
+
+                    addOrder(context, random, order, customerId, masterOrderId, masterOrderProductId, deadline);
+                } else {
+                    writers.masterOrderProducts.write(productId, technology.getId(), masterOrderId, quantity,
+                            BigDecimal.ZERO.setScale(5), BigDecimal.ZERO.setScale(5), quantity);
+                }
+            }
+        }
+
+        long[] producedIds = new long[technologies.size()];
+        int producedIndex = 0;
+
+        for (long productId : technologies.keySet()) {
+            producedIds[producedIndex++] = productId;
+        }
+
+        Arrays.sort(producedIds);
+
+        while (writers.orders.getRows() < ordersCount) {
+            long productId = pick(random, producedIds);
+            LocalDateTime dateFrom = startDateTime.plusDays(random.nextInt(L_ORDER_DAYS)).withHour(6);
+            Order order = new Order(random, technologies.get(productId), BigDecimal.valueOf(random.nextInt(1, 1000))
+                    .setScale(5), dateFrom, currentDateTime);
+
+            addOrder(context, random, order, null, null, null, order.dateTo);
+        }
+
+        writers = null;
+        intermediateIds = null;
+    }
+
+    private void addOrder(final DatasetContext context, final SplittableRandom random, final Order order,
+            final Long companyId, final Long masterOrderId, final Long masterOrderProductId, final LocalDateTime deadline)
+            throws IOException {
+        long[] productionLineIds = context.get(ProductionLineGenerator.PRODUCTION_LINES);
+        long[] shiftIds = context.get(ProductionLineGenerator.SHIFTS);
+        Map<Long, String> productUnits = context.get(MasterDataGenerator.PRODUCT_UNITS);
+
+        String number = String.format("ZL-%07d", writers.orders.getRows() + 1);
+        boolean started = L_IN_PROGRESS.equals(order.state) || L_COMPLETED.equals(order.state);
+        boolean completed = L_COMPLETED.equals(order.state);
+        long technologyId = order.technology.getId();
+
+        long orderId = writers.orders.write(number, "Order " + number, order.dateFrom, order.dateTo,
+                started ? order.dateFrom : null, completed ? order.dateTo : null, started ? order.dateFrom : null,
+                completed ? order.dateTo : null, deadline, order.state, companyId, order.technology.getProductId(),
+                technologyId, technologyId, pick(random, productionLineIds), order.plannedQuantity, order.doneQuantity,
+                order.typeOfProductionRecording, true, true, true, false, false, false, false, masterOrderId,
+                masterOrderProductId, "01withPatternTechnology", true, true);
+
+        if (!started) {
+            return;
+        }
+
+        int trackingsCount = completed ? random.nextInt(1, L_MAX_TRACKINGS_PER_ORDER + 1) : random.nextInt(0, 3);
+        List<TechnologyStructure.Operation> operations = order.technology.getOperations();
+        Set<Long> componentIds = L_CUMULATED.equals(order.typeOfProductionRecording) ? order.technology.getComponentIds()
+                : null;
+        LocalDateTime timeRangeFrom = order.dateFrom;
+        long trackingHours = Math.max(1, Duration.between(order.dateFrom, order.dateTo).toHours() / Math.max(1,
+                trackingsCount));
+
+        for (int tracking = 1; tracking <= trackingsCount; tracking++) {
+            boolean lastTracking = completed && (tracking == trackingsCount);
+            boolean draft = !completed && (tracking == trackingsCount) && random.nextBoolean();
+            LocalDateTime timeRangeTo = timeRangeFrom.plusHours(trackingHours);
+            BigDecimal share = BigDecimal.ONE.divide(BigDecimal.valueOf(trackingsCount), 5, RoundingMode.HALF_UP);
+            BigDecimal producedQuantity = order.plannedQuantity.multiply(share).setScale(5, RoundingMode.HALF_UP);
+            TechnologyStructure.Operation operation = (componentIds == null) ? operations.get(random.nextInt(operations
+                    .size())) : null;
+
+            String trackingNumber = String.format("RP-%09d", writers.trackings.getRows() + 1);
+
+            long trackingId = writers.trackings.write(trackingNumber, orderId, (operation == null) ? null : operation.getId(),
+                    pick(random, shiftIds), draft ? "01draft" : L_ACCEPTED, lastTracking, random.nextInt(600, 28800),
+                    random.nextInt(600, 28800), producedQuantity, true, timeRangeTo, timeRangeTo, DATASET_USER,
+                    DATASET_USER, true, timeRangeFrom, timeRangeTo, timeRangeFrom.toLocalDate(), false);
+
+            long outProductId = (operation == null) ? order.technology.getProductId() : operation.getOutProductId();
+
+            writers.outComponents.write(trackingId, outProductId, producedQuantity,
+                    decimal(random, 0, producedQuantity.doubleValue() / 20, 5), productUnits.get(outProductId),
+                    producedQuantity, typeOfMaterial(outProductId, order.technology));
+
+            long[] inProductIds = (operation == null) ? toArray(componentIds) : operation.getInProductIds();
+
+            for (long inProductId : inProductIds) {
+                BigDecimal usedQuantity = producedQuantity.multiply(decimal(random, 0.1, 10, 5)).setScale(5,
+                        RoundingMode.HALF_UP);
+
+                writers.inComponents.write(trackingId, inProductId, usedQuantity, productUnits.get(inProductId),
+                        usedQuantity, intermediateIds.contains(inProductId) ? "02intermediate" : "01component", false,
+                        false);
+            }
+
+            timeRangeFrom = timeRangeTo;
+        }
+    }
+
+    private String typeOfMaterial(final long productId, final TechnologyStructure technology) {
+        if ((productId == technology.getProductId()) && !intermediateIds.contains(productId)) {
+            return "03finalProduct";
+        }
+
+        return intermediateIds.contains(productId) ? "02intermediate" : "01component";
+    }
+
+    private static long[] toArray(final Set<Long> ids) {
+        long[] array = new long[ids.size()];
+        int index = 0;
+
+        for (long id : ids) {
+            array[index++] = id;
+        }
+
+        return array;
+    }
+
+    private static final class Order {
+
+        private final TechnologyStructure technology;
+
+        private final BigDecimal plannedQuantity;
+
+        private final BigDecimal doneQuantity;
+
+        private final LocalDateTime dateFrom;
+
+        private final LocalDateTime dateTo;
+
+        private final String state;
+
+        private final String typeOfProductionRecording;
+
+        private Order(final SplittableRandom random, final TechnologyStructure technology, final BigDecimal plannedQuantity,
+                final LocalDateTime dateFrom, final LocalDateTime currentDateTime) {
+            this.technology = technology;
+            this.plannedQuantity = plannedQuantity;
+            this.dateFrom = dateFrom;
+            this.dateTo = dateFrom.plusHours(random.nextInt(8, 72));
+            this.typeOfProductionRecording = (random.nextInt(10) < 7) ? L_CUMULATED : L_FOR_EACH;
+
+            if (dateTo.isBefore(currentDateTime)) {
+                state = L_COMPLETED;
+                doneQuantity = plannedQuantity;
+            } else if (dateFrom.isBefore(currentDateTime)) {
+                state = L_IN_PROGRESS;
+                doneQuantity = BigDecimal.ZERO.setScale(5);
+            } else {
+                state = random.nextBoolean() ? L_PENDING : L_ACCEPTED;
+                doneQuantity = BigDecimal.ZERO.setScale(5);
+            }
+        }
+
+    }
+
+    private static final class Writers {
+
+        private final TableWriter masterOrders;
+
+        private final TableWriter masterOrderProducts;
+
+        private final TableWriter orders;
+
+        private final TableWriter trackings;
+
+        private final TableWriter outComponents;
+
+        private final TableWriter inComponents;
+
+        private Writers(final DatasetContext context) throws SQLException, IOException {
+            masterOrders = context.table("masterorders_masterorder", "number", "name", "deadline", "state", "company_id",
+                    "externalsynchronized", "active", "addmasterprefixtonumber", "startdate", "finishdate",
+                    "dateofreceipt", "createdate", "updatedate", "createuser", "updateuser");
+            masterOrderProducts = context.table("masterorders_masterorderproduct", "product_id", "technology_id",
+                    "masterorder_id", "masterorderquantity", "cumulatedorderquantity", "producedorderquantity",
+                    "lefttorelease");
+            orders = context.table("orders_order", "number", "name", "datefrom", "dateto", "startdate", "finishdate",
+                    "effectivedatefrom", "effectivedateto", "deadline", "state", "company_id", "product_id",
+                    "technology_id", "technologyprototype_id", "productionline_id", "plannedquantity", "donequantity",
+                    "typeofproductionrecording", "registerquantityinproduct", "registerquantityoutproduct",
+                    "registerproductiontime", "justone", "allowtoclose", "autocloseorder", "registerpiecework",
+                    "masterorder_id", "masterorderproduct_id", "ordertype", "externalsynchronized", "active");
+            trackings = context.table("productioncounting_productiontracking", "number", "order_id",
+                    "technologyoperationcomponent_id", "shift_id", "state", "lasttracking", "machinetime", "labortime",
+                    "executedoperationcycles", "active", "createdate", "updatedate", "createuser", "updateuser",
+                    "isexternalsynchronized", "timerangefrom", "timerangeto", "shiftstartday", "iscorrection");
+            outComponents = context.table("productioncounting_trackingoperationproductoutcomponent",
+                    "productiontracking_id", "product_id", "usedquantity", "wastesquantity", "givenunit", "givenquantity",
+                    "typeofmaterial");
+            inComponents = context.table("productioncounting_trackingoperationproductincomponent",
+                    "productiontracking_id", "product_id", "usedquantity", "givenunit", "givenquantity", "typeofmaterial",
+                    "wasteused", "wasteusedonly");
+        }
+
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset.generators;
+
+import static com.qcadoo.mes.dataset.DatasetContext.decimal;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import com.qcadoo.mes.dataset.DatasetContext;
+import com.qcadoo.mes.dataset.DatasetSection;
+import com.qcadoo.mes.dataset.TableWriter;
+
+/**
+ * Shifts with timetable exceptions over two years from the start date and production lines working in those shifts.
+ */
+public final class ProductionLineGenerator implements DatasetSection {
+
+    public static final String PRODUCTION_LINES = "productionLines";
+
+    public static final String SHIFTS = "shifts";
+
+    private static final String[] L_SHIFT_HOURS = { "6:00-14:00", "14:00-22:00", "22:00-6:00" };
+
+    private static final int L_EXCEPTIONS_PER_SHIFT = 24;
+
+    private static final int L_EXCEPTION_DAYS = 730;
+
+    private static final int L_MAX_SHIFTS_PER_LINE = 3;
+
+    @Override
+    public String getName() {
+        return PRODUCTION_LINES;
+    }
+
+    @Override
+    public void generate(final DatasetContext context) throws SQLException, IOException {
+        SplittableRandom random = context.random(getName());
+        LocalDate startDate = context.startDate();
+
+        TableWriter shifts = context.table("basic_shift", "name", "mondayworking", "mondayhours", "tuesdayworking",
+                "tuesdayhours", "wensdayworking", "wensdayhours", "thursdayworking", "thursdayhours", "fridayworking",
+                "fridayhours", "saturdayworking", "saturdayhours", "sundayworking", "sundayhours");
+        TableWriter exceptions = context.table("basic_shifttimetableexception", "name", "fromdate", "todate", "type",
+                "relatestoprevday");
+        TableWriter productionLines = context.table("productionlines_productionline", "number", "name", "place",
+                "supportsalltechnologies", "supportsothertechnologiesworkstationtypes", "quantityforotherworkstationtypes",
+                "availabilityindicator", "production", "active");
+        TableWriter shiftExceptions = context.joinTable("jointable_shift_shifttimetableexception", "shift_id",
+                "shifttimetableexception_id");
+        TableWriter productionLineShifts = context.joinTable("jointable_productionline_shift", "productionline_id",
+                "shift_id");
+        TableWriter productionLineExceptions = context.joinTable("jointable_productionline_shifttimetableexception",
+                "productionline_id", "shifttimetableexception_id");
+
+        int productionLinesCount = Math.max(1, context.getParameters().getProductionLines());
+        int shiftsCount = L_SHIFT_HOURS.length + productionLinesCount / 5;
+
+        long[] shiftIds = new long[shiftsCount];
+
+        for (int index = 0; index < shiftsCount; index++) {
+            String hours = L_SHIFT_HOURS[index % L_SHIFT_HOURS.length];
+            boolean saturdayWorking = random.nextInt(4) == 0;
+
+            shiftIds[index] = shifts.write(String.format("Shift %03d", index + 1), true, hours, true, hours, true, hours,
+                    true, hours, true, hours, saturdayWorking, saturdayWorking ? hours : null, false, null);
+
+            for (int exception = 0; exception < L_EXCEPTIONS_PER_SHIFT; exception++) {
+                long exceptionId = addException(exceptions, random, startDate, "Shift " + (index + 1));
+
+                shiftExceptions.write(shiftIds[index], exceptionId);
+            }
+        }
+
+        long[] productionLineIds = new long[productionLinesCount];
+
+        for (int index = 0; index < productionLinesCount; index++) {
+            String number = String.format("LP-%04d", index + 1);
+
+            productionLineIds[index] = productionLines.write(number, "Production line " + number, "Hall "
+                    + (index % 10 + 1), true, true, 1, decimal(random, 0.6, 1, 5), true, true);
+
+            Set<Long> lineShiftIds = new LinkedHashSet<>();
+            int lineShiftsCount = random.nextInt(1, L_MAX_SHIFTS_PER_LINE + 1);
+
+            while (lineShiftIds.size() < Math.min(lineShiftsCount, shiftsCount)) {
+                lineShiftIds.add(DatasetContext.pick(random, shiftIds));
+            }
+            for (long shiftId : lineShiftIds) {
+                productionLineShifts.write(productionLineIds[index], shiftId);
+            }
+
+            for (int exception = 0; exception < L_EXCEPTIONS_PER_SHIFT / 4; exception++) {
+                long exceptionId = addException(exceptions, random, startDate, number);
+
+                productionLineExceptions.write(productionLineIds[index], exceptionId);
+            }
+        }
+
+        context.put(SHIFTS, shiftIds);
+        context.put(PRODUCTION_LINES, productionLineIds);
+    }
+
+    private long addException(final TableWriter exceptions, final SplittableRandom random, final LocalDate startDate,
+            final String owner) throws IOException {
+        boolean freeTime = random.nextInt(4) != 0;
+        LocalDateTime fromDate = startDate.plusDays(random.nextInt(L_EXCEPTION_DAYS)).atTime(random.nextInt(24), 0);
+        LocalDateTime toDate = fromDate.plusHours(random.nextInt(2, freeTime ? 48 : 10));
+
+        return exceptions.write((freeTime ? "Free time " : "Work time ") + owner, fromDate, toDate, freeTime ? "01freeTime"
+                : "02workTime", false);
+    }
+
+}
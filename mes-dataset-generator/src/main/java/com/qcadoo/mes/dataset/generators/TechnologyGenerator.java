@@ -0,0 +1,179 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset.generators;
+
+import static com.qcadoo.mes.dataset.DatasetContext.DATASET_USER;
+import static com.qcadoo.mes.dataset.DatasetContext.decimal;
+import static com.qcadoo.mes.dataset.DatasetContext.pick;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import com.qcadoo.mes.dataset.DatasetContext;
+import com.qcadoo.mes.dataset.DatasetSection;
+import com.qcadoo.mes.dataset.TableWriter;
+
+/**
+ * Accepted master technologies of all intermediates and final products. Operations of a technology produce intermediates
+ * consumed by their parents, so trees have several levels. Intermediate can use only intermediates with higher index, so
+ * technologies never refer to each other in a cycle.
+ */
+public final class TechnologyGenerator implements DatasetSection {
+
+    public static final String TECHNOLOGIES = "technologies";
+
+    private static final int L_MAX_COMPONENTS_PER_OPERATION = 4;
+
+    private static final int L_MAX_CHILDREN_PER_OPERATION = 2;
+
+    private Writers writers;
+
+    @Override
+    public String getName() {
+        return TECHNOLOGIES;
+    }
+
+    @Override
+    public void generate(final DatasetContext context) throws SQLException, IOException {
+        SplittableRandom random = context.random(getName());
+
+        writers = new Writers(context);
+
+        long[] intermediateIds = context.get(MasterDataGenerator.INTERMEDIATES);
+        long[] finalProductIds = context.get(MasterDataGenerator.FINAL_PRODUCTS);
+        int maxDepth = Math.max(1, context.getParameters().getTechnologyDepth());
+
+        Map<Long, TechnologyStructure> technologies = new HashMap<>((intermediateIds.length + finalProductIds.length) * 2);
+
+        for (int index = 0; index < intermediateIds.length; index++) {
+            technologies.put(intermediateIds[index],
+                    addTechnology(context, random, intermediateIds[index], Math.max(1, maxDepth - 1), index + 1));
+        }
+        for (long finalProductId : finalProductIds) {
+            technologies.put(finalProductId, addTechnology(context, random, finalProductId, maxDepth, 0));
+        }
+
+        context.put(TECHNOLOGIES, technologies);
+
+        writers = null;
+    }
+
+    private TechnologyStructure addTechnology(final DatasetContext context, final SplittableRandom random, final long productId,
+            final int maxDepth, final int firstAllowedIntermediate) throws IOException {
+        String number = String.format("TECH-%07d", writers.technologies.getRows() + 1);
+
+        long technologyId = writers.technologies.write(number, "Technology " + number, productId, true, "02accepted", true,
+                true, "02cumulated", true, true, true);
+
+        TechnologyStructure technology = new TechnologyStructure(technologyId, productId);
+
+        addOperation(context, random, technology, null, productId, "1.", 1, maxDepth, firstAllowedIntermediate);
+
+        return technology;
+    }
+
+    private void addOperation(final DatasetContext context, final SplittableRandom random,
+            final TechnologyStructure technology, final Long parentId, final long productId, final String nodeNumber,
+            final int depth, final int maxDepth, final int firstAllowedIntermediate) throws IOException {
+        long[] componentIds = context.get(MasterDataGenerator.COMPONENTS);
+        long[] intermediateIds = context.get(MasterDataGenerator.INTERMEDIATES);
+        long[] operationIds = context.get(MasterDataGenerator.OPERATIONS);
+        Map<Long, String> productUnits = context.get(MasterDataGenerator.PRODUCT_UNITS);
+        LocalDateTime createDate = context.startDateTime();
+
+        long operationComponentId = writers.operationComponents.write(technology.getId(), pick(random, operationIds), parentId,
+                "operation", depth, nodeNumber, random.nextInt(0, 3600), random.nextInt(10, 600), createDate, createDate,
+                DATASET_USER, DATASET_USER);
+
+        writers.outComponents.write(operationComponentId, productId, BigDecimal.ONE.setScale(5));
+
+        Set<Long> inProductIds = new LinkedHashSet<>();
+
+        int componentsCount = random.nextInt(1, L_MAX_COMPONENTS_PER_OPERATION + 1);
+
+        while (inProductIds.size() < Math.min(componentsCount, componentIds.length)) {
+            inProductIds.add(pick(random, componentIds));
+        }
+
+        if ((depth < maxDepth) && (firstAllowedIntermediate < intermediateIds.length)) {
+            int childrenCount = random.nextInt((depth == 1) ? 1 : 0, L_MAX_CHILDREN_PER_OPERATION + 1);
+
+            for (int child = 1; child <= childrenCount; child++) {
+                int intermediateIndex = random.nextInt(firstAllowedIntermediate, intermediateIds.length);
+                long intermediateId = intermediateIds[intermediateIndex];
+
+                if (inProductIds.add(intermediateId)) {
+                    addOperation(context, random, technology, operationComponentId, intermediateId, nodeNumber + child + ".",
+                            depth + 1, maxDepth, intermediateIndex + 1);
+                }
+            }
+        }
+
+        long[] inProductIdsArray = new long[inProductIds.size()];
+        int index = 0;
+
+        for (long inProductId : inProductIds) {
+            BigDecimal quantity = decimal(random, 0.1, 10, 5);
+
+            writers.inComponents.write(operationComponentId, inProductId, quantity, quantity, productUnits.get(inProductId));
+
+            inProductIdsArray[index++] = inProductId;
+        }
+
+        technology.addOperation(new TechnologyStructure.Operation(operationComponentId, productId, inProductIdsArray));
+    }
+
+    private static final class Writers {
+
+        private final TableWriter technologies;
+
+        private final TableWriter operationComponents;
+
+        private final TableWriter inComponents;
+
+        private final TableWriter outComponents;
+
+        private Writers(final DatasetContext context) throws SQLException, IOException {
+            technologies = context.table("technologies_technology", "number", "name", "product_id", "master", "state",
+                    "active", "externalsynchronized", "typeofproductionrecording", "registerquantityinproduct",
+                    "registerquantityoutproduct", "registerproductiontime");
+            operationComponents = context.table("technologies_technologyoperationcomponent", "technology_id",
+                    "operation_id", "parent_id", "entitytype", "priority", "nodenumber", "tpz", "tj", "createdate",
+                    "updatedate", "createuser", "updateuser");
+            inComponents = context.table("technologies_operationproductincomponent", "operationcomponent_id", "product_id",
+                    "quantity", "givenquantity", "givenunit");
+            outComponents = context.table("technologies_operationproductoutcomponent", "operationcomponent_id",
+                    "product_id", "quantity");
+        }
+
+    }
+
+}
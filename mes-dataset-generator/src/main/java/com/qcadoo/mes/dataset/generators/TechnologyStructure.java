@@ -0,0 +1,113 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset.generators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ids of a generated technology tree, used to generate orders and production trackings.
+ */
+public final class TechnologyStructure {
+
+    private final long id;
+
+    private final long productId;
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    TechnologyStructure(final long id, final long productId) {
+        this.id = id;
+        this.productId = productId;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    public List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Returns products, which aren't produced inside of the technology, as registered by cumulated production tracking.
+     */
+    public Set<Long> getComponentIds() {
+        Set<Long> componentIds = new LinkedHashSet<>();
+        Set<Long> producedIds = new LinkedHashSet<>();
+
+        for (Operation operation : operations) {
+            producedIds.add(operation.getOutProductId());
+        }
+        for (Operation operation : operations) {
+            for (long inProductId : operation.getInProductIds()) {
+                if (!producedIds.contains(inProductId)) {
+                    componentIds.add(inProductId);
+                }
+            }
+        }
+
+        return componentIds;
+    }
+
+    void addOperation(final Operation operation) {
+        operations.add(operation);
+    }
+
+    public static final class Operation {
+
+        private final long id;
+
+        private final long outProductId;
+
+        private final long[] inProductIds;
+
+        Operation(final long id, final long outProductId, final long[] inProductIds) {
+            this.id = id;
+            this.outProductId = outProductId;
+            this.inProductIds = inProductIds;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getOutProductId() {
+            return outProductId;
+        }
+
+        public long[] getInProductIds() {
+            return inProductIds;
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.dataset.generators;
+
+import static com.qcadoo.mes.dataset.DatasetContext.DATASET_USER;
+import static com.qcadoo.mes.dataset.DatasetContext.decimal;
+import static com.qcadoo.mes.dataset.DatasetContext.pick;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import com.qcadoo.mes.dataset.DatasetContext;
+import com.qcadoo.mes.dataset.DatasetParameters;
+import com.qcadoo.mes.dataset.DatasetSection;
+import com.qcadoo.mes.dataset.TableWriter;
+
+/**
+ * Warehouses, pallet numbers and resources of components and final products. Every third resource lies on a pallet.
+ */
+public final class WarehouseGenerator implements DatasetSection {
+
+    public static final String WAREHOUSES = "warehouses";
+
+    private static final int L_RESOURCE_DAYS = 365;
+
+    @Override
+    public String getName() {
+        return WAREHOUSES;
+    }
+
+    @Override
+    public void generate(final DatasetContext context) throws SQLException, IOException {
+        DatasetParameters parameters = context.getParameters();
+        SplittableRandom random = context.random(getName());
+        LocalDateTime startDateTime = context.startDateTime();
+
+        long[] componentIds = context.get(MasterDataGenerator.COMPONENTS);
+        long[] finalProductIds = context.get(MasterDataGenerator.FINAL_PRODUCTS);
+        Map<Long, String> productUnits = context.get(MasterDataGenerator.PRODUCT_UNITS);
+
+        TableWriter locations = context.table("materialflow_location", "number", "name", "type", "algorithm",
+                "requireprice", "requirebatch", "requireproductiondate", "requireexpirationdate", "draftmakesreservation");
+        TableWriter pallets = context.table("basic_palletnumber", "number", "active", "createdate", "updatedate",
+                "createuser", "updateuser", "issuedatetime");
+        TableWriter resources = context.table("materialflowresources_resource", "location_id", "product_id", "quantity",
+                "price", "batch", "time", "productiondate", "expirationdate", "iscorrected", "number",
+                "quantityinadditionalunit", "conversion", "palletnumber_id", "givenunit", "username", "waste",
+                "availablequantity", "reservedquantity");
+
+        int warehousesCount = Math.max(1, parameters.getWarehouses());
+        long[] warehouseIds = new long[warehousesCount];
+
+        for (int index = 0; index < warehousesCount; index++) {
+            String number = String.format("MAG-%03d", index + 1);
+
+            warehouseIds[index] = locations.write(number, "Warehouse " + number, "02warehouse", "01fifo", false, false,
+                    false, false, false);
+        }
+
+        int palletsCount = parameters.getPallets();
+        long[] palletIds = new long[palletsCount];
+
+        for (int index = 0; index < palletsCount; index++) {
+            palletIds[index] = pallets.write(String.format("%06d", index + 1), true, startDateTime, startDateTime,
+                    DATASET_USER, DATASET_USER, null);
+        }
+
+        int resourcesCount = parameters.getResources();
+
+        for (int index = 0; index < resourcesCount; index++) {
+            long productId = (random.nextInt(5) == 0) ? pick(random, finalProductIds) : pick(random, componentIds);
+            BigDecimal quantity = decimal(random, 1, 1000, 5);
+            LocalDateTime time = startDateTime.plusMinutes(random.nextLong(L_RESOURCE_DAYS * 24L * 60L));
+            LocalDate productionDate = time.toLocalDate();
+            Long palletId = ((palletsCount > 0) && (index % 3 == 0)) ? palletIds[random.nextInt(palletsCount)] : null;
+
+            resources.write(pick(random, warehouseIds), productId, quantity, decimal(random, 1, 500, 5),
+                    String.format("B-%06d", random.nextInt(1000000)), time, productionDate,
+                    productionDate.plusMonths(random.nextInt(6, 37)), false, String.format("R-%09d", index + 1), quantity,
+                    BigDecimal.ONE.setScale(5), palletId, productUnits.get(productId), DATASET_USER, false, quantity,
+                    BigDecimal.ZERO.setScale(5));
+        }
+
+        context.put(WAREHOUSES, warehouseIds);
+    }
+
+}
@@ -26,6 +26,7 @@ package com.qcadoo.mes.assignmentToShift.print.xls;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -35,6 +36,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftConstants;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftReportFields;
@@ -47,8 +50,6 @@ import com.qcadoo.mes.basic.constants.StaffFields;
 import com.qcadoo.mes.productionLines.constants.ProductionLinesConstants;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 
@@ -57,6 +58,10 @@ public class AssignmentToShiftXlsHelper {
 
     private static final String L_EMPTY = "";
 
+    private static final String L_ASSIGNMENT_TO_SHIFT_ALIAS = "assignmentToShift";
+
+    private static final int L_IDS_BATCH_SIZE = 1000;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -103,28 +108,122 @@ public class AssignmentToShiftXlsHelper {
                         assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY))).list().getEntities();
     }
 
-    public List<Entity> getAssignmentToShift(final Entity shift, final Entity factory, final Date date) {
-        boolean shiftWorks = shiftsService.checkIfShiftWorkAtDate(date, shift);
-
-        if (shiftWorks) {
-            List<Entity> assignmentsToShift = dataDefinitionService
-                    .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)
-                    .find()
-                    .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.SHIFT, shift))
-                    .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.FACTORY, factory))
-                    .add(SearchRestrictions.or(SearchRestrictions.eq(AssignmentToShiftFields.STATE,
-                            AssignmentToShiftState.ACCEPTED.getStringValue()), SearchRestrictions.eq(
-                            AssignmentToShiftFields.STATE, AssignmentToShiftState.CORRECTED.getStringValue())))
-                    .add(SearchRestrictions.le(AssignmentToShiftFields.START_DATE, date))
-                    .addOrder(SearchOrders.desc(AssignmentToShiftFields.START_DATE)).list().getEntities();
-            return findCurrentAssignmentsToShift(date, assignmentsToShift);
+    /**
+     * Loads assignments to shift of the report period, with their staff, in a few queries and indexes staff by day,
+     * occupation type and production line. Days when the shift doesn't work are left empty.
+     *
+     * @param assignmentToShiftReport
+     *            report
+     * @param days
+     *            days of the report period
+     * @return index of staff assignments
+     */
+    public AssignmentToShiftXlsIndex buildIndex(final Entity assignmentToShiftReport, final List<DateTime> days) {
+        AssignmentToShiftXlsIndex index = new AssignmentToShiftXlsIndex();
+
+        if (days.isEmpty()) {
+            return index;
+        }
+
+        Entity shift = assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT);
+        Entity factory = assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY);
+
+        List<Entity> assignmentsToShift = dataDefinitionService
+                .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)
+                .find()
+                .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.SHIFT, shift))
+                .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.FACTORY, factory))
+                .add(SearchRestrictions.or(SearchRestrictions.eq(AssignmentToShiftFields.STATE,
+                        AssignmentToShiftState.ACCEPTED.getStringValue()), SearchRestrictions.eq(
+                        AssignmentToShiftFields.STATE, AssignmentToShiftState.CORRECTED.getStringValue())))
+                .add(SearchRestrictions.le(AssignmentToShiftFields.START_DATE, days.get(days.size() - 1).toDate()))
+                .addOrder(SearchOrders.desc(AssignmentToShiftFields.START_DATE)).list().getEntities();
+
+        if (assignmentsToShift.isEmpty()) {
+            return index;
+        }
+
+        List<Entity> crews = getCrews();
+        Map<Integer, List<Entity>> currentAssignmentsByDay = Maps.newHashMap();
+        Set<Long> currentAssignmentsIds = Sets.newHashSet();
+
+        for (int day = 0; day < days.size(); day++) {
+            Date date = days.get(day).toDate();
+
+            if (!shiftsService.checkIfShiftWorkAtDate(date, shift)) {
+                continue;
+            }
+
+            List<Entity> assignmentsToShiftForDate = assignmentsToShift.stream()
+                    .filter(assignment -> !assignment.getDateField(AssignmentToShiftFields.START_DATE).after(date))
+                    .collect(Collectors.toList());
+            List<Entity> currentAssignments = findCurrentAssignmentsToShift(date, assignmentsToShiftForDate, crews);
+
+            currentAssignmentsByDay.put(day, currentAssignments);
+
+            for (Entity assignmentToShift : currentAssignments) {
+                currentAssignmentsIds.add(assignmentToShift.getId());
+            }
+        }
+
+        Map<Long, List<Entity>> staffsByAssignment = getStaffsByAssignment(currentAssignmentsIds);
+
+        for (Map.Entry<Integer, List<Entity>> currentAssignments : currentAssignmentsByDay.entrySet()) {
+            for (Entity assignmentToShift : currentAssignments.getValue()) {
+                List<Entity> staffs = staffsByAssignment.get(assignmentToShift.getId());
+
+                if (staffs != null) {
+                    index.addStaffs(currentAssignments.getKey(), filterStaffsByState(assignmentToShift, staffs));
+                }
+            }
+        }
+
+        return index;
+    }
+
+    private Map<Long, List<Entity>> getStaffsByAssignment(final Set<Long> assignmentsToShiftIds) {
+        Map<Long, List<Entity>> staffsByAssignment = Maps.newHashMap();
+
+        for (List<Long> ids : Lists.partition(Lists.newArrayList(assignmentsToShiftIds), L_IDS_BATCH_SIZE)) {
+            List<Entity> staffs = dataDefinitionService
+                    .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_STAFF_ASSIGNMENT_TO_SHIFT)
+                    .find().createAlias(StaffAssignmentToShiftFields.ASSIGNMENT_TO_SHIFT, L_ASSIGNMENT_TO_SHIFT_ALIAS)
+                    .add(SearchRestrictions.in(L_ASSIGNMENT_TO_SHIFT_ALIAS + ".id", ids)).addOrder(SearchOrders.asc("id"))
+                    .list().getEntities();
+
+            for (Entity staff : staffs) {
+                staffsByAssignment.computeIfAbsent(
+                        staff.getBelongsToField(StaffAssignmentToShiftFields.ASSIGNMENT_TO_SHIFT).getId(),
+                        id -> Lists.newArrayList()).add(staff);
+            }
+        }
+
+        return staffsByAssignment;
+    }
+
+    private List<Entity> filterStaffsByState(final Entity assignmentToShift, final List<Entity> staffs) {
+        String assignmentState = assignmentToShift.getStringField(AssignmentToShiftFields.STATE);
+        String staffState;
 
+        if (AssignmentToShiftState.CORRECTED.getStringValue().equals(assignmentState)) {
+            staffState = StaffAssignmentToShiftState.CORRECTED.getStringValue();
+        } else if (!AssignmentToShiftState.DRAFT.getStringValue().equals(assignmentState)) {
+            staffState = StaffAssignmentToShiftState.ACCEPTED.getStringValue();
         } else {
             return Lists.newArrayList();
         }
+
+        return staffs.stream().filter(staff -> staffState.equals(staff.getStringField(StaffAssignmentToShiftFields.STATE)))
+                .collect(Collectors.toList());
     }
 
-    private List<Entity> findCurrentAssignmentsToShift(final Date date, List<Entity> assignmentsToShift) {
+    private List<Entity> getCrews() {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_CREW).find().list()
+                .getEntities();
+    }
+
+    private List<Entity> findCurrentAssignmentsToShift(final Date date, List<Entity> assignmentsToShift,
+            final List<Entity> crews) {
 
         List<Entity> currentAssignments = Lists.newArrayList();
 
@@ -136,8 +235,6 @@ public class AssignmentToShiftXlsHelper {
                 assignmentsToShift.stream()
                         .filter(assignment -> assignment.getBelongsToField(AssignmentToShiftFields.CREW) == null)
                         .collect(Collectors.toList()));
-        List<Entity> crews = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_CREW).find().list()
-                .getEntities();
         for (Entity crew : crews) {
             currentAssignments.addAll(findCurrentAssignmentsToShiftForCrew(date, assignmentsForCrews.get(crew)));
         }
@@ -280,34 +377,6 @@ public class AssignmentToShiftXlsHelper {
         return listOfWorkers;
     }
 
-    public List<Entity> getStaffsList(final Entity assignmentToShift, final String occupationType, final Entity productionLine) {
-        List<Entity> staffs = Lists.newArrayList();
-
-        if (assignmentToShift == null) {
-            return staffs;
-        }
-
-        SearchCriterion criterion = SearchRestrictions.eq(StaffAssignmentToShiftFields.OCCUPATION_TYPE, occupationType);
-
-        SearchCriteriaBuilder builder = assignmentToShift.getHasManyField(AssignmentToShiftFields.STAFF_ASSIGNMENT_TO_SHIFTS)
-                .find().add(criterion)
-                .add(SearchRestrictions.belongsTo(StaffAssignmentToShiftFields.PRODUCTION_LINE, productionLine));
-
-        String assignmentState = assignmentToShift.getStringField(AssignmentToShiftFields.STATE);
-
-        if (AssignmentToShiftState.CORRECTED.getStringValue().equals(assignmentState)) {
-            staffs = builder
-                    .add(SearchRestrictions.eq(StaffAssignmentToShiftFields.STATE,
-                            StaffAssignmentToShiftState.CORRECTED.getStringValue())).list().getEntities();
-        } else if (!AssignmentToShiftState.DRAFT.getStringValue().equals(assignmentState)) {
-            staffs = builder
-                    .add(SearchRestrictions.eq(StaffAssignmentToShiftFields.STATE,
-                            StaffAssignmentToShiftState.ACCEPTED.getStringValue())).list().getEntities();
-        }
-
-        return staffs;
-    }
-
     public List<Entity> getProductionLines() {
         return dataDefinitionService
                 .get(ProductionLinesConstants.PLUGIN_IDENTIFIER, ProductionLinesConstants.MODEL_PRODUCTION_LINE).find()
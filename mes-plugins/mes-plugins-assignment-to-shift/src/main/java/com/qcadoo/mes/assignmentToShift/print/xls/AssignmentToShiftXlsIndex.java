@@ -0,0 +1,85 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.assignmentToShift.print.xls;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Staff assignments of the report period, indexed by day, occupation type and production line. The shift and the factory
+ * are the ones of the report.
+ */
+public class AssignmentToShiftXlsIndex {
+
+    private final Map<Integer, Map<String, List<Entity>>> staffsByDay = Maps.newHashMap();
+
+    void addStaffs(final int day, final List<Entity> staffAssignmentToShifts) {
+        Map<String, List<Entity>> staffs = staffsByDay.computeIfAbsent(day, key -> Maps.newHashMap());
+
+        for (Entity staffAssignmentToShift : staffAssignmentToShifts) {
+            Entity productionLine = staffAssignmentToShift.getBelongsToField(StaffAssignmentToShiftFields.PRODUCTION_LINE);
+
+            staffs.computeIfAbsent(
+                    getKey(staffAssignmentToShift.getStringField(StaffAssignmentToShiftFields.OCCUPATION_TYPE),
+                            Objects.isNull(productionLine) ? null : productionLine.getId()), key -> Lists.newArrayList()).add(
+                    staffAssignmentToShift);
+        }
+    }
+
+    /**
+     * Gets staff assignments of given day
+     *
+     * @param day
+     *            index of the day in the report period
+     * @param occupationType
+     *            occupation type name
+     * @param productionLine
+     *            production line, null for staff not assigned to any line
+     * @return staff assignments, in order of assignments to shift and their ids
+     */
+    public List<Entity> getStaffs(final int day, final String occupationType, final Entity productionLine) {
+        Map<String, List<Entity>> staffs = staffsByDay.get(day);
+
+        if (staffs == null) {
+            return Collections.emptyList();
+        }
+
+        List<Entity> staffsForKey = staffs.get(getKey(occupationType,
+                Objects.isNull(productionLine) ? null : productionLine.getId()));
+
+        return (staffsForKey == null) ? Collections.emptyList() : staffsForKey;
+    }
+
+    private String getKey(final String occupationType, final Long productionLineId) {
+        return occupationType + "|" + productionLineId;
+    }
+
+}
@@ -154,29 +154,31 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
 
             List<Entity> occupationTypesWithoutTechnicalCode = getOccupationTypeDictionaryWithoutTechnicalCode();
             List<Entity> productionlines = assignmentToShiftXlsHelper.getProductionLines();
+            AssignmentToShiftXlsIndex index = assignmentToShiftXlsHelper.buildIndex(assignmentToShiftReport, days);
 
             if (!productionlines.isEmpty()) {
-                rowNum = fillColumnWithStaffForWorkOnLine(sheet, rowNum, assignmentToShiftReport, days, productionlines,
+                rowNum = fillColumnWithStaffForWorkOnLine(sheet, rowNum, assignmentToShiftReport, days, index, productionlines,
                         getDictionaryItemWithProductionOnLine());
             }
 
             for (Entity dictionaryItem : occupationTypesWithoutTechnicalCode) {
-                rowNum = fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, dictionaryItem);
+                rowNum = fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, index, dictionaryItem);
             }
 
-            fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, getDictionaryItemWithOtherCase());
+            fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, index,
+                    getDictionaryItemWithOtherCase());
 
             sheet.autoSizeColumn(0);
         }
     }
 
     private int fillColumnWithStaffForWorkOnLine(final HSSFSheet sheet, int rowNum, final Entity assignmentToShiftReport,
-            final List<DateTime> days, final List<Entity> productionLines, final Entity dictionaryItem) {
+            final List<DateTime> days, final AssignmentToShiftXlsIndex index, final List<Entity> productionLines,
+            final Entity dictionaryItem) {
         if ((assignmentToShiftReport != null) && (days != null) && (productionLines != null)) {
             for (Entity productionLine : productionLines) {
                 int rowNumFromLastSection = rowNum;
-                int numberOfColumnsForWorkers = getNumberOfRowsForWorkers(assignmentToShiftReport, days, productionLine,
-                        dictionaryItem);
+                int numberOfColumnsForWorkers = getNumberOfRowsForWorkers(days, index, productionLine, dictionaryItem);
 
                 for (int i = 0; i < numberOfColumnsForWorkers; i++) {
                     HSSFRow row = sheet.createRow(rowNum);
@@ -210,22 +212,10 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
                 int columnNumber = 1;
                 int maxLength = 0;
 
-                for (DateTime day : days) {
-                    List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                            assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT),
-                            assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
-
-                    if (assignmentsToShift == null || assignmentsToShift.isEmpty()) {
-                        columnNumber += 3;
+                for (int day = 0; day < days.size(); day++) {
+                    List<Entity> staffs = index.getStaffs(day, dictionaryItem.getStringField(DictionaryItemFields.NAME),
+                            productionLine);
 
-                        continue;
-                    }
-                    List<Entity> staffs = Lists.newArrayList();
-                    for (Entity assignmentToShift : assignmentsToShift) {
-                        List<Entity> staffsForDay = assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                                dictionaryItem.getStringField(DictionaryItemFields.NAME), productionLine);
-                        staffs.addAll(staffsForDay);
-                    }
                     if (staffs.isEmpty()) {
                         columnNumber += 3;
 
@@ -266,20 +256,13 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
         return rowNum;
     }
 
-    private int getNumberOfRowsForWorkers(final Entity assignmentToShiftReport, final List<DateTime> days,
+    private int getNumberOfRowsForWorkers(final List<DateTime> days, final AssignmentToShiftXlsIndex index,
             final Entity productionLine, final Entity dictionaryItem) {
         int numberOfWorkers = 0;
 
-        for (DateTime day : days) {
-            List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftFields.SHIFT),
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
-
-            List<Entity> staffs = Lists.newArrayList();
-            for (Entity assignmentToShift : assignmentsToShift) {
-                staffs.addAll(assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                        dictionaryItem.getStringField(DictionaryItemFields.NAME), productionLine));
-            }
+        for (int day = 0; day < days.size(); day++) {
+            List<Entity> staffs = index.getStaffs(day, dictionaryItem.getStringField(DictionaryItemFields.NAME),
+                    productionLine);
 
             List<String> workers = assignmentToShiftXlsHelper.getListOfWorker(staffs);
 
@@ -291,20 +274,12 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
         return numberOfWorkers;
     }
 
-    private int getNumberOfRowsForWorkersForOtherTypes(final Entity assignmentToShiftReport, final List<DateTime> days,
+    private int getNumberOfRowsForWorkersForOtherTypes(final List<DateTime> days, final AssignmentToShiftXlsIndex index,
             final Entity dictionaryItem) {
         int numberOfWorkers = 0;
 
-        for (DateTime day : days) {
-            List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftFields.SHIFT),
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
-
-            List<Entity> staffs = Lists.newArrayList();
-            for (Entity assignmentToShift : assignmentsToShift) {
-                staffs.addAll(assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                        dictionaryItem.getStringField(DictionaryItemFields.NAME), null));
-            }
+        for (int day = 0; day < days.size(); day++) {
+            List<Entity> staffs = index.getStaffs(day, dictionaryItem.getStringField(DictionaryItemFields.NAME), null);
 
             List<String> workers = Lists.newArrayList();
 
@@ -324,11 +299,11 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
     }
 
     private int fillColumnWithStaffForOtherTypes(final HSSFSheet sheet, int rowNum, final Entity assignmentToShiftReport,
-            final List<DateTime> days, final Entity dictionaryItem) {
+            final List<DateTime> days, final AssignmentToShiftXlsIndex index, final Entity dictionaryItem) {
         if ((assignmentToShiftReport != null) && (days != null) && (dictionaryItem != null)) {
             int rowNumFromLastSection = rowNum;
 
-            int numberOfColumnsForWorkers = getNumberOfRowsForWorkersForOtherTypes(assignmentToShiftReport, days, dictionaryItem);
+            int numberOfColumnsForWorkers = getNumberOfRowsForWorkersForOtherTypes(days, index, dictionaryItem);
 
             for (int i = 0; i < numberOfColumnsForWorkers; i++) {
                 HSSFRow row = sheet.createRow(rowNum);
@@ -353,21 +328,8 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
 
             int columnNumber = 1;
 
-            for (DateTime day : days) {
-                List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                        assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT),
-                        assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
-
-                if (assignmentsToShift == null || assignmentsToShift.isEmpty()) {
-                    columnNumber += 3;
-
-                    continue;
-                }
-                List<Entity> staffs = Lists.newArrayList();
-                for (Entity assignmentToShift : assignmentsToShift) {
-                    staffs.addAll(assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                            dictionaryItem.getStringField(DictionaryItemFields.NAME), null));
-                }
+            for (int day = 0; day < days.size(); day++) {
+                List<Entity> staffs = index.getStaffs(day, dictionaryItem.getStringField(DictionaryItemFields.NAME), null);
 
                 if (staffs.isEmpty()) {
                     columnNumber += 3;
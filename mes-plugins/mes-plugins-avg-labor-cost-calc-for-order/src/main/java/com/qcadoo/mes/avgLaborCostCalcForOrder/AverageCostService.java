@@ -23,30 +23,27 @@
  */
 package com.qcadoo.mes.avgLaborCostCalcForOrder;
 
-import static com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields.SHIFT;
-import static com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields.START_DATE;
-import static com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftFields.WORKER;
 import static com.qcadoo.mes.avgLaborCostCalcForOrder.constants.AvgLaborCostCalcForOrderFields.AVERAGE_LABOR_HOURLY_COST;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.joda.time.DateTime;
 import org.joda.time.Days;
+import org.joda.time.LocalDate;
 import org.joda.time.Period;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftConstants;
-import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields;
-import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftFields;
+import com.qcadoo.mes.assignmentToShift.constants.OccupationType;
 import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftState;
 import com.qcadoo.mes.assignmentToShift.states.constants.AssignmentToShiftState;
 import com.qcadoo.mes.avgLaborCostCalcForOrder.constants.AssignmentWorkerToShiftFields;
@@ -55,11 +52,12 @@ import com.qcadoo.mes.avgLaborCostCalcForOrder.constants.AvgLaborCostCalcForOrde
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
 import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
@@ -74,12 +72,17 @@ public class AverageCostService {
     @Autowired
     private ShiftsService shiftsService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     public Entity generateAssignmentWorkerToShiftAndAverageCost(final Entity entity, final Date start, final Date finish,
             final Entity productionLine) {
         Entity avgLaborCostCalcForOrder = entity.getDataDefinition().get(entity.getId());
         List<DateTime> days = getDaysBetweenGivenDates(start, finish);
         List<Entity> shifts = getAllShifts();
-        Map<Entity, BigDecimal> workersWithHoursWorked = generateMapWorkersWithHoursWorked(days, shifts, productionLine);
+        Map<Long, BigDecimal> hoursOfAssignmentsToShift = generateMapAssignmentsToShiftWithHours(days, shifts, finish);
+        Map<Long, WorkerHours> workersWithHoursWorked = generateMapWorkersWithHoursWorked(hoursOfAssignmentsToShift,
+                productionLine);
         BigDecimal averageCost = countAverageCost(workersWithHoursWorked);
         if (averageCost == null) {
             avgLaborCostCalcForOrder.addError(entity.getDataDefinition().getField(AVERAGE_LABOR_HOURLY_COST),
@@ -96,40 +99,124 @@ public class AverageCostService {
         return avgLaborCostCalcForOrder;
     }
 
-    private Map<Entity, BigDecimal> generateMapWorkersWithHoursWorked(final List<DateTime> days, final List<Entity> shifts,
-            final Entity productionLine) {
-        Map<Entity, BigDecimal> workersWithHours = new HashMap<Entity, BigDecimal>();
-        for (DateTime day : days) {
-            for (Entity shift : shifts) {
-                Entity assignmentToShift = getAssignmentToShift(shift, day.toDate());
-                if (assignmentToShift == null) {
+    private Map<Long, BigDecimal> generateMapAssignmentsToShiftWithHours(final List<DateTime> days, final List<Entity> shifts,
+            final Date finish) {
+        Map<Long, List<AssignmentToShiftStart>> assignmentsToShiftByShift = getAssignmentsToShiftStartingUntil(finish);
+        Map<Long, BigDecimal> hoursOfAssignmentsToShift = Maps.newHashMap();
+        for (Entity shift : shifts) {
+            Shift shiftWorkingDays = new Shift(shift);
+            List<AssignmentToShiftStart> assignmentsToShift = assignmentsToShiftByShift.get(shift.getId());
+            if (assignmentsToShift == null) {
+                continue;
+            }
+            for (DateTime day : days) {
+                if (!shiftWorkingDays.worksAt(day.toLocalDate())) {
                     continue;
                 }
-                List<Entity> staffs = getStaffAssignmentToShiftDependOnAssignmentToShiftState(assignmentToShift, productionLine);
-                for (Entity staff : staffs) {
-                    if (workersWithHours.containsKey(staff)) {
-                        BigDecimal countHours = workersWithHours.get(staff).add(getWorkedHoursOfWorker(shift, day));
-                        workersWithHours.put(staff, countHours);
-                    } else {
-                        workersWithHours.put(staff, getWorkedHoursOfWorker(shift, day));
-                    }
+                Long assignmentToShiftId = getAssignmentToShiftId(assignmentsToShift, day.toLocalDate());
+                if (assignmentToShiftId == null) {
+                    continue;
+                }
+                BigDecimal hours = getWorkedHoursOfWorker(shift, day);
+                if (hoursOfAssignmentsToShift.containsKey(assignmentToShiftId)) {
+                    hours = hoursOfAssignmentsToShift.get(assignmentToShiftId).add(hours);
                 }
+                hoursOfAssignmentsToShift.put(assignmentToShiftId, hours);
+            }
+        }
+        return hoursOfAssignmentsToShift;
+    }
+
+    private Map<Long, List<AssignmentToShiftStart>> getAssignmentsToShiftStartingUntil(final Date finish) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT ats.id AS id, ats.shift_id AS shiftId, ats.startdate AS startDate ");
+        query.append("FROM assignmenttoshift_assignmenttoshift ats ");
+        query.append("WHERE ats.startdate <= :finish ");
+        query.append("ORDER BY ats.shift_id, ats.startdate DESC, ats.id DESC");
+
+        Map<Long, List<AssignmentToShiftStart>> assignmentsToShiftByShift = Maps.newHashMap();
+        for (Map<String, Object> row : jdbcTemplate.queryForList(query.toString(), new MapSqlParameterSource("finish", finish))) {
+            Long shiftId = ((Number) row.get("shiftId")).longValue();
+            if (!assignmentsToShiftByShift.containsKey(shiftId)) {
+                assignmentsToShiftByShift.put(shiftId, Lists.<AssignmentToShiftStart> newArrayList());
+            }
+            assignmentsToShiftByShift.get(shiftId).add(
+                    new AssignmentToShiftStart(((Number) row.get("id")).longValue(), new LocalDate(row.get("startDate"))));
+        }
+        return assignmentsToShiftByShift;
+    }
+
+    private Long getAssignmentToShiftId(final List<AssignmentToShiftStart> assignmentsToShift, final LocalDate day) {
+        for (AssignmentToShiftStart assignmentToShift : assignmentsToShift) {
+            if (!assignmentToShift.getStartDate().isAfter(day)) {
+                return assignmentToShift.getId();
             }
         }
+        return null;
+    }
+
+    private Map<Long, WorkerHours> generateMapWorkersWithHoursWorked(final Map<Long, BigDecimal> hoursOfAssignmentsToShift,
+            final Entity productionLine) {
+        Map<Long, WorkerHours> workersWithHours = Maps.newLinkedHashMap();
+        if (hoursOfAssignmentsToShift.isEmpty()) {
+            return workersWithHours;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT sats.assignmenttoshift_id AS assignmentToShiftId, sats.worker_id AS workerId, ");
+        query.append("staff.laborhourlycost AS laborHourlyCost, COUNT(*) AS staffAssignments ");
+        query.append("FROM assignmenttoshift_staffassignmenttoshift sats ");
+        query.append("JOIN assignmenttoshift_assignmenttoshift ats ON ats.id = sats.assignmenttoshift_id ");
+        query.append("JOIN basic_staff staff ON staff.id = sats.worker_id ");
+        query.append("WHERE sats.assignmenttoshift_id IN (:assignmentsToShiftIds) ");
+        query.append("AND sats.occupationtypeenum = :occupationType ");
+        if (productionLine == null) {
+            query.append("AND sats.productionline_id IS NULL ");
+        } else {
+            query.append("AND sats.productionline_id = :productionLineId ");
+        }
+        query.append("AND ((ats.state = :correctedState AND sats.state = :staffCorrectedState) ");
+        query.append("OR (ats.state IN (:acceptedStates) AND sats.state = :staffAcceptedState)) ");
+        query.append("GROUP BY sats.assignmenttoshift_id, sats.worker_id, staff.laborhourlycost ");
+        query.append("ORDER BY sats.worker_id, sats.assignmenttoshift_id");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("assignmentsToShiftIds", hoursOfAssignmentsToShift.keySet());
+        parameters.addValue("occupationType", OccupationType.WORK_ON_LINE.getStringValue());
+        parameters.addValue("productionLineId", productionLine == null ? null : productionLine.getId());
+        parameters.addValue("correctedState", AssignmentToShiftState.CORRECTED.getStringValue());
+        parameters.addValue("staffCorrectedState", StaffAssignmentToShiftState.CORRECTED.getStringValue());
+        parameters.addValue("acceptedStates", Lists.newArrayList(AssignmentToShiftState.ACCEPTED.getStringValue(),
+                AssignmentToShiftState.DURING_CORRECTION.getStringValue()));
+        parameters.addValue("staffAcceptedState", StaffAssignmentToShiftState.ACCEPTED.getStringValue());
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(query.toString(), parameters)) {
+            Long assignmentToShiftId = ((Number) row.get("assignmentToShiftId")).longValue();
+            Long workerId = ((Number) row.get("workerId")).longValue();
+            BigDecimal hours = hoursOfAssignmentsToShift.get(assignmentToShiftId).multiply(
+                    BigDecimal.valueOf(((Number) row.get("staffAssignments")).longValue()));
+
+            WorkerHours workerHours = workersWithHours.get(workerId);
+            if (workerHours == null) {
+                workerHours = new WorkerHours(assignmentToShiftId,
+                        BigDecimalUtils.convertNullToZero(row.get("laborHourlyCost")));
+                workersWithHours.put(workerId, workerHours);
+            }
+            workerHours.addHours(hours);
+        }
         return workersWithHours;
     }
 
-    private BigDecimal countAverageCost(final Map<Entity, BigDecimal> workersWithHoursWorked) {
+    private BigDecimal countAverageCost(final Map<Long, WorkerHours> workersWithHoursWorked) {
         BigDecimal averageCost = BigDecimal.ZERO;
         BigDecimal countHours = BigDecimal.ZERO;
-        for (Entry<Entity, BigDecimal> workerWithHours : workersWithHoursWorked.entrySet()) {
-            BigDecimal quantityOfHours = workerWithHours.getValue();
-            BigDecimal costOfWorkerHours = workerWithHours.getKey().getBelongsToField(StaffAssignmentToShiftFields.WORKER)
-                    .getDecimalField("laborHourlyCost").multiply(quantityOfHours);
+        for (WorkerHours workerHours : workersWithHoursWorked.values()) {
+            BigDecimal quantityOfHours = workerHours.getHours();
+            BigDecimal costOfWorkerHours = workerHours.getLaborHourlyCost().multiply(quantityOfHours);
             averageCost = averageCost.add(costOfWorkerHours);
             countHours = countHours.add(quantityOfHours);
         }
-        if (countHours.equals(BigDecimal.ZERO)) {
+        if (countHours.compareTo(BigDecimal.ZERO) == 0) {
             return null;
         }
         return numberService.setScale(averageCost.divide(countHours, numberService.getMathContext()));
@@ -147,59 +234,43 @@ public class AverageCostService {
         return hours;
     }
 
-    private Entity getAssignmentToShift(final Entity shift, final Date date) {
-        boolean shiftWorks = shiftsService.checkIfShiftWorkAtDate(date, shift);
-        if (shiftWorks) {
-            return dataDefinitionService
-                    .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)
-                    .find().add(SearchRestrictions.belongsTo(SHIFT, shift)).add(SearchRestrictions.le(START_DATE, date))
-                    .addOrder(SearchOrders.desc(START_DATE)).setMaxResults(1).uniqueResult();
-        } else {
-            return null;
+    private List<Entity> createAssignmentWorkerToShift(final Map<Long, WorkerHours> workersWithHoursWorked) {
+        Map<Long, Entity> workers = getEntitiesByIds(
+                dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_STAFF),
+                workersWithHoursWorked.keySet());
+        List<Long> assignmentsToShiftIds = Lists.newArrayList();
+        for (WorkerHours workerHours : workersWithHoursWorked.values()) {
+            assignmentsToShiftIds.add(workerHours.getAssignmentToShiftId());
         }
-    }
+        Map<Long, Entity> assignmentsToShift = getEntitiesByIds(
+                dataDefinitionService.get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER,
+                        AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT), assignmentsToShiftIds);
 
-    private List<Entity> getStaffAssignmentToShiftDependOnAssignmentToShiftState(final Entity assignmentToShift,
-            final Entity productionLine) {
-        List<Entity> staffAssignmentToShifts = new ArrayList<Entity>();
-        String state = assignmentToShift.getStringField(AssignmentToShiftFields.STATE);
-        SearchCriteriaBuilder searchCriteriaBuilder = assignmentToShift.getHasManyField("staffAssignmentToShifts").find()
-                .add(SearchRestrictions.eq("occupationTypeEnum", "01workOnLine"))
-                .add(SearchRestrictions.belongsTo(StaffAssignmentToShiftFields.PRODUCTION_LINE, productionLine));
-        if (state.equals(AssignmentToShiftState.CORRECTED.getStringValue())) {
-            staffAssignmentToShifts = searchCriteriaBuilder
-                    .add(SearchRestrictions.eq("state", StaffAssignmentToShiftState.CORRECTED.getStringValue())).list()
-                    .getEntities();
-        } else if (state.equals(AssignmentToShiftState.ACCEPTED.getStringValue())
-                || state.equals(AssignmentToShiftState.DURING_CORRECTION.getStringValue())) {
-            staffAssignmentToShifts = searchCriteriaBuilder
-                    .add(SearchRestrictions.eq("state", StaffAssignmentToShiftState.ACCEPTED.getStringValue())).list()
-                    .getEntities();
-        }
-        return staffAssignmentToShifts;
+        DataDefinition assignmentWorkerToShiftDD = dataDefinitionService.get(
+                AvgLaborCostCalcForOrderConstants.PLUGIN_IDENTIFIER,
+                AvgLaborCostCalcForOrderConstants.MODEL_ASSIGNMENT_WORKER_TO_SHIFT);
+        List<Entity> assignmentWorkerToShifts = Lists.newArrayList();
+        for (Map.Entry<Long, WorkerHours> workerWithHours : workersWithHoursWorked.entrySet()) {
+            Entity assignmentWorkerToShift = assignmentWorkerToShiftDD.create();
+            assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.ASSIGNMENT_TO_SHIFT,
+                    assignmentsToShift.get(workerWithHours.getValue().getAssignmentToShiftId()));
+            assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKER, workers.get(workerWithHours.getKey()));
+            assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKED_HOURS, workerWithHours.getValue().getHours());
+            assignmentWorkerToShifts.add(assignmentWorkerToShift);
+        }
+        return assignmentWorkerToShifts;
     }
 
-    private List<Entity> createAssignmentWorkerToShift(final Map<Entity, BigDecimal> workersWithHoursWorked) {
-        Map<Long, Entity> workers = new HashMap<Long, Entity>();
-        for (Entry<Entity, BigDecimal> workerWithHours : workersWithHoursWorked.entrySet()) {
-            Entity worker = workerWithHours.getKey().getBelongsToField(WORKER);
-            Long workerId = worker.getId();
-            Entity assignmentWorkerToShift = dataDefinitionService.get(AvgLaborCostCalcForOrderConstants.PLUGIN_IDENTIFIER,
-                    AvgLaborCostCalcForOrderConstants.MODEL_ASSIGNMENT_WORKER_TO_SHIFT).create();
-            if (workers.containsKey(workerId)) {
-                assignmentWorkerToShift = workers.get(workerId);
-                BigDecimal countHours = assignmentWorkerToShift.getDecimalField(AssignmentWorkerToShiftFields.WORKED_HOURS).add(
-                        workerWithHours.getValue());
-                assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKED_HOURS, countHours);
-            } else {
-                assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.ASSIGNMENT_TO_SHIFT, workerWithHours.getKey()
-                        .getBelongsToField("assignmentToShift"));
-                assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKER, worker);
-                assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKED_HOURS, workerWithHours.getValue());
-            }
-            workers.put(worker.getId(), assignmentWorkerToShift);
+    private Map<Long, Entity> getEntitiesByIds(final DataDefinition dataDefinition, final Iterable<Long> ids) {
+        Map<Long, Entity> entities = Maps.newHashMap();
+        List<Long> idsList = Lists.newArrayList(ids);
+        if (idsList.isEmpty()) {
+            return entities;
         }
-        return Lists.newArrayList(workers.values());
+        for (Entity entity : dataDefinition.find().add(SearchRestrictions.in("id", idsList)).list().getEntities()) {
+            entities.put(entity.getId(), entity);
+        }
+        return entities;
     }
 
     private List<DateTime> getDaysBetweenGivenDates(final Date start, final Date finish) {
@@ -224,4 +295,56 @@ public class AverageCostService {
         return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find().list()
                 .getEntities();
     }
+
+    private static class AssignmentToShiftStart {
+
+        private final Long id;
+
+        private final LocalDate startDate;
+
+        AssignmentToShiftStart(final Long id, final LocalDate startDate) {
+            this.id = id;
+            this.startDate = startDate;
+        }
+
+        Long getId() {
+            return id;
+        }
+
+        LocalDate getStartDate() {
+            return startDate;
+        }
+
+    }
+
+    private static class WorkerHours {
+
+        private final Long assignmentToShiftId;
+
+        private final BigDecimal laborHourlyCost;
+
+        private BigDecimal hours = BigDecimal.ZERO;
+
+        WorkerHours(final Long assignmentToShiftId, final BigDecimal laborHourlyCost) {
+            this.assignmentToShiftId = assignmentToShiftId;
+            this.laborHourlyCost = laborHourlyCost;
+        }
+
+        void addHours(final BigDecimal hoursToAdd) {
+            hours = hours.add(hoursToAdd);
+        }
+
+        Long getAssignmentToShiftId() {
+            return assignmentToShiftId;
+        }
+
+        BigDecimal getLaborHourlyCost() {
+            return laborHourlyCost;
+        }
+
+        BigDecimal getHours() {
+            return hours;
+        }
+
+    }
 }
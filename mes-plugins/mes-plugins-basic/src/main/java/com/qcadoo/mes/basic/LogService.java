@@ -1,26 +1,20 @@
 package com.qcadoo.mes.basic;
 
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
-import com.qcadoo.mes.basic.constants.BasicConstants;
-import com.qcadoo.mes.basic.constants.LogFields;
 import com.qcadoo.mes.basic.constants.LogLevel;
-import com.qcadoo.model.api.DataDefinition;
-import com.qcadoo.model.api.DataDefinitionService;
-import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.security.api.SecurityService;
-import com.qcadoo.security.constants.QcadooSecurityConstants;
-import com.qcadoo.security.constants.UserFields;
 import com.qcadoo.tenant.api.MultiTenantCallback;
 import com.qcadoo.tenant.api.MultiTenantService;
 
@@ -29,8 +23,7 @@ public class LogService {
 
     public static final String QCADOO_BOT = "qcadoo_bot";
 
-    @Autowired
-    private DataDefinitionService dataDefinitionService;
+    private static final Set<LogLevel> L_WRITTEN_ON_ROLLBACK = EnumSet.of(LogLevel.WARN, LogLevel.ERROR, LogLevel.FATAL);
 
     @Autowired
     private MultiTenantService multiTenantService;
@@ -41,6 +34,9 @@ public class LogService {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private LogWriter logWriter;
+
     public final static class Builder {
 
         private Builder() {
@@ -130,51 +126,42 @@ public class LogService {
         }
     }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public Entity add(Builder builder) {
+    /**
+     * Adds log entry. Entry is written by {@link LogWriter} after the current transaction commits; errors and warnings are
+     * written also when the transaction is rolled back, because they usually describe the reason of the rollback.
+     */
+    public void add(Builder builder) {
         validate(builder);
 
-        DataDefinition logDD = getLogDD();
-        Entity logEntity = logDD.create();
+        Date createTime = (builder.createTime == null) ? new Date() : builder.createTime;
 
-        logEntity.setField(LogFields.ACTION, builder.action);
-        if (builder.createTime == null) {
-            logEntity.setField(LogFields.CREATE_TIME, new Date());
-        } else {
-            logEntity.setField(LogFields.CREATE_TIME, builder.createTime);
-        }
-        logEntity.setField(LogFields.DETAILS, builder.details);
-        logEntity.setField(LogFields.ITEM_1, builder.item1);
-        logEntity.setField(LogFields.ITEM_2, builder.item2);
-        logEntity.setField(LogFields.ITEM_3, builder.item3);
-        logEntity.setField(LogFields.LOG_LEVEL, builder.logLevel.getCode());
-        logEntity.setField(LogFields.MESSAGE, builder.message);
-        logEntity.setField(LogFields.TYPE, builder.type);
         Long userId;
         try {
             userId = securityService.getCurrentUserId();
         } catch (Exception ex) {
-            userId = findBotUser().getId();
+            userId = null;
         }
-        logEntity.setField(LogFields.USER, userId);
-        return logDD.save(logEntity);
-    }
 
-    private DataDefinition getLogDD() {
-        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_LOG);
-    }
+        LogWriter.LogEntry entry = new LogWriter.LogEntry(multiTenantService.getCurrentTenantId(), createTime, userId,
+                builder.type, builder.action, builder.message, builder.item1, builder.item2, builder.item3, builder.details,
+                builder.logLevel.getCode());
 
-    private Entity findBotUser() {
-        DataDefinition userDD = dataDefinitionService.get(QcadooSecurityConstants.PLUGIN_IDENTIFIER,
-                QcadooSecurityConstants.MODEL_USER);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            boolean writeOnRollback = L_WRITTEN_ON_ROLLBACK.contains(builder.logLevel);
 
-        Entity user = userDD.find().add(SearchRestrictions.eq(UserFields.USER_NAME, QCADOO_BOT)).uniqueResult();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
 
-        if (user == null) {
-            throw new RuntimeException("User qcadoo_bot not found.");
-        }
+                @Override
+                public void afterCompletion(final int status) {
+                    if ((status == STATUS_COMMITTED) || writeOnRollback) {
+                        logWriter.write(entry);
+                    }
+                }
 
-        return user;
+            });
+        } else {
+            logWriter.write(entry);
+        }
     }
 
     private void validate(Builder builder) {
@@ -0,0 +1,339 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Writes log entries in batches from a background thread. Entries wait in a bounded queue; when the queue is full the
+ * configured overflow policy decides what happens with the entry.
+ */
+@Service
+public class LogWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogWriter.class);
+
+    private static final long L_POLL_TIMEOUT_MILLIS = 1000;
+
+    public enum OverflowPolicy {
+        DISCARD, WAIT, WRITE_SYNCHRONOUSLY;
+    }
+
+    @Value("${logWriterQueueCapacity:10000}")
+    private int queueCapacity;
+
+    @Value("${logWriterBatchSize:200}")
+    private int batchSize;
+
+    @Value("${logWriterOverflowPolicy:WRITE_SYNCHRONOUSLY}")
+    private OverflowPolicy overflowPolicy;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private BlockingQueue<LogEntry> queue;
+
+    private Thread writerThread;
+
+    private volatile boolean running;
+
+    private final Map<Integer, Long> botUsersIds = Maps.newConcurrentMap();
+
+    private final AtomicLong discardedEntries = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+
+        writerThread = new Thread(this::writeQueuedEntries, "qcadoo-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+
+        writerThread.interrupt();
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+
+        List<LogEntry> remainingEntries = Lists.newArrayList();
+        queue.drainTo(remainingEntries);
+
+        writeInBatches(remainingEntries);
+    }
+
+    public void write(final LogEntry entry) {
+        if (queue.offer(entry)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case DISCARD:
+                if (discardedEntries.incrementAndGet() % batchSize == 1) {
+                    LOG.warn("Log queue is full, {} entries discarded so far", discardedEntries.get());
+                }
+                break;
+            case WAIT:
+                try {
+                    queue.put(entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            default:
+                writeInBatches(Collections.singletonList(entry));
+        }
+    }
+
+    private void writeQueuedEntries() {
+        List<LogEntry> entries = Lists.newArrayListWithCapacity(batchSize);
+
+        while (running) {
+            try {
+                LogEntry entry = queue.poll(L_POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (entry == null) {
+                    continue;
+                }
+
+                entries.add(entry);
+                queue.drainTo(entries, batchSize - 1);
+
+                writeInBatches(entries);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return;
+            } finally {
+                entries.clear();
+            }
+        }
+    }
+
+    private void writeInBatches(final List<LogEntry> entries) {
+        Map<Integer, List<LogEntry>> entriesByTenant = Maps.newLinkedHashMap();
+
+        for (LogEntry entry : entries) {
+            entriesByTenant.computeIfAbsent(entry.getTenantId(), tenantId -> Lists.newArrayList()).add(entry);
+        }
+
+        for (Map.Entry<Integer, List<LogEntry>> tenantEntries : entriesByTenant.entrySet()) {
+            multiTenantService.doInMultiTenantContext(tenantEntries.getKey(), new MultiTenantCallback() {
+
+                @Override
+                public void invoke() {
+                    writeInBatchesForTenant(tenantEntries.getValue());
+                }
+
+            });
+        }
+    }
+
+    private void writeInBatchesForTenant(final List<LogEntry> entries) {
+        // synchronous writes run from afterCompletion, where the completed transaction must not be joined
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        for (List<LogEntry> batch : Lists.partition(entries, batchSize)) {
+            try {
+                transactionTemplate.execute(status -> insert(batch));
+            } catch (RuntimeException e) {
+                LOG.error("Unable to write " + batch.size() + " log entries", e);
+            }
+        }
+    }
+
+    private int[] insert(final List<LogEntry> entries) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("INSERT INTO basic_log ");
+        query.append("(createtime, user_id, logtype, action, message, item1, item2, item3, details, loglevel) ");
+        query.append("VALUES (:createTime, :userId, :type, :action, :message, :item1, :item2, :item3, :details, :logLevel)");
+
+        SqlParameterSource[] parameters = new SqlParameterSource[entries.size()];
+
+        for (int index = 0; index < entries.size(); index++) {
+            LogEntry entry = entries.get(index);
+
+            MapSqlParameterSource entryParameters = new MapSqlParameterSource();
+
+            entryParameters.addValue("createTime", entry.getCreateTime());
+            entryParameters.addValue("userId",
+                    (entry.getUserId() == null) ? getBotUserId(entry.getTenantId()) : entry.getUserId());
+            entryParameters.addValue("type", entry.getType());
+            entryParameters.addValue("action", entry.getAction());
+            entryParameters.addValue("message", entry.getMessage());
+            entryParameters.addValue("item1", entry.getItem1());
+            entryParameters.addValue("item2", entry.getItem2());
+            entryParameters.addValue("item3", entry.getItem3());
+            entryParameters.addValue("details", entry.getDetails());
+            entryParameters.addValue("logLevel", entry.getLogLevel());
+
+            parameters[index] = entryParameters;
+        }
+
+        return jdbcTemplate.batchUpdate(query.toString(), parameters);
+    }
+
+    private Long getBotUserId(final int tenantId) {
+        Long botUserId = botUsersIds.get(tenantId);
+
+        if (botUserId == null) {
+            List<Long> usersIds = jdbcTemplate.queryForList(
+                    "SELECT id FROM qcadoosecurity_user WHERE username = :userName",
+                    new MapSqlParameterSource("userName", LogService.QCADOO_BOT), Long.class);
+
+            if (usersIds.isEmpty()) {
+                throw new IllegalStateException("User qcadoo_bot not found.");
+            }
+
+            botUserId = usersIds.get(0);
+            botUsersIds.put(tenantId, botUserId);
+        }
+
+        return botUserId;
+    }
+
+    public static final class LogEntry {
+
+        private final int tenantId;
+
+        private final Date createTime;
+
+        private final Long userId;
+
+        private final String type;
+
+        private final String action;
+
+        private final String message;
+
+        private final String item1;
+
+        private final String item2;
+
+        private final String item3;
+
+        private final String details;
+
+        private final String logLevel;
+
+        LogEntry(final int tenantId, final Date createTime, final Long userId, final String type, final String action,
+                final String message, final String item1, final String item2, final String item3, final String details,
+                final String logLevel) {
+            this.tenantId = tenantId;
+            this.createTime = createTime;
+            this.userId = userId;
+            this.type = type;
+            this.action = action;
+            this.message = message;
+            this.item1 = item1;
+            this.item2 = item2;
+            this.item3 = item3;
+            this.details = details;
+            this.logLevel = logLevel;
+        }
+
+        public int getTenantId() {
+            return tenantId;
+        }
+
+        public Date getCreateTime() {
+            return createTime;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getItem1() {
+            return item1;
+        }
+
+        public String getItem2() {
+            return item2;
+        }
+
+        public String getItem3() {
+            return item3;
+        }
+
+        public String getDetails() {
+            return details;
+        }
+
+        public String getLogLevel() {
+            return logLevel;
+        }
+
+    }
+
+}
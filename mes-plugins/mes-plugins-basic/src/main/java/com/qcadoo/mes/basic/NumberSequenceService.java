@@ -0,0 +1,231 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Generates numbers of entities from counters kept in basic_numberSequence, one for every tenant, plugin, model and prefix.
+ * Counters are incremented in separate transactions, so concurrent users never get the same number and do not wait for
+ * each other's transactions. Numbers are reserved in blocks held in memory, which means that numbers reserved but not
+ * used before restart are skipped.
+ *
+ * New counter starts after the highest number, consisting of the prefix and digits, already existing in the "number"
+ * column of the model table.
+ */
+@Service
+public class NumberSequenceService {
+
+    private static final int L_BLOCK_SIZE = 20;
+
+    private static final Pattern L_IDENTIFIER = Pattern.compile("[A-Za-z0-9]+");
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final ConcurrentMap<String, NumberBlock> blocks = new ConcurrentHashMap<>();
+
+    /**
+     * Generates next number
+     *
+     * @param pluginIdentifier
+     *            plugin identifier of the model
+     * @param modelName
+     *            model name
+     * @param prefix
+     *            prefix of the number, may be empty
+     * @param digits
+     *            minimal number of digits after the prefix, filled with leading zeros
+     *
+     * @return number
+     */
+    public String generate(final String pluginIdentifier, final String modelName, final String prefix, final int digits) {
+        return generate(pluginIdentifier, modelName, prefix, digits, 1).get(0);
+    }
+
+    /**
+     * Generates given quantity of numbers. Quantities not smaller than the block size are reserved in one round trip and
+     * are consecutive.
+     *
+     * @param pluginIdentifier
+     *            plugin identifier of the model
+     * @param modelName
+     *            model name
+     * @param prefix
+     *            prefix of the numbers, may be empty
+     * @param digits
+     *            minimal number of digits after the prefix, filled with leading zeros
+     * @param quantity
+     *            quantity of numbers
+     *
+     * @return numbers in ascending order
+     */
+    public List<String> generate(final String pluginIdentifier, final String modelName, final String prefix, final int digits,
+            final int quantity) {
+        List<String> numbers = Lists.newArrayListWithCapacity(quantity);
+
+        for (Long value : allocate(pluginIdentifier, modelName, Strings.nullToEmpty(prefix), quantity)) {
+            numbers.add(Strings.nullToEmpty(prefix) + Strings.padStart(String.valueOf(value), digits, '0'));
+        }
+
+        return numbers;
+    }
+
+    private List<Long> allocate(final String pluginIdentifier, final String modelName, final String prefix, final int quantity) {
+        Preconditions.checkArgument(quantity > 0, "quantity has to be positive");
+        Preconditions.checkArgument(L_IDENTIFIER.matcher(pluginIdentifier).matches(), "invalid plugin identifier");
+        Preconditions.checkArgument(L_IDENTIFIER.matcher(modelName).matches(), "invalid model name");
+
+        String sequenceKey = multiTenantService.getCurrentTenantId() + "." + pluginIdentifier + "." + modelName + "." + prefix;
+
+        List<Long> values = Lists.newArrayListWithCapacity(quantity);
+
+        if (quantity >= L_BLOCK_SIZE) {
+            long first = reserve(sequenceKey, pluginIdentifier, modelName, prefix, quantity);
+
+            for (long value = first; value < first + quantity; value++) {
+                values.add(value);
+            }
+
+            return values;
+        }
+
+        NumberBlock block = blocks.computeIfAbsent(sequenceKey, key -> new NumberBlock());
+
+        synchronized (block) {
+            while (values.size() < quantity) {
+                if (block.isExhausted()) {
+                    block.reset(reserve(sequenceKey, pluginIdentifier, modelName, prefix, L_BLOCK_SIZE), L_BLOCK_SIZE);
+                }
+
+                values.add(block.next());
+            }
+        }
+
+        return values;
+    }
+
+    private long reserve(final String sequenceKey, final String pluginIdentifier, final String modelName, final String prefix,
+            final int quantity) {
+        Long first = executeInNewTransaction(status -> increment(sequenceKey, quantity));
+
+        if (first == null) {
+            try {
+                executeInNewTransaction(status -> create(sequenceKey, pluginIdentifier, modelName, prefix));
+            } catch (DuplicateKeyException e) {
+                // counter was created concurrently, so it can be incremented now
+            }
+
+            first = executeInNewTransaction(status -> increment(sequenceKey, quantity));
+        }
+
+        return first;
+    }
+
+    private Long increment(final String sequenceKey, final int quantity) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("sequenceKey", sequenceKey);
+        parameters.addValue("quantity", quantity);
+
+        List<Long> values = jdbcTemplate.queryForList("UPDATE basic_numbersequence SET nextvalue = nextvalue + :quantity "
+                + "WHERE sequencekey = :sequenceKey RETURNING nextvalue - :quantity", parameters, Long.class);
+
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    private Integer create(final String sequenceKey, final String pluginIdentifier, final String modelName, final String prefix) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("INSERT INTO basic_numbersequence (sequencekey, pluginidentifier, modelname, prefix, nextvalue) ");
+        query.append("SELECT :sequenceKey, :pluginIdentifier, :modelName, :prefix, ");
+        query.append("COALESCE(MAX(CAST(SUBSTRING(number FROM :prefixLength + 1) AS integer)), 0) + 1 ");
+        query.append("FROM ").append(pluginIdentifier.toLowerCase()).append("_").append(modelName.toLowerCase()).append(" ");
+        query.append("WHERE LEFT(number, :prefixLength) = :prefix ");
+        query.append("AND SUBSTRING(number FROM :prefixLength + 1) ~ '^[0-9]{1,9}$'");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("sequenceKey", sequenceKey);
+        parameters.addValue("pluginIdentifier", pluginIdentifier);
+        parameters.addValue("modelName", modelName);
+        parameters.addValue("prefix", prefix);
+        parameters.addValue("prefixLength", prefix.length());
+
+        return jdbcTemplate.update(query.toString(), parameters);
+    }
+
+    private <T> T executeInNewTransaction(final TransactionCallback<T> callback) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        return transactionTemplate.execute(callback);
+    }
+
+    private static class NumberBlock {
+
+        private long next;
+
+        private long end;
+
+        private boolean isExhausted() {
+            return next >= end;
+        }
+
+        private void reset(final long first, final int size) {
+            next = first;
+            end = first + size;
+        }
+
+        private long next() {
+            return next++;
+        }
+
+    }
+
+}
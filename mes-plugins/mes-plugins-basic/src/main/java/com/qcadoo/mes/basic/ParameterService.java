@@ -26,18 +26,26 @@ package com.qcadoo.mes.basic;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.CharType;
+import com.qcadoo.mes.basic.constants.ParameterFields;
 import com.qcadoo.mes.basic.constants.ReportColumnWidthFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 /**
  * Service for accessing parameters
@@ -51,9 +59,19 @@ public class ParameterService {
 
     private static final Integer LARGE_CHAR_IN_PIXEL = 11;
 
+    private static final String L_TRANSACTION_SNAPSHOT_KEY = ParameterService.class.getName() + ".parameterSnapshot";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final ConcurrentMap<Integer, ParameterSnapshot> sharedSnapshots = Maps.newConcurrentMap();
+
     /**
      * Returns basic parameter entity id for current user
      * 
@@ -88,6 +106,144 @@ public class ParameterService {
         return parameter;
     }
 
+    /**
+     * Returns immutable snapshot of basic parameter entity. Snapshot is shared between transactions of the same tenant and
+     * rebuilt only when version stored in database differs from the version of the shared one, so changes made on other
+     * nodes are detected. Within one transaction the snapshot is resolved once, and it is shared only after the transaction
+     * commits.
+     * 
+     * @return parameter snapshot
+     * 
+     */
+    public ParameterSnapshot getParameterSnapshot() {
+        boolean synchronizationActive = TransactionSynchronizationManager.isSynchronizationActive();
+
+        if (synchronizationActive) {
+            ParameterSnapshot snapshot = (ParameterSnapshot) TransactionSynchronizationManager
+                    .getResource(L_TRANSACTION_SNAPSHOT_KEY);
+
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+
+        ParameterSnapshot snapshot = resolveSnapshot();
+
+        if (synchronizationActive) {
+            bindToTransaction(snapshot);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Increments version stored in database and returns it, so it can be stored with saved parameter entity. The row stays
+     * locked until the saving transaction ends, so concurrent saves get subsequent versions.
+     * 
+     * @param parameterId
+     *            parameter entity id, null for new entity
+     * @return next snapshot version
+     */
+    public int getNextSnapshotVersion(final Long parameterId) {
+        if (parameterId == null) {
+            return 0;
+        }
+
+        List<Integer> versions = jdbcTemplate.queryForList(
+                "UPDATE basic_parameter SET snapshotversion = COALESCE(snapshotversion, 0) + 1 WHERE id = :parameterId "
+                        + "RETURNING snapshotversion", new MapSqlParameterSource("parameterId", parameterId), Integer.class);
+
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    /**
+     * Drops snapshot resolved in current transaction, next call of {@link #getParameterSnapshot()} checks stored version
+     * again.
+     */
+    public void invalidateTransactionSnapshot() {
+        TransactionSynchronizationManager.unbindResourceIfPossible(L_TRANSACTION_SNAPSHOT_KEY);
+    }
+
+    private ParameterSnapshot resolveSnapshot() {
+        List<Integer> versions = jdbcTemplate.queryForList(
+                "SELECT COALESCE(snapshotversion, 0) FROM basic_parameter ORDER BY id LIMIT 1", new MapSqlParameterSource(),
+                Integer.class);
+
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        ParameterSnapshot snapshot = sharedSnapshots.get(tenantId);
+
+        if (!versions.isEmpty() && (snapshot != null) && (snapshot.getVersion() == versions.get(0))) {
+            return snapshot;
+        }
+
+        Entity parameter = getParameter();
+
+        int version;
+
+        if (versions.isEmpty()) {
+            Integer parameterVersion = parameter.getIntegerField(ParameterFields.SNAPSHOT_VERSION);
+
+            version = (parameterVersion == null) ? 0 : parameterVersion;
+        } else {
+            version = versions.get(0);
+        }
+
+        snapshot = ParameterSnapshot.of(parameter, version);
+
+        share(tenantId, snapshot);
+
+        return snapshot;
+    }
+
+    private void share(final int tenantId, final ParameterSnapshot snapshot) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    putSharedSnapshot(tenantId, snapshot);
+                }
+
+            });
+        } else {
+            putSharedSnapshot(tenantId, snapshot);
+        }
+    }
+
+    private void putSharedSnapshot(final int tenantId, final ParameterSnapshot snapshot) {
+        sharedSnapshots.merge(tenantId, snapshot, (sharedSnapshot, newSnapshot) -> (newSnapshot.getVersion() >= sharedSnapshot
+                .getVersion()) ? newSnapshot : sharedSnapshot);
+    }
+
+    private void bindToTransaction(final ParameterSnapshot snapshot) {
+        TransactionSynchronizationManager.bindResource(L_TRANSACTION_SNAPSHOT_KEY, snapshot);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            private Object suspendedSnapshot;
+
+            @Override
+            public void suspend() {
+                suspendedSnapshot = TransactionSynchronizationManager.unbindResourceIfPossible(L_TRANSACTION_SNAPSHOT_KEY);
+            }
+
+            @Override
+            public void resume() {
+                if ((suspendedSnapshot != null) && !TransactionSynchronizationManager.hasResource(L_TRANSACTION_SNAPSHOT_KEY)) {
+                    TransactionSynchronizationManager.bindResource(L_TRANSACTION_SNAPSHOT_KEY, suspendedSnapshot);
+                }
+
+                suspendedSnapshot = null;
+            }
+
+            @Override
+            public void afterCompletion(final int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(L_TRANSACTION_SNAPSHOT_KEY);
+            }
+
+        });
+    }
+
     private Entity createParameter(final DataDefinition dataDefinition) {
         Entity parameter = dataDefinition.create();
         parameter = dataDefinition.save(parameter);
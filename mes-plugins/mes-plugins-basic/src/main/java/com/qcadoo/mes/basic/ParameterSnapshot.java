@@ -0,0 +1,162 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Immutable, read only copy of the basic parameter entity. Simple fields are kept with their values, belongsTo fields with
+ * ids of referenced entities, collections are skipped.
+ * 
+ * @see ParameterService#getParameterSnapshot()
+ */
+public final class ParameterSnapshot {
+
+    private final Long id;
+
+    private final int version;
+
+    private final Map<String, Object> fields;
+
+    private ParameterSnapshot(final Long id, final int version, final Map<String, Object> fields) {
+        this.id = id;
+        this.version = version;
+        this.fields = Collections.unmodifiableMap(fields);
+    }
+
+    static ParameterSnapshot of(final Entity parameter, final int version) {
+        DataDefinition parameterDD = parameter.getDataDefinition();
+
+        Map<String, Object> fields = Maps.newHashMapWithExpectedSize(parameterDD.getFields().size());
+
+        for (String fieldName : parameterDD.getFields().keySet()) {
+            Object value = parameter.getField(fieldName);
+
+            if (value instanceof Iterable) {
+                continue;
+            }
+
+            if (value instanceof Entity) {
+                value = ((Entity) value).getId();
+            } else if (value instanceof Date) {
+                value = new Date(((Date) value).getTime());
+            }
+
+            fields.put(fieldName, value);
+        }
+
+        return new ParameterSnapshot(parameter.getId(), version, fields);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean hasField(final String fieldName) {
+        return fields.containsKey(fieldName);
+    }
+
+    public Object getField(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+
+        return value;
+    }
+
+    public String getStringField(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        return (value == null) ? null : value.toString();
+    }
+
+    public boolean getBooleanField(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+
+        return (value != null) && ("1".equals(value.toString()) || Boolean.parseBoolean(value.toString()));
+    }
+
+    public BigDecimal getDecimalField(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        if ((value == null) || (value instanceof BigDecimal)) {
+            return (BigDecimal) value;
+        }
+
+        return new BigDecimal(value.toString());
+    }
+
+    public Integer getIntegerField(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        if ((value == null) || (value instanceof Integer)) {
+            return (Integer) value;
+        }
+
+        return Integer.valueOf(value.toString());
+    }
+
+    public Date getDateField(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        return (value == null) ? null : new Date(((Date) value).getTime());
+    }
+
+    /**
+     * Returns id of the entity referenced by given belongsTo field. Callers needing the referenced entity itself should use
+     * {@link ParameterService#getParameter()}.
+     */
+    public Long getBelongsToFieldId(final String fieldName) {
+        Object value = fields.get(fieldName);
+
+        if (value == null) {
+            return null;
+        }
+
+        return Long.valueOf(value.toString());
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterSnapshot[id=" + id + ", version=" + version + "]";
+    }
+
+}
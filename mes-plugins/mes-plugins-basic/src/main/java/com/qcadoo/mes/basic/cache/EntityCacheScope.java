@@ -0,0 +1,102 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.cache;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Entities loaded by {@link EntityCacheService} during one request, transaction or explicitly cached operation. Nested
+ * scopes share entities of the outermost one.
+ * 
+ * @see EntityCacheService#open(String)
+ */
+public final class EntityCacheScope implements AutoCloseable {
+
+    private final String name;
+
+    private final Map<String, Entity> entities;
+
+    private final EntityCacheService entityCacheService;
+
+    private int hits;
+
+    private int misses;
+
+    private boolean closed;
+
+    EntityCacheScope(final String name, final EntityCacheScope outerScope, final EntityCacheService entityCacheService) {
+        this.name = name;
+        this.entities = (outerScope == null) ? Maps.newHashMap() : outerScope.entities;
+        this.entityCacheService = entityCacheService;
+    }
+
+    Entity get(final String key) {
+        Entity entity = entities.get(key);
+
+        if (entity == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return entity;
+    }
+
+    void put(final String key, final Entity entity) {
+        entities.put(key, entity);
+    }
+
+    boolean evict(final String key) {
+        return entities.remove(key) != null;
+    }
+
+    void clear() {
+        entities.clear();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+
+            entityCacheService.close(this);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+}
@@ -0,0 +1,269 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.cache;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Opt-in identity cache of entities loaded by id. Inside an open scope repeated {@link #get(DataDefinition, Long)} and
+ * {@link #reload(Entity)} calls for the same model and id return the same entity instead of loading it again. Outside of
+ * any scope calls go straight to the data definition.
+ * 
+ * Entries are evicted when the entity is saved or deleted through a data definition from MES code (see
+ * EntityCacheAspect) and all entries are dropped when the transaction the scope was opened in is rolled back. Saves made
+ * by the framework itself, like cascades, or by plain SQL are not seen, so scopes should cover only code which doesn't
+ * rely on such changes.
+ * 
+ * <pre>
+ * try (EntityCacheScope scope = entityCacheService.open(&quot;technologyPreValidation&quot;)) {
+ *     Entity technology = entityCacheService.reload(stateChangeContext.getOwner());
+ * }
+ * </pre>
+ */
+@Service
+public class EntityCacheService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityCacheService.class);
+
+    private static final String L_HITS = "hits";
+
+    private static final String L_MISSES = "misses";
+
+    private static final String L_EVICTIONS = "evictions";
+
+    private final ThreadLocal<Deque<EntityCacheScope>> openScopes = new ThreadLocal<Deque<EntityCacheScope>>();
+
+    private final ConcurrentMap<String, Map<String, AtomicLong>> statistics = Maps.newConcurrentMap();
+
+    /**
+     * Starts caching entities loaded by current thread. Scopes can be nested, nested scopes use entities of the outermost
+     * one.
+     * 
+     * @param name
+     *            name of cached request, transaction or operation
+     * @return open scope, should be closed in finally block
+     */
+    public EntityCacheScope open(final String name) {
+        Deque<EntityCacheScope> scopes = openScopes.get();
+
+        if (scopes == null) {
+            scopes = new ArrayDeque<EntityCacheScope>();
+
+            openScopes.set(scopes);
+        }
+
+        EntityCacheScope scope = new EntityCacheScope(name, scopes.peekLast(), this);
+
+        if (scopes.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                        scope.clear();
+                    }
+                }
+
+            });
+        }
+
+        scopes.push(scope);
+
+        return scope;
+    }
+
+    void close(final EntityCacheScope scope) {
+        Deque<EntityCacheScope> scopes = openScopes.get();
+
+        if (scopes != null) {
+            scopes.removeFirstOccurrence(scope);
+
+            if (scopes.isEmpty()) {
+                openScopes.remove();
+
+                scope.clear();
+            }
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Entity cache scope %s: %d hits, %d misses", scope.getName(), scope.getHits(),
+                    scope.getMisses()));
+        }
+    }
+
+    public boolean isScopeOpen() {
+        Deque<EntityCacheScope> scopes = openScopes.get();
+
+        return (scopes != null) && !scopes.isEmpty();
+    }
+
+    /**
+     * Gets entity with given id, from the cache when a scope is open. Cached instance is shared by all callers in the scope,
+     * so it shouldn't be changed without saving it.
+     * 
+     * @param dataDefinition
+     *            data definition of the entity
+     * @param id
+     *            entity id
+     * @return entity or null if it doesn't exist
+     */
+    public Entity get(final DataDefinition dataDefinition, final Long id) {
+        EntityCacheScope scope = getCurrentScope();
+
+        if ((scope == null) || (id == null)) {
+            return dataDefinition.get(id);
+        }
+
+        String model = getModel(dataDefinition);
+        String key = getKey(model, id);
+
+        Entity entity = scope.get(key);
+
+        if (entity == null) {
+            increment(model, L_MISSES);
+
+            entity = dataDefinition.get(id);
+
+            if (entity != null) {
+                scope.put(key, entity);
+            }
+        } else {
+            increment(model, L_HITS);
+        }
+
+        return entity;
+    }
+
+    /**
+     * Gets given entity again, a replacement for entity.getDataDefinition().get(entity.getId()). Outside of a scope the entity
+     * is loaded from the database. Inside a scope the instance loaded first in the scope is returned, shared with other
+     * callers, so it contains changes made with setField by earlier callers until it is saved and evicted. Callers which
+     * need the state saved in the database should use the data definition directly.
+     * 
+     * @param entity
+     *            entity
+     * @return entity loaded from the database, or the instance cached in the current scope
+     */
+    public Entity reload(final Entity entity) {
+        return get(entity.getDataDefinition(), entity.getId());
+    }
+
+    public void evict(final DataDefinition dataDefinition, final Long id) {
+        EntityCacheScope scope = getCurrentScope();
+
+        if ((scope == null) || (id == null)) {
+            return;
+        }
+
+        String model = getModel(dataDefinition);
+
+        if (scope.evict(getKey(model, id))) {
+            increment(model, L_EVICTIONS);
+        }
+    }
+
+    public void evict(final Entity entity) {
+        evict(entity.getDataDefinition(), entity.getId());
+    }
+
+    /**
+     * Returns numbers of hits, misses and evictions per model since the start or the last reset, the most used model
+     * first.
+     * 
+     * @return statistics of models
+     */
+    public List<Map<String, Object>> getStatistics() {
+        List<Map<String, Object>> models = Lists.newArrayList();
+
+        for (Map.Entry<String, Map<String, AtomicLong>> modelStatistics : statistics.entrySet()) {
+            long hits = modelStatistics.getValue().get(L_HITS).get();
+            long misses = modelStatistics.getValue().get(L_MISSES).get();
+
+            Map<String, Object> model = Maps.newLinkedHashMap();
+
+            model.put("model", modelStatistics.getKey());
+            model.put(L_HITS, hits);
+            model.put(L_MISSES, misses);
+            model.put(L_EVICTIONS, modelStatistics.getValue().get(L_EVICTIONS).get());
+            model.put("hitRate", ((hits + misses) == 0) ? 0d : (double) hits / (hits + misses));
+
+            models.add(model);
+        }
+
+        models.sort((first, second) -> Long.compare((Long) second.get(L_HITS) + (Long) second.get(L_MISSES),
+                (Long) first.get(L_HITS) + (Long) first.get(L_MISSES)));
+
+        return models;
+    }
+
+    public void reset() {
+        statistics.clear();
+    }
+
+    private EntityCacheScope getCurrentScope() {
+        Deque<EntityCacheScope> scopes = openScopes.get();
+
+        return (scopes == null) ? null : scopes.peekFirst();
+    }
+
+    private void increment(final String model, final String counter) {
+        statistics.computeIfAbsent(model, key -> createCounters()).get(counter).incrementAndGet();
+    }
+
+    private Map<String, AtomicLong> createCounters() {
+        Map<String, AtomicLong> counters = Maps.newHashMap();
+
+        counters.put(L_HITS, new AtomicLong());
+        counters.put(L_MISSES, new AtomicLong());
+        counters.put(L_EVICTIONS, new AtomicLong());
+
+        return counters;
+    }
+
+    private String getModel(final DataDefinition dataDefinition) {
+        return dataDefinition.getPluginIdentifier() + "." + dataDefinition.getName();
+    }
+
+    private String getKey(final String model, final Long id) {
+        return model + "#" + id;
+    }
+
+}
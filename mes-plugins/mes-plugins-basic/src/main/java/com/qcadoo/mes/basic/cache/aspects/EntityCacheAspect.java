@@ -0,0 +1,107 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.cache.aspects;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+
+import com.qcadoo.mes.basic.cache.EntityCacheScope;
+import com.qcadoo.mes.basic.cache.EntityCacheService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.plugin.api.RunIfEnabled;
+
+@Aspect
+@Configurable
+@RunIfEnabled(BasicConstants.PLUGIN_IDENTIFIER)
+public class EntityCacheAspect {
+
+    @Autowired
+    private EntityCacheService entityCacheService;
+
+    @Pointcut("execution(@com.qcadoo.mes.basic.cache.EntityCached * *(..))")
+    public void entityCachedExecution() {
+    }
+
+    @Pointcut("call(* com.qcadoo.model.api.DataDefinition+.save(..)) && within(com.qcadoo.mes..*) && target(dataDefinition)")
+    public void dataDefinitionSave(final DataDefinition dataDefinition) {
+    }
+
+    @Pointcut("call(* com.qcadoo.model.api.DataDefinition+.delete(..)) && within(com.qcadoo.mes..*) && target(dataDefinition)")
+    public void dataDefinitionDelete(final DataDefinition dataDefinition) {
+    }
+
+    @Around("entityCachedExecution()")
+    public Object aroundEntityCached(final ProceedingJoinPoint pjp) throws Throwable {
+        if (entityCacheService == null) {
+            return pjp.proceed();
+        }
+
+        try (EntityCacheScope scope = entityCacheService.open(pjp.getSignature().toShortString())) {
+            return pjp.proceed();
+        }
+    }
+
+    @AfterReturning(pointcut = "dataDefinitionSave(dataDefinition)", argNames = "joinPoint,dataDefinition")
+    public void afterSave(final JoinPoint joinPoint, final DataDefinition dataDefinition) {
+        if (!isScopeOpen()) {
+            return;
+        }
+
+        for (Object arg : joinPoint.getArgs()) {
+            if (arg instanceof Entity) {
+                entityCacheService.evict(dataDefinition, ((Entity) arg).getId());
+            }
+        }
+    }
+
+    @AfterReturning(pointcut = "dataDefinitionDelete(dataDefinition)", argNames = "joinPoint,dataDefinition")
+    public void afterDelete(final JoinPoint joinPoint, final DataDefinition dataDefinition) {
+        if (!isScopeOpen()) {
+            return;
+        }
+
+        for (Object arg : joinPoint.getArgs()) {
+            if (arg instanceof Long[]) {
+                for (Long id : (Long[]) arg) {
+                    entityCacheService.evict(dataDefinition, id);
+                }
+            } else if (arg instanceof Long) {
+                entityCacheService.evict(dataDefinition, (Long) arg);
+            }
+        }
+    }
+
+    private boolean isScopeOpen() {
+        return (entityCacheService != null) && entityCacheService.isScopeOpen();
+    }
+
+}
@@ -44,6 +44,8 @@ public final class BasicConstants {
 
     public static final String MODEL_PRODUCT = "product";
 
+    public static final String MODEL_PRODUCT_FAMILY_CLOSURE = "productFamilyClosure";
+
     public static final String MODEL_STAFF = "staff";
 
     public static final String MODEL_SUBSTITUTE = "substitute";
@@ -88,6 +90,10 @@ public final class BasicConstants {
 
     public static final String MODEL_LOG = "log";
 
+    public static final String MODEL_NUMBER_SEQUENCE = "numberSequence";
+
+    public static final String MODEL_REPORT_JOB = "reportJob";
+
     // VIEW
 
     public static final String VIEW_MACHINE_DETAILS = "machineDetails";
@@ -37,4 +37,6 @@ public final class ParameterFields {
 
     public static final String COMPANY = "company";
 
+    public static final String SNAPSHOT_VERSION = "snapshotVersion";
+
 }
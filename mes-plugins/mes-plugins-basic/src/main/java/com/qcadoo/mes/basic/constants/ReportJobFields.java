@@ -0,0 +1,58 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.constants;
+
+public final class ReportJobFields {
+
+    private ReportJobFields() {
+
+    }
+
+    public static final String REPORT_KEY = "reportKey";
+
+    public static final String PLUGIN_IDENTIFIER = "pluginIdentifier";
+
+    public static final String MODEL_NAME = "modelName";
+
+    public static final String ENTITY_ID = "entityId";
+
+    public static final String STATE = "state";
+
+    public static final String PROGRESS = "progress";
+
+    public static final String USER_NAME = "userName";
+
+    public static final String AUTHORIZATION_ROLE = "authorizationRole";
+
+    public static final String FILE_NAME = "fileName";
+
+    public static final String CREATE_DATE = "createDate";
+
+    public static final String START_DATE = "startDate";
+
+    public static final String FINISH_DATE = "finishDate";
+
+    public static final String ERROR_MESSAGE = "errorMessage";
+
+}
@@ -0,0 +1,54 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.constants;
+
+public enum ReportJobState {
+
+    QUEUED("01queued"), RUNNING("02running"), FINISHED("03finished"), FAILED("04failed");
+
+    private final String code;
+
+    private ReportJobState(final String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public boolean isActive() {
+        return this == QUEUED || this == RUNNING;
+    }
+
+    public static ReportJobState parse(final String code) {
+        for (ReportJobState state : values()) {
+            if (state.getCode().equals(code)) {
+                return state;
+            }
+        }
+
+        throw new IllegalArgumentException("Couldn't parse ReportJobState from string '" + code + "'");
+    }
+
+}
@@ -0,0 +1,79 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.cache.EntityCacheService;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+public final class EntityCacheController {
+
+    private static final String L_ROLE_DIAGNOSTICS = "ROLE_DIAGNOSTICS";
+
+    @Autowired
+    private EntityCacheService entityCacheService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @ResponseBody
+    @RequestMapping(value = "/diagnostics/entityCache", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getStatistics() {
+        checkAccess();
+
+        Map<String, Object> result = Maps.newLinkedHashMap();
+
+        result.put("models", entityCacheService.getStatistics());
+
+        return result;
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/diagnostics/entityCache/reset", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> resetStatistics() {
+        checkAccess();
+
+        entityCacheService.reset();
+
+        return getStatistics();
+    }
+
+    private void checkAccess() {
+        if (!securityService.hasCurrentUserRole(L_ROLE_DIAGNOSTICS)) {
+            throw new AccessDeniedException("Access denied for user " + securityService.getCurrentUserName());
+        }
+    }
+
+}
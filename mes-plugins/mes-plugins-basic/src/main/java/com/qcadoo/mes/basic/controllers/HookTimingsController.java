@@ -0,0 +1,105 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.diagnostics.HookTimingRegistry;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+public final class HookTimingsController {
+
+    private static final String L_ROLE_DIAGNOSTICS = "ROLE_DIAGNOSTICS";
+
+    @Autowired
+    private HookTimingRegistry hookTimingRegistry;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @Value("${useCompressedStaticResources}")
+    private boolean useCompressedStaticResources;
+
+    @RequestMapping(value = "hookTimings", method = RequestMethod.GET)
+    public ModelAndView getHookTimingsView(final Locale locale) {
+        checkAccess();
+
+        ModelAndView mav = new ModelAndView();
+
+        mav.addObject("translationsMap", translationService.getMessagesGroup("hookTimings", locale));
+        mav.addObject("useCompressedStaticResources", useCompressedStaticResources);
+
+        mav.setViewName("basic/hookTimings");
+
+        return mav;
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/diagnostics/hookTimings", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getHookTimings() {
+        checkAccess();
+
+        Map<String, Object> result = Maps.newLinkedHashMap();
+
+        result.put("enabled", hookTimingRegistry.isEnabled());
+        result.put("since", hookTimingRegistry.getSince());
+        result.put("timings", hookTimingRegistry.getTimings());
+
+        return result;
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/diagnostics/hookTimings/reset", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> resetHookTimings() {
+        checkAccess();
+
+        hookTimingRegistry.reset();
+
+        return getHookTimings();
+    }
+
+    private void checkAccess() {
+        if (!securityService.hasCurrentUserRole(L_ROLE_DIAGNOSTICS)) {
+            throw new AccessDeniedException("Access denied for user " + securityService.getCurrentUserName());
+        }
+    }
+
+}
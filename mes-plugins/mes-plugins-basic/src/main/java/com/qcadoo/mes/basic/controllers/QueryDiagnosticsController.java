@@ -0,0 +1,105 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.diagnostics.QueryDiagnosticsService;
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+public final class QueryDiagnosticsController {
+
+    private static final String L_ROLE_DIAGNOSTICS = "ROLE_DIAGNOSTICS";
+
+    @Autowired
+    private QueryDiagnosticsService queryDiagnosticsService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @Value("${useCompressedStaticResources}")
+    private boolean useCompressedStaticResources;
+
+    @RequestMapping(value = "queryDiagnostics", method = RequestMethod.GET)
+    public ModelAndView getQueryDiagnosticsView(final Locale locale) {
+        checkAccess();
+
+        ModelAndView mav = new ModelAndView();
+
+        mav.addObject("translationsMap", translationService.getMessagesGroup("queryDiagnostics", locale));
+        mav.addObject("useCompressedStaticResources", useCompressedStaticResources);
+
+        mav.setViewName("basic/queryDiagnostics");
+
+        return mav;
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/diagnostics/queries", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getFlaggedScopes() {
+        checkAccess();
+
+        Map<String, Object> result = Maps.newLinkedHashMap();
+
+        result.put("enabled", queryDiagnosticsService.isEnabled());
+        result.put("repeatThreshold", queryDiagnosticsService.getRepeatThreshold());
+        result.put("scopes", queryDiagnosticsService.getFlaggedScopes());
+
+        return result;
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/diagnostics/queries/reset", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> resetFlaggedScopes() {
+        checkAccess();
+
+        queryDiagnosticsService.reset();
+
+        return getFlaggedScopes();
+    }
+
+    private void checkAccess() {
+        if (!securityService.hasCurrentUserRole(L_ROLE_DIAGNOSTICS)) {
+            throw new AccessDeniedException("Access denied for user " + securityService.getCurrentUserName());
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.qcadoo.mes.basic.controllers;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.qcadoo.mes.basic.reports.ReportJobService;
+import com.qcadoo.model.api.Entity;
+
+@Controller
+public final class ReportJobController {
+
+    @Autowired
+    private ReportJobService reportJobService;
+
+    @ResponseBody
+    @RequestMapping(value = "/reportJobs/{jobId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getJob(@PathVariable("jobId") Long jobId) {
+        return getJobStatus(reportJobService.getJob(jobId));
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "/reportJobs/{pluginIdentifier}/{modelName}/{entityId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getLastJob(@PathVariable("pluginIdentifier") String pluginIdentifier,
+            @PathVariable("modelName") String modelName, @PathVariable("entityId") Long entityId) {
+        return getJobStatus(reportJobService.getLastJob(pluginIdentifier, modelName, entityId));
+    }
+
+    private Map<String, Object> getJobStatus(final Entity job) {
+        if (job == null || !reportJobService.canRead(job)) {
+            return Collections.emptyMap();
+        }
+
+        return reportJobService.getJobStatus(job);
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.diagnostics;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.Signature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+
+/**
+ * Collects execution times of model hooks, view hooks and view listeners, grouped by method and by model (or component).
+ * Recording is lock free and allocates only when a method is seen for a new model, so it can stay enabled in production.
+ * Measured times include nested hooks called by the measured one.
+ */
+@Service
+public class HookTimingRegistry {
+
+    public static final String MODEL_HOOK = "modelHook";
+
+    public static final String VIEW_HOOK = "viewHook";
+
+    public static final String VIEW_LISTENER = "viewListener";
+
+    private static final String L_NO_TARGET = "";
+
+    @Value("${hookTimingEnabled:true}")
+    private boolean enabled;
+
+    private final ConcurrentMap<JoinPoint.StaticPart, ConcurrentMap<Object, HookTimings>> timings = new ConcurrentHashMap<JoinPoint.StaticPart, ConcurrentMap<Object, HookTimings>>();
+
+    private volatile Date since = new Date();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(final String kind, final JoinPoint.StaticPart joinPoint, final Object target, final long nanos,
+            final boolean failed) {
+        ConcurrentMap<Object, HookTimings> timingsByTarget = timings.get(joinPoint);
+
+        if (timingsByTarget == null) {
+            timingsByTarget = timings.computeIfAbsent(joinPoint, key -> new ConcurrentHashMap<Object, HookTimings>());
+        }
+
+        Object targetKey = (target == null) ? L_NO_TARGET : target;
+
+        HookTimings hookTimings = timingsByTarget.get(targetKey);
+
+        if (hookTimings == null) {
+            hookTimings = timingsByTarget.computeIfAbsent(targetKey, key -> new HookTimings(kind));
+        }
+
+        hookTimings.record(nanos, failed);
+    }
+
+    /**
+     * Returns statistics of all measured methods, the most time consuming first.
+     * 
+     * @return list of statistics, one per method and model (or component)
+     */
+    public List<Map<String, Object>> getTimings() {
+        List<Map<String, Object>> result = Lists.newArrayList();
+
+        for (Map.Entry<JoinPoint.StaticPart, ConcurrentMap<Object, HookTimings>> methodEntry : timings.entrySet()) {
+            Signature signature = methodEntry.getKey().getSignature();
+
+            for (Map.Entry<Object, HookTimings> targetEntry : methodEntry.getValue().entrySet()) {
+                Map<String, Object> row = Maps.newLinkedHashMap();
+
+                row.put("className", signature.getDeclaringTypeName());
+                row.put("methodName", signature.getName());
+                row.put("target", describeTarget(targetEntry.getKey()));
+                row.putAll(targetEntry.getValue().toMap());
+
+                result.add(row);
+            }
+        }
+
+        result.sort(Comparator.comparing((Map<String, Object> row) -> (Double) row.get("totalMs")).reversed());
+
+        return result;
+    }
+
+    public Date getSince() {
+        return new Date(since.getTime());
+    }
+
+    public void reset() {
+        timings.clear();
+        since = new Date();
+    }
+
+    private String describeTarget(final Object target) {
+        if (target instanceof DataDefinition) {
+            DataDefinition dataDefinition = (DataDefinition) target;
+
+            return dataDefinition.getPluginIdentifier() + "." + dataDefinition.getName();
+        }
+
+        return target.toString();
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.diagnostics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Execution statistics of one hook or listener method for one model or component. Durations are kept in a log-linear
+ * histogram with four sub-buckets per power of two microseconds, so percentiles are estimated with error below 25%.
+ */
+final class HookTimings {
+
+    private static final int L_SUB_BUCKETS = 4;
+
+    private static final int L_BUCKETS = 144;
+
+    private static final double L_NANOS_IN_MILLI = 1000000d;
+
+    private final String kind;
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private final AtomicLongArray histogram = new AtomicLongArray(L_BUCKETS);
+
+    HookTimings(final String kind) {
+        this.kind = kind;
+    }
+
+    void record(final long nanos, final boolean failed) {
+        count.increment();
+        totalNanos.add(nanos);
+
+        if (failed) {
+            failures.increment();
+        }
+
+        long max = maxNanos.get();
+
+        while ((nanos > max) && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+
+        histogram.incrementAndGet(bucketOf(nanos / 1000));
+    }
+
+    String getKind() {
+        return kind;
+    }
+
+    double getTotalMillis() {
+        return totalNanos.sum() / L_NANOS_IN_MILLI;
+    }
+
+    Map<String, Object> toMap() {
+        long calls = count.sum();
+        long[] buckets = new long[L_BUCKETS];
+        long recorded = 0;
+
+        for (int bucket = 0; bucket < L_BUCKETS; bucket++) {
+            buckets[bucket] = histogram.get(bucket);
+            recorded += buckets[bucket];
+        }
+
+        long max = maxNanos.get();
+
+        Map<String, Object> timings = Maps.newLinkedHashMap();
+
+        timings.put("kind", kind);
+        timings.put("count", calls);
+        timings.put("failures", failures.sum());
+        timings.put("totalMs", round(getTotalMillis()));
+        timings.put("avgMs", (calls == 0) ? 0d : round(totalNanos.sum() / L_NANOS_IN_MILLI / calls));
+        timings.put("p50Ms", percentile(buckets, recorded, 0.5, max));
+        timings.put("p95Ms", percentile(buckets, recorded, 0.95, max));
+        timings.put("p99Ms", percentile(buckets, recorded, 0.99, max));
+        timings.put("maxMs", round(max / L_NANOS_IN_MILLI));
+
+        return timings;
+    }
+
+    private double percentile(final long[] buckets, final long recorded, final double quantile, final long max) {
+        if (recorded == 0) {
+            return 0d;
+        }
+
+        long rank = (long) Math.ceil(recorded * quantile);
+        long seen = 0;
+
+        for (int bucket = 0; bucket < L_BUCKETS; bucket++) {
+            seen += buckets[bucket];
+
+            if (seen >= rank) {
+                return round(Math.min(upperBoundOf(bucket) * 1000, max) / L_NANOS_IN_MILLI);
+            }
+        }
+
+        return round(max / L_NANOS_IN_MILLI);
+    }
+
+    static int bucketOf(final long micros) {
+        if (micros < L_SUB_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - 2)) & (L_SUB_BUCKETS - 1);
+
+        return Math.min((exponent - 1) * L_SUB_BUCKETS + subBucket, L_BUCKETS - 1);
+    }
+
+    static long upperBoundOf(final int bucket) {
+        if (bucket < L_SUB_BUCKETS) {
+            return bucket + 1;
+        }
+
+        int exponent = bucket / L_SUB_BUCKETS + 1;
+        int subBucket = bucket % L_SUB_BUCKETS;
+
+        return (long) (L_SUB_BUCKETS + subBucket + 1) << (exponent - 2);
+    }
+
+    private static double round(final double millis) {
+        return Math.round(millis * 1000d) / 1000d;
+    }
+
+}
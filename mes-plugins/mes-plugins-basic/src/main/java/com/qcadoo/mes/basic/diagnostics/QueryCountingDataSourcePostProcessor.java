@@ -0,0 +1,162 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.diagnostics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Wraps data sources so that every executed statement is reported to {@link QueryDiagnosticsService}. Active only when the
+ * queryDiagnosticsEnabled property is set.
+ */
+@Component
+public class QueryCountingDataSourcePostProcessor implements BeanPostProcessor {
+
+    private static final String L_EXECUTE_PREFIX = "execute";
+
+    @Value("${queryDiagnosticsEnabled:false}")
+    private boolean enabled;
+
+    @Autowired
+    private QueryDiagnosticsService queryDiagnosticsService;
+
+    @Override
+    public Object postProcessBeforeInitialization(final Object bean, final String beanName) throws BeansException {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(final Object bean, final String beanName) throws BeansException {
+        if (!enabled || !(bean instanceof DataSource) || Proxy.isProxyClass(bean.getClass())) {
+            return bean;
+        }
+
+        return wrap(bean, new DataSourceHandler(bean));
+    }
+
+    private Object wrap(final Object target, final InvocationHandler handler) {
+        Class<?>[] interfaces = ClassUtils.getAllInterfaces(target);
+
+        return Proxy.newProxyInstance(target.getClass().getClassLoader(), interfaces, handler);
+    }
+
+    private static Object invoke(final Object target, final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+        if ("equals".equals(method.getName()) && (args != null) && (args.length == 1)) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(method.getName()) && (args == null)) {
+            return System.identityHashCode(proxy);
+        }
+
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private final class DataSourceHandler implements InvocationHandler {
+
+        private final Object dataSource;
+
+        private DataSourceHandler(final Object dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            Object result = QueryCountingDataSourcePostProcessor.invoke(dataSource, proxy, method, args);
+
+            if (result instanceof Connection) {
+                return wrap(result, new ConnectionHandler((Connection) result));
+            }
+
+            return result;
+        }
+
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private ConnectionHandler(final Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            Object result = QueryCountingDataSourcePostProcessor.invoke(connection, proxy, method, args);
+
+            if (result instanceof Statement) {
+                String sql = ((args != null) && (args.length > 0) && (args[0] instanceof String)) ? (String) args[0] : null;
+
+                return wrap(result, new StatementHandler((Statement) result, sql));
+            }
+
+            return result;
+        }
+
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+
+        private final String sql;
+
+        private StatementHandler(final Statement statement, final String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getName().startsWith(L_EXECUTE_PREFIX)) {
+                if ((args != null) && (args.length > 0) && (args[0] instanceof String)) {
+                    queryDiagnosticsService.record((String) args[0]);
+                } else {
+                    queryDiagnosticsService.record(sql);
+                }
+            }
+
+            return QueryCountingDataSourcePostProcessor.invoke(statement, proxy, method, args);
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.diagnostics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Counts SQL statements per HTTP request, background job or explicitly measured operation and reports statements of the
+ * same shape repeated from the same call site, which usually means a query issued per element of a loaded list.
+ * Statements are counted only when the queryDiagnosticsEnabled property is set, because the data source is then wrapped
+ * by {@link QueryCountingDataSourcePostProcessor}.
+ * 
+ * Integration tests can check query budgets of an operation:
+ * 
+ * <pre>
+ * try (QueryScope scope = queryDiagnosticsService.open(&quot;acceptDocument&quot;)) {
+ *     documentService.acceptDocument(document);
+ * 
+ *     scope.assertStatementsAtMost(30);
+ *     scope.assertNoRepeatedQueries(5);
+ * }
+ * </pre>
+ */
+@Service
+public class QueryDiagnosticsService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryDiagnosticsService.class);
+
+    private static final String L_CALL_SITE_PACKAGE = "com.qcadoo.mes.";
+
+    private static final String L_DIAGNOSTICS_PACKAGE = QueryDiagnosticsService.class.getPackage().getName();
+
+    private static final String L_UNKNOWN_CALL_SITE = "unknown";
+
+    @Value("${queryDiagnosticsEnabled:false}")
+    private boolean enabled;
+
+    @Value("${queryDiagnosticsRepeatThreshold:10}")
+    private int repeatThreshold;
+
+    @Value("${queryDiagnosticsHistorySize:100}")
+    private int historySize;
+
+    private final ThreadLocal<Deque<QueryScope>> openScopes = new ThreadLocal<Deque<QueryScope>>();
+
+    private final ConcurrentLinkedDeque<Map<String, Object>> flaggedScopes = new ConcurrentLinkedDeque<Map<String, Object>>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getRepeatThreshold() {
+        return repeatThreshold;
+    }
+
+    /**
+     * Starts counting statements executed by current thread. Scopes can be nested, statements are counted in all open
+     * scopes.
+     * 
+     * @param name
+     *            name of measured request, job or operation
+     * @return open scope, should be closed in finally block
+     */
+    public QueryScope open(final String name) {
+        Deque<QueryScope> scopes = openScopes.get();
+
+        if (scopes == null) {
+            scopes = new ArrayDeque<QueryScope>();
+
+            openScopes.set(scopes);
+        }
+
+        QueryScope scope = new QueryScope(name, this);
+
+        scopes.push(scope);
+
+        return scope;
+    }
+
+    void close(final QueryScope scope) {
+        Deque<QueryScope> scopes = openScopes.get();
+
+        if (scopes != null) {
+            scopes.removeFirstOccurrence(scope);
+
+            if (scopes.isEmpty()) {
+                openScopes.remove();
+            }
+        }
+
+        List<Map<String, Object>> repeatedQueries = scope.getRepeatedQueries(repeatThreshold);
+
+        if (!repeatedQueries.isEmpty()) {
+            LOG.warn(String.format("%s executed %d SQL statements, repeated queries: %s", scope.getName(),
+                    scope.getStatementsCount(), repeatedQueries));
+
+            flaggedScopes.addFirst(scope.toMap(repeatThreshold));
+
+            while (flaggedScopes.size() > historySize) {
+                flaggedScopes.pollLast();
+            }
+        }
+    }
+
+    void record(final String sql) {
+        Deque<QueryScope> scopes = openScopes.get();
+
+        if ((scopes == null) || scopes.isEmpty()) {
+            return;
+        }
+
+        String normalizedSql = QueryScope.normalize(sql);
+        String callSite = findCallSite();
+
+        for (QueryScope scope : scopes) {
+            scope.record(normalizedSql, callSite);
+        }
+    }
+
+    /**
+     * Returns requests, jobs and operations which repeated statements above the threshold, the latest first.
+     * 
+     * @return flagged scopes
+     */
+    public List<Map<String, Object>> getFlaggedScopes() {
+        return Lists.newArrayList(flaggedScopes);
+    }
+
+    public void reset() {
+        flaggedScopes.clear();
+    }
+
+    private String findCallSite() {
+        for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
+            String className = element.getClassName();
+
+            if (className.startsWith(L_CALL_SITE_PACKAGE) && !className.startsWith(L_DIAGNOSTICS_PACKAGE)) {
+                return className + "." + element.getMethodName() + ":" + element.getLineNumber();
+            }
+        }
+
+        return L_UNKNOWN_CALL_SITE;
+    }
+
+}
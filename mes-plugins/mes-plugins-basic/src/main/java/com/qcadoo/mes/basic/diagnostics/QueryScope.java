@@ -0,0 +1,212 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.diagnostics;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * SQL statements executed during one HTTP request, background job or explicitly measured operation, grouped by
+ * normalized statement text and call site.
+ * 
+ * @see QueryDiagnosticsService#open(String)
+ */
+public final class QueryScope implements AutoCloseable {
+
+    private static final Pattern L_STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    private static final Pattern L_NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+
+    private static final Pattern L_IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    private static final Pattern L_WHITESPACE = Pattern.compile("\\s+");
+
+    private final String name;
+
+    private final Date startDate = new Date();
+
+    private final QueryDiagnosticsService queryDiagnosticsService;
+
+    private final AtomicInteger statementsCount = new AtomicInteger();
+
+    private final ConcurrentMap<QueryShape, AtomicInteger> shapes = new ConcurrentHashMap<QueryShape, AtomicInteger>();
+
+    private volatile Date finishDate;
+
+    QueryScope(final String name, final QueryDiagnosticsService queryDiagnosticsService) {
+        this.name = name;
+        this.queryDiagnosticsService = queryDiagnosticsService;
+    }
+
+    void record(final String normalizedSql, final String callSite) {
+        statementsCount.incrementAndGet();
+
+        QueryShape shape = new QueryShape(normalizedSql, callSite);
+
+        AtomicInteger count = shapes.get(shape);
+
+        if (count == null) {
+            count = shapes.computeIfAbsent(shape, key -> new AtomicInteger());
+        }
+
+        count.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        if (finishDate == null) {
+            finishDate = new Date();
+
+            queryDiagnosticsService.close(this);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getStatementsCount() {
+        return statementsCount.get();
+    }
+
+    /**
+     * Returns statement shapes executed at least given number of times, the most repeated first.
+     * 
+     * @param threshold
+     *            minimal number of executions
+     * @return statement shapes with number of executions
+     */
+    public List<Map<String, Object>> getRepeatedQueries(final int threshold) {
+        List<Map<String, Object>> repeatedQueries = Lists.newArrayList();
+
+        for (Map.Entry<QueryShape, AtomicInteger> shapeEntry : shapes.entrySet()) {
+            int count = shapeEntry.getValue().get();
+
+            if (count >= threshold) {
+                Map<String, Object> repeatedQuery = Maps.newLinkedHashMap();
+
+                repeatedQuery.put("count", count);
+                repeatedQuery.put("callSite", shapeEntry.getKey().callSite);
+                repeatedQuery.put("sql", shapeEntry.getKey().sql);
+
+                repeatedQueries.add(repeatedQuery);
+            }
+        }
+
+        repeatedQueries.sort((first, second) -> Integer.compare((Integer) second.get("count"), (Integer) first.get("count")));
+
+        return repeatedQueries;
+    }
+
+    public void assertStatementsAtMost(final int maxStatements) {
+        if (getStatementsCount() > maxStatements) {
+            throw new AssertionError(String.format("%s executed %d SQL statements, budget is %d. Repeated queries: %s", name,
+                    getStatementsCount(), maxStatements, getRepeatedQueries(2)));
+        }
+    }
+
+    public void assertNoRepeatedQueries(final int threshold) {
+        List<Map<String, Object>> repeatedQueries = getRepeatedQueries(threshold);
+
+        if (!repeatedQueries.isEmpty()) {
+            throw new AssertionError(String.format("%s repeated SQL statements at least %d times: %s", name, threshold,
+                    repeatedQueries));
+        }
+    }
+
+    Map<String, Object> toMap(final int threshold) {
+        Map<String, Object> scope = Maps.newLinkedHashMap();
+
+        scope.put("name", name);
+        scope.put("startDate", startDate);
+        scope.put("finishDate", finishDate);
+        scope.put("statementsCount", getStatementsCount());
+        scope.put("repeatedQueries", getRepeatedQueries(threshold));
+
+        return scope;
+    }
+
+    /**
+     * Replaces literals with placeholders, collapses IN lists and whitespace, so statements differing only in parameters
+     * have the same text.
+     * 
+     * @param sql
+     *            statement text
+     * @return normalized statement text
+     */
+    public static String normalize(final String sql) {
+        if (sql == null) {
+            return "";
+        }
+
+        String normalizedSql = L_STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalizedSql = L_NUMBER_LITERAL.matcher(normalizedSql).replaceAll("?");
+        normalizedSql = L_IN_LIST.matcher(normalizedSql).replaceAll("in (?...)");
+        normalizedSql = L_WHITESPACE.matcher(normalizedSql).replaceAll(" ");
+
+        return normalizedSql.trim();
+    }
+
+    private static final class QueryShape {
+
+        private final String sql;
+
+        private final String callSite;
+
+        private QueryShape(final String sql, final String callSite) {
+            this.sql = sql;
+            this.callSite = callSite;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (this == object) {
+                return true;
+            }
+
+            if (!(object instanceof QueryShape)) {
+                return false;
+            }
+
+            QueryShape other = (QueryShape) object;
+
+            return sql.equals(other.sql) && callSite.equals(other.callSite);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + callSite.hashCode();
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.diagnostics.aspects;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.diagnostics.HookTimingRegistry;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.plugin.api.RunIfEnabled;
+import com.qcadoo.view.api.ComponentState;
+
+@Aspect
+@Configurable
+@RunIfEnabled(BasicConstants.PLUGIN_IDENTIFIER)
+public class HookTimingAspect {
+
+    @Autowired
+    private HookTimingRegistry hookTimingRegistry;
+
+    @Pointcut("execution(public * com.qcadoo.mes..hooks.*.*(com.qcadoo.model.api.DataDefinition, com.qcadoo.model.api.Entity)) "
+            + "|| execution(public * com.qcadoo.mes..validators.*.*(com.qcadoo.model.api.DataDefinition, com.qcadoo.model.api.Entity))")
+    public void modelHookExecution() {
+    }
+
+    @Pointcut("execution(public void com.qcadoo.mes..hooks.*.*(com.qcadoo.view.api.ViewDefinitionState))")
+    public void viewHookExecution() {
+    }
+
+    @Pointcut("execution(public void com.qcadoo.mes..listeners.*.*(com.qcadoo.view.api.ViewDefinitionState, com.qcadoo.view.api.ComponentState, String[]))")
+    public void viewListenerExecution() {
+    }
+
+    @Around("modelHookExecution() && args(dataDefinition, ..)")
+    public Object aroundModelHook(final ProceedingJoinPoint pjp, final DataDefinition dataDefinition) throws Throwable {
+        return measure(pjp, HookTimingRegistry.MODEL_HOOK, dataDefinition);
+    }
+
+    @Around("viewHookExecution()")
+    public Object aroundViewHook(final ProceedingJoinPoint pjp) throws Throwable {
+        return measure(pjp, HookTimingRegistry.VIEW_HOOK, null);
+    }
+
+    @Around("viewListenerExecution() && args(*, state, *)")
+    public Object aroundViewListener(final ProceedingJoinPoint pjp, final ComponentState state) throws Throwable {
+        return measure(pjp, HookTimingRegistry.VIEW_LISTENER, (state == null) ? null : state.getName());
+    }
+
+    private Object measure(final ProceedingJoinPoint pjp, final String kind, final Object target) throws Throwable {
+        if ((hookTimingRegistry == null) || !hookTimingRegistry.isEnabled()) {
+            return pjp.proceed();
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+
+        try {
+            Object result = pjp.proceed();
+
+            failed = false;
+
+            return result;
+        } finally {
+            hookTimingRegistry.record(kind, pjp.getStaticPart(), target, System.nanoTime() - start, failed);
+        }
+    }
+
+}
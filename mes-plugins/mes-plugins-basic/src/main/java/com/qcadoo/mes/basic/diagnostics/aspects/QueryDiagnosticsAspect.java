@@ -0,0 +1,103 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.diagnostics.aspects;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.diagnostics.QueryDiagnosticsService;
+import com.qcadoo.mes.basic.diagnostics.QueryScope;
+import com.qcadoo.plugin.api.RunIfEnabled;
+
+@Aspect
+@Configurable
+@RunIfEnabled(BasicConstants.PLUGIN_IDENTIFIER)
+public class QueryDiagnosticsAspect {
+
+    @Autowired
+    private QueryDiagnosticsService queryDiagnosticsService;
+
+    @Pointcut("execution(@org.springframework.web.bind.annotation.RequestMapping * *(..))")
+    public void requestMappingExecution() {
+    }
+
+    @Pointcut("execution(@org.springframework.scheduling.annotation.Scheduled * *(..))")
+    public void scheduledExecution() {
+    }
+
+    @Pointcut("execution(* com.qcadoo.mes.basic.reports.ReportJobTask+.generate(..))")
+    public void reportJobExecution() {
+    }
+
+    @Around("requestMappingExecution()")
+    public Object aroundRequest(final ProceedingJoinPoint pjp) throws Throwable {
+        if (!isEnabled()) {
+            return pjp.proceed();
+        }
+
+        return measure(pjp, getRequestName(pjp));
+    }
+
+    @Around("scheduledExecution() || reportJobExecution()")
+    public Object aroundJob(final ProceedingJoinPoint pjp) throws Throwable {
+        if (!isEnabled()) {
+            return pjp.proceed();
+        }
+
+        return measure(pjp, pjp.getSignature().toShortString());
+    }
+
+    private boolean isEnabled() {
+        return (queryDiagnosticsService != null) && queryDiagnosticsService.isEnabled();
+    }
+
+    private Object measure(final ProceedingJoinPoint pjp, final String name) throws Throwable {
+        try (QueryScope scope = queryDiagnosticsService.open(name)) {
+            return pjp.proceed();
+        }
+    }
+
+    private String getRequestName(final ProceedingJoinPoint pjp) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+
+        if (requestAttributes instanceof ServletRequestAttributes) {
+            HttpServletRequest request = ((ServletRequestAttributes) requestAttributes).getRequest();
+
+            return request.getMethod() + " " + request.getRequestURI();
+        }
+
+        return pjp.getSignature().toShortString();
+    }
+
+}
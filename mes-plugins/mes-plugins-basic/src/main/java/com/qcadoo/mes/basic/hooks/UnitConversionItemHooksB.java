@@ -0,0 +1,72 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.hooks;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
+import com.qcadoo.mes.basic.util.ProductUnitsConversionService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class UnitConversionItemHooksB {
+
+    @Autowired
+    private ProductUnitsConversionService productUnitsConversionService;
+
+    public void onSave(final DataDefinition unitConversionItemDD, final Entity unitConversionItem) {
+        invalidateConversions(unitConversionItem);
+    }
+
+    public boolean onDelete(final DataDefinition unitConversionItemDD, final Entity unitConversionItem) {
+        invalidateConversions(unitConversionItem);
+
+        return true;
+    }
+
+    private void invalidateConversions(final Entity unitConversionItem) {
+        Entity product = unitConversionItem.getBelongsToField(UnitConversionItemFieldsB.PRODUCT);
+        // existing item could have been moved from another product
+        Long productId = (product == null || unitConversionItem.getId() != null) ? null : product.getId();
+
+        productUnitsConversionService.invalidate(productId);
+
+        // conversions cached by other transactions before commit have to be removed as well
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    productUnitsConversionService.invalidate(productId);
+                }
+
+            });
+        }
+    }
+
+}
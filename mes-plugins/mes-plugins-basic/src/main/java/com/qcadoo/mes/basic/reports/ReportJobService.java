@@ -0,0 +1,415 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.reports;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ReportJobFields;
+import com.qcadoo.mes.basic.constants.ReportJobState;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Generates reports in the background. Jobs are queued on a bounded pool, their state and progress are kept in
+ * basic_reportJob, so users can poll them instead of waiting for the request. Requests for a report of an entity which
+ * already is queued or generated return the running job.
+ *
+ * Jobs submitted within a transaction are started after its commit, so they see the data saved before submitting. Jobs
+ * run in the tenant of the submitting user and can be read only by their owner or users having the role of the report.
+ * Jobs are held in memory only, so jobs left queued or running after restart are reported as failed.
+ */
+@Service
+public class ReportJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReportJobService.class);
+
+    private static final String L_ID = "id";
+
+    @Value("${reportJobThreads:2}")
+    private int poolSize;
+
+    @Value("${reportJobQueueCapacity:50}")
+    private int queueCapacity;
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final ConcurrentMap<String, Long> activeJobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executorService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PostConstruct
+    void init() {
+        int threads = Math.max(1, poolSize);
+
+        executorService = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "reportJob-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Queues generation of the report of given entity
+     *
+     * @param pluginIdentifier
+     *            plugin identifier of the report model
+     * @param modelName
+     *            report model name
+     * @param entityId
+     *            report entity id
+     * @param authorizationRole
+     *            role required to read the job by users other than its owner, the role of the report view
+     * @param task
+     *            generation of the report files
+     * @return id of the job, or id of the already queued or running job of the same report
+     */
+    public synchronized Long submit(final String pluginIdentifier, final String modelName, final Long entityId,
+            final String authorizationRole, final ReportJobTask task) {
+        String reportKey = getReportKey(pluginIdentifier, modelName, entityId);
+        int tenantId = multiTenantService.getCurrentTenantId();
+        String activeJobKey = getActiveJobKey(tenantId, reportKey);
+
+        Long activeJobId = activeJobs.get(activeJobKey);
+
+        if (activeJobId != null) {
+            return activeJobId;
+        }
+
+        Long jobId = executeInNewTransaction(status -> insertJob(reportKey, pluginIdentifier, modelName, entityId,
+                authorizationRole));
+
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        Locale locale = LocaleContextHolder.getLocale();
+
+        activeJobs.put(activeJobKey, jobId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    if (status == STATUS_COMMITTED) {
+                        enqueue(jobId, tenantId, reportKey, task, securityContext, locale);
+                    } else {
+                        activeJobs.remove(activeJobKey, jobId);
+
+                        updateState(jobId, ReportJobState.FAILED, null, "transaction submitting the report job was rolled back");
+                    }
+                }
+
+            });
+        } else {
+            enqueue(jobId, tenantId, reportKey, task, securityContext, locale);
+        }
+
+        return jobId;
+    }
+
+    /**
+     * Gets the report job
+     *
+     * @param jobId
+     *            job id
+     * @return job, or null if it doesn't exist
+     */
+    public Entity getJob(final Long jobId) {
+        return getReportJobDD().get(jobId);
+    }
+
+    /**
+     * Gets the last report job of given entity
+     *
+     * @param pluginIdentifier
+     *            plugin identifier of the report model
+     * @param modelName
+     *            report model name
+     * @param entityId
+     *            report entity id
+     * @return job, or null if the report wasn't queued
+     */
+    public Entity getLastJob(final String pluginIdentifier, final String modelName, final Long entityId) {
+        return getReportJobDD().find()
+                .add(SearchRestrictions.eq(ReportJobFields.REPORT_KEY, getReportKey(pluginIdentifier, modelName, entityId)))
+                .addOrder(SearchOrders.desc(L_ID)).setMaxResults(1).uniqueResult();
+    }
+
+    /**
+     * Checks if the current user can read the report job, which is allowed for the user who submitted it and for users
+     * having the role of the report
+     *
+     * @param job
+     *            report job
+     * @return true if the current user can read the job
+     */
+    public boolean canRead(final Entity job) {
+        String authorizationRole = job.getStringField(ReportJobFields.AUTHORIZATION_ROLE);
+
+        return securityService.getCurrentUserName().equals(job.getStringField(ReportJobFields.USER_NAME))
+                || (StringUtils.isNotEmpty(authorizationRole) && securityService.hasCurrentUserRole(authorizationRole));
+    }
+
+    /**
+     * Gets the state of the report job, failed for jobs which are queued or running according to the database but are not
+     * handled by this instance any more
+     *
+     * @param job
+     *            report job
+     * @return state
+     */
+    public ReportJobState getState(final Entity job) {
+        ReportJobState state = ReportJobState.parse(job.getStringField(ReportJobFields.STATE));
+
+        String activeJobKey = getActiveJobKey(multiTenantService.getCurrentTenantId(),
+                job.getStringField(ReportJobFields.REPORT_KEY));
+
+        if (state.isActive() && !job.getId().equals(activeJobs.get(activeJobKey))) {
+            return ReportJobState.FAILED;
+        }
+
+        return state;
+    }
+
+    /**
+     * Gets the job state as a map, used by the report jobs controller
+     *
+     * @param job
+     *            report job
+     * @return id, state, progress, file name and error message of the job
+     */
+    public Map<String, Object> getJobStatus(final Entity job) {
+        Map<String, Object> status = Maps.newHashMap();
+
+        status.put(L_ID, job.getId());
+        status.put(ReportJobFields.STATE, getState(job).getCode());
+        status.put(ReportJobFields.PROGRESS, job.getIntegerField(ReportJobFields.PROGRESS));
+        status.put(ReportJobFields.FILE_NAME, job.getStringField(ReportJobFields.FILE_NAME));
+        status.put(ReportJobFields.ERROR_MESSAGE, job.getStringField(ReportJobFields.ERROR_MESSAGE));
+
+        return status;
+    }
+
+    private void enqueue(final Long jobId, final int tenantId, final String reportKey, final ReportJobTask task,
+            final SecurityContext securityContext, final Locale locale) {
+        try {
+            executorService.execute(() -> multiTenantService.doInMultiTenantContext(tenantId, new MultiTenantCallback() {
+
+                @Override
+                public void invoke() {
+                    run(jobId, tenantId, reportKey, task, securityContext, locale);
+                }
+
+            }));
+        } catch (RejectedExecutionException e) {
+            activeJobs.remove(getActiveJobKey(tenantId, reportKey), jobId);
+
+            updateState(jobId, ReportJobState.FAILED, null, "report job queue is full");
+
+            LOG.warn("Report job " + reportKey + " rejected, queue is full");
+        }
+    }
+
+    private void run(final Long jobId, final int tenantId, final String reportKey, final ReportJobTask task,
+            final SecurityContext securityContext, final Locale locale) {
+        SecurityContextHolder.setContext(securityContext);
+        LocaleContextHolder.setLocale(locale);
+
+        try {
+            updateState(jobId, ReportJobState.RUNNING, null, null);
+
+            ReportJobProgress progress = percent -> updateProgress(jobId, percent);
+
+            String fileName = executeInNewTransaction(status -> {
+                try {
+                    return task.generate(progress);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            });
+
+            updateState(jobId, ReportJobState.FINISHED, fileName, null);
+        } catch (RuntimeException e) {
+            LOG.error("Report job " + reportKey + " failed", e);
+
+            try {
+                executeInNewTransaction(status -> {
+                    task.onFailure();
+
+                    return null;
+                });
+            } finally {
+                updateState(jobId, ReportJobState.FAILED, null, StringUtils.defaultString(e.getMessage(), e.toString()));
+            }
+        } finally {
+            activeJobs.remove(getActiveJobKey(tenantId, reportKey), jobId);
+
+            SecurityContextHolder.clearContext();
+            LocaleContextHolder.resetLocaleContext();
+        }
+    }
+
+    private Long insertJob(final String reportKey, final String pluginIdentifier, final String modelName, final Long entityId,
+            final String authorizationRole) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("INSERT INTO basic_reportjob ");
+        query.append("(reportkey, pluginidentifier, modelname, entityid, state, progress, username, authorizationrole, ");
+        query.append("createdate) ");
+        query.append("VALUES (:reportKey, :pluginIdentifier, :modelName, :entityId, :state, 0, :userName, ");
+        query.append(":authorizationRole, :createDate) ");
+        query.append("RETURNING id");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue(ReportJobFields.REPORT_KEY, reportKey);
+        parameters.addValue(ReportJobFields.PLUGIN_IDENTIFIER, pluginIdentifier);
+        parameters.addValue(ReportJobFields.MODEL_NAME, modelName);
+        parameters.addValue(ReportJobFields.ENTITY_ID, entityId);
+        parameters.addValue(ReportJobFields.STATE, ReportJobState.QUEUED.getCode());
+        parameters.addValue(ReportJobFields.USER_NAME, securityService.getCurrentUserName());
+        parameters.addValue(ReportJobFields.AUTHORIZATION_ROLE, authorizationRole);
+        parameters.addValue(ReportJobFields.CREATE_DATE, new Date());
+
+        return jdbcTemplate.queryForObject(query.toString(), parameters, Long.class);
+    }
+
+    private void updateState(final Long jobId, final ReportJobState state, final String fileName, final String errorMessage) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("UPDATE basic_reportjob SET state = :state");
+
+        if (ReportJobState.RUNNING == state) {
+            query.append(", startdate = :date");
+        } else {
+            query.append(", finishdate = :date, filename = :fileName, errormessage = :errorMessage");
+        }
+
+        if (ReportJobState.FINISHED == state) {
+            query.append(", progress = 100");
+        }
+
+        query.append(" WHERE id = :id");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue(L_ID, jobId);
+        parameters.addValue(ReportJobFields.STATE, state.getCode());
+        parameters.addValue("date", new Date());
+        parameters.addValue(ReportJobFields.FILE_NAME, fileName);
+        parameters.addValue(ReportJobFields.ERROR_MESSAGE, errorMessage);
+
+        executeInNewTransaction(status -> jdbcTemplate.update(query.toString(), parameters));
+    }
+
+    private void updateProgress(final Long jobId, final int percent) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue(L_ID, jobId);
+        parameters.addValue(ReportJobFields.PROGRESS, Math.max(0, Math.min(100, percent)));
+
+        executeInNewTransaction(status -> jdbcTemplate.update(
+                "UPDATE basic_reportjob SET progress = :progress WHERE id = :id AND progress <> :progress", parameters));
+    }
+
+    private String getReportKey(final String pluginIdentifier, final String modelName, final Long entityId) {
+        return pluginIdentifier + "." + modelName + "." + entityId;
+    }
+
+    private String getActiveJobKey(final int tenantId, final String reportKey) {
+        return tenantId + ":" + reportKey;
+    }
+
+    private <T> T executeInNewTransaction(final TransactionCallback<T> callback) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        return transactionTemplate.execute(callback);
+    }
+
+    private DataDefinition getReportJobDD() {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_REPORT_JOB);
+    }
+
+}
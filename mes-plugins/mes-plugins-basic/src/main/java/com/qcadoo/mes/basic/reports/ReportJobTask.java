@@ -0,0 +1,48 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.reports;
+
+/**
+ * Report generation executed by {@link ReportJobService} on a report job thread.
+ */
+public interface ReportJobTask {
+
+    /**
+     * Generates report files. Runs in a new transaction, with the tenant and the security context of the user who submitted the
+     * job.
+     *
+     * @param progress
+     *            progress of the job, may be updated by the task
+     * @return name of the generated file
+     */
+    String generate(final ReportJobProgress progress) throws Exception;
+
+    /**
+     * Called in a new transaction when the generation failed, so the task can revert changes made before the job was
+     * submitted.
+     */
+    default void onFailure() {
+    }
+
+}
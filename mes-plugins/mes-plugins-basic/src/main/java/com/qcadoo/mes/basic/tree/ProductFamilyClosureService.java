@@ -0,0 +1,182 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.tree;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keeps the product family hierarchy in an ancestor/descendant closure table (basic_productFamilyClosure). Every product
+ * has a row pointing to itself (depth 0) and one row for each of its ancestors.
+ *
+ * Rows are maintained by a trigger on basic_product, so they are correct also for products inserted by Hibernate, before
+ * their ids are known in hooks. Moving a product under another parent detaches and attaches its whole subtree with two
+ * statements.
+ */
+@Service
+public class ProductFamilyClosureService {
+
+    private static final int L_MAX_DEPTH = 100;
+
+    private static final String L_TRIGGER_NAME = "basic_product_trigger_productfamilyclosure";
+
+    private static final String L_PRODUCT_ID = "productId";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Creates or replaces the function maintaining the closure table and creates the trigger calling it, unless it exists
+     */
+    @Transactional
+    public void installTrigger() {
+        jdbcTemplate.getJdbcOperations().execute(getTriggerFunctionQuery());
+
+        List<Long> triggers = jdbcTemplate.queryForList("SELECT oid FROM pg_trigger WHERE tgname = :triggerName",
+                new MapSqlParameterSource("triggerName", L_TRIGGER_NAME), Long.class);
+
+        if (triggers.isEmpty()) {
+            jdbcTemplate.getJdbcOperations().execute(
+                    "CREATE TRIGGER " + L_TRIGGER_NAME + " AFTER INSERT OR UPDATE OF parent_id ON basic_product "
+                            + "FOR EACH ROW EXECUTE PROCEDURE basic_productfamilyclosure_trigger()");
+        }
+    }
+
+    /**
+     * Rebuilds the whole closure table from parents of products
+     */
+    @Transactional
+    public void rebuild() {
+        jdbcTemplate.getJdbcOperations().update("DELETE FROM basic_productfamilyclosure");
+
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO basic_productfamilyclosure (ancestor_id, descendant_id, depth) ");
+        query.append("WITH RECURSIVE closure (ancestor_id, descendant_id, depth) AS ( ");
+        query.append("SELECT id, id, 0 FROM basic_product ");
+        query.append("UNION ALL ");
+        query.append("SELECT closure.ancestor_id, product.id, closure.depth + 1 ");
+        query.append("FROM closure JOIN basic_product product ON product.parent_id = closure.descendant_id ");
+        query.append("WHERE closure.depth < :maxDepth) ");
+        query.append("SELECT ancestor_id, descendant_id, depth FROM closure");
+
+        jdbcTemplate.update(query.toString(), new MapSqlParameterSource("maxDepth", L_MAX_DEPTH));
+    }
+
+    /**
+     * Builds the closure table when it is empty, e.g. after enabling the plugin
+     */
+    @Transactional
+    public void rebuildIfEmpty() {
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM basic_productfamilyclosure LIMIT 1",
+                new MapSqlParameterSource(), Long.class);
+
+        if (ids.isEmpty()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Serializes node number generation until the end of the current transaction, so concurrent saves can't get the same
+     * number
+     */
+    public void lockNodeNumbers() {
+        jdbcTemplate.getJdbcOperations().execute("SELECT pg_advisory_xact_lock(hashtext('basic_product.nodenumber'))");
+    }
+
+    /**
+     * Replaces the node number prefix of all descendants of given product with one statement
+     *
+     * @param productId
+     *            product id
+     * @param oldNodeNumber
+     *            node number of product before the change
+     * @param newNodeNumber
+     *            node number of product after the change
+     * @return number of renumbered descendants
+     */
+    public int renumberDescendants(final Long productId, final String oldNodeNumber, final String newNodeNumber) {
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE basic_product product ");
+        query.append("SET nodenumber = :newNodeNumber || substring(product.nodenumber FROM :suffixStart) ");
+        query.append("FROM basic_productfamilyclosure closure ");
+        query.append("WHERE closure.ancestor_id = :productId AND closure.depth > 0 ");
+        query.append("AND closure.descendant_id = product.id AND product.nodenumber LIKE :oldPrefix");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_PRODUCT_ID, productId);
+        parameters.addValue("newNodeNumber", newNodeNumber);
+        parameters.addValue("suffixStart", oldNodeNumber.length() + 1);
+        parameters.addValue("oldPrefix", oldNodeNumber + ".%");
+
+        return jdbcTemplate.update(query.toString(), parameters);
+    }
+
+    public List<Long> getAncestorsIds(final Long productId) {
+        return jdbcTemplate.queryForList(
+                "SELECT ancestor_id FROM basic_productfamilyclosure WHERE descendant_id = :productId AND depth > 0 "
+                        + "ORDER BY depth DESC", new MapSqlParameterSource(L_PRODUCT_ID, productId), Long.class);
+    }
+
+    public boolean isDescendant(final Long ancestorId, final Long descendantId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_PRODUCT_ID, descendantId);
+        parameters.addValue("ancestorId", ancestorId);
+
+        return !jdbcTemplate.queryForList(
+                "SELECT depth FROM basic_productfamilyclosure WHERE ancestor_id = :ancestorId AND descendant_id = :productId",
+                parameters, Integer.class).isEmpty();
+    }
+
+    private String getTriggerFunctionQuery() {
+        StringBuilder query = new StringBuilder();
+        query.append("CREATE OR REPLACE FUNCTION basic_productfamilyclosure_trigger() RETURNS trigger ");
+        query.append("LANGUAGE plpgsql AS $$ ");
+        query.append("BEGIN ");
+        query.append("IF TG_OP = 'INSERT' THEN ");
+        query.append("INSERT INTO basic_productfamilyclosure (ancestor_id, descendant_id, depth) VALUES (NEW.id, NEW.id, 0); ");
+        query.append("ELSIF NEW.parent_id IS NOT DISTINCT FROM OLD.parent_id THEN ");
+        query.append("RETURN NULL; ");
+        query.append("ELSE ");
+        query.append("DELETE FROM basic_productfamilyclosure ");
+        query.append("WHERE descendant_id IN (SELECT descendant_id FROM basic_productfamilyclosure WHERE ancestor_id = NEW.id) ");
+        query.append("AND ancestor_id IN (SELECT ancestor_id FROM basic_productfamilyclosure ");
+        query.append("WHERE descendant_id = NEW.id AND depth > 0); ");
+        query.append("END IF; ");
+        query.append("IF NEW.parent_id IS NOT NULL THEN ");
+        query.append("INSERT INTO basic_productfamilyclosure (ancestor_id, descendant_id, depth) ");
+        query.append("SELECT ancestors.ancestor_id, descendants.descendant_id, ancestors.depth + descendants.depth + 1 ");
+        query.append("FROM basic_productfamilyclosure ancestors ");
+        query.append("JOIN basic_productfamilyclosure descendants ON descendants.ancestor_id = NEW.id ");
+        query.append("WHERE ancestors.descendant_id = NEW.parent_id; ");
+        query.append("END IF; ");
+        query.append("RETURN NULL; ");
+        query.append("END; $$");
+
+        return query.toString();
+    }
+
+}
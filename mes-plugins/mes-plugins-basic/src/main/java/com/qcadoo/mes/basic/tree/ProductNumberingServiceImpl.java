@@ -28,12 +28,12 @@ import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
@@ -55,6 +55,9 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ProductFamilyClosureService productFamilyClosureService;
+
     @Override
     public Entity getRoot(final Entity product) {
         Entity parent = product.getBelongsToField(PARENT);
@@ -124,8 +127,10 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
                     }
                 } else {
                     if (PRODUCTS_FAMILY.getStringValue().equals(entityType)) {
+                        String oldNodeNumber = getProductDD().get(product.getId()).getStringField(NODE_NUMBER);
+
                         generateNodeNumberForProductsFamily(product, parent);
-                        updateProductFamilyChildrensNodeNumbers(product, product);
+                        renumberProductFamilyDescendants(product, oldNodeNumber);
                     } else if (PARTICULAR_PRODUCT.getStringValue().equals(entityType)) {
                         generateNodeNumberForParticularProduct(product, parent);
                     }
@@ -152,65 +157,43 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
         }
     }
 
-    private String getNextRootNodeNumber() {
-        Entity product = getProductDD().find().add(SearchRestrictions.isNull(PARENT))
-                .add(SearchRestrictions.isNotNull(NODE_NUMBER)).addOrder(SearchOrders.desc(NODE_NUMBER)).setMaxResults(1)
-                .uniqueResult();
-
-        String nodeNumber = null;
-        Integer number = null;
-
-        if (product == null) {
-            number = 1;
+    private void renumberProductFamilyDescendants(final Entity product, final String oldNodeNumber) {
+        String newNodeNumber = product.getStringField(NODE_NUMBER);
 
-            nodeNumber = number.toString();
+        if (StringUtils.isEmpty(oldNodeNumber) || StringUtils.isEmpty(newNodeNumber)) {
+            updateProductFamilyChildrensNodeNumbers(product, product);
         } else {
-            String productNodeNumber = product.getStringField(NODE_NUMBER);
-
-            number = Integer.parseInt(productNodeNumber);
+            productFamilyClosureService.renumberDescendants(product.getId(), oldNodeNumber, newNodeNumber);
+        }
+    }
 
-            do {
-                number++;
+    private String getNextRootNodeNumber() {
+        productFamilyClosureService.lockNodeNumbers();
 
-                nodeNumber = number.toString();
-            } while (checkIfNodeNumberIsUnique(nodeNumber));
-        }
+        Integer number = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(nodenumber::int), 0) + 1 FROM basic_product WHERE nodenumber ~ '^[0-9]+$'",
+                Collections.emptyMap(), Integer.class);
 
-        return nodeNumber;
+        return number.toString();
     }
 
     private String getNextNodeNumber(final Entity parent) {
         String parentNodeNumber = parent.getStringField(NODE_NUMBER);
 
-        Entity product = parent.getHasManyField(PRODUCT_FAMILY_CHILDRENS).find()
-                .add(SearchRestrictions.like(NODE_NUMBER, parentNodeNumber + "%")).addOrder(SearchOrders.desc(NODE_NUMBER))
-                .setMaxResults(1).uniqueResult();
-
-        String nodeNumber = null;
-        Integer number = null;
+        productFamilyClosureService.lockNodeNumbers();
 
-        if (product == null) {
-            number = 1;
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT COALESCE(MAX(substring(nodenumber FROM :suffixStart)::int), 0) + 1 ");
+        query.append("FROM basic_product WHERE parent_id = :parentId AND nodenumber LIKE :prefix ");
+        query.append("AND substring(nodenumber FROM :suffixStart) ~ '^[0-9]+$'");
 
-            nodeNumber = parentNodeNumber.concat(".").concat(number.toString());
-        } else {
-
-            int size = parentNodeNumber.split("\\.").length + 1;
-            StringBuilder query = new StringBuilder();
-
-            query.append("SELECT max((regexp_split_to_array(nodenumber, E'\\\\.'))["+size+"] ::int) + 1 ");
-            query.append("FROM basic_product WHERE nodenumber like '");
-            query.append(parentNodeNumber);
-            query.append(".%'");
-            number = jdbcTemplate.queryForObject(query.toString(), Collections.emptyMap(), Integer.class);
-            nodeNumber = parentNodeNumber.concat(".").concat(number.toString());
-        }
+        MapSqlParameterSource parameters = new MapSqlParameterSource("parentId", parent.getId());
+        parameters.addValue("prefix", parentNodeNumber + ".%");
+        parameters.addValue("suffixStart", parentNodeNumber.length() + 2);
 
-        return nodeNumber;
-    }
+        Integer number = jdbcTemplate.queryForObject(query.toString(), parameters, Integer.class);
 
-    private boolean checkIfNodeNumberIsUnique(final String nodeNumber) {
-        return getProductDD().find().add(SearchRestrictions.eq(NODE_NUMBER, nodeNumber)).setMaxResults(1).uniqueResult() != null;
+        return parentNodeNumber.concat(".").concat(number.toString());
     }
 
     private boolean checkIfParentHasChanged(final Entity product, final Entity parent) {
@@ -242,8 +225,10 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
 
         if (StringUtils.isEmpty(productNodeNumber)) {
             return false;
-        } else {
+        } else if ((productsFamily.getId() == null) || (product.getId() == null)) {
             return productNodeNumber.startsWith(productsFamilyNodeNumber);
+        } else {
+            return productFamilyClosureService.isDescendant(productsFamily.getId(), product.getId());
         }
     }
 
@@ -252,26 +237,17 @@ public class ProductNumberingServiceImpl implements ProductNumberingService {
         Entity parent = product.getBelongsToField(PARENT);
         String productNodeNumber = product.getStringField(NODE_NUMBER);
 
-        if ((parent == null) || StringUtils.isEmpty(productNodeNumber)) {
+        if ((parent == null) || StringUtils.isEmpty(productNodeNumber) || (product.getId() == null)) {
             return Lists.newArrayList();
-        } else {
-            return getProductDD().find().add(SearchRestrictions.in(NODE_NUMBER, findRootsForNodeNumber(productNodeNumber)))
-                    .list().getEntities();
         }
-    }
 
-    private List<String> findRootsForNodeNumber(final String nodeNumber) {
-        List<String> roots = Lists.newArrayList();
+        List<Long> ancestorsIds = productFamilyClosureService.getAncestorsIds(product.getId());
 
-        String number = nodeNumber;
-
-        for (int i = 0; i < StringUtils.countMatches(nodeNumber, "."); i++) {
-            number = number.substring(0, number.lastIndexOf('.'));
-
-            roots.add(number);
+        if (ancestorsIds.isEmpty()) {
+            return Lists.newArrayList();
         }
 
-        return roots;
+        return getProductDD().find().add(SearchRestrictions.in("id", ancestorsIds)).list().getEntities();
     }
 
     private DataDefinition getProductDD() {
@@ -4,7 +4,10 @@ import static java.util.Objects.requireNonNull;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -12,27 +15,41 @@ import org.springframework.util.Assert;
 
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.CustomRestriction;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.PossibleUnitConversions;
 import com.qcadoo.model.api.units.UnitConversionService;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 /**
  * Helper class to avoid boilerplate code when converting between units for a particular product.
+ * 
+ * Possible conversions are cached per tenant, product and source unit, global conversions per tenant and source unit. Cache
+ * is invalidated by unit conversion item hooks.
  */
 @Service
 public final class ProductUnitsConversionService {
 
     private final UnitConversionService unitConversionService;
 
+    private final MultiTenantService multiTenantService;
+
+    private final ConcurrentMap<Integer, ConcurrentMap<Long, ConcurrentMap<String, PossibleUnitConversions>>> productConversions
+            = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<Integer, ConcurrentMap<String, PossibleUnitConversions>> globalConversions
+            = Maps.newConcurrentMap();
+
     @Autowired
-    public ProductUnitsConversionService(UnitConversionService unitConversionService) {
+    public ProductUnitsConversionService(UnitConversionService unitConversionService, MultiTenantService multiTenantService) {
         this.unitConversionService = requireNonNull(unitConversionService);
+        this.multiTenantService = requireNonNull(multiTenantService);
     }
 
     /**
@@ -46,7 +63,128 @@ public final class ProductUnitsConversionService {
         DataDefinition dataDefinition = product.getDataDefinition();
         Assert.isTrue(BasicConstants.PLUGIN_IDENTIFIER.equals(dataDefinition.getPluginIdentifier()));
         Assert.isTrue(BasicConstants.MODEL_PRODUCT.equals(dataDefinition.getName()));
-        return new FromUnitConverter(product, unitConversionService);
+        return new FromUnitConverter(product, this);
+    }
+
+    /**
+     * @param product
+     *            A product which conversions should be used
+     * @param fromUnit
+     *            Source unit
+     * @return Conversions from source unit defined for the product
+     */
+    public PossibleUnitConversions getPossibleConversions(final Entity product, final String fromUnit) {
+        if (product.getId() == null) {
+            return findPossibleConversions(product, fromUnit);
+        }
+
+        return getTenantProductConversions().computeIfAbsent(product.getId(), productId -> new ConcurrentHashMap<>())
+                .computeIfAbsent(fromUnit, unit -> findPossibleConversions(product, unit));
+    }
+
+    /**
+     * @param fromUnit
+     *            Source unit
+     * @return Global conversions from source unit
+     */
+    public PossibleUnitConversions getPossibleConversions(final String fromUnit) {
+        return getTenantGlobalConversions().computeIfAbsent(fromUnit, unitConversionService::getPossibleConversions);
+    }
+
+    /**
+     * Converts many quantities at once.
+     * 
+     * @param conversions
+     *            Quantities to convert
+     * @return Converted quantities in the order of conversions, empty when there is no conversion between given units
+     */
+    public List<Optional<BigDecimal>> convertValues(final List<QuantityConversion> conversions) {
+        List<Optional<BigDecimal>> convertedValues = Lists.newArrayListWithCapacity(conversions.size());
+
+        for (QuantityConversion conversion : conversions) {
+            if (conversion.getFromUnit().equals(conversion.getToUnit())) {
+                convertedValues.add(Optional.of(conversion.getQuantity()));
+
+                continue;
+            }
+
+            PossibleUnitConversions possibleConversions = getPossibleConversions(conversion.getProduct(),
+                    conversion.getFromUnit());
+
+            if (possibleConversions.isDefinedFor(conversion.getToUnit())) {
+                convertedValues.add(Optional.of(possibleConversions.convertTo(conversion.getQuantity(), conversion.getToUnit())));
+            } else {
+                convertedValues.add(Optional.empty());
+            }
+        }
+
+        return convertedValues;
+    }
+
+    /**
+     * Removes cached conversions of given product and global conversions, or all cached conversions if product id is null, in
+     * the current tenant.
+     * 
+     * @param productId
+     *            Product id
+     */
+    public void invalidate(final Long productId) {
+        if (productId == null) {
+            getTenantProductConversions().clear();
+        } else {
+            getTenantProductConversions().remove(productId);
+        }
+
+        getTenantGlobalConversions().clear();
+    }
+
+    private ConcurrentMap<Long, ConcurrentMap<String, PossibleUnitConversions>> getTenantProductConversions() {
+        return productConversions.computeIfAbsent(multiTenantService.getCurrentTenantId(), tenantId -> new ConcurrentHashMap<>());
+    }
+
+    private ConcurrentMap<String, PossibleUnitConversions> getTenantGlobalConversions() {
+        return globalConversions.computeIfAbsent(multiTenantService.getCurrentTenantId(), tenantId -> new ConcurrentHashMap<>());
+    }
+
+    private PossibleUnitConversions findPossibleConversions(final Entity product, final String fromUnit) {
+        return unitConversionService.getPossibleConversions(fromUnit,
+                searchCriteriaBuilder -> searchCriteriaBuilder.add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT,
+                        product)));
+    }
+
+    public static class QuantityConversion {
+
+        private final Entity product;
+
+        private final BigDecimal quantity;
+
+        private final String fromUnit;
+
+        private final String toUnit;
+
+        public QuantityConversion(final Entity product, final BigDecimal quantity, final String fromUnit, final String toUnit) {
+            this.product = requireNonNull(product);
+            this.quantity = requireNonNull(quantity);
+            this.fromUnit = requireNonNull(fromUnit);
+            this.toUnit = requireNonNull(toUnit);
+        }
+
+        public Entity getProduct() {
+            return product;
+        }
+
+        public BigDecimal getQuantity() {
+            return quantity;
+        }
+
+        public String getFromUnit() {
+            return fromUnit;
+        }
+
+        public String getToUnit() {
+            return toUnit;
+        }
+
     }
 
     public interface ConversionResultsHolder {
@@ -70,15 +208,11 @@ public final class ProductUnitsConversionService {
 
         private final Entity product;
 
-        private final CustomRestriction productRestriction;
-
-        private final UnitConversionService unitConversionService;
+        private final ProductUnitsConversionService productUnitsConversionService;
 
-        private FromUnitConverter(Entity product, UnitConversionService unitConversionService) {
+        private FromUnitConverter(Entity product, ProductUnitsConversionService productUnitsConversionService) {
             this.product = requireNonNull(product);
-            this.unitConversionService = requireNonNull(unitConversionService);
-            this.productRestriction = searchCriteriaBuilder -> searchCriteriaBuilder
-                    .add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT, product));
+            this.productUnitsConversionService = requireNonNull(productUnitsConversionService);
         }
 
         /**
@@ -92,7 +226,7 @@ public final class ProductUnitsConversionService {
          */
         public ToUnitConverter from(String unit) {
             Assert.state(isNotBlank(unit), "Convert-From unit is blank");
-            return new ToUnitConverter(() -> unitConversionService.getPossibleConversions(unit, productRestriction), unit);
+            return new ToUnitConverter(() -> productUnitsConversionService.getPossibleConversions(product, unit), unit);
         }
 
         /**
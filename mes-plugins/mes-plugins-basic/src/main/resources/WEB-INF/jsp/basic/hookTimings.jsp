@@ -0,0 +1,133 @@
+<%--
+
+    ***************************************************************************
+    Copyright (c) 2010 Qcadoo Limited
+    Project: Qcadoo MES
+    Version: 1.4
+
+    This file is part of Qcadoo.
+
+    Qcadoo is free software; you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation; either version 3 of the License,
+    or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty
+    of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+    See the GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+    ***************************************************************************
+
+--%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
+<!DOCTYPE html PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN" "http://www.w3.org/TR/html4/loose.dtd">
+
+<html>
+<head>
+
+	<c:choose>
+		<c:when test="${useCompressedStaticResources}">
+			<link rel="stylesheet" href="${pageContext.request.contextPath}/qcadooView/public/qcadoo-min.css?ver=${buildNumber}" type="text/css" />
+		</c:when>
+		<c:otherwise>
+			<link rel="stylesheet" href="${pageContext.request.contextPath}/qcadooView/public/css/core/dashboard.css?ver=${buildNumber}" type="text/css" />
+		</c:otherwise>
+	</c:choose>
+	<script type="text/javascript" src="${pageContext.request.contextPath}/qcadooView/public/js/core/lib/_jquery-1.4.2.min.js?ver=${buildNumber}"></script>
+
+	<style type="text/css">
+		#hookTimingsContent { padding: 10px; font-family: Arial, sans-serif; font-size: 12px; }
+		#hookTimingsTable { border-collapse: collapse; width: 100%; margin-top: 10px; }
+		#hookTimingsTable th, #hookTimingsTable td { border: 1px solid #c0c0c0; padding: 3px 6px; text-align: right; }
+		#hookTimingsTable th { background: #e8e8e8; }
+		#hookTimingsTable td.text { text-align: left; }
+	</style>
+
+	<script type="text/javascript">
+
+		var numberColumns = ["count", "failures", "totalMs", "avgMs", "p50Ms", "p95Ms", "p99Ms", "maxMs"];
+
+		function escapeHtml(value) {
+			return $("<div/>").text(value == null ? "" : value).html();
+		}
+
+		function renderTimings(data) {
+			var rows = [];
+
+			$.each(data.timings, function (i, timing) {
+				var row = "<tr><td class='text'>" + escapeHtml(timing.kind) + "</td>"
+					+ "<td class='text'>" + escapeHtml(timing.className + "." + timing.methodName) + "</td>"
+					+ "<td class='text'>" + escapeHtml(timing.target) + "</td>";
+
+				$.each(numberColumns, function (j, column) {
+					row += "<td>" + timing[column] + "</td>";
+				});
+
+				rows.push(row + "</tr>");
+			});
+
+			$("#hookTimingsSince").text(new Date(data.since).toLocaleString());
+			$("#hookTimingsDisabled").toggle(!data.enabled);
+			$("#hookTimingsTable tbody").html(rows.join(""));
+		}
+
+		function loadTimings() {
+			$.ajax({
+				url: "${pageContext.request.contextPath}/rest/diagnostics/hookTimings",
+				type: "GET",
+				dataType: "json",
+				success: renderTimings
+			});
+		}
+
+		function resetTimings() {
+			$.ajax({
+				url: "${pageContext.request.contextPath}/rest/diagnostics/hookTimings/reset",
+				type: "POST",
+				dataType: "json",
+				success: renderTimings
+			});
+		}
+
+		jQuery(document).ready(loadTimings);
+
+	</script>
+</head>
+<body>
+
+	<div id="hookTimingsContent">
+		<div>
+			${translationsMap['basic.hookTimings.since']}&nbsp;<span id="hookTimingsSince"></span>
+			&nbsp;<a href="#" onclick="loadTimings(); return false;">${translationsMap['basic.hookTimings.refresh']}</a>
+			&nbsp;<a href="#" onclick="resetTimings(); return false;">${translationsMap['basic.hookTimings.reset']}</a>
+		</div>
+		<div id="hookTimingsDisabled" style="display: none;">
+			${translationsMap['basic.hookTimings.disabled']}
+		</div>
+		<table id="hookTimingsTable">
+			<thead>
+				<tr>
+					<th>${translationsMap['basic.hookTimings.column.kind']}</th>
+					<th>${translationsMap['basic.hookTimings.column.method']}</th>
+					<th>${translationsMap['basic.hookTimings.column.target']}</th>
+					<th>${translationsMap['basic.hookTimings.column.count']}</th>
+					<th>${translationsMap['basic.hookTimings.column.failures']}</th>
+					<th>${translationsMap['basic.hookTimings.column.totalMs']}</th>
+					<th>${translationsMap['basic.hookTimings.column.avgMs']}</th>
+					<th>${translationsMap['basic.hookTimings.column.p50Ms']}</th>
+					<th>${translationsMap['basic.hookTimings.column.p95Ms']}</th>
+					<th>${translationsMap['basic.hookTimings.column.p99Ms']}</th>
+					<th>${translationsMap['basic.hookTimings.column.maxMs']}</th>
+				</tr>
+			</thead>
+			<tbody></tbody>
+		</table>
+	</div>
+
+</body>
+</html>
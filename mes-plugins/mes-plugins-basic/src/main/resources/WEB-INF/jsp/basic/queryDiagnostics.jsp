@@ -0,0 +1,122 @@
+<%--
+
+    ***************************************************************************
+    Copyright (c) 2010 Qcadoo Limited
+    Project: Qcadoo MES
+    Version: 1.4
+
+    This file is part of Qcadoo.
+
+    Qcadoo is free software; you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation; either version 3 of the License,
+    or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty
+    of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+    See the GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+    ***************************************************************************
+
+--%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
+<!DOCTYPE html PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN" "http://www.w3.org/TR/html4/loose.dtd">
+
+<html>
+<head>
+
+	<c:choose>
+		<c:when test="${useCompressedStaticResources}">
+			<link rel="stylesheet" href="${pageContext.request.contextPath}/qcadooView/public/qcadoo-min.css?ver=${buildNumber}" type="text/css" />
+		</c:when>
+		<c:otherwise>
+			<link rel="stylesheet" href="${pageContext.request.contextPath}/qcadooView/public/css/core/dashboard.css?ver=${buildNumber}" type="text/css" />
+		</c:otherwise>
+	</c:choose>
+	<script type="text/javascript" src="${pageContext.request.contextPath}/qcadooView/public/js/core/lib/_jquery-1.4.2.min.js?ver=${buildNumber}"></script>
+
+	<style type="text/css">
+		#queryDiagnosticsContent { padding: 10px; font-family: Arial, sans-serif; font-size: 12px; }
+		.queryScope { margin-top: 12px; }
+		.queryScopeHeader { font-weight: bold; }
+		.queryScopeTable { border-collapse: collapse; width: 100%; margin-top: 4px; }
+		.queryScopeTable th, .queryScopeTable td { border: 1px solid #c0c0c0; padding: 3px 6px; text-align: left; vertical-align: top; }
+		.queryScopeTable th { background: #e8e8e8; }
+		.queryScopeTable td.count { text-align: right; }
+	</style>
+
+	<script type="text/javascript">
+
+		function escapeHtml(value) {
+			return $("<div/>").text(value == null ? "" : value).html();
+		}
+
+		function renderScopes(data) {
+			var scopes = [];
+
+			$.each(data.scopes, function (i, scope) {
+				var html = "<div class='queryScope'><div class='queryScopeHeader'>" + escapeHtml(scope.name) + " &ndash; "
+					+ escapeHtml(new Date(scope.startDate).toLocaleString()) + " &ndash; "
+					+ "${translationsMap['basic.queryDiagnostics.statementsCount']} " + scope.statementsCount + "</div>"
+					+ "<table class='queryScopeTable'><thead><tr>"
+					+ "<th>${translationsMap['basic.queryDiagnostics.column.count']}</th>"
+					+ "<th>${translationsMap['basic.queryDiagnostics.column.callSite']}</th>"
+					+ "<th>${translationsMap['basic.queryDiagnostics.column.sql']}</th>"
+					+ "</tr></thead><tbody>";
+
+				$.each(scope.repeatedQueries, function (j, query) {
+					html += "<tr><td class='count'>" + query.count + "</td><td>" + escapeHtml(query.callSite) + "</td><td>"
+						+ escapeHtml(query.sql) + "</td></tr>";
+				});
+
+				scopes.push(html + "</tbody></table></div>");
+			});
+
+			$("#queryDiagnosticsThreshold").text(data.repeatThreshold);
+			$("#queryDiagnosticsDisabled").toggle(!data.enabled);
+			$("#queryDiagnosticsScopes").html(scopes.join(""));
+		}
+
+		function loadScopes() {
+			$.ajax({
+				url: "${pageContext.request.contextPath}/rest/diagnostics/queries",
+				type: "GET",
+				dataType: "json",
+				success: renderScopes
+			});
+		}
+
+		function resetScopes() {
+			$.ajax({
+				url: "${pageContext.request.contextPath}/rest/diagnostics/queries/reset",
+				type: "POST",
+				dataType: "json",
+				success: renderScopes
+			});
+		}
+
+		jQuery(document).ready(loadScopes);
+
+	</script>
+</head>
+<body>
+
+	<div id="queryDiagnosticsContent">
+		<div>
+			${translationsMap['basic.queryDiagnostics.threshold']}&nbsp;<span id="queryDiagnosticsThreshold"></span>
+			&nbsp;<a href="#" onclick="loadScopes(); return false;">${translationsMap['basic.queryDiagnostics.refresh']}</a>
+			&nbsp;<a href="#" onclick="resetScopes(); return false;">${translationsMap['basic.queryDiagnostics.reset']}</a>
+		</div>
+		<div id="queryDiagnosticsDisabled" style="display: none;">
+			${translationsMap['basic.queryDiagnostics.disabled']}
+		</div>
+		<div id="queryDiagnosticsScopes"></div>
+	</div>
+
+</body>
+</html>
@@ -0,0 +1,152 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class NumberSequenceServiceTest {
+
+    private NumberSequenceService numberSequenceService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        numberSequenceService = new NumberSequenceService();
+
+        setField(numberSequenceService, "jdbcTemplate", jdbcTemplate);
+        setField(numberSequenceService, "transactionManager", transactionManager);
+        setField(numberSequenceService, "multiTenantService", multiTenantService);
+
+        given(transactionManager.getTransaction(any(TransactionDefinition.class))).willReturn(transactionStatus);
+    }
+
+    @Test
+    public final void shouldReserveOneBlockForConsecutiveNumbers() {
+        // given
+        given(jdbcTemplate.queryForList(anyString(), any(MapSqlParameterSource.class), eq(Long.class))).willReturn(
+                Collections.singletonList(5L));
+
+        // when
+        String first = numberSequenceService.generate(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PALLET_NUMBER,
+                "", 6);
+        String second = numberSequenceService.generate(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PALLET_NUMBER,
+                "", 6);
+
+        // then
+        assertEquals("000005", first);
+        assertEquals("000006", second);
+
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), any(MapSqlParameterSource.class), eq(Long.class));
+    }
+
+    @Test
+    public final void shouldNotShareReservedBlockBetweenTenants() {
+        // given
+        given(jdbcTemplate.queryForList(anyString(), any(MapSqlParameterSource.class), eq(Long.class))).willReturn(
+                Collections.singletonList(5L), Collections.singletonList(40L));
+        given(multiTenantService.getCurrentTenantId()).willReturn(1, 2);
+
+        // when
+        String first = numberSequenceService.generate(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PALLET_NUMBER,
+                "", 6);
+        String second = numberSequenceService.generate(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PALLET_NUMBER,
+                "", 6);
+
+        // then
+        assertEquals("000005", first);
+        assertEquals("000040", second);
+
+        verify(jdbcTemplate, times(2)).queryForList(anyString(), any(MapSqlParameterSource.class), eq(Long.class));
+    }
+
+    @Test
+    public final void shouldReserveBulkQuantityInOneRoundTrip() {
+        // given
+        given(jdbcTemplate.queryForList(anyString(), any(MapSqlParameterSource.class), eq(Long.class))).willReturn(
+                Collections.singletonList(1L));
+
+        // when
+        List<String> numbers = numberSequenceService.generate(BasicConstants.PLUGIN_IDENTIFIER,
+                BasicConstants.MODEL_PALLET_NUMBER, "", 6, 1000);
+
+        // then
+        assertEquals(1000, numbers.size());
+        assertEquals("000001", numbers.get(0));
+        assertEquals("001000", numbers.get(999));
+
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), any(MapSqlParameterSource.class), eq(Long.class));
+    }
+
+    @Test
+    public final void shouldCreateSequenceWhenItDoesNotExist() {
+        // given
+        given(jdbcTemplate.queryForList(anyString(), any(MapSqlParameterSource.class), eq(Long.class))).willReturn(
+                Collections.<Long> emptyList(), Collections.singletonList(12L));
+
+        // when
+        String number = numberSequenceService.generate("materialFlow", "transfer", "P-1-", 3);
+
+        // then
+        assertEquals("P-1-012", number);
+
+        verify(jdbcTemplate).update(anyString(), any(MapSqlParameterSource.class));
+    }
+
+}
@@ -25,24 +25,33 @@ package com.qcadoo.mes.basic;
 
 import static com.qcadoo.mes.basic.constants.BasicConstants.MODEL_PARAMETER;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.Collections;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.FieldDefinition;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 public class ParameterServiceTest {
 
@@ -57,11 +66,19 @@ public class ParameterServiceTest {
     @Mock
     private SearchQueryBuilder searchQueryBuilder;
 
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
     @Before
     public final void init() {
         MockitoAnnotations.initMocks(this);
         parameterService = new ParameterService();
         ReflectionTestUtils.setField(parameterService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(parameterService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(parameterService, "multiTenantService", multiTenantService);
 
         given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, MODEL_PARAMETER)).willReturn(parameterDD);
         given(parameterDD.find(Mockito.anyString())).willReturn(searchQueryBuilder);
@@ -135,4 +152,81 @@ public class ParameterServiceTest {
         parameterService.getParameter();
     }
 
+    @Test
+    public void shouldReuseParameterSnapshotWhenVersionIsNotChanged() throws Exception {
+        // given
+        Entity parameter = mockParameterWithUnit("szt");
+        given(searchQueryBuilder.uniqueResult()).willReturn(parameter);
+        givenStoredSnapshotVersion(3);
+
+        // when
+        ParameterSnapshot firstSnapshot = parameterService.getParameterSnapshot();
+        ParameterSnapshot secondSnapshot = parameterService.getParameterSnapshot();
+
+        // then
+        assertSame(firstSnapshot, secondSnapshot);
+        assertEquals("szt", secondSnapshot.getStringField("unit"));
+        assertEquals(3, secondSnapshot.getVersion());
+        verify(searchQueryBuilder, times(1)).uniqueResult();
+    }
+
+    @Test
+    public void shouldRebuildParameterSnapshotWhenVersionIsChanged() throws Exception {
+        // given
+        Entity parameter = mockParameterWithUnit("szt");
+        Entity changedParameter = mockParameterWithUnit("kg");
+        given(searchQueryBuilder.uniqueResult()).willReturn(parameter, changedParameter);
+        givenStoredSnapshotVersion(3);
+
+        ParameterSnapshot firstSnapshot = parameterService.getParameterSnapshot();
+
+        givenStoredSnapshotVersion(4);
+
+        // when
+        ParameterSnapshot secondSnapshot = parameterService.getParameterSnapshot();
+
+        // then
+        assertNotSame(firstSnapshot, secondSnapshot);
+        assertEquals("szt", firstSnapshot.getStringField("unit"));
+        assertEquals("kg", secondSnapshot.getStringField("unit"));
+        assertEquals(4, secondSnapshot.getVersion());
+    }
+
+    @Test
+    public void shouldNotShareParameterSnapshotBetweenTenants() throws Exception {
+        // given
+        Entity parameter = mockParameterWithUnit("szt");
+        Entity otherTenantParameter = mockParameterWithUnit("kg");
+        given(searchQueryBuilder.uniqueResult()).willReturn(parameter, otherTenantParameter);
+        givenStoredSnapshotVersion(3);
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+
+        ParameterSnapshot firstSnapshot = parameterService.getParameterSnapshot();
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(2);
+
+        // when
+        ParameterSnapshot otherTenantSnapshot = parameterService.getParameterSnapshot();
+
+        // then
+        assertNotSame(firstSnapshot, otherTenantSnapshot);
+        assertEquals("szt", firstSnapshot.getStringField("unit"));
+        assertEquals("kg", otherTenantSnapshot.getStringField("unit"));
+    }
+
+    private Entity mockParameterWithUnit(final String unit) {
+        Entity parameter = mock(Entity.class);
+        given(parameter.getId()).willReturn(13L);
+        given(parameter.getDataDefinition()).willReturn(parameterDD);
+        given(parameter.getField("unit")).willReturn(unit);
+        given(parameterDD.getFields()).willReturn(Collections.singletonMap("unit", mock(FieldDefinition.class)));
+
+        return parameter;
+    }
+
+    private void givenStoredSnapshotVersion(final int version) {
+        given(jdbcTemplate.queryForList(Mockito.anyString(), Mockito.any(SqlParameterSource.class), Mockito.eq(Integer.class)))
+                .willReturn(Collections.singletonList(version));
+    }
+
 }
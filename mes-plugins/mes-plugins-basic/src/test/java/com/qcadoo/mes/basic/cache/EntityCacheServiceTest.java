@@ -0,0 +1,150 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+public class EntityCacheServiceTest {
+
+    private static final Long L_ID = 1L;
+
+    private EntityCacheService entityCacheService;
+
+    @Mock
+    private DataDefinition productDD;
+
+    @Mock
+    private Entity product, reloadedProduct;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        entityCacheService = new EntityCacheService();
+
+        given(productDD.getPluginIdentifier()).willReturn("basic");
+        given(productDD.getName()).willReturn("product");
+        given(productDD.get(L_ID)).willReturn(product, reloadedProduct);
+
+        given(product.getDataDefinition()).willReturn(productDD);
+        given(product.getId()).willReturn(L_ID);
+    }
+
+    @Test
+    public void shouldLoadEntityEveryTimeWithoutOpenScope() {
+        // when
+        Entity first = entityCacheService.get(productDD, L_ID);
+        Entity second = entityCacheService.get(productDD, L_ID);
+
+        // then
+        assertSame(product, first);
+        assertSame(reloadedProduct, second);
+        assertFalse(entityCacheService.isScopeOpen());
+        assertTrue(entityCacheService.getStatistics().isEmpty());
+    }
+
+    @Test
+    public void shouldReturnSameEntityInsideScope() {
+        // when
+        try (EntityCacheScope scope = entityCacheService.open("test")) {
+            Entity first = entityCacheService.get(productDD, L_ID);
+            Entity second = entityCacheService.reload(product);
+            Entity third = entityCacheService.get(productDD, L_ID);
+
+            // then
+            assertSame(product, first);
+            assertSame(product, second);
+            assertSame(product, third);
+            assertEquals(2, scope.getHits());
+            assertEquals(1, scope.getMisses());
+        }
+
+        verify(productDD, times(1)).get(L_ID);
+
+        List<Map<String, Object>> statistics = entityCacheService.getStatistics();
+
+        assertEquals(1, statistics.size());
+        assertEquals("basic.product", statistics.get(0).get("model"));
+        assertEquals(2L, statistics.get(0).get("hits"));
+        assertEquals(1L, statistics.get(0).get("misses"));
+    }
+
+    @Test
+    public void shouldLoadEntityAgainAfterEviction() {
+        // when
+        try (EntityCacheScope scope = entityCacheService.open("test")) {
+            Entity first = entityCacheService.get(productDD, L_ID);
+
+            entityCacheService.evict(product);
+
+            Entity second = entityCacheService.get(productDD, L_ID);
+
+            // then
+            assertSame(product, first);
+            assertSame(reloadedProduct, second);
+        }
+
+        assertEquals(1L, entityCacheService.getStatistics().get(0).get("evictions"));
+    }
+
+    @Test
+    public void shouldShareEntitiesWithNestedScopeAndDropThemWhenOuterScopeIsClosed() {
+        // when
+        try (EntityCacheScope outerScope = entityCacheService.open("outer")) {
+            entityCacheService.get(productDD, L_ID);
+
+            try (EntityCacheScope innerScope = entityCacheService.open("inner")) {
+                assertSame(product, entityCacheService.get(productDD, L_ID));
+                assertEquals(1, innerScope.getHits());
+            }
+
+            assertTrue(entityCacheService.isScopeOpen());
+        }
+
+        // then
+        assertFalse(entityCacheService.isScopeOpen());
+
+        try (EntityCacheScope scope = entityCacheService.open("next")) {
+            assertSame(reloadedProduct, entityCacheService.get(productDD, L_ID));
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.diagnostics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class HookTimingsTest {
+
+    @Test
+    public void shouldPutDurationIntoBucketContainingIt() {
+        for (long micros = 0; micros < 100000; micros += 7) {
+            int bucket = HookTimings.bucketOf(micros);
+
+            assertTrue(micros < HookTimings.upperBoundOf(bucket));
+
+            if (bucket > 0) {
+                assertTrue(micros >= HookTimings.upperBoundOf(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void shouldEstimatePercentiles() {
+        // given
+        HookTimings hookTimings = new HookTimings("modelHook");
+
+        for (int i = 0; i < 99; i++) {
+            hookTimings.record(1000000L, false);
+        }
+
+        hookTimings.record(200000000L, true);
+
+        // when
+        Map<String, Object> timings = hookTimings.toMap();
+
+        // then
+        assertEquals(100L, timings.get("count"));
+        assertEquals(1L, timings.get("failures"));
+        assertEquals(200d, timings.get("maxMs"));
+        assertEquals(1.024d, timings.get("p50Ms"));
+        assertEquals(1.024d, timings.get("p99Ms"));
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.diagnostics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class QueryDiagnosticsServiceTest {
+
+    private QueryDiagnosticsService queryDiagnosticsService;
+
+    @Before
+    public void init() {
+        queryDiagnosticsService = new QueryDiagnosticsService();
+
+        ReflectionTestUtils.setField(queryDiagnosticsService, "repeatThreshold", 3);
+        ReflectionTestUtils.setField(queryDiagnosticsService, "historySize", 10);
+    }
+
+    @Test
+    public void shouldNormalizeStatementsDifferingOnlyInParameters() {
+        // when
+        String first = QueryScope.normalize("select p.id from basic_product p0_ where p0_.id = 15 and p0_.number = 'A''1'");
+        String second = QueryScope.normalize("select p.id  from basic_product p0_\n where p0_.id = 2 and p0_.number = 'B'");
+        String inList = QueryScope.normalize("select * from basic_product where id IN (?, ?, ?)");
+
+        // then
+        assertEquals(first, second);
+        assertEquals("select p.id from basic_product p0_ where p0_.id = ? and p0_.number = ?", first);
+        assertEquals("select * from basic_product where id in (?...)", inList);
+    }
+
+    @Test
+    public void shouldFlagScopeWithRepeatedQueries() {
+        // given
+        QueryScope scope = queryDiagnosticsService.open("GET /page/basic/productDetails.html");
+
+        for (long id = 1; id <= 4; id++) {
+            queryDiagnosticsService.record("select * from basic_product where id = " + id);
+        }
+
+        queryDiagnosticsService.record("select * from basic_parameter");
+
+        // when
+        scope.close();
+
+        // then
+        List<Map<String, Object>> flaggedScopes = queryDiagnosticsService.getFlaggedScopes();
+
+        assertEquals(1, flaggedScopes.size());
+        assertEquals(5, flaggedScopes.get(0).get("statementsCount"));
+        assertEquals(1, ((List<?>) flaggedScopes.get(0).get("repeatedQueries")).size());
+    }
+
+    @Test
+    public void shouldNotCountStatementsOutsideScope() {
+        // given
+        queryDiagnosticsService.record("select * from basic_product");
+
+        // when
+        QueryScope scope = queryDiagnosticsService.open("operation");
+        scope.close();
+
+        // then
+        assertEquals(0, scope.getStatementsCount());
+        assertTrue(queryDiagnosticsService.getFlaggedScopes().isEmpty());
+    }
+
+    @Test(expected = AssertionError.class)
+    public void shouldFailWhenQueryBudgetIsExceeded() {
+        try (QueryScope scope = queryDiagnosticsService.open("operation")) {
+            queryDiagnosticsService.record("select * from basic_product where id = 1");
+            queryDiagnosticsService.record("select * from basic_product where id = 2");
+
+            scope.assertStatementsAtMost(1);
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.tree;
+
+import static com.qcadoo.mes.basic.constants.ProductFields.ENTITY_TYPE;
+import static com.qcadoo.mes.basic.constants.ProductFields.NODE_NUMBER;
+import static com.qcadoo.mes.basic.constants.ProductFields.PARENT;
+import static com.qcadoo.mes.basic.constants.ProductFields.PRODUCT_FAMILY_CHILDRENS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFamilyElementType;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+
+public class ProductNumberingServiceImplTest {
+
+    private static final String L_PRODUCTS_FAMILY = ProductFamilyElementType.PRODUCTS_FAMILY.getStringValue();
+
+    private static final String L_PARTICULAR_PRODUCT = ProductFamilyElementType.PARTICULAR_PRODUCT.getStringValue();
+
+    private ProductNumberingServiceImpl productNumberingService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ProductFamilyClosureService productFamilyClosureService;
+
+    @Mock
+    private DataDefinition productDD;
+
+    @Mock
+    private Entity product, existingProduct, parent, existingParent;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productNumberingService = new ProductNumberingServiceImpl();
+
+        ReflectionTestUtils.setField(productNumberingService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(productNumberingService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(productNumberingService, "productFamilyClosureService", productFamilyClosureService);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)).willReturn(productDD);
+
+        given(parent.getId()).willReturn(7L);
+        given(parent.getStringField(NODE_NUMBER)).willReturn("2.1");
+    }
+
+    @Test
+    public void shouldGenerateNextRootNodeNumberForProductsFamily() {
+        // given
+        given(product.getStringField(ENTITY_TYPE)).willReturn(L_PRODUCTS_FAMILY);
+        given(jdbcTemplate.queryForObject(anyString(), anyMap(), eq(Integer.class))).willReturn(4);
+
+        // when
+        productNumberingService.generateNodeNumber(product);
+
+        // then
+        verify(productFamilyClosureService).lockNodeNumbers();
+        verify(product).setField(NODE_NUMBER, "4");
+    }
+
+    @Test
+    public void shouldGenerateNextNodeNumberUnderParent() {
+        // given
+        given(product.getStringField(ENTITY_TYPE)).willReturn(L_PARTICULAR_PRODUCT);
+        given(product.getBelongsToField(PARENT)).willReturn(parent);
+        given(jdbcTemplate.queryForObject(anyString(), any(SqlParameterSource.class), eq(Integer.class))).willReturn(3);
+
+        // when
+        productNumberingService.generateNodeNumber(product);
+
+        // then
+        ArgumentCaptor<SqlParameterSource> parametersCaptor = ArgumentCaptor.forClass(SqlParameterSource.class);
+
+        verify(productFamilyClosureService).lockNodeNumbers();
+        verify(jdbcTemplate).queryForObject(anyString(), parametersCaptor.capture(), eq(Integer.class));
+        verify(product).setField(NODE_NUMBER, "2.1.3");
+
+        MapSqlParameterSource parameters = (MapSqlParameterSource) parametersCaptor.getValue();
+
+        assertEquals(7L, parameters.getValue("parentId"));
+        assertEquals("2.1.%", parameters.getValue("prefix"));
+        assertEquals(5, parameters.getValue("suffixStart"));
+    }
+
+    @Test
+    public void shouldClearNodeNumberOfParticularProductWithoutParent() {
+        // given
+        given(product.getStringField(ENTITY_TYPE)).willReturn(L_PARTICULAR_PRODUCT);
+
+        // when
+        productNumberingService.generateNodeNumber(product);
+
+        // then
+        verify(product).setField(NODE_NUMBER, null);
+        verify(productFamilyClosureService, never()).lockNodeNumbers();
+    }
+
+    @Test
+    public void shouldRenumberDescendantsWithClosureWhenProductsFamilyIsMoved() {
+        // given
+        givenMovedProductsFamily("1.2");
+        given(product.getStringField(NODE_NUMBER)).willReturn("2.1.3");
+        given(jdbcTemplate.queryForObject(anyString(), any(SqlParameterSource.class), eq(Integer.class))).willReturn(3);
+
+        // when
+        productNumberingService.updateNodeNumber(product);
+
+        // then
+        verify(product).setField(NODE_NUMBER, "2.1.3");
+        verify(productFamilyClosureService).renumberDescendants(5L, "1.2", "2.1.3");
+        verify(product, never()).getHasManyField(PRODUCT_FAMILY_CHILDRENS);
+    }
+
+    @Test
+    public void shouldRenumberChildrenOneByOneWhenProductsFamilyHadNoNodeNumber() {
+        // given
+        givenMovedProductsFamily(null);
+        given(product.getStringField(NODE_NUMBER)).willReturn("2.1.3");
+        given(jdbcTemplate.queryForObject(anyString(), any(SqlParameterSource.class), eq(Integer.class))).willReturn(3);
+
+        EntityList children = mockEntityList(Collections.<Entity> emptyList());
+        given(product.getHasManyField(PRODUCT_FAMILY_CHILDRENS)).willReturn(children);
+
+        // when
+        productNumberingService.updateNodeNumber(product);
+
+        // then
+        verify(product).getHasManyField(PRODUCT_FAMILY_CHILDRENS);
+        verify(productFamilyClosureService, never()).renumberDescendants(any(Long.class), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldNotRenumberWhenParentIsNotChanged() {
+        // given
+        given(product.getId()).willReturn(5L);
+        given(product.getStringField(ENTITY_TYPE)).willReturn(L_PRODUCTS_FAMILY);
+        given(product.getBelongsToField(PARENT)).willReturn(parent);
+        given(productDD.get(5L)).willReturn(existingProduct);
+        given(existingProduct.getBelongsToField(PARENT)).willReturn(parent);
+        given(existingProduct.getStringField(ENTITY_TYPE)).willReturn(L_PRODUCTS_FAMILY);
+
+        // when
+        productNumberingService.updateNodeNumber(product);
+
+        // then
+        verify(productFamilyClosureService, never()).lockNodeNumbers();
+        verify(productFamilyClosureService, never()).renumberDescendants(any(Long.class), anyString(), anyString());
+    }
+
+    private void givenMovedProductsFamily(final String oldNodeNumber) {
+        given(product.getId()).willReturn(5L);
+        given(product.getStringField(ENTITY_TYPE)).willReturn(L_PRODUCTS_FAMILY);
+        given(product.getBelongsToField(PARENT)).willReturn(parent);
+        given(productDD.get(5L)).willReturn(existingProduct);
+        given(existingProduct.getBelongsToField(PARENT)).willReturn(existingParent);
+        given(existingProduct.getStringField(ENTITY_TYPE)).willReturn(L_PRODUCTS_FAMILY);
+        given(existingProduct.getStringField(NODE_NUMBER)).willReturn(oldNodeNumber);
+    }
+
+    private EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+        given(entityList.iterator()).willReturn(entities.iterator());
+        return entityList;
+    }
+
+}
@@ -39,7 +39,7 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.qcadoo.mes.basic.constants.ProductFields;
-import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
+import com.qcadoo.mes.basic.util.ProductUnitsConversionService;
 import com.qcadoo.mes.cmmsMachineParts.constants.CmmsMachinePartsConstants;
 import com.qcadoo.mes.cmmsMachineParts.constants.DocumentFieldsCMP;
 import com.qcadoo.mes.cmmsMachineParts.constants.EventType;
@@ -57,9 +57,7 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.PossibleUnitConversions;
-import com.qcadoo.model.api.units.UnitConversionService;
 
 @Service
 public class EventDocumentsService {
@@ -74,7 +72,7 @@ public class EventDocumentsService {
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
-    private UnitConversionService unitConversionService;
+    private ProductUnitsConversionService productUnitsConversionService;
 
     @Autowired
     private NumberService numberService;
@@ -147,9 +145,7 @@ public class EventDocumentsService {
             String unit = product.getStringField(ProductFields.UNIT);
             BigDecimal conversion = BigDecimal.ONE;
             if (!StringUtils.isEmpty(additionalUnit)) {
-                PossibleUnitConversions unitConversions = unitConversionService.getPossibleConversions(unit,
-                        searchCriteriaBuilder -> searchCriteriaBuilder
-                                .add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT, product)));
+                PossibleUnitConversions unitConversions = productUnitsConversionService.getPossibleConversions(product, unit);
                 if (unitConversions.isDefinedFor(additionalUnit)) {
                     BigDecimal convertedQuantity = unitConversions.convertTo(quantity, additionalUnit);
                     conversion = convertedQuantity.divide(quantity, numberService.getMathContext());
@@ -0,0 +1,371 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.NumberSequenceService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Recalculates costs of many technologies at once. Every technology is calculated on a pool thread in its own transaction,
+ * which loads the template calculation and the component products of the technology by id, in the tenant of the
+ * requesting user. Calculated totals are written with a single batch update at the end.
+ */
+@Service
+public class CostCalculationBatchService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CostCalculationBatchService.class);
+
+    private static final int L_NUMBER_DIGITS = 6;
+
+    private static final int L_PRODUCTS_BATCH_SIZE = 1000;
+
+    private static final List<String> L_COPIED_FIELDS = Lists.newArrayList(CostCalculationFields.QUANTITY,
+            CostCalculationFields.PRODUCTION_LINE, CostCalculationFields.INCLUDE_TPZ,
+            CostCalculationFields.INCLUDE_ADDITIONAL_TIME, CostCalculationFields.SOURCE_OF_MATERIAL_COSTS,
+            CostCalculationFields.CALCULATE_MATERIAL_COSTS_MODE, CostCalculationFields.SOURCE_OF_OPERATION_COSTS,
+            CostCalculationFields.CALCULATE_OPERATION_COSTS_MODE, CostCalculationFields.PRODUCTION_COST_MARGIN,
+            CostCalculationFields.MATERIAL_COST_MARGIN, CostCalculationFields.ADDITIONAL_OVERHEAD,
+            CostCalculationFields.REGISTRATION_PRICE_OVERHEAD, CostCalculationFields.PROFIT,
+            CostCalculationFields.PRINT_COST_NORMS_OF_MATERIALS, CostCalculationFields.PRINT_OPERATION_NORMS,
+            CostCalculationFields.DESCRIPTION, CostCalculationFields.ORDER, CostCalculationFields.TECHNOLOGY,
+            CostCalculationFields.DEFAULT_TECHNOLOGY, CostCalculationFields.PRODUCT);
+
+    @Value("${costCalculationBatchThreads:4}")
+    private int poolSize;
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private ExecutorService executorService;
+
+    @Autowired
+    private CostCalculationService costCalculationService;
+
+    @Autowired
+    private NumberSequenceService numberSequenceService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PostConstruct
+    void init() {
+        executorService = Executors.newFixedThreadPool(Math.max(1, poolSize), runnable -> {
+            Thread thread = new Thread(runnable, "costCalculationBatch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Creates a new cost calculation for every given one, with the same settings, order and technology, and calculates it
+     * against current prices.
+     *
+     * @param costCalculationsIds
+     *            ids of cost calculations to recalculate
+     * @param progressListener
+     *            notified after every calculated technology, may be null
+     * @return ids of created cost calculations and numbers of technologies which failed
+     */
+    public BatchResult recalculate(final List<Long> costCalculationsIds, final ProgressListener progressListener) {
+        BatchResult result = new BatchResult();
+
+        if (costCalculationsIds.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Long> technologiesIds = getTechnologiesIds(costCalculationsIds);
+        Map<Long, List<Long>> componentProductsIds = getComponentProductsIds(technologiesIds.values());
+        List<String> numbers = numberSequenceService.generate(CostCalculationConstants.PLUGIN_IDENTIFIER,
+                CostCalculationConstants.MODEL_COST_CALCULATION, "", L_NUMBER_DIGITS, costCalculationsIds.size());
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        int tenantId = multiTenantService.getCurrentTenantId();
+        AtomicInteger calculated = new AtomicInteger();
+        List<Future<Entity>> futures = Lists.newArrayListWithCapacity(costCalculationsIds.size());
+
+        for (int i = 0; i < costCalculationsIds.size(); i++) {
+            Long templateId = costCalculationsIds.get(i);
+            List<Long> productsIds = componentProductsIds.getOrDefault(technologiesIds.get(templateId),
+                    Collections.emptyList());
+            String number = numbers.get(i);
+
+            futures.add(executorService.submit(() -> {
+                try {
+                    return calculateInTenant(tenantId, transactionTemplate, templateId, productsIds, number);
+                } finally {
+                    if (progressListener != null) {
+                        progressListener.onProgress(calculated.incrementAndGet(), costCalculationsIds.size());
+                    }
+                }
+            }));
+        }
+
+        List<Entity> costCalculations = Lists.newArrayListWithCapacity(costCalculationsIds.size());
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                costCalculations.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Batch cost calculation was interrupted", e);
+            } catch (ExecutionException e) {
+                String technologyNumber = getTechnologyNumber(technologiesIds.get(costCalculationsIds.get(i)));
+
+                LOG.warn("Problem with cost calculation of technology " + technologyNumber, e.getCause());
+
+                result.addFailure(technologyNumber, e.getCause());
+            }
+        }
+
+        updateTotals(costCalculations);
+
+        for (Entity costCalculation : costCalculations) {
+            result.addCostCalculationId(costCalculation.getId());
+        }
+
+        return result;
+    }
+
+    private Entity calculateInTenant(final int tenantId, final TransactionTemplate transactionTemplate, final Long templateId,
+            final List<Long> productsIds, final String number) {
+        AtomicReference<Entity> costCalculation = new AtomicReference<>();
+
+        multiTenantService.doInMultiTenantContext(tenantId, new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                costCalculation.set(transactionTemplate.execute(status -> calculate(templateId, productsIds, number)));
+            }
+
+        });
+
+        return costCalculation.get();
+    }
+
+    private Entity calculate(final Long templateId, final List<Long> productsIds, final String number) {
+        DataDefinition costCalculationDD = dataDefinitionService.get(CostCalculationConstants.PLUGIN_IDENTIFIER,
+                CostCalculationConstants.MODEL_COST_CALCULATION);
+
+        Entity template = costCalculationDD.get(templateId);
+        Entity costCalculation = costCalculationDD.create();
+
+        for (String field : L_COPIED_FIELDS) {
+            costCalculation.setField(field, template.getField(field));
+        }
+
+        costCalculation.setField(CostCalculationFields.NUMBER, number);
+
+        costCalculation = costCalculationDD.save(costCalculation);
+
+        if (!costCalculation.isValid()) {
+            throw new IllegalStateException("Cost calculation " + number + " is not valid");
+        }
+
+        costCalculationService.calculateTotalCostWithoutSaving(costCalculation, getProducts(productsIds));
+        costCalculationService.calculateSellPriceOverhead(costCalculation);
+        costCalculationService.calculateSellPrice(costCalculation);
+
+        return costCalculation;
+    }
+
+    private Map<Long, Long> getTechnologiesIds(final List<Long> costCalculationsIds) {
+        Map<Long, Long> technologiesIds = Maps.newHashMapWithExpectedSize(costCalculationsIds.size());
+
+        jdbcTemplate.query("SELECT id, technology_id FROM costcalculation_costcalculation WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", costCalculationsIds),
+                resultSet -> {
+                    technologiesIds.put(resultSet.getLong("id"), resultSet.getLong("technology_id"));
+                });
+
+        return technologiesIds;
+    }
+
+    private Map<Long, List<Long>> getComponentProductsIds(final Collection<Long> technologiesIds) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT DISTINCT toc.technology_id, opic.product_id FROM technologies_operationproductincomponent opic ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON toc.id = opic.operationcomponent_id ");
+        query.append("WHERE toc.technology_id IN (:technologiesIds) ");
+
+        Map<Long, List<Long>> productsIds = Maps.newHashMap();
+
+        jdbcTemplate.query(query.toString(), new MapSqlParameterSource("technologiesIds", Sets.newHashSet(technologiesIds)),
+                resultSet -> {
+                    productsIds.computeIfAbsent(resultSet.getLong("technology_id"), technologyId -> Lists.newArrayList())
+                            .add(resultSet.getLong("product_id"));
+                });
+
+        return productsIds;
+    }
+
+    private Map<Long, Entity> getProducts(final List<Long> productsIds) {
+        DataDefinition productDD = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
+        Map<Long, Entity> products = Maps.newHashMapWithExpectedSize(productsIds.size());
+
+        for (List<Long> productsIdsPartition : Lists.partition(productsIds, L_PRODUCTS_BATCH_SIZE)) {
+            List<Entity> productsPartition = productDD.find().add(SearchRestrictions.in("id", productsIdsPartition)).list()
+                    .getEntities();
+
+            for (Entity product : productsPartition) {
+                products.put(product.getId(), product);
+            }
+        }
+
+        return Collections.unmodifiableMap(products);
+    }
+
+    private String getTechnologyNumber(final Long technologyId) {
+        return jdbcTemplate.queryForObject("SELECT number FROM technologies_technology WHERE id = :id",
+                new MapSqlParameterSource("id", technologyId), String.class);
+    }
+
+    private void updateTotals(final List<Entity> costCalculations) {
+        if (costCalculations.isEmpty()) {
+            return;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE costcalculation_costcalculation SET ");
+        query.append("totalmaterialcosts = :totalMaterialCosts, totalmachinehourlycosts = :totalMachineHourlyCosts, ");
+        query.append("totalpieceworkcosts = :totalPieceworkCosts, totallaborhourlycosts = :totalLaborHourlyCosts, ");
+        query.append("totaltechnicalproductioncosts = :totalTechnicalProductionCosts, ");
+        query.append("technicalproductioncosts = :technicalProductionCosts, ");
+        query.append("productioncostmarginvalue = :productionCostMarginValue, ");
+        query.append("materialcostmarginvalue = :materialCostMarginValue, ");
+        query.append("additionaloverheadvalue = :additionalOverheadValue, ");
+        query.append("registrationpriceoverheadvalue = :registrationPriceOverheadValue, profitvalue = :profitValue, ");
+        query.append("sellpricevalue = :sellPriceValue, totaloverhead = :totalOverhead, totalcosts = :totalCosts, ");
+        query.append("totalcostperunit = :totalCostPerUnit, date = :date ");
+        query.append("WHERE id = :id");
+
+        List<SqlParameterSource> parameters = Lists.newArrayListWithCapacity(costCalculations.size());
+
+        for (Entity costCalculation : costCalculations) {
+            MapSqlParameterSource parameter = new MapSqlParameterSource("id", costCalculation.getId());
+
+            for (String field : Lists.newArrayList(CostCalculationFields.TOTAL_MATERIAL_COSTS,
+                    CostCalculationFields.TOTAL_MACHINE_HOURLY_COSTS, CostCalculationFields.TOTAL_PIECEWORK_COSTS,
+                    CostCalculationFields.TOTAL_LABOR_HOURLY_COSTS, CostCalculationFields.TOTAL_TECHNICAL_PRODUCTION_COSTS,
+                    CostCalculationFields.TECHNICAL_PRODUCTION_COSTS, CostCalculationFields.PRODUCTION_COST_MARGIN_VALUE,
+                    CostCalculationFields.MATERIAL_COST_MARGIN_VALUE, CostCalculationFields.ADDITIONAL_OVERHEAD_VALUE,
+                    CostCalculationFields.REGISTRATION_PRICE_OVERHEAD_VALUE, CostCalculationFields.PROFIT_VALUE,
+                    CostCalculationFields.SELL_PRICE_VALUE, CostCalculationFields.TOTAL_OVERHEAD,
+                    CostCalculationFields.TOTAL_COSTS, CostCalculationFields.TOTAL_COST_PER_UNIT)) {
+                parameter.addValue(field, costCalculation.getDecimalField(field));
+            }
+
+            parameter.addValue(CostCalculationFields.DATE, costCalculation.getField(CostCalculationFields.DATE));
+
+            parameters.add(parameter);
+        }
+
+        jdbcTemplate.batchUpdate(query.toString(), parameters.toArray(new SqlParameterSource[parameters.size()]));
+    }
+
+    public interface ProgressListener {
+
+        void onProgress(final int calculated, final int total);
+
+    }
+
+    public static class BatchResult {
+
+        private final List<Long> costCalculationsIds = Lists.newArrayList();
+
+        private final Map<String, Throwable> failures = Maps.newLinkedHashMap();
+
+        void addCostCalculationId(final Long costCalculationId) {
+            costCalculationsIds.add(costCalculationId);
+        }
+
+        void addFailure(final String technologyNumber, final Throwable cause) {
+            failures.put(technologyNumber, cause);
+        }
+
+        public List<Long> getCostCalculationsIds() {
+            return costCalculationsIds;
+        }
+
+        public Map<String, Throwable> getFailures() {
+            return failures;
+        }
+
+        public boolean hasFailures() {
+            return !failures.isEmpty();
+        }
+
+    }
+
+}
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.costCalculation;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 import com.qcadoo.model.api.Entity;
 
@@ -39,6 +40,16 @@ public interface CostCalculationService {
      */
     Entity calculateTotalCost(final Entity entity);
 
+    /**
+     * Calculates total cost without saving the calculated values
+     * 
+     * @param entity
+     *            entity
+     * @param products
+     *            products by id, loaded in advance, used as cost norms of materials
+     */
+    void calculateTotalCostWithoutSaving(final Entity entity, final Map<Long, Entity> products);
+
     /**
      * Calculates operations and products costs
      * 
@@ -29,8 +29,10 @@ import static com.qcadoo.mes.costNormsForOperation.constants.CalculateOperationC
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -64,20 +66,29 @@ public class CostCalculationServiceImpl implements CostCalculationService {
 
     @Override
     public Entity calculateTotalCost(final Entity entity) {
+        calculateTotalCostWithoutSaving(entity, Collections.emptyMap());
+
+        return entity.getDataDefinition().save(entity);
+    }
+
+    @Override
+    public void calculateTotalCostWithoutSaving(final Entity entity, final Map<Long, Entity> products) {
         entity.setField(CostCalculationFields.DATE, new Date());
         // FIXME MAKU beware of side effects - order of computations matter!
-        calculateOperationsAndProductsCosts(entity);
+        calculateOperationsAndProductsCosts(entity, products);
         final BigDecimal productionCosts = calculateProductionCost(entity);
         calculateMarginsAndOverheads(entity, productionCosts);
         final BigDecimal effectiveQuantity = getEffectiveQuantity(entity);
 
         calculateTotalCosts(entity, productionCosts, effectiveQuantity);
-
-        return entity.getDataDefinition().save(entity);
     }
 
     @Override
     public void calculateOperationsAndProductsCosts(final Entity entity) {
+        calculateOperationsAndProductsCosts(entity, Collections.emptyMap());
+    }
+
+    private void calculateOperationsAndProductsCosts(final Entity entity, final Map<Long, Entity> products) {
         boolean hourlyCostFromOperation = true;
         String sourceOfOperationCosts = entity.getStringField("sourceOfOperationCosts");
         if (sourceOfOperationCosts != null
@@ -88,7 +99,7 @@ public class CostCalculationServiceImpl implements CostCalculationService {
 
         final String sourceOfMaterialCosts = entity.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS);
 
-        productsCostCalculationService.calculateTotalProductsCost(entity, sourceOfMaterialCosts);
+        productsCostCalculationService.calculateTotalProductsCost(entity, sourceOfMaterialCosts, products);
     }
 
     @Override
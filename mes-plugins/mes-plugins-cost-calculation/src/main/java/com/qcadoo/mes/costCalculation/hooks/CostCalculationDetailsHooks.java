@@ -35,6 +35,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.commons.functional.Either;
+import com.qcadoo.mes.basic.NumberSequenceService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.util.CurrencyService;
@@ -58,6 +59,8 @@ public class CostCalculationDetailsHooks {
 
     private static final String L_FORM = "form";
 
+    private static final int L_NUMBER_DIGITS = 6;
+
     private static final String L_WINDOW = "window";
 
     private static final String L_PRODUCTION_COST_MARGIN_PROC = "productionCostMarginProc";
@@ -81,6 +84,9 @@ public class CostCalculationDetailsHooks {
     @Autowired
     private NumberGeneratorService numberGeneratorService;
 
+    @Autowired
+    private NumberSequenceService numberSequenceService;
+
     @Autowired
     private CurrencyService currencyService;
 
@@ -216,8 +222,15 @@ public class CostCalculationDetailsHooks {
     }
 
     public void generateNumber(final ViewDefinitionState view) {
-        numberGeneratorService.generateAndInsertNumber(view, CostCalculationConstants.PLUGIN_IDENTIFIER,
-                CostCalculationConstants.MODEL_COST_CALCULATION, L_FORM, CostCalculationFields.NUMBER);
+        if (!numberGeneratorService.checkIfShouldInsertNumber(view, L_FORM, CostCalculationFields.NUMBER)) {
+            return;
+        }
+
+        FieldComponent numberField = (FieldComponent) view.getComponentByReference(CostCalculationFields.NUMBER);
+
+        numberField.setFieldValue(numberSequenceService.generate(CostCalculationConstants.PLUGIN_IDENTIFIER,
+                CostCalculationConstants.MODEL_COST_CALCULATION, "", L_NUMBER_DIGITS));
+        numberField.requestComponentUpdateState();
     }
 
     public void fillCurrencyFields(final ViewDefinitionState viewDefinitionState) {
@@ -0,0 +1,59 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.listeners;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.costCalculation.CostCalculationBatchService;
+import com.qcadoo.mes.costCalculation.CostCalculationBatchService.BatchResult;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+@Service
+public class CostCalculationListListeners {
+
+    @Autowired
+    private CostCalculationBatchService costCalculationBatchService;
+
+    public void recalculateCostCalculations(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        GridComponent grid = (GridComponent) state;
+
+        BatchResult result = costCalculationBatchService.recalculate(Lists.newArrayList(grid.getSelectedEntitiesIds()), null);
+
+        if (!result.getCostCalculationsIds().isEmpty()) {
+            grid.addMessage("costCalculation.costCalculationList.message.recalculated", MessageType.SUCCESS, false,
+                    String.valueOf(result.getCostCalculationsIds().size()));
+        }
+        if (result.hasFailures()) {
+            grid.addMessage("costCalculation.costCalculationList.message.recalculationFailed", MessageType.FAILURE, false,
+                    StringUtils.join(result.getFailures().keySet(), ", "));
+        }
+    }
+
+}
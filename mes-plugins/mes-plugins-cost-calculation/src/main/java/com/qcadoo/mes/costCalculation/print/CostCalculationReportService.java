@@ -26,6 +26,7 @@ package com.qcadoo.mes.costCalculation.print;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -33,6 +34,9 @@ import org.springframework.util.StringUtils;
 
 import com.lowagie.text.DocumentException;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.reports.ReportJobProgress;
+import com.qcadoo.mes.basic.reports.ReportJobService;
+import com.qcadoo.mes.basic.reports.ReportJobTask;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -49,6 +53,8 @@ import com.qcadoo.view.api.components.FormComponent;
 @Service
 public class CostCalculationReportService {
 
+    private static final String L_ROLE_CALCULATIONS = "ROLE_CALCULATIONS";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -61,6 +67,9 @@ public class CostCalculationReportService {
     @Autowired
     private CostCalculationPdfService costCalculationPdfService;
 
+    @Autowired
+    private ReportJobService reportJobService;
+
     public void printCostCalculationReport(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         reportService.printGeneratedReport(view, state, new String[] { args[0], CostCalculationConstants.PLUGIN_IDENTIFIER,
                 CostCalculationConstants.MODEL_COST_CALCULATION });
@@ -102,17 +111,14 @@ public class CostCalculationReportService {
                 return;
             }
 
-            costCalculation = getCostCalculation((Long) state.getFieldValue());
+            Long costCalculationId = (Long) state.getFieldValue();
 
-            try {
-                generateCostCalculationDocuments(state, costCalculation);
+            reportJobService.submit(CostCalculationConstants.PLUGIN_IDENTIFIER, CostCalculationConstants.MODEL_COST_CALCULATION,
+                    costCalculationId, L_ROLE_CALCULATIONS,
+                    new CostCalculationReportJobTask(costCalculationId, state.getLocale()));
 
-                state.performEvent(view, "reset", new String[0]);
-            } catch (IOException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            } catch (DocumentException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            }
+            state.performEvent(view, "reset", new String[0]);
+            state.addMessage("costCalculation.messages.info.documentsQueued", MessageType.INFO);
         }
     }
 
@@ -121,12 +127,42 @@ public class CostCalculationReportService {
                 CostCalculationConstants.MODEL_COST_CALCULATION).get(costCalculationId);
     }
 
-    private void generateCostCalculationDocuments(final ComponentState state, final Entity costCalculation) throws IOException,
-            DocumentException {
-        Entity costCalculationWithFileName = fileService.updateReportFileName(costCalculation, CostCalculationFields.DATE,
-                "costCalculation.costCalculation.report.fileName");
+    private final class CostCalculationReportJobTask implements ReportJobTask {
+
+        private final Long costCalculationId;
+
+        private final Locale locale;
+
+        private CostCalculationReportJobTask(final Long costCalculationId, final Locale locale) {
+            this.costCalculationId = costCalculationId;
+            this.locale = locale;
+        }
+
+        @Override
+        public String generate(final ReportJobProgress progress) throws IOException, DocumentException {
+            Entity costCalculationWithFileName = fileService.updateReportFileName(getCostCalculation(costCalculationId),
+                    CostCalculationFields.DATE, "costCalculation.costCalculation.report.fileName");
+
+            progress.update(10);
+
+            costCalculationPdfService.generateDocument(costCalculationWithFileName, locale);
+
+            return costCalculationWithFileName.getStringField(CostCalculationFields.FILE_NAME);
+        }
+
+        @Override
+        public void onFailure() {
+            Entity costCalculation = getCostCalculation(costCalculationId);
+
+            if (costCalculation != null) {
+                costCalculation.setField(CostCalculationFields.GENERATED, false);
+                costCalculation.setField(CostCalculationFields.DATE, null);
+                costCalculation.setField(CostCalculationFields.FILE_NAME, null);
+
+                costCalculation.getDataDefinition().fastSave(costCalculation);
+            }
+        }
 
-        costCalculationPdfService.generateDocument(costCalculationWithFileName, state.getLocale());
     }
 
 }
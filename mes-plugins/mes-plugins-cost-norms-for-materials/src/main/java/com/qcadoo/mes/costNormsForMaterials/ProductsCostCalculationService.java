@@ -24,6 +24,7 @@
 package com.qcadoo.mes.costNormsForMaterials;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 import com.qcadoo.model.api.Entity;
 
@@ -31,6 +32,19 @@ public interface ProductsCostCalculationService {
 
     void calculateTotalProductsCost(final Entity costCalculation, final String sourceOfMaterialCosts);
 
+    /**
+     * Calculates total products cost, taking cost norms of products from given products when present
+     * 
+     * @param costCalculation
+     *            cost calculation
+     * @param sourceOfMaterialCosts
+     *            source of material costs
+     * @param products
+     *            products by id, loaded in advance
+     */
+    void calculateTotalProductsCost(final Entity costCalculation, final String sourceOfMaterialCosts,
+            final Map<Long, Entity> products);
+
     BigDecimal calculateProductCostForGivenQuantity(final Entity product, final BigDecimal quantity,
             final String calculateMaterialCostsMode);
 
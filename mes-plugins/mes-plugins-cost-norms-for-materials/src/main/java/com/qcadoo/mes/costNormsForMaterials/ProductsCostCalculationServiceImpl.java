@@ -26,6 +26,7 @@ package com.qcadoo.mes.costNormsForMaterials;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -69,7 +70,14 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
 
     @Override
     public void calculateTotalProductsCost(final Entity entity, final String sourceOfMaterialCosts) {
-        Map<Entity, BigDecimal> listProductWithCost = calculateListProductsCostForPlannedQuantity(entity, sourceOfMaterialCosts);
+        calculateTotalProductsCost(entity, sourceOfMaterialCosts, Collections.emptyMap());
+    }
+
+    @Override
+    public void calculateTotalProductsCost(final Entity entity, final String sourceOfMaterialCosts,
+            final Map<Long, Entity> products) {
+        Map<Entity, BigDecimal> listProductWithCost = calculateListProductsCostForPlannedQuantity(entity, sourceOfMaterialCosts,
+                products);
         BigDecimal result = BigDecimal.ZERO;
         for (Entry<Entity, BigDecimal> productWithCost : listProductWithCost.entrySet()) {
             result = result.add(productWithCost.getValue(), numberService.getMathContext());
@@ -78,7 +86,7 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
     }
 
     private Map<Entity, BigDecimal> calculateListProductsCostForPlannedQuantity(final Entity entity,
-            final String sourceOfMaterialCosts) {
+            final String sourceOfMaterialCosts, final Map<Long, Entity> products) {
         checkArgument(entity != null);
         BigDecimal quantity = BigDecimalUtils.convertNullToZero(entity.getDecimalField("quantity"));
 
@@ -93,7 +101,7 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
         if ("02fromOrdersMaterialCosts".equals(sourceOfMaterialCosts)) {
             return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, order);
         } else if ("01currentGlobalDefinitionsInProduct".equals(sourceOfMaterialCosts)) {
-            return getProductWithCostForPlannedQuantities(entity, technology, quantity, calculateMaterialCostsMode);
+            return getProductWithCostForPlannedQuantities(entity, technology, quantity, calculateMaterialCostsMode, products);
         }
 
         throw new IllegalStateException("sourceOfProductCosts is neither FROM_ORDER nor GLOBAL");
@@ -114,12 +122,15 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
     }
 
     private Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity entity, final Entity technology,
-                                                                           final BigDecimal quantity, final String calculateMaterialCostsMode) {
+            final BigDecimal quantity, final String calculateMaterialCostsMode, final Map<Long, Entity> products) {
         Map<Long, BigDecimal> neededProductQuantities = getNeededProductQuantities(entity, technology, quantity,
                 MrpAlgorithm.ONLY_COMPONENTS);
         Map<Entity, BigDecimal> results = new HashMap<>();
         for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(productQuantity.getKey());
+            Entity product = products.get(productQuantity.getKey());
+            if (product == null) {
+                product = productQuantitiesService.getProduct(productQuantity.getKey());
+            }
             BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(product, productQuantity.getValue(),
                     calculateMaterialCostsMode);
             results.put(product, thisProductsCost);
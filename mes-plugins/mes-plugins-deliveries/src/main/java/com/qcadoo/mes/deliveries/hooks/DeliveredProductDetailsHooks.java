@@ -25,7 +25,7 @@ package com.qcadoo.mes.deliveries.hooks;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.constants.ProductFields;
-import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
+import com.qcadoo.mes.basic.util.ProductUnitsConversionService;
 import com.qcadoo.mes.deliveries.DeliveriesService;
 import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
 import com.qcadoo.mes.deliveries.constants.DeliveryFields;
@@ -35,7 +35,6 @@ import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.PossibleUnitConversions;
-import com.qcadoo.model.api.units.UnitConversionService;
 import com.qcadoo.plugin.api.PluginUtils;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FieldComponent;
@@ -63,7 +62,7 @@ public class DeliveredProductDetailsHooks {
     private DeliveriesService deliveriesService;
 
     @Autowired
-    private UnitConversionService unitConversionService;
+    private ProductUnitsConversionService productUnitsConversionService;
 
     public void beforeRender(final ViewDefinitionState view) {
         fillOrderedQuantities(view);
@@ -154,9 +153,7 @@ public class DeliveredProductDetailsHooks {
     }
 
     private BigDecimal getConversion(Entity product, String unit, String additionalUnit) {
-        PossibleUnitConversions unitConversions = unitConversionService.getPossibleConversions(unit,
-                searchCriteriaBuilder -> searchCriteriaBuilder
-                        .add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT, product)));
+        PossibleUnitConversions unitConversions = productUnitsConversionService.getPossibleConversions(product, unit);
         if (unitConversions.isDefinedFor(additionalUnit)) {
             return unitConversions.asUnitToConversionMap().get(additionalUnit);
         } else {
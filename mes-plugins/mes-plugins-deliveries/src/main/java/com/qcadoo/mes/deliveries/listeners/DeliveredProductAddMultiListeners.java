@@ -41,7 +41,6 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import com.qcadoo.mes.basic.CalculationQuantityService;
 import com.qcadoo.mes.basic.constants.ProductFields;
-import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
 import com.qcadoo.mes.basic.util.ProductUnitsConversionService;
 import com.qcadoo.mes.deliveries.DeliveredProductMultiPositionService;
 import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
@@ -57,9 +56,7 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.PossibleUnitConversions;
-import com.qcadoo.model.api.units.UnitConversionService;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.plugin.api.PluginUtils;
 import com.qcadoo.view.api.ComponentState;
@@ -83,7 +80,7 @@ public class DeliveredProductAddMultiListeners {
     private NumberService numberService;
 
     @Autowired
-    private UnitConversionService unitConversionService;
+    private ProductUnitsConversionService productUnitsConversionService;
 
     @Autowired
     private DeliveredProductAddMultiHooks deliveredProductAddMultiHooks;
@@ -444,9 +441,7 @@ public class DeliveredProductAddMultiListeners {
     }
 
     private BigDecimal getConversion(Entity product, String unit, String additionalUnit) {
-        PossibleUnitConversions unitConversions = unitConversionService.getPossibleConversions(unit,
-                searchCriteriaBuilder -> searchCriteriaBuilder.add(SearchRestrictions.belongsTo(
-                        UnitConversionItemFieldsB.PRODUCT, product)));
+        PossibleUnitConversions unitConversions = productUnitsConversionService.getPossibleConversions(product, unit);
 
         if (unitConversions.isDefinedFor(additionalUnit)) {
             return unitConversions.asUnitToConversionMap().get(additionalUnit);
@@ -30,6 +30,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -117,8 +118,16 @@ public class OperationsGanttChartItemResolverImpl implements OperationsGanttChar
             List<Entity> sortedOperationFromTree = entityTreeUtilsService.getSortedEntities(order.getBelongsToField(
                     OrderFields.TECHNOLOGY).getTreeField(TechnologyFields.OPERATION_COMPONENTS));
 
+            Map<Long, Entity> operationsById = operations.stream().collect(
+                    Collectors.toMap(Entity::getId, operation -> operation));
+
             for (Entity operationFromTree : sortedOperationFromTree) {
-                Entity operation = operations.get(operations.indexOf(operationFromTree));
+                Entity operation = operationsById.get(operationFromTree.getId());
+
+                if (operation == null) {
+                    continue;
+                }
+
                 Date dateFrom = operation.getBelongsToField(
                         TechnologyOperationComponentFieldsTNFO.TECH_OPER_COMP_TIME_CALCULATION).getDateField(
                         EFFECTIVE_DATE_FROM_FIELD);
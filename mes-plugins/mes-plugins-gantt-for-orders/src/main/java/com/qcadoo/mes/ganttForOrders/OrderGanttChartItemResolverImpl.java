@@ -23,6 +23,11 @@
  */
 package com.qcadoo.mes.ganttForOrders;
 
+import static com.qcadoo.model.api.search.SearchProjections.alias;
+import static com.qcadoo.model.api.search.SearchProjections.field;
+import static com.qcadoo.model.api.search.SearchProjections.id;
+import static com.qcadoo.model.api.search.SearchProjections.list;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -30,14 +35,21 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjection;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.view.api.components.ganttChart.GanttChartItem;
 import com.qcadoo.view.api.components.ganttChart.GanttChartScale;
@@ -45,6 +57,21 @@ import com.qcadoo.view.api.components.ganttChart.GanttChartScale;
 @Service
 public class OrderGanttChartItemResolverImpl implements OrderGanttChartItemResolver {
 
+    private static final String L_ID = "id";
+
+    private static final String L_PRODUCTION_LINE_ID = "productionLineId";
+
+    private static final String L_PRODUCTION_LINES_PLUGIN = "productionLines";
+
+    private static final String L_PRODUCTION_LINE_MODEL = "productionLine";
+
+    private static final SearchProjection ORDER_GANTT_PROJECTION = list().add(alias(id(), L_ID))
+            .add(alias(field(OrderFields.NUMBER), OrderFields.NUMBER)).add(alias(field(OrderFields.NAME), OrderFields.NAME))
+            .add(alias(field(OrderFields.STATE), OrderFields.STATE))
+            .add(alias(field(OrderFields.DATE_FROM), OrderFields.DATE_FROM))
+            .add(alias(field(OrderFields.DATE_TO), OrderFields.DATE_TO))
+            .add(alias(field(OrderFields.EFFECTIVE_DATE_FROM), OrderFields.EFFECTIVE_DATE_FROM));
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -52,13 +79,25 @@ public class OrderGanttChartItemResolverImpl implements OrderGanttChartItemResol
     private TranslationService translationService;
 
     @Override
-    @Transactional
+    @Transactional(readOnly = true)
     public Map<String, List<GanttChartItem>> resolve(final GanttChartScale scale, final JSONObject context, final Locale locale) {
-        List<Entity> orders = dataDefinitionService.get("orders", "order").find()
-                .add(SearchRestrictions.ne("state", "04completed")).add(SearchRestrictions.lt("dateFrom", scale.getDateTo()))
-                .add(SearchRestrictions.gt("dateTo", scale.getDateFrom())).list().getEntities();
+        SearchCriteriaBuilder searchCriteriaBuilder = dataDefinitionService
+                .get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).find()
+                .add(SearchRestrictions.ne(OrderFields.STATE, OrderStateStringValues.COMPLETED))
+                .add(SearchRestrictions.lt(OrderFields.DATE_FROM, scale.getDateTo()))
+                .add(SearchRestrictions.gt(OrderFields.DATE_TO, scale.getDateFrom()));
+
+        String productionLineId = (context == null) ? null : context.optString(L_PRODUCTION_LINE_ID, null);
+
+        if (StringUtils.isNotBlank(productionLineId)) {
+            searchCriteriaBuilder.add(SearchRestrictions.belongsTo(OrderFields.PRODUCTION_LINE, L_PRODUCTION_LINES_PLUGIN,
+                    L_PRODUCTION_LINE_MODEL, Long.valueOf(productionLineId)));
+        }
+
+        List<Entity> orders = searchCriteriaBuilder.setProjection(ORDER_GANTT_PROJECTION).addOrder(SearchOrders.asc(L_ID))
+                .list().getEntities();
 
-        List<GanttChartItem> items = new ArrayList<GanttChartItem>();
+        List<GanttChartItem> items = new ArrayList<GanttChartItem>(orders.size());
 
         for (Entity order : orders) {
             items.add(getItemForOrder(order, scale, locale));
@@ -68,22 +107,22 @@ public class OrderGanttChartItemResolverImpl implements OrderGanttChartItemResol
     }
 
     private GanttChartItem getItemForOrder(final Entity order, final GanttChartScale scale, final Locale locale) {
-        Date from = (Date) order.getField("dateFrom");
-        Date to = (Date) order.getField("dateTo");
+        Date from = order.getDateField(OrderFields.DATE_FROM);
+        Date to = order.getDateField(OrderFields.DATE_TO);
 
-        if (order.getField("effectiveDateFrom") != null) {
+        if (order.getField(OrderFields.EFFECTIVE_DATE_FROM) != null) {
             long diff = to.getTime() - from.getTime();
-            from = (Date) order.getField("effectiveDateFrom");
+            from = order.getDateField(OrderFields.EFFECTIVE_DATE_FROM);
             to = new Date(from.getTime() + diff);
         }
 
-        return scale.createGanttChartItem("", getOrderDescription(order, locale), order.getId(), from, to);
+        return scale.createGanttChartItem("", getOrderDescription(order, locale), (Long) order.getField(L_ID), from, to);
     }
 
     private String getOrderDescription(final Entity order, final Locale locale) {
-        return order.getStringField("number") + " - " + order.getStringField("name") + "<br/>"
+        return order.getStringField(OrderFields.NUMBER) + " - " + order.getStringField(OrderFields.NAME) + "<br/>"
                 + translationService.translate("orders.order.state.label", locale) + ": "
-                + translationService.translate("orders.order.state.value." + order.getStringField("state"), locale);
+                + translationService.translate("orders.order.state.value." + order.getStringField(OrderFields.STATE), locale);
     }
 
 }
@@ -34,4 +34,12 @@ public interface ShiftsGanttChartItemResolver extends GanttChartItemResolver {
 
     List<GanttChartItem> getItemsForShift(final Entity shift, final GanttChartScale scale);
 
+    /**
+     * Drops cached hours of given shift, or of all shifts when shiftId is null, in the current tenant
+     *
+     * @param shiftId
+     *            shift id or null
+     */
+    void invalidate(final Long shiftId);
+
 }
\ No newline at end of file
@@ -29,7 +29,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.joda.time.DateTimeConstants;
 import org.joda.time.LocalTime;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,18 +43,32 @@ import com.qcadoo.mes.basic.ShiftsServiceImpl;
 import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
 import com.qcadoo.view.api.components.ganttChart.GanttChartItem;
 import com.qcadoo.view.api.components.ganttChart.GanttChartScale;
 
 @Service
 public class ShiftsGanttChartItemResolverImpl implements ShiftsGanttChartItemResolver {
 
+    private static final String[] WEEK_DAYS = { "monday", "tuesday", "wensday", "thursday", "friday", "saturday", "sunday" };
+
+    private static final String L_WORKING = "Working";
+
+    private static final String L_HOURS = "Hours";
+
+    private static final long L_CACHED_HOURS_TIME_TO_LIVE = DateTimeConstants.MILLIS_PER_MINUTE;
+
+    private final ConcurrentMap<String, CachedShiftHours> shiftHoursCache = new ConcurrentHashMap<>();
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
     private ShiftsServiceImpl shiftsService;
 
+    @Autowired
+    private MultiTenantService multiTenantService;
+
     @Override
     @Transactional
     public Map<String, List<GanttChartItem>> resolve(final GanttChartScale scale, final JSONObject context, final Locale locale) {
@@ -69,7 +86,7 @@ public class ShiftsGanttChartItemResolverImpl implements ShiftsGanttChartItemRes
     public List<GanttChartItem> getItemsForShift(final Entity shift, final GanttChartScale scale) {
         String shiftName = shift.getStringField("name");
 
-        List<ShiftHour> hours = shiftsService.getHoursForShift(shift, scale.getDateFrom(), scale.getDateTo());
+        List<ShiftHour> hours = getHoursForShift(shift, scale.getDateFrom(), scale.getDateTo());
 
         List<GanttChartItem> items = new ArrayList<GanttChartItem>();
 
@@ -80,6 +97,58 @@ public class ShiftsGanttChartItemResolverImpl implements ShiftsGanttChartItemRes
         return items;
     }
 
+    private List<ShiftHour> getHoursForShift(final Entity shift, final Date dateFrom, final Date dateTo) {
+        if (shift.getId() == null) {
+            return shiftsService.getHoursForShift(shift, dateFrom, dateTo);
+        }
+
+        String workingHours = getWorkingHours(shift);
+        long now = System.currentTimeMillis();
+
+        String cacheKey = getCacheKey(shift.getId());
+        CachedShiftHours cachedShiftHours = shiftHoursCache.get(cacheKey);
+
+        if (cachedShiftHours == null || !cachedShiftHours.isValidFor(workingHours, dateFrom, dateTo, now)) {
+            // neighbouring windows are calculated as well, so scrolling the chart does not recompute hours
+            long range = dateTo.getTime() - dateFrom.getTime();
+            Date cachedDateFrom = new Date(dateFrom.getTime() - range);
+            Date cachedDateTo = new Date(dateTo.getTime() + range);
+
+            cachedShiftHours = new CachedShiftHours(workingHours, cachedDateFrom, cachedDateTo, now,
+                    shiftsService.getHoursForShift(shift, cachedDateFrom, cachedDateTo));
+
+            shiftHoursCache.put(cacheKey, cachedShiftHours);
+        }
+
+        return shiftsService.removeHoursOutOfRange(cachedShiftHours.getHours(), dateFrom, dateTo);
+    }
+
+    @Override
+    public void invalidate(final Long shiftId) {
+        if (shiftId == null) {
+            String tenantPrefix = getCacheKey(null);
+
+            shiftHoursCache.keySet().removeIf(cacheKey -> cacheKey.startsWith(tenantPrefix));
+        } else {
+            shiftHoursCache.remove(getCacheKey(shiftId));
+        }
+    }
+
+    private String getCacheKey(final Long shiftId) {
+        return multiTenantService.getCurrentTenantId() + ":" + ((shiftId == null) ? "" : shiftId);
+    }
+
+    private String getWorkingHours(final Entity shift) {
+        StringBuilder workingHours = new StringBuilder();
+
+        for (String weekDay : WEEK_DAYS) {
+            workingHours.append(shift.getField(weekDay + L_WORKING)).append(';');
+            workingHours.append(shift.getStringField(weekDay + L_HOURS)).append(';');
+        }
+
+        return workingHours.toString();
+    }
+
     public List<ShiftsServiceImpl.ShiftHour> getHoursForAllShifts(final Date dateFrom, final Date dateTo) {
         return shiftsService.getHoursForAllShifts(dateFrom, dateTo);
     }
@@ -88,4 +157,36 @@ public class ShiftsGanttChartItemResolverImpl implements ShiftsGanttChartItemRes
         return shiftsService.convertDayHoursToInt(string);
     }
 
+    private static class CachedShiftHours {
+
+        private final String workingHours;
+
+        private final Date dateFrom;
+
+        private final Date dateTo;
+
+        private final long createTime;
+
+        private final List<ShiftHour> hours;
+
+        CachedShiftHours(final String workingHours, final Date dateFrom, final Date dateTo, final long createTime,
+                final List<ShiftHour> hours) {
+            this.workingHours = workingHours;
+            this.dateFrom = dateFrom;
+            this.dateTo = dateTo;
+            this.createTime = createTime;
+            this.hours = hours;
+        }
+
+        boolean isValidFor(final String workingHours, final Date dateFrom, final Date dateTo, final long now) {
+            return this.workingHours.equals(workingHours) && !this.dateFrom.after(dateFrom) && !this.dateTo.before(dateTo)
+                    && (now - createTime) < L_CACHED_HOURS_TIME_TO_LIVE;
+        }
+
+        List<ShiftHour> getHours() {
+            return hours;
+        }
+
+    }
+
 }
@@ -0,0 +1,81 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.ganttForShifts.hooks;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.mes.ganttForShifts.ShiftsGanttChartItemResolver;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class ShiftHooksGFS {
+
+    @Autowired
+    private ShiftsGanttChartItemResolver shiftsGanttChartItemResolver;
+
+    public void onSave(final DataDefinition shiftDD, final Entity shift) {
+        if (shift.getId() != null) {
+            invalidateHours(shift.getId());
+        }
+    }
+
+    public boolean onDelete(final DataDefinition shiftDD, final Entity shift) {
+        invalidateHours(shift.getId());
+
+        return true;
+    }
+
+    public void onSaveTimetableException(final DataDefinition shiftTimetableExceptionDD, final Entity shiftTimetableException) {
+        // exception could have been moved from other shifts, so hours of all shifts are dropped
+        invalidateHours(null);
+    }
+
+    public boolean onDeleteTimetableException(final DataDefinition shiftTimetableExceptionDD,
+            final Entity shiftTimetableException) {
+        invalidateHours(null);
+
+        return true;
+    }
+
+    private void invalidateHours(final Long shiftId) {
+        shiftsGanttChartItemResolver.invalidate(shiftId);
+
+        // hours cached by other transactions before commit have to be removed as well
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    shiftsGanttChartItemResolver.invalidate(shiftId);
+                }
+
+            });
+        }
+    }
+
+}
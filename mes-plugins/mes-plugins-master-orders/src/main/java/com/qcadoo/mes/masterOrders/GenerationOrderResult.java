@@ -21,6 +21,8 @@ public class GenerationOrderResult {
 
     private List<String> ordersWithoutPps = Lists.newArrayList();
 
+    private boolean ppsGenerationQueued;
+
     public void addNotGeneratedProductError(MasterOrderProductErrorContainer err) {
         productOrderErrors.add(err);
     }
@@ -33,6 +35,14 @@ public class GenerationOrderResult {
         ordersWithoutPps.add(number);
     }
 
+    public void setPpsGenerationQueued(boolean ppsGenerationQueued) {
+        this.ppsGenerationQueued = ppsGenerationQueued;
+    }
+
+    public boolean isPpsGenerationQueued() {
+        return ppsGenerationQueued;
+    }
+
     public void showMessage(ViewDefinitionState view) {
         if (!generatedOrderNumbers.isEmpty()) {
             view.addMessage("masterOrders.masterOrder.generationOrder.generatedOrderNumbers", ComponentState.MessageType.INFO,
@@ -44,6 +54,11 @@ public class GenerationOrderResult {
                     String.join(", ", ordersWithoutPps));
         }
 
+        if (ppsGenerationQueued) {
+            view.addMessage("masterOrders.masterOrder.generationOrder.ppsGenerationQueued", ComponentState.MessageType.INFO,
+                    false);
+        }
+
         if (!productOrderErrors.isEmpty()) {
             productOrderErrors.forEach(err -> {
                 StringBuilder msg = new StringBuilder();
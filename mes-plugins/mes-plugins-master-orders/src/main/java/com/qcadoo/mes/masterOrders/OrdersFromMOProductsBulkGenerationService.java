@@ -0,0 +1,518 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders;
+
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.SessionFactory;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderFields;
+import com.qcadoo.mes.masterOrders.constants.MasterOrderProductFields;
+import com.qcadoo.mes.masterOrders.constants.OrderFieldsMO;
+import com.qcadoo.mes.masterOrders.constants.PpsGenerationState;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Generates orders for many master order products at once. Numbers of orders are reserved up front, with one query for
+ * every master order, under a transaction level lock of its number prefix. The same lock is taken when single orders of
+ * the master order are numbered or saved with a new number, so concurrent generations and saves wait for each other
+ * instead of taking the same numbers. All orders are saved in one transaction, so generation either succeeds for every
+ * valid product or leaves nothing behind.
+ *
+ * Plans for shifts are generated after commit in the background, one order after another in separate transactions, by a
+ * single thread, so start dates of orders on the same production line are chained correctly. Start dates are chained in
+ * memory for every production line, from the finish date of the previous order, so neither previous orders nor shifts are
+ * queried for every order. Result of the generation, with the error message on failure, is stored in every master order
+ * product.
+ */
+@Service
+public class OrdersFromMOProductsBulkGenerationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrdersFromMOProductsBulkGenerationService.class);
+
+    private static final String L_PPS_IS_AUTOMATIC = "ppsIsAutomatic";
+
+    private static final String L_GENERATE_PPS = "generatePPS";
+
+    private static final String L_PPS_GENERATION_INTERRUPTED = "masterOrders.masterOrderProduct.ppsGenerationMessage.interrupted";
+
+    private static final int L_NUMBER_DIGITS = 3;
+
+    @Autowired
+    private OrdersFromMOProductsGenerationService ordersFromMOProductsGenerationService;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    private ThreadPoolExecutor executorService;
+
+    @PostConstruct
+    void init() {
+        executorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "ordersPpsGeneration");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Transactional
+    public GenerationOrderResult generateOrders(final List<Entity> masterOrderProducts, final boolean generatePPS) {
+        GenerationOrderResult result = new GenerationOrderResult(translationService);
+        Entity parameter = parameterService.getParameter();
+
+        List<Entity> positions = Lists.newArrayListWithCapacity(masterOrderProducts.size());
+
+        for (Entity masterOrderProduct : masterOrderProducts) {
+            positions.add(ordersFromMOProductsGenerationService.getMasterOrderProduct(masterOrderProduct));
+        }
+
+        Map<Long, Deque<String>> numbers = reserveOrderNumbers(positions);
+        Map<Long, Long> masterOrderProductsIdsByOrdersIds = Maps.newLinkedHashMap();
+
+        for (Entity masterOrderProduct : positions) {
+            Entity masterOrder = masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER);
+
+            Entity order = ordersFromMOProductsGenerationService.createOrder(masterOrderProduct, parameter,
+                    numbers.get(masterOrder.getId()).poll());
+
+            order = getOrderDD().save(order);
+
+            if (order.isValid()) {
+                result.addGeneratedOrderNumber(order.getStringField(OrderFields.NUMBER));
+
+                masterOrderProductsIdsByOrdersIds.put(order.getId(), masterOrderProduct.getId());
+            } else {
+                result.addNotGeneratedProductError(ordersFromMOProductsGenerationService.createErrorContainer(
+                        masterOrderProduct, order));
+            }
+        }
+
+        if (generatePPS && parameter.getBooleanField(L_PPS_IS_AUTOMATIC)
+                && !parameter.getBooleanField(OrdersFromMOProductsGenerationService.ORDERS_GENERATION_NOT_COMPLETE_DATES)
+                && !masterOrderProductsIdsByOrdersIds.isEmpty()) {
+            submitPpsGeneration(masterOrderProductsIdsByOrdersIds);
+
+            result.setPpsGenerationQueued(true);
+        }
+
+        return result;
+    }
+
+    /**
+     * Reserves next number of order of given master order, the same way as numbers of generated orders are reserved. The
+     * lock of the number prefix is held until the end of the current transaction, so the order with this number should be
+     * saved in it.
+     *
+     * @param masterOrder
+     *            master order
+     * @return number of order
+     */
+    @Transactional
+    public String reserveOrderNumber(final Entity masterOrder) {
+        String prefix = getOrderNumberPrefix(masterOrder);
+
+        lockOrderNumbers(prefix);
+
+        return prefix + Strings.padStart(String.valueOf(getLastOrderNumber(prefix) + 1), L_NUMBER_DIGITS, '0');
+    }
+
+    /**
+     * Locks numbers of orders of the order's master order, when the order's number has its prefix, so the order isn't saved
+     * while other orders of this master order are being numbered. Called in order's onSave hook, when the number is new.
+     *
+     * @param order
+     *            order
+     */
+    public void lockOrderNumber(final Entity order) {
+        Entity masterOrder = order.getBelongsToField(OrderFieldsMO.MASTER_ORDER);
+        String number = order.getStringField(OrderFields.NUMBER);
+
+        if (Objects.isNull(masterOrder) || Objects.isNull(number)) {
+            return;
+        }
+
+        String prefix = getOrderNumberPrefix(masterOrder);
+
+        if (number.startsWith(prefix)) {
+            lockOrderNumbers(prefix);
+        }
+    }
+
+    private String getOrderNumberPrefix(final Entity masterOrder) {
+        return masterOrder.getStringField(MasterOrderFields.NUMBER) + "-";
+    }
+
+    private Map<Long, Deque<String>> reserveOrderNumbers(final List<Entity> masterOrderProducts) {
+        Map<String, Entity> masterOrders = Maps.newTreeMap();
+        Map<Long, Integer> quantities = Maps.newHashMap();
+
+        for (Entity masterOrderProduct : masterOrderProducts) {
+            Entity masterOrder = masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER);
+
+            masterOrders.putIfAbsent(getOrderNumberPrefix(masterOrder), masterOrder);
+            quantities.merge(masterOrder.getId(), 1, Integer::sum);
+        }
+
+        Map<Long, Deque<String>> numbers = Maps.newHashMap();
+
+        for (Map.Entry<String, Entity> masterOrderEntry : masterOrders.entrySet()) {
+            String prefix = masterOrderEntry.getKey();
+            Entity masterOrder = masterOrderEntry.getValue();
+
+            lockOrderNumbers(prefix);
+
+            long lastNumber = getLastOrderNumber(prefix);
+
+            Deque<String> masterOrderNumbers = Lists.newLinkedList();
+
+            for (int i = 1; i <= quantities.get(masterOrder.getId()); i++) {
+                masterOrderNumbers.add(prefix + Strings.padStart(String.valueOf(lastNumber + i), L_NUMBER_DIGITS, '0'));
+            }
+
+            numbers.put(masterOrder.getId(), masterOrderNumbers);
+        }
+
+        return numbers;
+    }
+
+    /**
+     * Locks numbers with given prefix until the end of the current transaction. Prefixes are locked in alphabetical order,
+     * so concurrent generations don't deadlock.
+     */
+    private void lockOrderNumbers(final String prefix) {
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(hashtext(:lockKey))",
+                new MapSqlParameterSource("lockKey", "orders_order.number." + prefix));
+    }
+
+    private long getLastOrderNumber(final String prefix) {
+        // orders saved earlier in this transaction may still be pending in the Hibernate session
+        sessionFactory.getCurrentSession().flush();
+
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT COALESCE(MAX(CAST(SUBSTRING(number FROM :prefixLength + 1) AS bigint)), 0) ");
+        query.append("FROM orders_order ");
+        query.append("WHERE LEFT(number, :prefixLength) = :prefix ");
+        query.append("AND SUBSTRING(number FROM :prefixLength + 1) ~ '^[0-9]{1,18}$'");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("prefix", prefix);
+        parameters.addValue("prefixLength", prefix.length());
+
+        return jdbcTemplate.queryForObject(query.toString(), parameters, Long.class);
+    }
+
+    private void submitPpsGeneration(final Map<Long, Long> masterOrderProductsIdsByOrdersIds) {
+        int tenantId = multiTenantService.getCurrentTenantId();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        Locale locale = LocaleContextHolder.getLocale();
+
+        OrdersPpsGeneration ppsGeneration = new OrdersPpsGeneration(masterOrderProductsIdsByOrdersIds);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    enqueue(ppsGeneration, tenantId, securityContext, locale);
+                }
+
+            });
+        } else {
+            enqueue(ppsGeneration, tenantId, securityContext, locale);
+        }
+    }
+
+    private void enqueue(final OrdersPpsGeneration ppsGeneration, final int tenantId, final SecurityContext securityContext,
+            final Locale locale) {
+        executeInNewTransaction(status -> {
+            for (Long masterOrderProductId : ppsGeneration.masterOrderProductsIdsByOrdersIds.values()) {
+                updatePpsGenerationState(masterOrderProductId, PpsGenerationState.QUEUED, null);
+            }
+
+            return null;
+        });
+
+        executorService.execute(() -> multiTenantService.doInMultiTenantContext(tenantId, new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                SecurityContextHolder.setContext(securityContext);
+                LocaleContextHolder.setLocale(locale);
+
+                try {
+                    ppsGeneration.generate();
+                } finally {
+                    SecurityContextHolder.clearContext();
+                    LocaleContextHolder.resetLocaleContext();
+                }
+            }
+
+        }));
+    }
+
+    /**
+     * Marks generations of plans for shifts left queued, e.g. by restart of the application, as failed, so the user knows
+     * they have to be generated again. Queued generations live only in memory of the current application. Called on startup.
+     */
+    @Transactional
+    public void failInterruptedPpsGenerations() {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("queued", PpsGenerationState.QUEUED.getStringValue());
+        parameters.addValue("failed", PpsGenerationState.FAILED.getStringValue());
+        parameters.addValue("message",
+                translationService.translate(L_PPS_GENERATION_INTERRUPTED, LocaleContextHolder.getLocale()));
+
+        int interrupted = jdbcTemplate.update("UPDATE masterorders_masterorderproduct SET ppsgenerationstate = :failed, "
+                + "ppsgenerationmessage = :message WHERE ppsgenerationstate = :queued", parameters);
+
+        if (interrupted > 0) {
+            LOG.warn("Generation of plans for shifts of " + interrupted + " master order products was interrupted");
+        }
+    }
+
+    private void updatePpsGenerationState(final Long masterOrderProductId, final PpsGenerationState state,
+            final String message) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("id", masterOrderProductId);
+        parameters.addValue("state", state.getStringValue());
+        parameters.addValue("message", message);
+
+        jdbcTemplate.update("UPDATE masterorders_masterorderproduct SET ppsgenerationstate = :state, "
+                + "ppsgenerationmessage = :message WHERE id = :id", parameters);
+    }
+
+    private DataDefinition getOrderDD() {
+        return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
+    }
+
+    private <T> T executeInNewTransaction(final TransactionCallback<T> callback) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        return transactionTemplate.execute(callback);
+    }
+
+    private final class OrdersPpsGeneration {
+
+        private final Map<Long, Long> masterOrderProductsIdsByOrdersIds;
+
+        private final Map<Long, Entity> previousOrders = Maps.newHashMap();
+
+        private final Map<String, Integer> changeoverDurations = Maps.newHashMap();
+
+        private List<Entity> shifts;
+
+        private OrdersPpsGeneration(final Map<Long, Long> masterOrderProductsIdsByOrdersIds) {
+            this.masterOrderProductsIdsByOrdersIds = masterOrderProductsIdsByOrdersIds;
+        }
+
+        private void generate() {
+            shifts = executeInNewTransaction(status -> ordersFromMOProductsGenerationService.getAllShifts());
+
+            for (Map.Entry<Long, Long> orderEntry : masterOrderProductsIdsByOrdersIds.entrySet()) {
+                Long orderId = orderEntry.getKey();
+                Long masterOrderProductId = orderEntry.getValue();
+
+                String failure;
+
+                try {
+                    failure = executeInNewTransaction(status -> {
+                        String orderFailure = generatePps(orderId);
+
+                        if (orderFailure != null) {
+                            status.setRollbackOnly();
+                        }
+
+                        return orderFailure;
+                    });
+                } catch (RuntimeException e) {
+                    LOG.warn("Problem with generation of plan for shifts of order " + orderId, e);
+
+                    failure = StringUtils.defaultString(e.getMessage(), e.toString());
+                }
+
+                PpsGenerationState state = (failure == null) ? PpsGenerationState.GENERATED : PpsGenerationState.FAILED;
+                String message = failure;
+
+                executeInNewTransaction(status -> {
+                    updatePpsGenerationState(masterOrderProductId, state, message);
+
+                    return null;
+                });
+            }
+        }
+
+        private String generatePps(final Long orderId) {
+            Entity order = getOrderDD().get(orderId);
+
+            if (order == null) {
+                return null;
+            }
+
+            Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
+
+            order.setField(OrderFields.START_DATE, findStartDate(order, productionLine));
+            ordersFromMOProductsGenerationService.generateEmptyPpsForOrder(order);
+            order.setField(L_GENERATE_PPS, true);
+            order.setField(OrderFields.FINISH_DATE, new DateTime(order.getDateField(OrderFields.START_DATE)).plusDays(1)
+                    .toDate());
+
+            Entity savedOrder = order.getDataDefinition().save(order);
+
+            if (!savedOrder.isValid()) {
+                List<String> messages = Lists.newArrayList();
+
+                for (ErrorMessage errorMessage : savedOrder.getGlobalErrors()) {
+                    messages.add(translationService.translate(errorMessage.getMessage(), LocaleContextHolder.getLocale(),
+                            errorMessage.getVars()));
+                }
+
+                return String.join(", ", messages);
+            }
+
+            if (Objects.nonNull(productionLine)) {
+                previousOrders.put(productionLine.getId(), savedOrder);
+            }
+
+            return null;
+        }
+
+        private Date findStartDate(final Entity order, final Entity productionLine) {
+            if (Objects.nonNull(order.getDateField(OrderFields.START_DATE))) {
+                return order.getDateField(OrderFields.START_DATE);
+            }
+
+            Entity previousOrder = getPreviousOrder(order, productionLine);
+
+            if (Objects.nonNull(previousOrder) && Objects.nonNull(previousOrder.getDateField(OrderFields.FINISH_DATE))) {
+                Optional<DateTime> maybeDate = shiftsService.getNearestWorkingDate(
+                        new DateTime(previousOrder.getDateField(OrderFields.FINISH_DATE)), productionLine, shifts);
+
+                if (maybeDate.isPresent()) {
+                    return ordersFromMOProductsGenerationService.calculateOrderStartDate(maybeDate.get().toDate(),
+                            getChangeoverDurationInMillis(previousOrder, order, productionLine));
+                }
+            }
+
+            return DateTime.now().toDate();
+        }
+
+        private Entity getPreviousOrder(final Entity order, final Entity productionLine) {
+            if (Objects.isNull(productionLine)) {
+                return ordersFromMOProductsGenerationService.findPreviousOrder(order).orElse(null);
+            }
+
+            return previousOrders.computeIfAbsent(productionLine.getId(),
+                    productionLineId -> ordersFromMOProductsGenerationService.findPreviousOrder(order).orElse(null));
+        }
+
+        private Integer getChangeoverDurationInMillis(final Entity previousOrder, final Entity order,
+                final Entity productionLine) {
+            String key = getId(previousOrder.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE)) + "-"
+                    + getId(order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE)) + "-" + getId(productionLine);
+
+            return changeoverDurations.computeIfAbsent(key,
+                    k -> ordersFromMOProductsGenerationService.getChangeoverDurationInMillis(previousOrder, order));
+        }
+
+        private Long getId(final Entity entity) {
+            return Objects.isNull(entity) ? null : entity.getId();
+        }
+
+    }
+
+}
@@ -27,13 +27,15 @@ import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.exception.EntityRuntimeException;
 import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
-import com.qcadoo.view.api.utils.NumberGeneratorService;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.util.Date;
@@ -55,6 +57,12 @@ public class OrdersFromMOProductsGenerationService {
 
     public static final String CUMULATED_MASTER_ORDER_QUANTITY = "cumulatedMasterOrderQuantity";
 
+    @Value("${ordersFromMOBulkGenerationThreshold:20}")
+    private int bulkGenerationThreshold;
+
+    @Autowired
+    private OrdersFromMOProductsBulkGenerationService ordersFromMOProductsBulkGenerationService;
+
     @Autowired
     private TechnologyServiceO technologyServiceO;
 
@@ -64,9 +72,6 @@ public class OrdersFromMOProductsGenerationService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
-    @Autowired
-    private NumberGeneratorService numberGeneratorService;
-
     @Autowired
     private OrderService orderService;
 
@@ -82,35 +87,40 @@ public class OrdersFromMOProductsGenerationService {
     @Autowired
     private ShiftsService shiftsService;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Generates orders for given master order products. Starting from the bulk generation threshold, orders are generated
+     * by {@link OrdersFromMOProductsBulkGenerationService}.
+     */
     public GenerationOrderResult generateOrders(List<Entity> masterOrderProducts, boolean generatePPS) {
+        if (masterOrderProducts.size() >= bulkGenerationThreshold) {
+            return ordersFromMOProductsBulkGenerationService.generateOrders(masterOrderProducts, generatePPS);
+        }
+
         GenerationOrderResult result = new GenerationOrderResult(translationService);
         boolean automaticPps = parameterService.getParameter().getBooleanField("ppsIsAutomatic");
-        masterOrderProducts.forEach(masterOrderProduct -> {
-            Optional<Entity> dtoEntity = Optional.ofNullable(masterOrderProduct.getDataDefinition().getMasterModelEntity(
-                    masterOrderProduct.getId()));
-            if (dtoEntity.isPresent()) {
-                generateOrder(generatePPS, automaticPps, result, dtoEntity.get());
-            } else {
-                generateOrder(generatePPS, automaticPps, result, masterOrderProduct);
-            }
-        });
+        masterOrderProducts.forEach(masterOrderProduct -> generateOrder(generatePPS, automaticPps, result,
+                getMasterOrderProduct(masterOrderProduct)));
 
         return result;
 
     }
 
+    Entity getMasterOrderProduct(final Entity masterOrderProduct) {
+        Optional<Entity> dtoEntity = Optional.ofNullable(masterOrderProduct.getDataDefinition().getMasterModelEntity(
+                masterOrderProduct.getId()));
+
+        return dtoEntity.orElse(masterOrderProduct);
+    }
+
     private void generateOrder(boolean generatePPS, boolean automaticPps, GenerationOrderResult result, Entity masterOrderProduct) {
-        Entity order = createOrder(masterOrderProduct);
-        order = getOrderDD().save(order);
+        // number is reserved under the lock of its prefix, held until the order is saved
+        Entity order = new TransactionTemplate(transactionManager).execute(
+                status -> getOrderDD().save(createOrder(masterOrderProduct)));
         if (!order.isValid()) {
-            MasterOrderProductErrorContainer productErrorContainer = new MasterOrderProductErrorContainer();
-            productErrorContainer.setProduct(masterOrderProduct.getBelongsToField(MasterOrderProductFields.PRODUCT)
-                    .getStringField(ProductFields.NUMBER));
-            productErrorContainer.setMasterOrder(masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER)
-                    .getStringField(MasterOrderFields.NUMBER));
-            productErrorContainer.setQuantity(order.getDecimalField(OrderFields.PLANNED_QUANTITY));
-            productErrorContainer.setErrorMessages(order.getGlobalErrors());
-            result.addNotGeneratedProductError(productErrorContainer);
+            result.addNotGeneratedProductError(createErrorContainer(masterOrderProduct, order));
         } else {
             result.addGeneratedOrderNumber(order.getStringField(OrderFields.NUMBER));
         }
@@ -125,6 +135,17 @@ public class OrdersFromMOProductsGenerationService {
         }
     }
 
+    MasterOrderProductErrorContainer createErrorContainer(final Entity masterOrderProduct, final Entity order) {
+        MasterOrderProductErrorContainer productErrorContainer = new MasterOrderProductErrorContainer();
+        productErrorContainer.setProduct(masterOrderProduct.getBelongsToField(MasterOrderProductFields.PRODUCT)
+                .getStringField(ProductFields.NUMBER));
+        productErrorContainer.setMasterOrder(masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER)
+                .getStringField(MasterOrderFields.NUMBER));
+        productErrorContainer.setQuantity(order.getDecimalField(OrderFields.PLANNED_QUANTITY));
+        productErrorContainer.setErrorMessages(order.getGlobalErrors());
+        return productErrorContainer;
+    }
+
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     private void tryGeneratePPS(final Entity order) {
         Date startDate = findStartDate(order);
@@ -138,7 +159,7 @@ public class OrdersFromMOProductsGenerationService {
         }
     }
 
-    private void generateEmptyPpsForOrder(Entity order) {
+    void generateEmptyPpsForOrder(Entity order) {
         Entity productionPerShift = dataDefinitionService.get("productionPerShift", "productionPerShift").find()
                 .add(SearchRestrictions.belongsTo("order", order)).setMaxResults(1).uniqueResult();
         if (productionPerShift != null) {
@@ -174,7 +195,7 @@ public class OrdersFromMOProductsGenerationService {
         return DateTime.now().toDate();
     }
 
-    private Date calculateOrderStartDate(Date finishDate, Integer changeoverDurationInMillis) {
+    Date calculateOrderStartDate(Date finishDate, Integer changeoverDurationInMillis) {
         DateTime finishDateTime = new DateTime(finishDate);
         finishDateTime = finishDateTime.plusMillis(changeoverDurationInMillis);
         return finishDateTime.toDate();
@@ -207,6 +228,16 @@ public class OrdersFromMOProductsGenerationService {
     public Entity createOrder(final Entity masterOrderProduct) {
         Entity parameter = parameterService.getParameter();
         Entity masterOrder = masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER);
+
+        return createOrder(masterOrderProduct, parameter,
+                ordersFromMOProductsBulkGenerationService.reserveOrderNumber(masterOrder));
+    }
+
+    /**
+     * Creates order with given number, without saving it.
+     */
+    public Entity createOrder(final Entity masterOrderProduct, final Entity parameter, final String number) {
+        Entity masterOrder = masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER);
         Entity product = masterOrderProduct.getBelongsToField(MasterOrderProductFields.PRODUCT);
         Entity technology = getTechnology(masterOrderProduct);
         Date masterOrderDeadline = masterOrder.getDateField(MasterOrderFields.DEADLINE);
@@ -214,7 +245,7 @@ public class OrdersFromMOProductsGenerationService {
         Date masterOrderFinishDate = masterOrder.getDateField(MasterOrderFields.FINISH_DATE);
 
         Entity order = getOrderDD().create();
-        order.setField(OrderFields.NUMBER, generateOrderNumber(parameter, masterOrder));
+        order.setField(OrderFields.NUMBER, number);
         order.setField(OrderFields.NAME, generateOrderName(product, technology));
         order.setField(OrderFields.COMPANY, masterOrder.getBelongsToField(MasterOrderFields.COMPANY));
         order.setField(OrderFields.ADDRESS, masterOrder.getBelongsToField(MasterOrderFields.ADDRESS));
@@ -235,8 +266,7 @@ public class OrdersFromMOProductsGenerationService {
 
         order.setField("ignoreMissingComponents", parameter.getBooleanField("ignoreMissingComponents"));
 
-        boolean fillOrderDescriptionBasedOnTechnology = dataDefinitionService
-                .get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PARAMETER).find().setMaxResults(1).uniqueResult()
+        boolean fillOrderDescriptionBasedOnTechnology = parameter
                 .getBooleanField(ParameterFieldsO.FILL_ORDER_DESCRIPTION_BASED_ON_TECHNOLOGY_DESCRIPTION);
 
         String orderDescription = orderService.buildOrderDescription(masterOrder, technology,
@@ -260,11 +290,6 @@ public class OrdersFromMOProductsGenerationService {
         return orderService.makeDefaultName(product, technology, LocaleContextHolder.getLocale());
     }
 
-    private String generateOrderNumber(final Entity parameter, final Entity masterOrder) {
-        return numberGeneratorService.generateNumberWithPrefix(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER, 3,
-                masterOrder.getStringField(MasterOrderFields.NUMBER) + "-");
-    }
-
     public Entity getProductionLine(final Entity technology) {
         Entity productionLine = null;
         if (Objects.nonNull(technology)) {
@@ -307,7 +332,7 @@ public class OrdersFromMOProductsGenerationService {
         return dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO);
     }
     
-    private List<Entity> getAllShifts() {
+    List<Entity> getAllShifts() {
         return getShiftDataDefinition().find().list().getEntities();
     }
 
@@ -0,0 +1,115 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Answers where used questions using the technologies where used index: which accepted technologies use the product,
+ * directly or through intermediates, and which not finished orders and master orders are produced with them.
+ */
+@Service
+public class ProductWhereUsedService {
+
+    private static final String L_ID = "id";
+
+    private static final String L_PRODUCT_ID = "productId";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public List<Map<String, Object>> getTechnologies(final Long productId) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT t.id, t.number, t.name, t.state, p.number AS productNumber, MIN(pu.depth) AS depth ");
+        query.append("FROM technologies_productusage pu ");
+        query.append("JOIN technologies_technology t ON t.id = pu.technology_id ");
+        query.append("JOIN basic_product p ON p.id = t.product_id ");
+        query.append("WHERE pu.product_id = :productId ");
+        query.append("GROUP BY t.id, t.number, t.name, t.state, p.number ");
+        query.append("ORDER BY MIN(pu.depth), t.number");
+
+        return jdbcTemplate.queryForList(query.toString(), new MapSqlParameterSource(L_PRODUCT_ID, productId));
+    }
+
+    public List<Map<String, Object>> getOrders(final Long productId) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT o.id, o.number, o.name, o.state FROM orders_order o ");
+        appendAffectedOrdersWhereClause(query);
+        query.append("ORDER BY o.number");
+
+        return jdbcTemplate.queryForList(query.toString(), new MapSqlParameterSource(L_PRODUCT_ID, productId));
+    }
+
+    public List<Map<String, Object>> getMasterOrders(final Long productId) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT mo.id, mo.number, mo.name, mo.state FROM masterorders_masterorder mo ");
+        query.append("WHERE mo.state NOT IN ('03completed', '04declined') AND (");
+        query.append("EXISTS (SELECT 1 FROM masterorders_masterorderproduct mop WHERE mop.masterorder_id = mo.id ");
+        query.append("AND (mop.technology_id IN (").append(getUsingTechnologiesQuery()).append(") ");
+        query.append("OR (mop.technology_id IS NULL AND mop.product_id IN (SELECT t.product_id FROM technologies_technology t ");
+        query.append("WHERE t.master AND t.id IN (").append(getUsingTechnologiesQuery()).append("))))) ");
+        query.append("OR EXISTS (SELECT 1 FROM orders_order o ");
+        appendAffectedOrdersWhereClause(query);
+        query.append("AND o.masterorder_id = mo.id)) ");
+        query.append("ORDER BY mo.number");
+
+        return jdbcTemplate.queryForList(query.toString(), new MapSqlParameterSource(L_PRODUCT_ID, productId));
+    }
+
+    public List<Long> getOrdersIds(final Long productId) {
+        return getIds(getOrders(productId));
+    }
+
+    public List<Long> getMasterOrdersIds(final Long productId) {
+        return getIds(getMasterOrders(productId));
+    }
+
+    private List<Long> getIds(final List<Map<String, Object>> rows) {
+        return rows.stream().map(row -> ((Number) row.get(L_ID)).longValue()).collect(Collectors.toList());
+    }
+
+    private void appendAffectedOrdersWhereClause(final StringBuilder query) {
+        query.append("WHERE o.state NOT IN ('04completed', '05declined', '07abandoned') AND (");
+        query.append("o.technologyprototype_id IN (").append(getUsingTechnologiesQuery()).append(") ");
+        query.append("OR o.technology_id IN (").append(getUsingTechnologiesQuery()).append(") ");
+        query.append("OR o.technology_id IN (SELECT toc.technology_id FROM technologies_technologyoperationcomponent toc ");
+        query.append("JOIN technologies_operationproductincomponent opic ON opic.operationcomponent_id = toc.id ");
+        query.append("WHERE opic.product_id = :productId)) ");
+    }
+
+    private String getUsingTechnologiesQuery() {
+        return "SELECT pu.technology_id FROM technologies_productusage pu WHERE pu.product_id = :productId";
+    }
+
+}
@@ -48,4 +48,8 @@ public final class MasterOrderProductFields {
     public static final String CPMMENTS = "comments";
 
     public static final String MASTER_ORDER_POSITION_STATUS = "masterOrderPositionStatus";
+
+    public static final String PPS_GENERATION_STATE = "ppsGenerationState";
+
+    public static final String PPS_GENERATION_MESSAGE = "ppsGenerationMessage";
 }
@@ -0,0 +1,57 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders.controllers;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.masterOrders.ProductWhereUsedService;
+
+@Controller
+public final class ProductWhereUsedController {
+
+    @Autowired
+    private ProductWhereUsedService productWhereUsedService;
+
+    @ResponseBody
+    @RequestMapping(value = "/productWhereUsed/{productId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> getWhereUsed(@PathVariable("productId") Long productId) {
+        Map<String, Object> whereUsed = Maps.newHashMap();
+
+        whereUsed.put("technologies", productWhereUsedService.getTechnologies(productId));
+        whereUsed.put("orders", productWhereUsedService.getOrders(productId));
+        whereUsed.put("masterOrders", productWhereUsedService.getMasterOrders(productId));
+
+        return whereUsed;
+    }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders.criteriaModifier;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.masterOrders.ProductWhereUsedService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchDisjunction;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.view.api.components.lookup.FilterValueHolder;
+
+@Service
+public class ProductWhereUsedCriteriaModifiers {
+
+    public static final String L_PRODUCT_ID = "productId";
+
+    private static final String L_ID = "id";
+
+    private static final int L_PARTITION_SIZE = 1000;
+
+    @Autowired
+    private ProductWhereUsedService productWhereUsedService;
+
+    public void showAffectedOrders(final SearchCriteriaBuilder scb, final FilterValueHolder filterValueHolder) {
+        if (filterValueHolder.has(L_PRODUCT_ID)) {
+            addIdsRestriction(scb, productWhereUsedService.getOrdersIds(filterValueHolder.getLong(L_PRODUCT_ID)));
+        } else {
+            scb.add(SearchRestrictions.idEq(0L));
+        }
+    }
+
+    public void showAffectedMasterOrders(final SearchCriteriaBuilder scb, final FilterValueHolder filterValueHolder) {
+        if (filterValueHolder.has(L_PRODUCT_ID)) {
+            addIdsRestriction(scb, productWhereUsedService.getMasterOrdersIds(filterValueHolder.getLong(L_PRODUCT_ID)));
+        } else {
+            scb.add(SearchRestrictions.idEq(0L));
+        }
+    }
+
+    private void addIdsRestriction(final SearchCriteriaBuilder scb, final List<Long> ids) {
+        if (ids.isEmpty()) {
+            scb.add(SearchRestrictions.idEq(0L));
+
+            return;
+        }
+
+        SearchDisjunction disjunction = SearchRestrictions.disjunction();
+
+        for (List<Long> idsPartition : Lists.partition(ids, L_PARTITION_SIZE)) {
+            disjunction.add(SearchRestrictions.in(L_ID, idsPartition));
+        }
+
+        scb.add(disjunction);
+    }
+
+}
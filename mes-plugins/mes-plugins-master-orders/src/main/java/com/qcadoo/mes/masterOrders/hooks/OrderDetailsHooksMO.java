@@ -34,6 +34,7 @@ import com.google.common.base.Strings;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.masterOrders.OrdersFromMOProductsBulkGenerationService;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderFields;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderPositionDtoFields;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderProductFields;
@@ -43,7 +44,6 @@ import com.qcadoo.mes.masterOrders.constants.ParameterFieldsMO;
 import com.qcadoo.mes.masterOrders.util.MasterOrderOrdersDataProvider;
 import com.qcadoo.mes.orders.OrderService;
 import com.qcadoo.mes.orders.constants.OrderFields;
-import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.constants.ParameterFieldsO;
 import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -53,7 +53,6 @@ import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FieldComponent;
 import com.qcadoo.view.api.components.FormComponent;
 import com.qcadoo.view.api.components.LookupComponent;
-import com.qcadoo.view.api.utils.NumberGeneratorService;
 
 @Service
 public class OrderDetailsHooksMO {
@@ -67,7 +66,7 @@ public class OrderDetailsHooksMO {
     private NumberService numberService;
 
     @Autowired
-    private NumberGeneratorService numberGeneratorService;
+    private OrdersFromMOProductsBulkGenerationService ordersFromMOProductsBulkGenerationService;
 
     @Autowired
     private ParameterService parameterService;
@@ -152,8 +151,7 @@ public class OrderDetailsHooksMO {
             if (parameter.getBooleanField(ParameterFieldsMO.SAME_ORDER_NUMBER)) {
                 generatedNumber = masterOrderNumber;
             } else {
-                generatedNumber = numberGeneratorService.generateNumberWithPrefix(OrdersConstants.PLUGIN_IDENTIFIER,
-                        OrdersConstants.MODEL_ORDER, 3, masterOrderNumber + "-");
+                generatedNumber = ordersFromMOProductsBulkGenerationService.reserveOrderNumber(masterOrder);
             }
 
             numberField.setFieldValue(generatedNumber);
@@ -8,6 +8,7 @@ import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.masterOrders.OrdersFromMOProductsBulkGenerationService;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderFields;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderPositionDtoFields;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderState;
@@ -31,6 +32,9 @@ public class OrderHooksMO {
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private OrdersFromMOProductsBulkGenerationService ordersFromMOProductsBulkGenerationService;
+
     public void onSave(final DataDefinition orderDD, final Entity order) {
         Entity orderDb = null;
 
@@ -38,6 +42,11 @@ public class OrderHooksMO {
             orderDb = orderDD.get(order.getId());
         }
 
+        if (Objects.isNull(orderDb)
+                || !Objects.equals(order.getStringField(OrderFields.NUMBER), orderDb.getStringField(OrderFields.NUMBER))) {
+            ordersFromMOProductsBulkGenerationService.lockOrderNumber(order);
+        }
+
         Entity masterOrder = order.getBelongsToField(OrderFieldsMO.MASTER_ORDER);
 
         if (Objects.nonNull(masterOrder)
@@ -0,0 +1,57 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders.listeners;
+
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.FormComponent;
+
+@Service
+public class ProductDetailsListenersMO {
+
+    private static final String L_FORM = "form";
+
+    public final void showProductWhereUsed(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        FormComponent productForm = (FormComponent) view.getComponentByReference(L_FORM);
+
+        Long productId = productForm.getEntityId();
+
+        if (productId == null) {
+            return;
+        }
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put("form.id", productId);
+
+        String url = "../page/masterOrders/productWhereUsed.html";
+        view.redirectTo(url, false, true, parameters);
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowMultitransfers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+public class MultitransferResult {
+
+    private final Map<Integer, Map<String, ErrorMessage>> rowErrors = Maps.newTreeMap();
+
+    private final List<Entity> transfers = Lists.newArrayList();
+
+    public void addError(final int row, final String field, final ErrorMessage errorMessage) {
+        rowErrors.computeIfAbsent(row, key -> Maps.newHashMap()).put(field, errorMessage);
+    }
+
+    public Map<String, ErrorMessage> getErrors(final int row) {
+        Map<String, ErrorMessage> errors = rowErrors.get(row);
+
+        return (errors == null) ? Collections.emptyMap() : errors;
+    }
+
+    public Map<Integer, Map<String, ErrorMessage>> getRowErrors() {
+        return rowErrors;
+    }
+
+    public boolean isValid() {
+        return rowErrors.isEmpty();
+    }
+
+    public List<Entity> getTransfers() {
+        return transfers;
+    }
+
+    void addTransfer(final Entity transfer) {
+        transfers.add(transfer);
+    }
+
+}
@@ -0,0 +1,215 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowMultitransfers;
+
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_FROM;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_TO;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.NUMBER;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.PRODUCT;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.QUANTITY;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.STAFF;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.TIME;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.TYPE;
+import static com.qcadoo.mes.materialFlow.constants.TransferType.PRODUCTION;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlow.MaterialFlowService;
+import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
+import com.qcadoo.mes.materialFlowResources.MaterialFlowResourcesService;
+import com.qcadoo.mes.materialFlowResources.constants.TransferFieldsMFR;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+/**
+ * Creates transfers of a multitransfer at once. Rows are validated together against stock of the source location loaded in
+ * one query, then transfers are inserted in one batch and resources are updated once for all of them, so either all
+ * transfers are created or none.
+ */
+@Service
+public class MultitransferService {
+
+    private static final String L_RESOURCES_ARENT_SUFFICIENT = "materialFlowResources.validate.global.error.resourcesArentSufficient";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private MaterialFlowService materialFlowService;
+
+    @Autowired
+    private MaterialFlowResourcesService materialFlowResourcesService;
+
+    @Autowired
+    private NumberService numberService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Creates transfers for given product quantities. Nothing is created when any row is invalid.
+     *
+     * @param type
+     *            transfer type
+     * @param time
+     *            transfer time
+     * @param locationFrom
+     *            source location
+     * @param locationTo
+     *            target location
+     * @param staff
+     *            staff
+     * @param productQuantities
+     *            rows of the multitransfer, with product and quantity
+     * @return created transfers or errors of rows, by row index
+     */
+    @Transactional
+    public MultitransferResult createTransfers(final String type, final Date time, final Entity locationFrom,
+            final Entity locationTo, final Entity staff, final List<Entity> productQuantities) {
+        MultitransferResult result = validateResources(type, locationFrom, productQuantities);
+
+        if (!result.isValid()) {
+            return result;
+        }
+
+        Date transferTime = materialFlowResourcesService.canChangeDateWhenTransferToWarehouse() ? time : new Date();
+
+        DataDefinition transferDD = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowConstants.MODEL_TRANSFER);
+
+        for (Entity productQuantity : productQuantities) {
+            Entity product = productQuantity.getBelongsToField(PRODUCT);
+            BigDecimal quantity = productQuantity.getDecimalField(QUANTITY);
+
+            if ((product != null) && (quantity != null)) {
+                Entity transfer = transferDD.create();
+
+                transfer.setField(NUMBER,
+                        materialFlowService.generateNumberFromProduct(product, MaterialFlowConstants.MODEL_TRANSFER));
+                transfer.setField(TYPE, type);
+                transfer.setField(TIME, transferTime);
+                transfer.setField(LOCATION_FROM, locationFrom);
+                transfer.setField(LOCATION_TO, locationTo);
+                transfer.setField(STAFF, staff);
+                transfer.setField(PRODUCT, product);
+                transfer.setField(QUANTITY, numberService.setScale(quantity));
+
+                result.addTransfer(transfer);
+            }
+        }
+
+        insertTransfers(result.getTransfers());
+
+        materialFlowResourcesService.manageResources(result.getTransfers());
+
+        return result;
+    }
+
+    MultitransferResult validateResources(final String type, final Entity locationFrom, final List<Entity> productQuantities) {
+        MultitransferResult result = new MultitransferResult();
+
+        if ((type == null) || PRODUCTION.getStringValue().equals(type)
+                || !materialFlowResourcesService.isLocationIsWarehouse(locationFrom)) {
+            return result;
+        }
+
+        List<Entity> products = productQuantities.stream().map(productQuantity -> productQuantity.getBelongsToField(PRODUCT))
+                .filter(Objects::nonNull).collect(Collectors.toList());
+
+        Map<Long, BigDecimal> resourcesQuantities = materialFlowResourcesService.getQuantitiesForProductsAndLocation(products,
+                locationFrom);
+
+        for (int row = 0; row < productQuantities.size(); row++) {
+            Entity productQuantity = productQuantities.get(row);
+            Entity product = productQuantity.getBelongsToField(PRODUCT);
+            BigDecimal quantity = productQuantity.getDecimalField(QUANTITY);
+
+            if ((product == null) || (quantity == null)) {
+                continue;
+            }
+
+            BigDecimal resourcesQuantity = resourcesQuantities.get(product.getId());
+
+            if ((resourcesQuantity == null) || (resourcesQuantity.compareTo(quantity) < 0)) {
+                result.addError(row, QUANTITY, new ErrorMessage(L_RESOURCES_ARENT_SUFFICIENT));
+            }
+        }
+
+        return result;
+    }
+
+    private void insertTransfers(final List<Entity> transfers) {
+        if (transfers.isEmpty()) {
+            return;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO materialflow_transfer ");
+        query.append("(number, type, time, locationfrom_id, locationto_id, staff_id, product_id, quantity, price) ");
+        query.append("VALUES (:number, :type, :time, :locationFromId, :locationToId, :staffId, :productId, :quantity, :price)");
+
+        List<SqlParameterSource> parameters = Lists.newArrayListWithCapacity(transfers.size());
+
+        for (Entity transfer : transfers) {
+            BigDecimal price = transfer.getDecimalField(TransferFieldsMFR.PRICE);
+
+            MapSqlParameterSource parameter = new MapSqlParameterSource();
+
+            parameter.addValue("number", transfer.getStringField(NUMBER));
+            parameter.addValue("type", transfer.getStringField(TYPE));
+            parameter.addValue("time", transfer.getDateField(TIME));
+            parameter.addValue("locationFromId", getId(transfer.getBelongsToField(LOCATION_FROM)));
+            parameter.addValue("locationToId", getId(transfer.getBelongsToField(LOCATION_TO)));
+            parameter.addValue("staffId", getId(transfer.getBelongsToField(STAFF)));
+            parameter.addValue("productId", getId(transfer.getBelongsToField(PRODUCT)));
+            parameter.addValue("quantity", transfer.getDecimalField(QUANTITY));
+            parameter.addValue("price", (price == null) ? BigDecimal.ZERO : price);
+
+            parameters.add(parameter);
+        }
+
+        jdbcTemplate.batchUpdate(query.toString(), parameters.toArray(new SqlParameterSource[parameters.size()]));
+    }
+
+    private Long getId(final Entity entity) {
+        return (entity == null) ? null : entity.getId();
+    }
+
+}
@@ -27,36 +27,32 @@ import static com.qcadoo.mes.basic.constants.ProductFields.NAME;
 import static com.qcadoo.mes.basic.constants.ProductFields.UNIT;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_FROM;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_TO;
-import static com.qcadoo.mes.materialFlow.constants.TransferFields.NUMBER;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.PRODUCT;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.PRODUCTS;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.QUANTITY;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.STAFF;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.TIME;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.TYPE;
-import static com.qcadoo.mes.materialFlow.constants.TransferType.PRODUCTION;
 
-import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.materialFlow.MaterialFlowService;
-import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
+import com.qcadoo.mes.materialFlowMultitransfers.MultitransferResult;
+import com.qcadoo.mes.materialFlowMultitransfers.MultitransferService;
 import com.qcadoo.mes.materialFlowMultitransfers.constants.MaterialFlowMultitransfersConstants;
 import com.qcadoo.mes.materialFlowResources.MaterialFlowResourcesService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.validators.ErrorMessage;
@@ -88,9 +84,8 @@ public class MultitransferListeners {
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
-    private NumberService numberService;
+    private MultitransferService multitransferService;
 
-    @Transactional
     public void createMultitransfer(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         if (!isMultitransferFormValid(view)) {
             return;
@@ -120,20 +115,20 @@ public class MultitransferListeners {
 
         List<FormComponent> formComponents = adlc.getFormComponents();
 
-        for (FormComponent formComponent : formComponents) {
-            Entity productQuantity = formComponent.getEntity();
-            BigDecimal quantity = productQuantity.getDecimalField(QUANTITY);
-            Entity product = productQuantity.getBelongsToField(PRODUCT);
+        List<Entity> productQuantities = formComponents.stream().map(FormComponent::getEntity).collect(Collectors.toList());
 
-            if ((product != null) && (quantity != null)) {
-                Entity transfer = createTransfer(type, time, locationFrom, locationTo, staff, product, quantity);
+        MultitransferResult result = multitransferService.createTransfers(type, time, locationFrom, locationTo, staff,
+                productQuantities);
 
-                if (!checkIfTransferIsValid(formComponent, transfer)) {
-                    TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
-
-                    return;
-                }
+        if (!result.isValid()) {
+            for (int row = 0; row < formComponents.size(); row++) {
+                addErrors(formComponents.get(row), result.getErrors(row));
             }
+
+            view.getComponentByReference(L_FORM).addMessage("materialFlowMultitransfers.multitransfer.generate.failure",
+                    MessageType.FAILURE);
+
+            return;
         }
 
         adlc.setFieldValue(null);
@@ -146,23 +141,15 @@ public class MultitransferListeners {
                 MessageType.SUCCESS);
     }
 
-    public boolean checkIfTransferIsValid(FormComponent formComponent, Entity transfer) {
-        if (!transfer.isValid()) {
-            Map<String, ErrorMessage> errors = transfer.getErrors();
-
-            for (Entry<String, ErrorMessage> error : errors.entrySet()) {
-                String field = error.getKey();
-                ErrorMessage errorMessage = error.getValue();
+    private void addErrors(final FormComponent formComponent, final Map<String, ErrorMessage> errors) {
+        for (Entry<String, ErrorMessage> error : errors.entrySet()) {
+            String field = error.getKey();
+            ErrorMessage errorMessage = error.getValue();
 
-                if (formComponent.findFieldComponentByName(field) != null) {
-                    formComponent.findFieldComponentByName(field).addMessage(errorMessage);
-                }
+            if (formComponent.findFieldComponentByName(field) != null) {
+                formComponent.findFieldComponentByName(field).addMessage(errorMessage);
             }
-
-            return false;
         }
-
-        return true;
     }
 
     public boolean isMultitransferFormValid(final ViewDefinitionState view) {
@@ -228,15 +215,11 @@ public class MultitransferListeners {
 
             isValid = false;
         } else {
-            String type = (String) typeField.getFieldValue();
-
             for (FormComponent formComponent : formComponents) {
                 Entity productQuantity = formComponent.getEntity();
 
-                BigDecimal quantity = null;
-
                 try {
-                    quantity = productQuantity.getDecimalField(QUANTITY);
+                    productQuantity.getDecimalField(QUANTITY);
                 } catch (IllegalArgumentException e) {
                     formComponent.findFieldComponentByName(QUANTITY).addMessage(L_ERROR_INVALID_NUMERIC_FORMAT,
                             MessageType.FAILURE);
@@ -259,15 +242,6 @@ public class MultitransferListeners {
                         isValid = false;
                     }
                 }
-
-                if ((type != null) && !PRODUCTION.getStringValue().equals(type) && (locationFrom != null) && (product != null)
-                        && (quantity != null)
-                        && !materialFlowResourcesService.areResourcesSufficient(locationFrom, product, quantity)) {
-                    formComponent.findFieldComponentByName(QUANTITY).addMessage(
-                            "materialFlowResources.validate.global.error.resourcesArentSufficient", MessageType.FAILURE);
-
-                    isValid = false;
-                }
             }
         }
 
@@ -294,28 +268,6 @@ public class MultitransferListeners {
         return false;
     }
 
-    public Entity createTransfer(final String type, final Date time, final Entity locationFrom, final Entity locationTo,
-            final Entity staff, final Entity product, final BigDecimal quantity) {
-        DataDefinition transferDD = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_TRANSFER);
-
-        Entity transfer = transferDD.create();
-        String number = materialFlowService.generateNumberFromProduct(product, MaterialFlowConstants.MODEL_TRANSFER);
-
-        transfer.setField(NUMBER, number);
-        transfer.setField(TYPE, type);
-        transfer.setField(TIME, time);
-        transfer.setField(LOCATION_FROM, locationFrom);
-        transfer.setField(LOCATION_TO, locationTo);
-        transfer.setField(STAFF, staff);
-        transfer.setField(PRODUCT, product);
-        transfer.setField(QUANTITY, numberService.setScale(quantity));
-
-        transfer = transferDD.save(transfer);
-
-        return transfer;
-    }
-
     public void fillUnitsInADL(final ViewDefinitionState view, final ComponentState componentState, final String[] args) {
         fillUnitsInADL(view, PRODUCTS);
     }
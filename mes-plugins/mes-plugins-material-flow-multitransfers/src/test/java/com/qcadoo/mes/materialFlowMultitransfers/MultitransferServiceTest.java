@@ -0,0 +1,131 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowMultitransfers;
+
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.PRODUCT;
+import static com.qcadoo.mes.materialFlow.constants.TransferFields.QUANTITY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.qcadoo.mes.materialFlow.constants.TransferType;
+import com.qcadoo.mes.materialFlowResources.MaterialFlowResourcesService;
+import com.qcadoo.model.api.Entity;
+
+public class MultitransferServiceTest {
+
+    private MultitransferService multitransferService;
+
+    @Mock
+    private MaterialFlowResourcesService materialFlowResourcesService;
+
+    @Mock
+    private Entity locationFrom, firstProductQuantity, secondProductQuantity, firstProduct, secondProduct;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        multitransferService = new MultitransferService();
+
+        ReflectionTestUtils.setField(multitransferService, "materialFlowResourcesService", materialFlowResourcesService);
+
+        given(firstProduct.getId()).willReturn(1L);
+        given(secondProduct.getId()).willReturn(2L);
+
+        given(firstProductQuantity.getBelongsToField(PRODUCT)).willReturn(firstProduct);
+        given(firstProductQuantity.getDecimalField(QUANTITY)).willReturn(BigDecimal.TEN);
+        given(secondProductQuantity.getBelongsToField(PRODUCT)).willReturn(secondProduct);
+        given(secondProductQuantity.getDecimalField(QUANTITY)).willReturn(BigDecimal.TEN);
+
+        given(materialFlowResourcesService.isLocationIsWarehouse(locationFrom)).willReturn(true);
+    }
+
+    @Test
+    public void shouldReturnErrorsForRowsWithInsufficientResources() {
+        // given
+        Map<Long, BigDecimal> quantities = ImmutableMap.of(1L, new BigDecimal(15), 2L, BigDecimal.ONE);
+
+        given(materialFlowResourcesService.getQuantitiesForProductsAndLocation(anyListOf(Entity.class), eq(locationFrom)))
+                .willReturn(quantities);
+
+        // when
+        MultitransferResult result = multitransferService.validateResources(TransferType.TRANSPORT.getStringValue(),
+                locationFrom, Arrays.asList(firstProductQuantity, secondProductQuantity));
+
+        // then
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors(0).isEmpty());
+        assertEquals(1, result.getErrors(1).size());
+        assertTrue(result.getErrors(1).containsKey(QUANTITY));
+    }
+
+    @Test
+    public void shouldReturnErrorForRowWithoutResources() {
+        // given
+        Map<Long, BigDecimal> quantities = ImmutableMap.of(1L, BigDecimal.TEN);
+
+        given(materialFlowResourcesService.getQuantitiesForProductsAndLocation(anyListOf(Entity.class), eq(locationFrom)))
+                .willReturn(quantities);
+
+        // when
+        MultitransferResult result = multitransferService.validateResources(TransferType.TRANSPORT.getStringValue(),
+                locationFrom, Arrays.asList(firstProductQuantity, secondProductQuantity));
+
+        // then
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors(0).isEmpty());
+        assertTrue(result.getErrors(1).containsKey(QUANTITY));
+    }
+
+    @Test
+    public void shouldNotCheckResourcesForProductionTransfers() {
+        // when
+        MultitransferResult result = multitransferService.validateResources(TransferType.PRODUCTION.getStringValue(),
+                locationFrom, Arrays.asList(firstProductQuantity, secondProductQuantity));
+
+        // then
+        assertTrue(result.isValid());
+        verify(materialFlowResourcesService, never()).getQuantitiesForProductsAndLocation(anyListOf(Entity.class),
+                any(Entity.class));
+    }
+
+}
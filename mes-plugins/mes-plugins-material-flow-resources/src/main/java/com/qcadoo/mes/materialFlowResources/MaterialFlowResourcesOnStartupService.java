@@ -9,6 +9,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.costNorms.CostNormsService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -24,6 +25,15 @@ public class MaterialFlowResourcesOnStartupService extends Module {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private CostNormsService costNormsService;
+
+    @Override
+    @Transactional
+    public void multiTenantEnable() {
+        costNormsService.rebuildAverageCostsIfEmpty();
+    }
+
     @Override
     public void enableOnStartup() {
         setDocumentPositionParameters();
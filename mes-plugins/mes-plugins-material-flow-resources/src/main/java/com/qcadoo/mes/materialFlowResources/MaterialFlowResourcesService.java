@@ -41,6 +41,8 @@ public interface MaterialFlowResourcesService {
 
     void manageResources(final Entity transfer);
 
+    void manageResources(final List<Entity> transfers);
+
     void addResource(final Entity locationTo, final Entity product, final BigDecimal quantity, final Date time,
             final BigDecimal price, final String batch);
 
@@ -56,6 +58,8 @@ public interface MaterialFlowResourcesService {
 
     List<Entity> getResourcesForLocationAndProduct(final Entity location, final Entity product);
 
+    Map<Long, List<Entity>> getResourcesForLocationAndProducts(final Entity location, final List<Entity> products);
+
     Map<Entity, BigDecimal> groupResourcesByProduct(final Entity location);
 
     BigDecimal calculatePrice(final Entity location, final Entity product);
@@ -38,6 +38,7 @@ import static com.qcadoo.mes.materialFlowResources.constants.TransferFieldsMFR.P
 import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +48,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
@@ -54,10 +56,12 @@ import com.qcadoo.mes.materialFlowResources.constants.ChangeDateWhenTransferToWa
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.ParameterFieldsMFR;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.costNorms.CostNormsService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.JoinType;
 import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
@@ -81,6 +85,9 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private CostNormsService costNormsService;
+
     @Override
     public boolean areResourcesSufficient(final Entity location, final Entity product, final BigDecimal quantity) {
         String type = location.getStringField(TYPE);
@@ -139,6 +146,69 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
         } else if ((locationTo != null) && isTypeWarehouse(locationTo.getStringField(TYPE))) {
             addResource(locationTo, product, quantity, time, price);
         }
+
+        updateAverageCosts(Lists.newArrayList(transfer));
+    }
+
+    @Override
+    public void manageResources(final List<Entity> transfers) {
+        Map<Long, Map<Long, List<Entity>>> resourcesByLocation = Maps.newHashMap();
+
+        for (Entity transfer : transfers) {
+            Entity locationFrom = transfer.getBelongsToField(LOCATION_FROM);
+            Entity locationTo = transfer.getBelongsToField(LOCATION_TO);
+            Entity product = transfer.getBelongsToField(PRODUCT);
+            BigDecimal quantity = transfer.getDecimalField(QUANTITY);
+            Date time = (Date) transfer.getField(TIME);
+            BigDecimal price = transfer.getDecimalField(PRICE);
+
+            if ((locationFrom != null) && isTypeWarehouse(locationFrom.getStringField(TYPE))) {
+                Map<Long, List<Entity>> resourcesByProduct = resourcesByLocation.computeIfAbsent(locationFrom.getId(),
+                        locationId -> getResourcesForLocationAndProducts(locationFrom, getProducts(transfers, locationFrom)));
+                List<Entity> resources = resourcesByProduct.computeIfAbsent(product.getId(), productId -> Lists.newArrayList());
+
+                if ((locationTo != null) && isTypeWarehouse(locationTo.getStringField(TYPE))) {
+                    moveResource(resources, locationTo, product, quantity, time, price);
+                } else {
+                    updateResource(resources, quantity);
+                }
+            } else if ((locationTo != null) && isTypeWarehouse(locationTo.getStringField(TYPE))) {
+                addResource(locationTo, product, quantity, time, price);
+            }
+        }
+
+        updateAverageCosts(transfers);
+    }
+
+    private void updateAverageCosts(final List<Entity> transfers) {
+        Map<Long, Entity> warehouses = Maps.newHashMap();
+        Map<Long, List<Entity>> productsByWarehouse = Maps.newHashMap();
+
+        for (Entity transfer : transfers) {
+            for (Entity location : Lists.newArrayList(transfer.getBelongsToField(LOCATION_FROM),
+                    transfer.getBelongsToField(LOCATION_TO))) {
+                if ((location != null) && isTypeWarehouse(location.getStringField(TYPE))) {
+                    warehouses.put(location.getId(), location);
+                    productsByWarehouse.computeIfAbsent(location.getId(), locationId -> Lists.newArrayList()).add(
+                            transfer.getBelongsToField(PRODUCT));
+                }
+            }
+        }
+
+        for (Map.Entry<Long, List<Entity>> warehouseProducts : productsByWarehouse.entrySet()) {
+            costNormsService.updateAverageCosts(warehouseProducts.getValue(), warehouses.get(warehouseProducts.getKey()));
+        }
+    }
+
+    private List<Entity> getProducts(final List<Entity> transfers, final Entity locationFrom) {
+        return transfers.stream().filter(transfer -> locationFrom.getId().equals(getLocationFromId(transfer)))
+                .map(transfer -> transfer.getBelongsToField(PRODUCT)).collect(Collectors.toList());
+    }
+
+    private Long getLocationFromId(final Entity transfer) {
+        Entity locationFrom = transfer.getBelongsToField(LOCATION_FROM);
+
+        return (locationFrom == null) ? null : locationFrom.getId();
     }
 
     private boolean isTypeWarehouse(final String type) {
@@ -172,26 +242,34 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
         List<Entity> resources = getResourcesForLocationAndProduct(locationFrom, product);
 
         if (resources != null) {
-            for (Entity resource : resources) {
-                BigDecimal resourceQuantity = resource.getDecimalField(QUANTITY);
-
-                if (quantity.compareTo(resourceQuantity) >= 0) {
-                    quantity = quantity.subtract(resourceQuantity, numberService.getMathContext());
+            updateResource(Lists.newArrayList(resources), quantity);
+        }
+    }
 
-                    resource.getDataDefinition().delete(resource.getId());
+    private void updateResource(final List<Entity> resources, BigDecimal quantity) {
+        Iterator<Entity> resourcesIterator = resources.iterator();
 
-                    if (BigDecimal.ZERO.compareTo(quantity) == 0) {
-                        return;
-                    }
-                } else {
-                    resourceQuantity = resourceQuantity.subtract(quantity, numberService.getMathContext());
+        while (resourcesIterator.hasNext()) {
+            Entity resource = resourcesIterator.next();
+            BigDecimal resourceQuantity = resource.getDecimalField(QUANTITY);
 
-                    resource.setField(QUANTITY, numberService.setScale(resourceQuantity));
+            if (quantity.compareTo(resourceQuantity) >= 0) {
+                quantity = quantity.subtract(resourceQuantity, numberService.getMathContext());
 
-                    resource.getDataDefinition().save(resource);
+                resource.getDataDefinition().delete(resource.getId());
+                resourcesIterator.remove();
 
+                if (BigDecimal.ZERO.compareTo(quantity) == 0) {
                     return;
                 }
+            } else {
+                resourceQuantity = resourceQuantity.subtract(quantity, numberService.getMathContext());
+
+                resource.setField(QUANTITY, numberService.setScale(resourceQuantity));
+
+                resource.getDataDefinition().save(resource);
+
+                return;
             }
         }
     }
@@ -202,32 +280,41 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
         List<Entity> resources = getResourcesForLocationAndProduct(locationFrom, product);
 
         if (resources != null) {
-            for (Entity resource : resources) {
-                BigDecimal resourceQuantity = resource.getDecimalField(QUANTITY);
-                BigDecimal resourcePrice = (price == null) ? resource.getDecimalField(PRICE) : price;
-                String resourceBatch = (price == null) ? resource.getStringField(BATCH) : null;
-
-                if (quantity.compareTo(resourceQuantity) >= 0) {
-                    quantity = quantity.subtract(resourceQuantity, numberService.getMathContext());
-
-                    resource.getDataDefinition().delete(resource.getId());
+            moveResource(Lists.newArrayList(resources), locationTo, product, quantity, time, price);
+        }
+    }
 
-                    addResource(locationTo, product, resourceQuantity, time, resourcePrice, resourceBatch);
+    private void moveResource(final List<Entity> resources, final Entity locationTo, final Entity product, BigDecimal quantity,
+            final Date time, final BigDecimal price) {
+        Iterator<Entity> resourcesIterator = resources.iterator();
 
-                    if (BigDecimal.ZERO.compareTo(quantity) == 0) {
-                        return;
-                    }
-                } else {
-                    resourceQuantity = resourceQuantity.subtract(quantity, numberService.getMathContext());
+        while (resourcesIterator.hasNext()) {
+            Entity resource = resourcesIterator.next();
+            BigDecimal resourceQuantity = resource.getDecimalField(QUANTITY);
+            BigDecimal resourcePrice = (price == null) ? resource.getDecimalField(PRICE) : price;
+            String resourceBatch = (price == null) ? resource.getStringField(BATCH) : null;
 
-                    resource.setField(QUANTITY, numberService.setScale(resourceQuantity));
+            if (quantity.compareTo(resourceQuantity) >= 0) {
+                quantity = quantity.subtract(resourceQuantity, numberService.getMathContext());
 
-                    resource.getDataDefinition().save(resource);
+                resource.getDataDefinition().delete(resource.getId());
+                resourcesIterator.remove();
 
-                    addResource(locationTo, product, quantity, time, resourcePrice, resourceBatch);
+                addResource(locationTo, product, resourceQuantity, time, resourcePrice, resourceBatch);
 
+                if (BigDecimal.ZERO.compareTo(quantity) == 0) {
                     return;
                 }
+            } else {
+                resourceQuantity = resourceQuantity.subtract(quantity, numberService.getMathContext());
+
+                resource.setField(QUANTITY, numberService.setScale(resourceQuantity));
+
+                resource.getDataDefinition().save(resource);
+
+                addResource(locationTo, product, quantity, time, resourcePrice, resourceBatch);
+
+                return;
             }
         }
     }
@@ -248,6 +335,28 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
         return resources;
     }
 
+    @Override
+    public Map<Long, List<Entity>> getResourcesForLocationAndProducts(final Entity location, final List<Entity> products) {
+        Map<Long, List<Entity>> resourcesByProduct = Maps.newHashMap();
+
+        if (products.isEmpty()) {
+            return resourcesByProduct;
+        }
+
+        List<Entity> resources = dataDefinitionService
+                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE).find()
+                .createAlias(PRODUCT, PRODUCT, JoinType.INNER).add(SearchRestrictions.belongsTo(LOCATION, location))
+                .add(SearchRestrictions.in(PRODUCT + ".id", products.stream().map(Entity::getId).collect(Collectors.toList())))
+                .addOrder(SearchOrders.asc(TIME)).list().getEntities();
+
+        for (Entity resource : resources) {
+            resourcesByProduct.computeIfAbsent(resource.getBelongsToField(PRODUCT).getId(), productId -> Lists.newArrayList())
+                    .add(resource);
+        }
+
+        return resourcesByProduct;
+    }
+
     @Override
     public Map<Long, BigDecimal> getQuantitiesForProductsAndLocation(final List<Entity> products, final Entity location) {
         Map<Long, BigDecimal> quantities = Maps.newHashMap();
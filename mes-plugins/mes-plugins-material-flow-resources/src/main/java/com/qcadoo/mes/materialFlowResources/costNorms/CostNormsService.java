@@ -31,4 +31,16 @@ public interface CostNormsService {
 
     void updateCostNormsForProductsFromWarehouses(final List<Entity> products, final List<Entity> warehouses);
 
+    void updateAverageCostsForDocument(final Entity document);
+
+    void updateAverageCosts(final Entity product, final Entity warehouse);
+
+    void updateAverageCosts(final List<Entity> products, final Entity warehouse);
+
+    void updateAverageCostsForWarehouse(final Entity warehouse);
+
+    void rebuildAverageCosts();
+
+    void rebuildAverageCostsIfEmpty();
+
 }
@@ -30,6 +30,7 @@ import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.CostNormsDao;
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.CostNorm;
@@ -51,6 +52,47 @@ public class CostNormsServiceImpl implements CostNormsService {
         costNormsDao.updateCostNormsForProducts(mergeCostNorms(lastPurchases, averageCosts));
     }
 
+    @Override
+    public void updateAverageCostsForDocument(final Entity document) {
+        costNormsDao.updateAverageCostsForDocument(document.getId());
+    }
+
+    @Override
+    public void updateAverageCosts(final Entity product, final Entity warehouse) {
+        if (product != null && warehouse != null) {
+            costNormsDao.updateAverageCosts(product.getId(), warehouse.getId());
+        }
+    }
+
+    @Override
+    public void updateAverageCosts(final List<Entity> products, final Entity warehouse) {
+        if (!products.isEmpty() && warehouse != null) {
+            costNormsDao.updateAverageCosts(products.stream().map(Entity::getId).distinct().collect(Collectors.toList()),
+                    warehouse.getId());
+        }
+    }
+
+    @Override
+    public void updateAverageCostsForWarehouse(final Entity warehouse) {
+        if (warehouse != null) {
+            costNormsDao.updateAverageCostsForWarehouse(warehouse.getId());
+        }
+    }
+
+    @Override
+    @Transactional
+    public void rebuildAverageCosts() {
+        costNormsDao.rebuildAverageCosts();
+    }
+
+    @Override
+    @Transactional
+    public void rebuildAverageCostsIfEmpty() {
+        if (!costNormsDao.hasAverageCosts()) {
+            costNormsDao.rebuildAverageCosts();
+        }
+    }
+
     private Collection<CostNorm> mergeCostNorms(List<CostNorm> lastPurchases, List<CostNorm> averageCosts) {
         Map<Long, CostNorm> costNormMap = lastPurchases.stream().collect(
                 Collectors.toMap(CostNorm::getProductId, purchase -> purchase, (p, q) -> p));
@@ -35,4 +35,16 @@ public interface CostNormsDao {
     public List<CostNorm> getAverageCostForProducts(List<Long> productIds, List<Long> warehousesIds);
 
     public void updateCostNormsForProducts(Collection<CostNorm> costNorms);
+
+    public void updateAverageCostsForDocument(Long documentId);
+
+    public void updateAverageCosts(Long productId, Long warehouseId);
+
+    public void updateAverageCosts(List<Long> productIds, Long warehouseId);
+
+    public void updateAverageCostsForWarehouse(Long warehouseId);
+
+    public void rebuildAverageCosts();
+
+    public boolean hasAverageCosts();
 }
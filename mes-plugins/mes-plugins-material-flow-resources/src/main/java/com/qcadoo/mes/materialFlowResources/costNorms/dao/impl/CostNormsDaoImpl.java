@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 
+import org.hibernate.SessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -36,15 +37,21 @@ import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.CostNormsDao;
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.CostNorm;
 
 @Repository
 public class CostNormsDaoImpl implements CostNormsDao {
 
+    private static final int L_UPDATE_BATCH_SIZE = 1000;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SessionFactory sessionFactory;
+
     @Override
     public List<CostNorm> getLastPurchaseCostsForProducts(List<Long> productIds, List<Long> warehousesIds) {
         StringBuilder queryBuilder = new StringBuilder();
@@ -87,15 +94,15 @@ public class CostNormsDaoImpl implements CostNormsDao {
     @Override
     public List<CostNorm> getAverageCostForProducts(List<Long> productIds, List<Long> warehousesIds) {
         StringBuilder queryBuilder = new StringBuilder();
-        queryBuilder.append("SELECT r.product_id AS productId, SUM(r.price * r.quantity)/SUM(r.quantity) AS averageCost ");
-        queryBuilder.append("FROM materialflowresources_resource r WHERE r.price IS NOT NULL ");
+        queryBuilder.append("SELECT ac.product_id AS productId, SUM(ac.totalcost)/SUM(ac.quantity) AS averageCost ");
+        queryBuilder.append("FROM materialflowresources_productaveragecost ac WHERE ac.quantity <> 0 ");
         if (!productIds.isEmpty()) {
-            queryBuilder.append("AND r.product_id IN (:productIds) ");
+            queryBuilder.append("AND ac.product_id IN (:productIds) ");
         }
         if (!warehousesIds.isEmpty()) {
-            queryBuilder.append("AND r.location_id IN (:warehousesIds) ");
+            queryBuilder.append("AND ac.location_id IN (:warehousesIds) ");
         }
-        queryBuilder.append("GROUP BY r.product_id");
+        queryBuilder.append("GROUP BY ac.product_id HAVING SUM(ac.quantity) <> 0");
         SqlParameterSource namedParameters = new MapSqlParameterSource("productIds", productIds).addValue("warehousesIds",
                 warehousesIds);
         List<Map<String, Object>> queryForList = jdbcTemplate.queryForList(queryBuilder.toString(), namedParameters);
@@ -115,19 +122,108 @@ public class CostNormsDaoImpl implements CostNormsDao {
 
     @Override
     public void updateCostNormsForProducts(Collection<CostNorm> costNorms) {
+        Map<String, List<SqlParameterSource>> parametersByValues = Maps.newLinkedHashMap();
 
         for (CostNorm costNorm : costNorms) {
-            StringBuilder queryBuilder = new StringBuilder();
-            queryBuilder.append("UPDATE basic_product SET ");
-            queryBuilder.append(prepareValuesToUpdate(costNorm));
-            queryBuilder.append(" WHERE id = :productId");
+            String valuesToUpdate = prepareValuesToUpdate(costNorm);
+            if (valuesToUpdate.isEmpty()) {
+                continue;
+            }
             SqlParameterSource namedParameters = new MapSqlParameterSource("productId", costNorm.getProductId())
                     .addValue("lastPurchaseCost", costNorm.getLastPurchaseCost())
                     .addValue("averageCost", costNorm.getAverageCost()).addValue("nominalCost", costNorm.getNominalCost())
                     .addValue("costForNumber", costNorm.getCostForNumber());
 
-            jdbcTemplate.update(queryBuilder.toString(), namedParameters);
+            parametersByValues.computeIfAbsent(valuesToUpdate, values -> Lists.newArrayList()).add(namedParameters);
         }
+
+        for (Map.Entry<String, List<SqlParameterSource>> values : parametersByValues.entrySet()) {
+            StringBuilder queryBuilder = new StringBuilder();
+            queryBuilder.append("UPDATE basic_product SET ");
+            queryBuilder.append(values.getKey());
+            queryBuilder.append(" WHERE id = :productId");
+
+            for (List<SqlParameterSource> batch : Lists.partition(values.getValue(), L_UPDATE_BATCH_SIZE)) {
+                jdbcTemplate.batchUpdate(queryBuilder.toString(), batch.toArray(new SqlParameterSource[batch.size()]));
+            }
+        }
+    }
+
+    @Override
+    public void updateAverageCostsForDocument(Long documentId) {
+        StringBuilder condition = new StringBuilder();
+        condition.append("location_id IN (SELECT d.locationfrom_id FROM materialflowresources_document d WHERE d.id = :documentId ");
+        condition.append("UNION SELECT d.locationto_id FROM materialflowresources_document d WHERE d.id = :documentId) ");
+        condition.append("AND product_id IN (SELECT p.product_id FROM materialflowresources_position p ");
+        condition.append("WHERE p.document_id = :documentId) ");
+
+        updateAverageCosts(condition.toString(), new MapSqlParameterSource("documentId", documentId), false);
+    }
+
+    @Override
+    public void updateAverageCosts(Long productId, Long warehouseId) {
+        updateAverageCosts("location_id = :warehouseId AND product_id = :productId ", new MapSqlParameterSource("productId",
+                productId).addValue("warehouseId", warehouseId), false);
+    }
+
+    @Override
+    public void updateAverageCosts(List<Long> productIds, Long warehouseId) {
+        updateAverageCosts("location_id = :warehouseId AND product_id IN (:productIds) ", new MapSqlParameterSource(
+                "productIds", productIds).addValue("warehouseId", warehouseId), false);
+    }
+
+    @Override
+    public void updateAverageCostsForWarehouse(Long warehouseId) {
+        updateAverageCosts("location_id = :warehouseId ", new MapSqlParameterSource("warehouseId", warehouseId), true);
+    }
+
+    @Override
+    public void rebuildAverageCosts() {
+        updateAverageCosts("TRUE ", new MapSqlParameterSource(), true);
+    }
+
+    @Override
+    public boolean hasAverageCosts() {
+        return !jdbcTemplate.queryForList("SELECT id FROM materialflowresources_productaveragecost LIMIT 1",
+                new MapSqlParameterSource(), Long.class).isEmpty();
+    }
+
+    private void updateAverageCosts(String condition, SqlParameterSource namedParameters, boolean lockTable) {
+        // resources changed through data definitions may still be pending in the Hibernate session
+        sessionFactory.getCurrentSession().flush();
+
+        if (lockTable) {
+            jdbcTemplate.getJdbcOperations().execute("LOCK TABLE materialflowresources_productaveragecost IN EXCLUSIVE MODE");
+        } else {
+            lockAverageCosts(condition, namedParameters);
+        }
+
+        jdbcTemplate.update("DELETE FROM materialflowresources_productaveragecost WHERE " + condition, namedParameters);
+
+        StringBuilder queryBuilder = new StringBuilder();
+        queryBuilder.append("INSERT INTO materialflowresources_productaveragecost (product_id, location_id, quantity, totalcost) ");
+        queryBuilder.append("SELECT product_id, location_id, SUM(quantity), SUM(price * quantity) ");
+        queryBuilder.append("FROM materialflowresources_resource WHERE price IS NOT NULL AND product_id IS NOT NULL AND ");
+        queryBuilder.append(condition);
+        queryBuilder.append("GROUP BY product_id, location_id");
+
+        jdbcTemplate.update(queryBuilder.toString(), namedParameters);
+    }
+
+    /**
+     * Locks average costs of every product and location matching the condition until the end of the transaction, in the
+     * order of locations and products, so concurrent rebuilds of the same costs wait for each other and don't deadlock
+     */
+    private void lockAverageCosts(String condition, SqlParameterSource namedParameters) {
+        StringBuilder queryBuilder = new StringBuilder();
+        queryBuilder.append("SELECT pg_advisory_xact_lock(keys.location_id::int, keys.product_id::int) FROM (");
+        queryBuilder.append("SELECT location_id, product_id FROM materialflowresources_resource ");
+        queryBuilder.append("WHERE product_id IS NOT NULL AND ").append(condition);
+        queryBuilder.append("UNION SELECT location_id, product_id FROM materialflowresources_productaveragecost WHERE ");
+        queryBuilder.append(condition);
+        queryBuilder.append("ORDER BY 1, 2) keys");
+
+        jdbcTemplate.queryForList(queryBuilder.toString(), namedParameters);
     }
 
     private String prepareValuesToUpdate(CostNorm costNorm) {
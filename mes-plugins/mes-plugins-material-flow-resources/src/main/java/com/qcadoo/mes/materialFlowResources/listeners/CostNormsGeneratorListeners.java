@@ -73,6 +73,11 @@ public class CostNormsGeneratorListeners {
         view.addMessage("materialFlowResources.success.costNormsUpdated", ComponentState.MessageType.SUCCESS);
     }
 
+    public void rebuildAverageCosts(final ViewDefinitionState view, final ComponentState componentState, final String[] args) {
+        costNormsService.rebuildAverageCosts();
+        view.addMessage("materialFlowResources.success.averageCostsRebuilt", ComponentState.MessageType.SUCCESS);
+    }
+
     public void toggleProductsGrid(final ViewDefinitionState view, final ComponentState componentState, final String[] args) {
 
         Entity generator = getFormEntity(view);
@@ -1,25 +1,32 @@
 package com.qcadoo.mes.materialFlowResources.listeners;
 
+import com.qcadoo.mes.basic.reports.ReportJobProgress;
+import com.qcadoo.mes.basic.reports.ReportJobService;
+import com.qcadoo.mes.basic.reports.ReportJobTask;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.StocktakingFields;
 import com.qcadoo.mes.materialFlowResources.print.StocktakingReportService;
 import com.qcadoo.mes.materialFlowResources.print.helper.ResourceDataProvider;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FormComponent;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
+import java.util.Locale;
 
 @Service
 public class StocktakingDetailsListeners {
 
     private static final String L_FORM = "form";
 
-    private static final Logger LOG = LoggerFactory.getLogger(StocktakingDetailsListeners.class);
+    private static final String L_FILE_NAME = "fileName";
+
+    private static final String L_ROLE_MATERIAL_FLOW = "ROLE_MATERIAL_FLOW";
 
     @Autowired
     private ResourceDataProvider resourceDataProvider;
@@ -27,6 +34,12 @@ public class StocktakingDetailsListeners {
     @Autowired
     private StocktakingReportService reportService;
 
+    @Autowired
+    private ReportJobService reportJobService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
     public void generate(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         state.performEvent(view, "save", new String[0]);
 
@@ -39,13 +52,10 @@ public class StocktakingDetailsListeners {
         reportDb.setField(StocktakingFields.GENERATED, Boolean.TRUE);
         reportDb.setField("generationDate", new Date());
         reportDb = reportDb.getDataDefinition().save(reportDb);
-        try {
-            reportService.generateReport(state, reportDb);
-        } catch (Exception e) {
-            LOG.error("Error when generate stocktaking report", e);
-            throw new IllegalStateException(e.getMessage(), e);
-        }
+        reportJobService.submit(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_STOCKTAKING,
+                reportDb.getId(), L_ROLE_MATERIAL_FLOW, new StocktakingReportJobTask(reportDb.getId(), state.getLocale()));
         state.performEvent(view, "reset", new String[0]);
+        state.addMessage("materialFlowResources.stocktakingDetails.message.documentsQueued", ComponentState.MessageType.INFO);
 
     }
 
@@ -53,4 +63,42 @@ public class StocktakingDetailsListeners {
         reportService.printReport(view, state);
     }
 
+    private final class StocktakingReportJobTask implements ReportJobTask {
+
+        private final Long stocktakingId;
+
+        private final Locale locale;
+
+        private StocktakingReportJobTask(final Long stocktakingId, final Locale locale) {
+            this.stocktakingId = stocktakingId;
+            this.locale = locale;
+        }
+
+        @Override
+        public String generate(final ReportJobProgress progress) throws Exception {
+            Entity stocktaking = getStocktakingDD().get(stocktakingId);
+
+            return reportService.generateReport(stocktaking, locale).getStringField(L_FILE_NAME);
+        }
+
+        @Override
+        public void onFailure() {
+            Entity stocktaking = getStocktakingDD().get(stocktakingId);
+
+            if (stocktaking != null) {
+                stocktaking.setField(StocktakingFields.GENERATED, false);
+                stocktaking.setField(StocktakingReportService.GENERATION_DATE, null);
+                stocktaking.setField(L_FILE_NAME, null);
+
+                stocktaking.getDataDefinition().fastSave(stocktaking);
+            }
+        }
+
+    }
+
+    private DataDefinition getStocktakingDD() {
+        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_STOCKTAKING);
+    }
+
 }
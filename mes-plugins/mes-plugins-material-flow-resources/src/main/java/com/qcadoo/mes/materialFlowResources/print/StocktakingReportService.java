@@ -11,6 +11,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.Locale;
 
 @Service
 public class StocktakingReportService {
@@ -26,9 +27,11 @@ public class StocktakingReportService {
     @Autowired
     private ReportService reportService;
 
-    public void generateReport(final ComponentState state, final Entity stocktakingReport) throws IOException, DocumentException {
-        stocktakingPdfReportService.generateDocument(fileService.updateReportFileName(stocktakingReport,
-                GENERATION_DATE, "materialFlowResources.stocktaking.report.fileName"), state.getLocale());
+    public Entity generateReport(final Entity stocktakingReport, final Locale locale) throws IOException, DocumentException {
+        Entity stocktakingReportWithFileName = fileService.updateReportFileName(stocktakingReport, GENERATION_DATE,
+                "materialFlowResources.stocktaking.report.fileName");
+        stocktakingPdfReportService.generateDocument(stocktakingReportWithFileName, locale);
+        return stocktakingReportWithFileName;
     }
 
     public void printReport(final ViewDefinitionState view, final ComponentState state) {
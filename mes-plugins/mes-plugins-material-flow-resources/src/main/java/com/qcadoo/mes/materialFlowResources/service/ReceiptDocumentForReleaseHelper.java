@@ -48,7 +48,7 @@ public class ReceiptDocumentForReleaseHelper {
         }
         fillPositions(location, document, pzBuilder);
         Entity connectedReceiptDocument = null;
-        if (parameterService.getParameter().getStringField("documentsStatus").equals("01accepted")) {
+        if ("01accepted".equals(parameterService.getParameterSnapshot().getStringField("documentsStatus"))) {
             connectedReceiptDocument = pzBuilder.setAccepted().build();
         } else {
             connectedReceiptDocument = pzBuilder.build();
@@ -36,6 +36,7 @@ import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConst
 import com.qcadoo.mes.materialFlowResources.constants.ResourceCorrectionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
 import com.qcadoo.mes.materialFlowResources.constants.StorageLocationFields;
+import com.qcadoo.mes.materialFlowResources.costNorms.CostNormsService;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.DictionaryService;
 import com.qcadoo.model.api.Entity;
@@ -57,6 +58,9 @@ public class ResourceCorrectionServiceImpl implements ResourceCorrectionService
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private CostNormsService costNormsService;
+
     public long getPalletsCountInStorageLocation(final Entity newStorageLocation) {
         StringBuilder hql = new StringBuilder();
         hql.append("select count(distinct p.number) as palletsCount from #materialFlowResources_resource r ");
@@ -163,6 +167,7 @@ public class ResourceCorrectionServiceImpl implements ResourceCorrectionService
                 if (!savedCorrection.isValid()) {
                     throw new IllegalStateException("Could not save correction");
                 }
+                costNormsService.updateAverageCosts(product(oldResource), location(oldResource));
                 return true;
             } else {
                 return false;
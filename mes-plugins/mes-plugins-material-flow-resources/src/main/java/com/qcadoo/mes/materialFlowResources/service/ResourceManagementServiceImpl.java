@@ -56,6 +56,7 @@ import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
 import com.qcadoo.mes.materialFlowResources.constants.StorageLocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.mes.materialFlowResources.costNorms.CostNormsService;
 import com.qcadoo.mes.materialFlowResources.exceptions.InvalidResourceException;
 import com.qcadoo.mes.materialFlowResources.helpers.NotEnoughResourcesErrorMessageCopyToEntityHelper;
 import com.qcadoo.mes.materialFlowResources.helpers.NotEnoughResourcesErrorMessageHolder;
@@ -111,6 +112,9 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private CalculationQuantityService calculationQuantityService;
 
+    @Autowired
+    private CostNormsService costNormsService;
+
     @Override
     @Transactional
     public void createResources(final Entity document) {
@@ -125,6 +129,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         } else {
             throw new IllegalStateException("Unsupported document type");
         }
+
+        costNormsService.updateAverageCostsForDocument(document);
     }
 
     @Override
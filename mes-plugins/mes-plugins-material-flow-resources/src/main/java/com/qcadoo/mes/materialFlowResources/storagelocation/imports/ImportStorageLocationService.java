@@ -3,6 +3,7 @@ package com.qcadoo.mes.materialFlowResources.storagelocation.imports;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.costNorms.CostNormsService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
 import com.qcadoo.view.api.ComponentState;
@@ -41,6 +42,9 @@ public class ImportStorageLocationService {
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private CostNormsService costNormsService;
+
     @Transactional
     public ImportStorageLocationsResult importPositionsFromFile(final Entity entity, final ViewDefinitionState view) {
         ImportStorageLocationsResult result = new ImportStorageLocationsResult();
@@ -94,6 +98,7 @@ public class ImportStorageLocationService {
         });
 
         updateStorageLocationInResource(warehouse.getId());
+        costNormsService.updateAverageCostsForWarehouse(warehouse);
         return result;
     }
 
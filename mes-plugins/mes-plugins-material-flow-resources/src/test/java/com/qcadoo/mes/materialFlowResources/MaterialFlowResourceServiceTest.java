@@ -58,6 +58,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.costNorms.CostNormsService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -84,6 +85,9 @@ public class MaterialFlowResourceServiceTest {
     @Mock
     private NumberService numberService;
 
+    @Mock
+    private CostNormsService costNormsService;
+
     @Mock
     private DataDefinition resourceDD;
 
@@ -115,6 +119,7 @@ public class MaterialFlowResourceServiceTest {
 
         setField(materialFlowResourceService, "dataDefinitionService", dataDefinitionService);
         setField(materialFlowResourceService, "numberService", numberService);
+        setField(materialFlowResourceService, "costNormsService", costNormsService);
 
         PowerMockito.mockStatic(SearchRestrictions.class);
     }
@@ -44,6 +44,7 @@ import static com.qcadoo.mes.materialFlow.constants.TransferType.PRODUCTION;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -52,8 +53,11 @@ import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.NumberSequenceService;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.util.CurrencyService;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
@@ -77,6 +81,8 @@ public class MaterialFlowService {
 
     private static final String L_FORM = "form";
 
+    private static final int L_TRANSFORMATION_NUMBER_DIGITS = 6;
+
     private static final String L_ID = "id";
 
     private static final String L_TRANS = "trans";
@@ -103,12 +109,17 @@ public class MaterialFlowService {
 
     private static final String L_PRODUCT_ID = "product.id";
 
+    private static final int L_PRODUCTS_BATCH_SIZE = 1000;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
     private NumberGeneratorService numberGeneratorService;
 
+    @Autowired
+    private NumberSequenceService numberSequenceService;
+
     @Autowired
     private CurrencyService currencyService;
 
@@ -180,6 +191,88 @@ public class MaterialFlowService {
         return countProductIn;
     }
 
+    /**
+     * Calculates quantities which should be in location for many products at once, with the same rules as
+     * {@link #calculateShouldBeInLocation(Long, Long, Date)}, loading corrections and transfers of all products together.
+     */
+    public Map<Long, BigDecimal> calculateShouldBeInLocation(final Long locationId, final Collection<Long> productsIds,
+            final Date forDate) {
+        Map<Long, BigDecimal> quantities = Maps.newHashMapWithExpectedSize(productsIds.size());
+
+        for (List<Long> productsIdsPartition : Lists.partition(Lists.newArrayList(productsIds), L_PRODUCTS_BATCH_SIZE)) {
+            Map<Long, Entity> lastCorrections = getLastStockCorrections(locationId, productsIdsPartition);
+            Map<Long, BigDecimal> countProductsIn = sumTransfers(L_LOCATION_TO_ID, locationId, productsIdsPartition, forDate,
+                    lastCorrections);
+            Map<Long, BigDecimal> countProductsOut = sumTransfers(L_LOCATION_FROM_ID, locationId, productsIdsPartition,
+                    forDate, lastCorrections);
+
+            for (Long productId : productsIdsPartition) {
+                BigDecimal countProductIn = countProductsIn.containsKey(productId) ? countProductsIn.get(productId)
+                        : BigDecimal.ZERO;
+                BigDecimal countProductOut = countProductsOut.containsKey(productId) ? countProductsOut.get(productId)
+                        : BigDecimal.ZERO;
+
+                if (lastCorrections.containsKey(productId)) {
+                    countProductIn = countProductIn.add((BigDecimal) lastCorrections.get(productId).getField(FOUND),
+                            numberService.getMathContext());
+                }
+                countProductIn = countProductIn.subtract(countProductOut, numberService.getMathContext());
+
+                if (countProductIn.compareTo(BigDecimal.ZERO) == -1) {
+                    countProductIn = BigDecimal.ZERO;
+                }
+
+                quantities.put(productId, countProductIn);
+            }
+        }
+
+        return quantities;
+    }
+
+    private Map<Long, Entity> getLastStockCorrections(final Long locationId, final List<Long> productsIds) {
+        Map<Long, Entity> lastCorrections = Maps.newHashMap();
+
+        List<Entity> stockCorrections = dataDefinitionService
+                .get(MaterialFlowConstants.PLUGIN_IDENTIFIER, MaterialFlowConstants.MODEL_STOCK_CORRECTION).find()
+                .add(SearchRestrictions.eq(L_LOCATION_ID, locationId)).add(SearchRestrictions.in(L_PRODUCT_ID, productsIds))
+                .addOrder(SearchOrders.desc(STOCK_CORRECTION_DATE)).list().getEntities();
+
+        for (Entity stockCorrection : stockCorrections) {
+            Long productId = stockCorrection.getBelongsToField(PRODUCT).getId();
+
+            if (!lastCorrections.containsKey(productId)) {
+                lastCorrections.put(productId, stockCorrection);
+            }
+        }
+
+        return lastCorrections;
+    }
+
+    private Map<Long, BigDecimal> sumTransfers(final String locationField, final Long locationId, final List<Long> productsIds,
+            final Date forDate, final Map<Long, Entity> lastCorrections) {
+        Map<Long, BigDecimal> sums = Maps.newHashMap();
+
+        List<Entity> transfers = dataDefinitionService
+                .get(MaterialFlowConstants.PLUGIN_IDENTIFIER, MaterialFlowConstants.MODEL_TRANSFER).find()
+                .add(SearchRestrictions.eq(locationField, locationId)).add(SearchRestrictions.in(L_PRODUCT_ID, productsIds))
+                .add(SearchRestrictions.le(TIME, forDate)).list().getEntities();
+
+        for (Entity transfer : transfers) {
+            Long productId = transfer.getBelongsToField(PRODUCT).getId();
+            Entity lastCorrection = lastCorrections.get(productId);
+
+            if ((lastCorrection != null)
+                    && !((Date) transfer.getField(TIME)).after((Date) lastCorrection.getField(STOCK_CORRECTION_DATE))) {
+                continue;
+            }
+
+            BigDecimal sum = sums.containsKey(productId) ? sums.get(productId) : BigDecimal.ZERO;
+            sums.put(productId, sum.add((BigDecimal) transfer.getField(QUANTITY), numberService.getMathContext()));
+        }
+
+        return sums;
+    }
+
     public void refreshShouldBeInStockCorrectionDetails(final ViewDefinitionState state, final ComponentState componentState,
             final String[] args) {
         refreshShouldBeInStockCorrectionDetails(state);
@@ -214,8 +307,15 @@ public class MaterialFlowService {
         if (view.getComponentByReference(NUMBER).getFieldValue() != null) {
             return;
         }
-        numberGeneratorService.generateAndInsertNumber(view, MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_TRANSFORMATIONS, L_FORM, NUMBER);
+        if (!numberGeneratorService.checkIfShouldInsertNumber(view, L_FORM, NUMBER)) {
+            return;
+        }
+
+        FieldComponent numberField = (FieldComponent) view.getComponentByReference(NUMBER);
+
+        numberField.setFieldValue(numberSequenceService.generate(MaterialFlowConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowConstants.MODEL_TRANSFORMATIONS, "", L_TRANSFORMATION_NUMBER_DIGITS));
+        numberField.requestComponentUpdateState();
     }
 
     public void generateNumberForTransfer(final ViewDefinitionState state, final ComponentState componentState,
@@ -250,19 +350,8 @@ public class MaterialFlowService {
         String number = "";
 
         if (product != null) {
-            String generatedNumber = generateNumber(MaterialFlowConstants.PLUGIN_IDENTIFIER, model, 3);
-
-            String prefix = product.getStringField(NUMBER);
-
-            number = prefix + "-" + generatedNumber;
-
-            Long parsedNumber = Long.parseLong(generatedNumber);
-
-            while (numberAlreadyExist(model, number)) {
-                parsedNumber++;
-
-                number = prefix + "-" + String.format("%03d", parsedNumber);
-            }
+            number = numberSequenceService.generate(MaterialFlowConstants.PLUGIN_IDENTIFIER, model,
+                    product.getStringField(NUMBER) + "-", 3);
         }
 
         return number;
@@ -474,26 +563,7 @@ public class MaterialFlowService {
     }
 
     public String generateNumber(final String plugin, final String entityName, int digtsNumber) {
-        DataDefinition dataDefinition = dataDefinitionService.get(plugin, entityName);
-        SearchResult results = dataDefinition.find().setMaxResults(1).addOrder(SearchOrders.desc("id")).list();
-
-        long longValue = 0;
-
-        if (results.getEntities().isEmpty()) {
-            longValue++;
-        } else {
-            longValue = results.getEntities().get(0).getId();
-            while (numberAlreadyExist(dataDefinition, longValue, digtsNumber)) {
-                longValue++;
-            }
-        }
-
-        return String.format("%0" + digtsNumber + "d", longValue);
-    }
-
-    private boolean numberAlreadyExist(final DataDefinition dataDefinition, final long longValue, final int digitsNumber) {
-        return dataDefinition.find().add(SearchRestrictions.eq("number", String.format("%0" + digitsNumber + "d", longValue)))
-                .setMaxResults(1).uniqueResult() != null;
+        return numberSequenceService.generate(plugin, entityName, "", digtsNumber);
     }
 
 }
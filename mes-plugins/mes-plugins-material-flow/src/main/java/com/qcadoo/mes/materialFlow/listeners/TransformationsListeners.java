@@ -187,18 +187,10 @@ public class TransformationsListeners {
         String number = "";
 
         if ((product != null) && (transfers != null)) {
-            String generatedNumber = materialFlowService.generateNumber(MaterialFlowConstants.PLUGIN_IDENTIFIER, model, 3);
+            number = materialFlowService.generateNumberFromProduct(product, model);
 
-            String prefix = product.getStringField(NUMBER);
-
-            number = prefix + "-" + generatedNumber;
-
-            Long parsedNumber = Long.parseLong(generatedNumber);
-
-            while (numberAlreadyExistsOnList(transfers, number) || materialFlowService.numberAlreadyExist(model, number)) {
-                parsedNumber++;
-
-                number = prefix + "-" + String.format("%03d", parsedNumber);
+            while (numberAlreadyExistsOnList(transfers, number)) {
+                number = materialFlowService.generateNumberFromProduct(product, model);
             }
         }
 
@@ -210,20 +202,11 @@ public class TransformationsListeners {
         String number = "";
 
         if ((product != null) && (consumptionComponents != null) && (productionComponents != null)) {
-            String generatedNumber = materialFlowService.generateNumber(MaterialFlowConstants.PLUGIN_IDENTIFIER, model, 3);
-
-            String prefix = product.getStringField(NUMBER);
-
-            number = prefix + "-" + generatedNumber;
-
-            Long parsedNumber = Long.parseLong(generatedNumber);
+            number = materialFlowService.generateNumberFromProduct(product, model);
 
             while (numberAlreadyExistsOnADL(consumptionComponents, number)
-                    || numberAlreadyExistsOnADL(productionComponents, number)
-                    || materialFlowService.numberAlreadyExist(model, number)) {
-                parsedNumber++;
-
-                number = prefix + "-" + String.format("%03d", parsedNumber);
+                    || numberAlreadyExistsOnADL(productionComponents, number)) {
+                number = materialFlowService.generateNumberFromProduct(product, model);
             }
         }
 
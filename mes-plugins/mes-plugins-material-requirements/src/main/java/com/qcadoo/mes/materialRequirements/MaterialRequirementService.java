@@ -26,11 +26,13 @@ package com.qcadoo.mes.materialRequirements;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.springframework.stereotype.Service;
 
 import com.lowagie.text.DocumentException;
+import com.qcadoo.mes.basic.reports.ReportJobProgress;
 import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -92,5 +94,22 @@ public interface MaterialRequirementService {
     void generateMaterialRequirementDocuments(final ComponentState state, final Entity materialRequirement) throws IOException,
             DocumentException;
 
+    /**
+     * Generates material requirement documents, reporting progress of the report job
+     * 
+     * @param materialRequirement
+     *            material requirement
+     * @param locale
+     *            locale of the documents
+     * @param progress
+     *            progress of the report job
+     * 
+     * @return material requirement with file name
+     * 
+     * @throws IOException
+     */
+    Entity generateMaterialRequirementDocuments(final Entity materialRequirement, final Locale locale,
+            final ReportJobProgress progress) throws IOException, DocumentException;
+
 
 }
@@ -24,11 +24,13 @@
 package com.qcadoo.mes.materialRequirements;
 
 import java.io.IOException;
+import java.util.Locale;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.lowagie.text.DocumentException;
+import com.qcadoo.mes.basic.reports.ReportJobProgress;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementFields;
 import com.qcadoo.mes.materialRequirements.print.pdf.MaterialRequirementPdfService;
@@ -85,11 +87,27 @@ public class MaterialRequirementServiceImpl implements MaterialRequirementServic
     @Override
     public void generateMaterialRequirementDocuments(final ComponentState state, final Entity materialRequirement)
             throws IOException, DocumentException {
+        generateMaterialRequirementDocuments(materialRequirement, state.getLocale(), percent -> {
+        });
+    }
+
+    @Override
+    public Entity generateMaterialRequirementDocuments(final Entity materialRequirement, final Locale locale,
+            final ReportJobProgress progress) throws IOException, DocumentException {
         Entity materialRequirementWithFileName = fileService.updateReportFileName(materialRequirement,
                 MaterialRequirementFields.DATE, "materialRequirements.materialRequirement.report.fileName");
 
-        materialRequirementPdfService.generateDocument(materialRequirementWithFileName, state.getLocale());
-        materialRequirementXlsService.generateDocument(materialRequirementWithFileName, state.getLocale());
+        progress.update(10);
+
+        materialRequirementPdfService.generateDocument(materialRequirementWithFileName, locale);
+
+        progress.update(60);
+
+        materialRequirementXlsService.generateDocument(materialRequirementWithFileName, locale);
+
+        progress.update(100);
+
+        return materialRequirementWithFileName;
     }
 
 }
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,9 +37,14 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.lowagie.text.DocumentException;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.reports.ReportJobProgress;
+import com.qcadoo.mes.basic.reports.ReportJobService;
+import com.qcadoo.mes.basic.reports.ReportJobTask;
 import com.qcadoo.mes.materialRequirements.MaterialRequirementService;
+import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementFields;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementsConstants;
 import com.qcadoo.mes.orders.util.OrderHelperService;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.report.api.ReportService;
@@ -51,6 +57,8 @@ import com.qcadoo.view.api.components.FormComponent;
 @Service
 public class MaterialRequirementDetailsListeners {
 
+    private static final String L_ROLE_REQUIREMENTS = "ROLE_REQUIREMENTS";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -66,6 +74,9 @@ public class MaterialRequirementDetailsListeners {
     @Autowired
     private OrderHelperService orderHelperService;
 
+    @Autowired
+    private ReportJobService reportJobService;
+
     public void printMaterialRequirement(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         reportService.printGeneratedReport(view, state, new String[] { args[0], MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
                 MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT });
@@ -124,18 +135,56 @@ public class MaterialRequirementDetailsListeners {
                 return;
             }
 
-            materialRequirement = dataDefinitionService.get(MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
-                    MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT).get((Long) state.getFieldValue());
+            Long materialRequirementId = (Long) state.getFieldValue();
+
+            reportJobService.submit(MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
+                    MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT, materialRequirementId, L_ROLE_REQUIREMENTS,
+                    new MaterialRequirementReportJobTask(materialRequirementId, state.getLocale()));
+
+            state.performEvent(view, "reset", new String[0]);
+            state.addMessage("materialRequirements.materialRequirementDetails.window.materialRequirement.documentsQueued",
+                    MessageType.INFO);
+        }
+    }
+
+    private final class MaterialRequirementReportJobTask implements ReportJobTask {
+
+        private final Long materialRequirementId;
+
+        private final Locale locale;
 
-            try {
-                materialRequirementService.generateMaterialRequirementDocuments(state, materialRequirement);
-                state.performEvent(view, "reset", new String[0]);
-            } catch (IOException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            } catch (DocumentException e) {
-                throw new IllegalStateException(e.getMessage(), e);
+        private MaterialRequirementReportJobTask(final Long materialRequirementId, final Locale locale) {
+            this.materialRequirementId = materialRequirementId;
+            this.locale = locale;
+        }
+
+        @Override
+        public String generate(final ReportJobProgress progress) throws IOException, DocumentException {
+            Entity materialRequirement = getMaterialRequirementDD().get(materialRequirementId);
+
+            return materialRequirementService.generateMaterialRequirementDocuments(materialRequirement, locale, progress)
+                    .getStringField(MaterialRequirementFields.FILE_NAME);
+        }
+
+        @Override
+        public void onFailure() {
+            Entity materialRequirement = getMaterialRequirementDD().get(materialRequirementId);
+
+            if (materialRequirement != null) {
+                materialRequirement.setField(MaterialRequirementFields.GENERATED, false);
+                materialRequirement.setField(MaterialRequirementFields.DATE, null);
+                materialRequirement.setField(MaterialRequirementFields.WORKER, null);
+                materialRequirement.setField(MaterialRequirementFields.FILE_NAME, null);
+
+                materialRequirement.getDataDefinition().fastSave(materialRequirement);
             }
         }
+
+    }
+
+    private DataDefinition getMaterialRequirementDD() {
+        return dataDefinitionService.get(MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
+                MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT);
     }
 
 }
@@ -158,8 +158,10 @@ public final class MaterialRequirementPdfService extends PdfDocumentService {
         PdfPTable table = pdfHelper.createTableWithHeader(headersWithAlignments.size(), headers, true,
                 defaultOrderHeaderColumnWidth, headersWithAlignments);
 
+        Map<Long, Entity> products = productQuantitiesService.getProducts(neededProductQuantities.keySet());
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
+            Entity product = products.get(neededProductQuantity.getKey());
             table.addCell(new Phrase(product.getStringField(ProductFields.NUMBER), FontUtils.getDejavuRegular7Dark()));
             table.addCell(new Phrase(product.getStringField(ProductFields.NAME), FontUtils.getDejavuRegular7Dark()));
             table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_RIGHT);
@@ -91,8 +91,10 @@ public final class MaterialRequirementXlsService extends XlsDocumentService {
         Map<Long, BigDecimal> neededProductQuantities = basicProductionCountingService.getNeededProductQuantities(orders,
                 algorithm);
 
+        Map<Long, Entity> products = productQuantitiesService.getProducts(neededProductQuantities.keySet());
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
+            Entity product = products.get(neededProductQuantity.getKey());
 
             HSSFRow row = sheet.createRow(rowNum++);
             row.createCell(0).setCellValue(product.getStringField(ProductFields.NUMBER));
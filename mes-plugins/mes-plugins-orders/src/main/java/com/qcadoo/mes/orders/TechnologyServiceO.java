@@ -32,6 +32,7 @@ import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.states.service.StateChangeContextBuilder;
 import com.qcadoo.mes.technologies.BarcodeOperationComponentService;
+import com.qcadoo.mes.technologies.TechnologyDeepCopyService;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyType;
@@ -77,6 +78,9 @@ public class TechnologyServiceO {
     @Autowired
     private BarcodeOperationComponentService barcodeOperationComponentService;
 
+    @Autowired
+    private TechnologyDeepCopyService technologyDeepCopyService;
+
     @Transactional
     public void createOrUpdateTechnology(final DataDefinition orderDD, final Entity order) {
         OrderType orderType = OrderType.of(order);
@@ -313,13 +317,10 @@ public class TechnologyServiceO {
     }
 
     private Entity copyTechnology(final Entity order, final Entity technologyPrototype, boolean changeTechnologyStateToChecked) {
-        Entity copyOfTechnology = getTechnologyDD().create();
-
         String number = generateNumberForTechnologyInOrder(order, technologyPrototype);
 
-        copyOfTechnology = copyOfTechnology.getDataDefinition().copy(technologyPrototype.getId()).get(0);
+        Entity copyOfTechnology = technologyDeepCopyService.deepCopy(technologyPrototype, number);
 
-        copyOfTechnology.setField(TechnologyFields.NUMBER, number);
         copyOfTechnology.setField(TechnologyFields.TECHNOLOGY_PROTOTYPE, technologyPrototype);
         copyOfTechnology.setField(TechnologyFields.TECHNOLOGY_TYPE, TechnologyType.WITH_PATTERN_TECHNOLOGY.getStringValue());
 
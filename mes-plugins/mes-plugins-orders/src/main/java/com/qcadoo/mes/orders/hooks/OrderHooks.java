@@ -28,6 +28,7 @@ import com.google.common.collect.Lists;
 import com.qcadoo.commons.dateTime.DateRange;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ParameterSnapshot;
 import com.qcadoo.mes.basic.ProductService;
 import com.qcadoo.mes.orders.OrderService;
 import com.qcadoo.mes.orders.OrderStateChangeReasonService;
@@ -144,8 +145,10 @@ public class OrderHooks {
 
     private void setAdditionalFields(final Entity order) {
         if (Objects.isNull(order.getId())) {
-            order.setField("includeTpz", parameterService.getParameter().getBooleanField("includeTpzPS"));
-            order.setField("includeAdditionalTime", parameterService.getParameter().getBooleanField("includeAdditionalTimePS"));
+            ParameterSnapshot parameter = parameterService.getParameterSnapshot();
+
+            order.setField("includeTpz", parameter.getBooleanField("includeTpzPS"));
+            order.setField("includeAdditionalTime", parameter.getBooleanField("includeAdditionalTimePS"));
         }
     }
 
@@ -577,7 +580,7 @@ public class OrderHooks {
     }
 
     public boolean neededWhenCorrectingTheRequestedVolume() {
-        return parameterService.getParameter().getBooleanField(
+        return parameterService.getParameterSnapshot().getBooleanField(
                 ParameterFieldsO.REASON_NEEDED_WHEN_CORRECTING_THE_REQUESTED_VOLUME);
     }
 
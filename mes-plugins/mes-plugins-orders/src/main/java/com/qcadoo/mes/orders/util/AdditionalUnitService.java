@@ -7,13 +7,11 @@ import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFields;
-import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
+import com.qcadoo.mes.basic.util.ProductUnitsConversionService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.PossibleUnitConversions;
-import com.qcadoo.model.api.units.UnitConversionService;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FieldComponent;
 import com.qcadoo.view.api.components.FormComponent;
@@ -22,16 +20,14 @@ import com.qcadoo.view.api.components.FormComponent;
 public class AdditionalUnitService {
 
     @Autowired
-    private UnitConversionService unitConversionService;
+    private ProductUnitsConversionService productUnitsConversionService;
 
     @Autowired
     private NumberService numberService;
 
     public BigDecimal getQuantityAfterConversion(final Entity order, String givenUnit, BigDecimal quantity, String baseUnit) {
         Entity product = order.getBelongsToField(BasicConstants.MODEL_PRODUCT);
-        PossibleUnitConversions unitConversions = unitConversionService.getPossibleConversions(baseUnit,
-                searchCriteriaBuilder -> searchCriteriaBuilder.add(SearchRestrictions.belongsTo(
-                        UnitConversionItemFieldsB.PRODUCT, product)));
+        PossibleUnitConversions unitConversions = productUnitsConversionService.getPossibleConversions(product, baseUnit);
         if (quantity == null) {
             return BigDecimal.valueOf(0);
         }
@@ -0,0 +1,183 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps per order summaries of accepted production trackings (produced and used quantities, labor and machine times,
+ * staff work times). Production balance reads these summaries instead of aggregating tracking records on every
+ * generation.
+ */
+@Service
+public class ProductionBalanceAggregatesService {
+
+    private static final String L_ORDERS_IDS = "ordersIds";
+
+    private static final int L_REBUILD_BATCH_SIZE = 500;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    /**
+     * Recalculates summaries of given order. Called in the same transaction as the production tracking state change.
+     *
+     * @param orderId
+     *            order id
+     */
+    public void updateForOrder(final Long orderId) {
+        updateForOrders(Collections.singletonList(orderId));
+    }
+
+    /**
+     * Rebuilds summaries of all orders having production trackings.
+     */
+    @Transactional
+    public void rebuild() {
+        jdbcTemplate.getJdbcOperations().update("DELETE FROM productioncounting_balanceproductquantity");
+        jdbcTemplate.getJdbcOperations().update("DELETE FROM productioncounting_balanceoperationtime");
+        jdbcTemplate.getJdbcOperations().update("DELETE FROM productioncounting_balancestafftime");
+
+        List<Long> ordersIds = jdbcTemplate.queryForList(
+                "SELECT DISTINCT order_id FROM productioncounting_productiontracking WHERE state = '02accepted'",
+                new MapSqlParameterSource(), Long.class);
+
+        for (List<Long> ordersIdsPartition : Lists.partition(ordersIds, L_REBUILD_BATCH_SIZE)) {
+            insertSummaries(ordersIdsPartition);
+        }
+    }
+
+    /**
+     * Builds summaries when there are none, e.g. after installing the plugin on existing data
+     */
+    @Transactional
+    public void rebuildIfEmpty() {
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM productioncounting_balanceproductquantity LIMIT 1",
+                new MapSqlParameterSource(), Long.class);
+
+        if (ids.isEmpty()) {
+            rebuild();
+        }
+    }
+
+    private void updateForOrders(final List<Long> ordersIds) {
+        // state of the tracking being changed may still be pending in the Hibernate session
+        sessionFactory.getCurrentSession().flush();
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_ORDERS_IDS, ordersIds);
+
+        // concurrent trackings of the same order wait here, so summaries are rebuilt one after another
+        jdbcTemplate.queryForList("SELECT id FROM orders_order WHERE id IN (:ordersIds) ORDER BY id FOR UPDATE", parameters,
+                Long.class);
+
+        jdbcTemplate.update("DELETE FROM productioncounting_balanceproductquantity WHERE order_id IN (:ordersIds)", parameters);
+        jdbcTemplate.update("DELETE FROM productioncounting_balanceoperationtime WHERE order_id IN (:ordersIds)", parameters);
+        jdbcTemplate.update("DELETE FROM productioncounting_balancestafftime WHERE order_id IN (:ordersIds)", parameters);
+
+        insertSummaries(ordersIds);
+    }
+
+    private void insertSummaries(final List<Long> ordersIds) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_ORDERS_IDS, ordersIds);
+
+        jdbcTemplate.update(producedQuantitiesQuery(), parameters);
+        jdbcTemplate.update(usedQuantitiesQuery(), parameters);
+        jdbcTemplate.update(operationTimesQuery(), parameters);
+        jdbcTemplate.update(staffTimesQuery(), parameters);
+    }
+
+    private String producedQuantitiesQuery() {
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO productioncounting_balanceproductquantity ");
+        query.append("(order_id, technologyoperationcomponent_id, product_id, role, usedquantity, wastesquantity, ");
+        query.append("wasteusedquantity, wasteunit) ");
+        query.append("SELECT pt.order_id, pt.technologyoperationcomponent_id, topoc.product_id, '02produced', ");
+        query.append("COALESCE(SUM(topoc.usedquantity), 0), COALESCE(SUM(topoc.wastesquantity), 0), 0, NULL ");
+        query.append("FROM productioncounting_productiontracking pt ");
+        query.append("JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id ");
+        appendAcceptedTrackingsWhereClause(query);
+        query.append("GROUP BY pt.order_id, pt.technologyoperationcomponent_id, topoc.product_id ");
+
+        return query.toString();
+    }
+
+    private String usedQuantitiesQuery() {
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO productioncounting_balanceproductquantity ");
+        query.append("(order_id, technologyoperationcomponent_id, product_id, role, usedquantity, wastesquantity, ");
+        query.append("wasteusedquantity, wasteunit) ");
+        query.append("SELECT pt.order_id, pt.technologyoperationcomponent_id, topic.product_id, '01used', ");
+        query.append("COALESCE(SUM(topic.usedquantity), 0), 0, COALESCE(SUM(topic.wasteusedquantity), 0), topic.wasteunit ");
+        query.append("FROM productioncounting_productiontracking pt ");
+        query.append("JOIN productioncounting_trackingoperationproductincomponent topic ON topic.productiontracking_id = pt.id ");
+        appendAcceptedTrackingsWhereClause(query);
+        query.append("GROUP BY pt.order_id, pt.technologyoperationcomponent_id, topic.product_id, topic.wasteunit ");
+
+        return query.toString();
+    }
+
+    private String operationTimesQuery() {
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO productioncounting_balanceoperationtime ");
+        query.append("(order_id, technologyoperationcomponent_id, labortime, machinetime, executedoperationcycles) ");
+        query.append("SELECT pt.order_id, pt.technologyoperationcomponent_id, COALESCE(SUM(pt.labortime), 0), ");
+        query.append("COALESCE(SUM(pt.machinetime), 0), COALESCE(SUM(pt.executedoperationcycles), 0) ");
+        query.append("FROM productioncounting_productiontracking pt ");
+        appendAcceptedTrackingsWhereClause(query);
+        query.append("GROUP BY pt.order_id, pt.technologyoperationcomponent_id ");
+
+        return query.toString();
+    }
+
+    private String staffTimesQuery() {
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO productioncounting_balancestafftime ");
+        query.append("(order_id, technologyoperationcomponent_id, staff_id, labortime) ");
+        query.append("SELECT pt.order_id, pt.technologyoperationcomponent_id, swt.worker_id, COALESCE(SUM(swt.labortime), 0) ");
+        query.append("FROM productioncounting_productiontracking pt ");
+        query.append("LEFT JOIN productioncounting_staffworktime swt ON swt.productionrecord_id = pt.id ");
+        appendAcceptedTrackingsWhereClause(query);
+        query.append("GROUP BY pt.order_id, pt.technologyoperationcomponent_id, swt.worker_id ");
+
+        return query.toString();
+    }
+
+    private void appendAcceptedTrackingsWhereClause(final StringBuilder query) {
+        query.append("WHERE pt.state = '02accepted' AND pt.order_id IN (:ordersIds) ");
+    }
+
+}
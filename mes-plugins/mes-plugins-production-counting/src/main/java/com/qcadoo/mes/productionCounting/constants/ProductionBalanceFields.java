@@ -59,6 +59,8 @@ public final class ProductionBalanceFields {
 
     public static final String FILE_NAME = "fileName";
 
+    public static final String SHEETS_GENERATION_TIMES = "sheetsGenerationTimes";
+
     public static final String CALCULATE_OPERATION_COST_MODE = "calculateOperationCostsMode";
 
     public static final String INCLUDE_TPZ = "includeTPZ";
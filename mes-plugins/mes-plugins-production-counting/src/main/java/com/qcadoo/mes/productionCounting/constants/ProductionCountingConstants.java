@@ -59,6 +59,12 @@ public final class ProductionCountingConstants {
 
     public static final String MODEL_ANOMALY_EXPLANATION = "anomalyExplanation";
 
+    public static final String MODEL_BALANCE_PRODUCT_QUANTITY = "balanceProductQuantity";
+
+    public static final String MODEL_BALANCE_OPERATION_TIME = "balanceOperationTime";
+
+    public static final String MODEL_BALANCE_STAFF_TIME = "balanceStaffTime";
+
     // VIEW
     public static final String MODEL_SET_TRACKING_OPERATION_PRODUCT_IN_COMPONENTS = "setTrackingOperationProductInComponents";
 
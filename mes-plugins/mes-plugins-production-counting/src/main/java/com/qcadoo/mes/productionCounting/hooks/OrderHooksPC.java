@@ -30,6 +30,7 @@ import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ParameterSnapshot;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -50,9 +51,11 @@ public class OrderHooksPC {
     }
 
     public void setOrderWithDefaultProductionCountingValues(final DataDefinition orderDD, final Entity order) {
+        ParameterSnapshot parameter = parameterService.getParameterSnapshot();
+
         for (String fieldName : L_ORDER_FIELD_NAMES) {
             if (order.getField(fieldName) == null) {
-                order.setField(fieldName, parameterService.getParameter().getField(fieldName));
+                order.setField(fieldName, parameter.getField(fieldName));
             }
         }
     }
@@ -32,6 +32,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.qcadoo.mes.basic.reports.ReportJobProgress;
+import com.qcadoo.mes.basic.reports.ReportJobService;
+import com.qcadoo.mes.basic.reports.ReportJobTask;
 import com.qcadoo.mes.productionCounting.ProductionBalanceService;
 import com.qcadoo.mes.productionCounting.ProductionCountingService;
 import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
@@ -48,6 +51,8 @@ import com.qcadoo.view.api.ViewDefinitionState;
 @Service
 public class ProductionBalanceDetailsListeners {
 
+    private static final String L_ROLE_PRODUCTION_COUNTING = "ROLE_PRODUCTION_COUNTING";
+
     @Autowired
     private SecurityService securityService;
 
@@ -66,6 +71,9 @@ public class ProductionBalanceDetailsListeners {
     @Autowired
     private ProductionBalanceXlsService productionBalanceXlsService;
 
+    @Autowired
+    private ReportJobService reportJobService;
+
     @Transactional
     public void generateProductionBalance(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         state.performEvent(view, "save");
@@ -85,22 +93,27 @@ public class ProductionBalanceDetailsListeners {
                 return;
             }
 
+            if (productionBalance.getHasManyField(ProductionBalanceFields.ORDERS).isEmpty()) {
+                state.addMessage("productionCounting.productionBalance.report.error.noOrders", MessageType.FAILURE);
+
+                return;
+            }
+
             if (!productionBalance.getBooleanField(ProductionBalanceFields.GENERATED)) {
                 fillReportValues(productionBalance);
+
+                productionBalance.getDataDefinition().save(productionBalance);
             }
 
-            if (!productionBalance.getHasManyField(ProductionBalanceFields.ORDERS).isEmpty()) {
-                generateProductionBalanceDocumentXls(productionBalance, state.getLocale());
-            } else {
-                state.addMessage("productionCounting.productionBalance.report.error.noOrders", MessageType.FAILURE);
+            reportJobService.submit(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                    ProductionCountingConstants.MODEL_PRODUCTION_BALANCE, productionBalanceId, L_ROLE_PRODUCTION_COUNTING,
+                    new ProductionBalanceReportJobTask(productionBalanceId, state.getLocale()));
 
-                return;
-            }
             state.performEvent(view, "reset");
 
             state.addMessage(
-                    "productionCounting.productionBalanceDetails.window.mainTab.productionBalanceDetails.generatedMessage",
-                    MessageType.SUCCESS);
+                    "productionCounting.productionBalanceDetails.window.mainTab.productionBalanceDetails.documentsQueued",
+                    MessageType.INFO);
         }
     }
 
@@ -110,18 +123,47 @@ public class ProductionBalanceDetailsListeners {
         productionBalance.setField(ProductionBalanceFields.WORKER, securityService.getCurrentUserName());
     }
 
-    private void generateProductionBalanceDocumentXls(final Entity productionBalance, final Locale locale) {
-        String localePrefix = "productionCounting.productionBalance.report.fileName";
+    private final class ProductionBalanceReportJobTask implements ReportJobTask {
 
-        Entity productionBalanceWithFileName = fileService.updateReportFileName(productionBalance, ProductionBalanceFields.DATE,
-                localePrefix);
+        private final Long productionBalanceId;
 
-        try {
-            productionBalanceXlsService.generateDocument(productionBalanceWithFileName, locale);
+        private final Locale locale;
 
-        } catch (IOException e) {
-            throw new IllegalStateException("Problem with saving productionBalance report", e);
+        private ProductionBalanceReportJobTask(final Long productionBalanceId, final Locale locale) {
+            this.productionBalanceId = productionBalanceId;
+            this.locale = locale;
         }
+
+        @Override
+        public String generate(final ReportJobProgress progress) throws IOException {
+            Entity productionBalance = productionCountingService.getProductionBalance(productionBalanceId);
+
+            Entity productionBalanceWithFileName = fileService.updateReportFileName(productionBalance,
+                    ProductionBalanceFields.DATE, "productionCounting.productionBalance.report.fileName");
+
+            progress.update(10);
+
+            productionBalanceXlsService.generateBalanceDocument(productionBalanceWithFileName, locale);
+
+            progress.update(100);
+
+            return productionBalanceWithFileName.getStringField(ProductionBalanceFields.FILE_NAME);
+        }
+
+        @Override
+        public void onFailure() {
+            Entity productionBalance = productionCountingService.getProductionBalance(productionBalanceId);
+
+            if (productionBalance != null) {
+                productionBalance.setField(ProductionBalanceFields.GENERATED, false);
+                productionBalance.setField(ProductionBalanceFields.DATE, null);
+                productionBalance.setField(ProductionBalanceFields.WORKER, null);
+                productionBalance.setField(ProductionBalanceFields.FILE_NAME, null);
+
+                productionBalance.getDataDefinition().fastSave(productionBalance);
+            }
+        }
+
     }
 
     public void printProductionBalance(final ViewDefinitionState view, final ComponentState state, final String[] args) {
@@ -0,0 +1,23 @@
+package com.qcadoo.mes.productionCounting.listeners;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.productionCounting.ProductionBalanceAggregatesService;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+
+@Service
+public class ProductionBalancesListListeners {
+
+    @Autowired
+    private ProductionBalanceAggregatesService productionBalanceAggregatesService;
+
+    public void rebuildAggregates(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        productionBalanceAggregatesService.rebuild();
+
+        view.addMessage("productionCounting.productionBalancesList.info.aggregatesRebuilt", MessageType.SUCCESS);
+    }
+
+}
@@ -11,6 +11,7 @@ import com.qcadoo.mes.basic.LogService;
 import com.qcadoo.mes.newstates.BasicStateService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.productionCounting.ProductionBalanceAggregatesService;
 import com.qcadoo.mes.productionCounting.ProductionTrackingService;
 import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
@@ -36,6 +37,9 @@ public class ProductionTrackingStateService extends BasicStateService implements
     @Autowired
     private ProductionTrackingService productionTrackingService;
 
+    @Autowired
+    private ProductionBalanceAggregatesService productionBalanceAggregatesService;
+
     @Autowired
     private LogService logService;
 
@@ -94,11 +98,21 @@ public class ProductionTrackingStateService extends BasicStateService implements
         }
 
         if (entity.isValid()) {
+            updateBalanceAggregates(entity, targetState);
             logActivities(entity, stateChangeEntity, targetState);
         }
         return entity;
     }
 
+    private void updateBalanceAggregates(final Entity productionTracking, final String targetState) {
+        if (ProductionTrackingStateStringValues.ACCEPTED.equals(targetState)
+                || ProductionTrackingStateStringValues.DECLINED.equals(targetState)
+                || ProductionTrackingStateStringValues.CORRECTED.equals(targetState)) {
+            productionBalanceAggregatesService.updateForOrder(productionTracking.getBelongsToField(ProductionTrackingFields.ORDER)
+                    .getId());
+        }
+    }
+
     private void logActivities(final Entity productionTracking, Entity stateChangeEntity, final String state) {
         // TODO get user from state change/current user, not create user
         Entity user = userService.find(stateChangeEntity.getStringField(ProductionTrackingStateChangeFields.WORKER));
@@ -4,19 +4,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.basic.constants.ProductFields;
-import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
+import com.qcadoo.mes.basic.util.ProductUnitsConversionService;
 import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.PossibleUnitConversions;
-import com.qcadoo.model.api.units.UnitConversionService;
 
 @Service
 public class TrackingOperationProductComponentHooks {
 
     @Autowired
-    private UnitConversionService unitConversionService;
+    private ProductUnitsConversionService productUnitsConversionService;
 
     public boolean validatesWith(final DataDefinition dataDefinition, final Entity trackingOperationProduct) {
         String givenUnit = trackingOperationProduct.getStringField(TrackingOperationProductInComponentFields.GIVEN_UNIT);
@@ -28,9 +26,7 @@ public class TrackingOperationProductComponentHooks {
         if (unit.equals(givenUnit)) {
             return true;
         }
-        PossibleUnitConversions unitConversions = unitConversionService.getPossibleConversions(unit,
-                searchCriteriaBuilder -> searchCriteriaBuilder
-                        .add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT, product)));
+        PossibleUnitConversions unitConversions = productUnitsConversionService.getPossibleConversions(product, unit);
         if (!unitConversions.isDefinedFor(givenUnit)) {
             trackingOperationProduct.addError(dataDefinition.getField(TrackingOperationProductInComponentFields.GIVEN_QUANTITY),
                     "technologies.operationProductInComponent.validate.error.missingUnitConversion");
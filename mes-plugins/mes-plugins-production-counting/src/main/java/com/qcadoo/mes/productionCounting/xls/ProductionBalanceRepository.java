@@ -36,22 +36,21 @@ class ProductionBalanceRepository {
         query.append("MIN(o.plannedquantity) AS plannedQuantity, ");
         appendProducedQuantity(query);
         query.append("AS producedQuantity, ");
-        query.append("COALESCE(SUM(topoc.wastesquantity), 0) AS wastesQuantity, ");
+        query.append("COALESCE(SUM(bpq.wastesquantity), 0) AS wastesQuantity, ");
         query.append("COALESCE(prodWaste.producedWastes, 0) AS producedWastes, ");
         appendProducedQuantity(query);
         query.append("- MIN(o.plannedQuantity) AS deviation, ");
         query.append("prod.unit AS productUnit ");
         query.append("FROM orders_order o ");
         query.append("JOIN basic_product prod ON o.product_id = prod.id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id AND topoc.product_id = prod.id ");
+        appendProducedQuantitiesJoin(query);
         query.append("LEFT JOIN ");
-        query.append("(SELECT pcq.order_id as orderId, wastePt.order_id AS wastePtOrderId, COALESCE(SUM(wasteTopoc.usedquantity), 0) AS producedWastes ");
+        query.append("(SELECT pcq.order_id as orderId, COALESCE(SUM(wasteBpq.usedquantity), 0) AS producedWastes ");
         query.append("FROM basicproductioncounting_productioncountingquantity pcq ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductoutcomponent wasteTopoc ON  wasteTopoc.product_id = pcq.product_id ");
-        query.append("LEFT JOIN productioncounting_productiontracking wastePt ON wasteTopoc.productiontracking_id = wastePt.id AND wastePt.state = '02accepted' ");
-        query.append("WHERE pcq.typeofmaterial = '04waste' AND pcq.role = '02produced' ");
-        query.append("GROUP BY orderId, wastePtOrderId) prodWaste ON prodWaste.orderId = o.id AND prodWaste.wastePtOrderId = o.id ");
+        query.append("JOIN productioncounting_balanceproductquantity wasteBpq ON wasteBpq.order_id = pcq.order_id ");
+        query.append("AND wasteBpq.product_id = pcq.product_id AND wasteBpq.role = '02produced' ");
+        query.append("WHERE pcq.typeofmaterial = '04waste' AND pcq.role = '02produced' AND pcq.order_id IN (:ordersIds) ");
+        query.append("GROUP BY orderId) prodWaste ON prodWaste.orderId = o.id ");
         appendWhereClause(query);
         query.append("GROUP BY orderNumber, productNumber, productName, productUnit, prodWaste.producedWastes ");
         query.append("ORDER BY orderNumber ");
@@ -61,7 +60,12 @@ class ProductionBalanceRepository {
     }
 
     private void appendProducedQuantity(StringBuilder query) {
-        query.append("COALESCE(SUM(topoc.usedquantity), 0) ");
+        query.append("COALESCE(SUM(bpq.usedquantity), 0) ");
+    }
+
+    private void appendProducedQuantitiesJoin(StringBuilder query) {
+        query.append("LEFT JOIN productioncounting_balanceproductquantity bpq ON bpq.order_id = o.id AND bpq.product_id = prod.id ");
+        query.append("AND bpq.role = '02produced' ");
     }
 
     private void appendWhereClause(StringBuilder query) {
@@ -74,9 +78,9 @@ class ProductionBalanceRepository {
         appendMaterialCostsSelectionClause(query, entity);
         query.append("NULL AS operationNumber ");
         appendMaterialCostsFromClause(query, entity);
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductincomponent topic ON topic.productiontracking_id = pt.id AND topic.product_id = p.id ");
-        query.append("GROUP BY o.id, o.number, p.number, p.name, p.unit, topic.wasteunit) ");
+        query.append("LEFT JOIN productioncounting_balanceproductquantity bpq ON bpq.order_id = o.id AND bpq.product_id = p.id ");
+        query.append("AND bpq.role = '01used' ");
+        query.append("GROUP BY o.id, o.number, p.number, p.name, p.unit, bpq.wasteunit) ");
         query.append("UNION ");
         appendForEachPlannedQuantities(query);
         appendMaterialCostsSelectionClause(query, entity);
@@ -84,9 +88,9 @@ class ProductionBalanceRepository {
         appendMaterialCostsFromClause(query, entity);
         query.append("JOIN technologies_operation op ON q.operation_id = op.id ");
         query.append("JOIN technologies_technologyoperationcomponent toc ON toc.operation_id = op.id AND o.technology_id = toc.technology_id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.technologyoperationcomponent_id = toc.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductincomponent topic ON topic.productiontracking_id = pt.id AND topic.product_id = p.id ");
-        query.append("GROUP BY o.id, o.number, op.number, p.number, p.name, p.unit, topic.wasteunit) ");
+        query.append("LEFT JOIN productioncounting_balanceproductquantity bpq ON bpq.order_id = o.id AND bpq.technologyoperationcomponent_id = toc.id ");
+        query.append("AND bpq.product_id = p.id AND bpq.role = '01used' ");
+        query.append("GROUP BY o.id, o.number, op.number, p.number, p.name, p.unit, bpq.wasteunit) ");
         query.append("ORDER BY orderNumber, operationNumber, productNumber ");
 
         return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
@@ -132,7 +136,7 @@ class ProductionBalanceRepository {
         query.append("p.number AS productNumber, ");
         query.append("p.name AS productName, ");
         query.append("p.unit AS productUnit, ");
-        query.append("topic.wasteunit AS usedWasteUnit, ");
+        query.append("bpq.wasteunit AS usedWasteUnit, ");
         appendPlannedQuantity(query);
         query.append("AS plannedQuantity, ");
         appendUsedQuantity(query);
@@ -149,7 +153,7 @@ class ProductionBalanceRepository {
         query.append("- ");
         appendPlannedCost(query, entity);
         query.append("AS valueDeviation, ");
-        query.append("COALESCE(SUM(topic.wasteusedquantity), 0) AS usedWasteQuantity, ");
+        query.append("COALESCE(SUM(bpq.wasteusedquantity), 0) AS usedWasteQuantity, ");
     }
 
     private void appendMaterialCostsFromClause(StringBuilder query, Entity entity) {
@@ -219,7 +223,7 @@ class ProductionBalanceRepository {
     }
 
     private void appendUsedQuantity(StringBuilder query) {
-        query.append("COALESCE(SUM(topic.usedquantity), 0) ");
+        query.append("COALESCE(SUM(bpq.usedquantity), 0) ");
     }
 
     List<PieceworkDetails> getPieceworkDetails(List<Long> ordersIds) {
@@ -227,10 +231,10 @@ class ProductionBalanceRepository {
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
         query.append("op.number AS operationNumber, ");
-        query.append("COALESCE(SUM(pt.executedoperationcycles), 0) AS totalexecutedoperationcycles ");
+        query.append("COALESCE(SUM(bot.executedoperationcycles), 0) AS totalexecutedoperationcycles ");
         query.append("FROM orders_order o ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON o.id = pt.order_id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN technologies_technologyoperationcomponent toc ON pt.technologyoperationcomponent_id = toc.id ");
+        query.append("LEFT JOIN productioncounting_balanceoperationtime bot ON bot.order_id = o.id ");
+        query.append("LEFT JOIN technologies_technologyoperationcomponent toc ON bot.technologyoperationcomponent_id = toc.id ");
         query.append("LEFT JOIN technologies_operation op ON toc.operation_id = op.id ");
         appendWhereClause(query);
         query.append("AND o.typeofproductionrecording = '03forEach' ");
@@ -249,12 +253,11 @@ class ProductionBalanceRepository {
         query.append("stf.number AS staffNumber, ");
         query.append("stf.name AS staffName, ");
         query.append("stf.surname AS staffSurname, ");
-        query.append("COALESCE(SUM(swt.labortime), 0) AS laborTime ");
+        query.append("COALESCE(SUM(bst.labortime), 0) AS laborTime ");
         query.append("FROM orders_order o ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON o.id = pt.order_id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_staffworktime swt ON pt.id = swt.productionrecord_id ");
-        query.append("LEFT JOIN basic_staff stf ON swt.worker_id = stf.id ");
-        query.append("LEFT JOIN technologies_technologyoperationcomponent toc ON pt.technologyoperationcomponent_id = toc.id ");
+        query.append("LEFT JOIN productioncounting_balancestafftime bst ON bst.order_id = o.id ");
+        query.append("LEFT JOIN basic_staff stf ON bst.staff_id = stf.id ");
+        query.append("LEFT JOIN technologies_technologyoperationcomponent toc ON bst.technologyoperationcomponent_id = toc.id ");
         query.append("LEFT JOIN technologies_operation op ON toc.operation_id = op.id ");
         appendWhereClause(query);
         query.append("GROUP BY orderNumber, operationNumber, staffNumber, staffName, staffSurname ");
@@ -433,7 +436,7 @@ class ProductionBalanceRepository {
         query.append("AS sumCostsDeviation ");
         query.append("FROM orders_order o ");
         query.append("JOIN planned_time plt ON plt.order_id = o.id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON o.id = pt.order_id AND pt.state = '02accepted' ");
+        query.append("LEFT JOIN productioncounting_balanceoperationtime bot ON bot.order_id = o.id ");
         query.append("CROSS JOIN basic_parameter bp ");
         query.append("GROUP BY orderId, orderNumber) ");
         query.append("UNION ");
@@ -476,7 +479,7 @@ class ProductionBalanceRepository {
         appendForEachPlannedMachineCosts(entity, query);
         query.append("AS machineCostsDeviation, ");
         query.append("COALESCE(MIN(pcor.runs / toc.numberofoperations * toc.pieceworkcost), 0) AS plannedPieceworkCosts, ");
-        query.append("COALESCE(SUM(pt.executedoperationcycles) / MIN(toc.numberofoperations) * MIN(toc.pieceworkcost), 0) AS realPieceworkCosts, ");
+        query.append("COALESCE(SUM(bot.executedoperationcycles) / MIN(toc.numberofoperations) * MIN(toc.pieceworkcost), 0) AS realPieceworkCosts, ");
         appendForEachPlannedStaffCosts(entity, query);
         query.append("+ ");
         appendForEachPlannedMachineCosts(entity, query);
@@ -494,9 +497,9 @@ class ProductionBalanceRepository {
         appendForEachPlannedMachineCosts(entity, query);
         query.append("AS sumCostsDeviation ");
         query.append("FROM orders_order o ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON o.id = pt.order_id AND pt.state = '02accepted' ");
-        query.append("JOIN planned_time plt ON plt.order_id = o.id AND plt.toc_id = pt.technologyoperationcomponent_id ");
-        query.append("LEFT JOIN technologies_technologyoperationcomponent toc ON pt.technologyoperationcomponent_id = toc.id ");
+        query.append("LEFT JOIN productioncounting_balanceoperationtime bot ON bot.order_id = o.id ");
+        query.append("JOIN planned_time plt ON plt.order_id = o.id AND plt.toc_id = bot.technologyoperationcomponent_id ");
+        query.append("LEFT JOIN technologies_technologyoperationcomponent toc ON bot.technologyoperationcomponent_id = toc.id ");
         query.append("LEFT JOIN basicproductioncounting_productioncountingoperationrun pcor ON pcor.order_id = o.id AND pcor.technologyoperationcomponent_id = toc.id ");
         query.append("LEFT JOIN technologies_operation op ON toc.operation_id = op.id ");
         query.append("CROSS JOIN basic_parameter bp ");
@@ -508,11 +511,11 @@ class ProductionBalanceRepository {
     }
 
     private void appendRealMachineTime(StringBuilder query) {
-        query.append("COALESCE(SUM(pt.machinetime), 0) ");
+        query.append("COALESCE(SUM(bot.machinetime), 0) ");
     }
 
     private void appendRealStaffTime(StringBuilder query) {
-        query.append("COALESCE(SUM(pt.labortime), 0) ");
+        query.append("COALESCE(SUM(bot.labortime), 0) ");
     }
 
     private void appendForEachRealMachineCosts(Entity entity, StringBuilder query) {
@@ -636,8 +639,7 @@ class ProductionBalanceRepository {
         query.append("AS sellPrice ");
         query.append("FROM orders_order o ");
         query.append("JOIN basic_product prod ON o.product_id = prod.id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id AND topoc.product_id = prod.id ");
+        appendProducedQuantitiesJoin(query);
         query.append("LEFT JOIN grouped_material_cost gmc ON gmc.order_id = o.id ");
         query.append("JOIN grouped_production_cost gpc ON gpc.order_id = o.id ");
         appendWhereClause(query);
@@ -814,8 +816,7 @@ class ProductionBalanceRepository {
         query.append("AS sellPrice ");
         query.append("FROM orders_order o ");
         query.append("JOIN basic_product prod ON o.product_id = prod.id ");
-        query.append("LEFT JOIN productioncounting_productiontracking pt ON pt.order_id = o.id AND pt.state = '02accepted' ");
-        query.append("LEFT JOIN productioncounting_trackingoperationproductoutcomponent topoc ON topoc.productiontracking_id = pt.id AND topoc.product_id = prod.id ");
+        appendProducedQuantitiesJoin(query);
         query.append("JOIN order_balance_rec obr ON obr.order_id = o.id ");
         appendWhereClause(query);
         query.append("AND o.root_id IS NULL ");
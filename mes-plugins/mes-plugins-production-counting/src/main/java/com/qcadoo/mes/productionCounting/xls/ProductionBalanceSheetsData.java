@@ -0,0 +1,158 @@
+package com.qcadoo.mes.productionCounting.xls;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.productionCounting.xls.dto.LaborTime;
+import com.qcadoo.mes.productionCounting.xls.dto.LaborTimeDetails;
+import com.qcadoo.mes.productionCounting.xls.dto.MaterialCost;
+import com.qcadoo.mes.productionCounting.xls.dto.OrderBalance;
+import com.qcadoo.mes.productionCounting.xls.dto.PieceworkDetails;
+import com.qcadoo.mes.productionCounting.xls.dto.ProducedQuantity;
+import com.qcadoo.mes.productionCounting.xls.dto.ProductionCost;
+
+class ProductionBalanceSheetsData {
+
+    static final String PRODUCED_QUANTITIES = "producedQuantities";
+
+    static final String MATERIAL_COSTS = "materialCosts";
+
+    static final String LABOR_TIME = "laborTime";
+
+    static final String LABOR_TIME_DETAILS = "laborTimeDetails";
+
+    static final String PIECEWORK = "piecework";
+
+    static final String PRODUCTION_COSTS = "productionCosts";
+
+    static final String ORDERS_BALANCE = "ordersBalance";
+
+    static final String COMPONENTS_BALANCE = "componentsBalance";
+
+    static final String PRODUCTS_BALANCE = "productsBalance";
+
+    private static final List<String> SHEETS = Lists.newArrayList(PRODUCED_QUANTITIES, MATERIAL_COSTS, LABOR_TIME,
+            LABOR_TIME_DETAILS, PIECEWORK, PRODUCTION_COSTS, ORDERS_BALANCE, COMPONENTS_BALANCE, PRODUCTS_BALANCE);
+
+    private final Map<String, Long> queryTimes = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> renderingTimes = new ConcurrentHashMap<>();
+
+    private List<ProducedQuantity> producedQuantities;
+
+    private List<MaterialCost> materialCosts;
+
+    private List<LaborTime> laborTime;
+
+    private List<LaborTimeDetails> laborTimeDetails;
+
+    private List<PieceworkDetails> pieceworkDetails;
+
+    private List<ProductionCost> productionCosts;
+
+    private List<OrderBalance> ordersBalance;
+
+    private List<OrderBalance> componentsBalance;
+
+    private List<OrderBalance> productsBalance;
+
+    void addQueryTime(final String sheet, final long millis) {
+        queryTimes.put(sheet, millis);
+    }
+
+    void addRenderingTime(final String sheet, final long millis) {
+        renderingTimes.put(sheet, millis);
+    }
+
+    String describeTimes() {
+        StringBuilder description = new StringBuilder();
+        for (String sheet : SHEETS) {
+            description.append(sheet).append(": query ").append(getTime(queryTimes, sheet)).append(" ms, rendering ")
+                    .append(getTime(renderingTimes, sheet)).append(" ms\n");
+        }
+        return description.toString();
+    }
+
+    private long getTime(final Map<String, Long> times, final String sheet) {
+        Long time = times.get(sheet);
+        if (time == null) {
+            return 0L;
+        }
+        return time;
+    }
+
+    List<ProducedQuantity> getProducedQuantities() {
+        return producedQuantities;
+    }
+
+    void setProducedQuantities(final List<ProducedQuantity> producedQuantities) {
+        this.producedQuantities = producedQuantities;
+    }
+
+    List<MaterialCost> getMaterialCosts() {
+        return materialCosts;
+    }
+
+    void setMaterialCosts(final List<MaterialCost> materialCosts) {
+        this.materialCosts = materialCosts;
+    }
+
+    List<LaborTime> getLaborTime() {
+        return laborTime;
+    }
+
+    void setLaborTime(final List<LaborTime> laborTime) {
+        this.laborTime = laborTime;
+    }
+
+    List<LaborTimeDetails> getLaborTimeDetails() {
+        return laborTimeDetails;
+    }
+
+    void setLaborTimeDetails(final List<LaborTimeDetails> laborTimeDetails) {
+        this.laborTimeDetails = laborTimeDetails;
+    }
+
+    List<PieceworkDetails> getPieceworkDetails() {
+        return pieceworkDetails;
+    }
+
+    void setPieceworkDetails(final List<PieceworkDetails> pieceworkDetails) {
+        this.pieceworkDetails = pieceworkDetails;
+    }
+
+    List<ProductionCost> getProductionCosts() {
+        return productionCosts;
+    }
+
+    void setProductionCosts(final List<ProductionCost> productionCosts) {
+        this.productionCosts = productionCosts;
+    }
+
+    List<OrderBalance> getOrdersBalance() {
+        return ordersBalance;
+    }
+
+    void setOrdersBalance(final List<OrderBalance> ordersBalance) {
+        this.ordersBalance = ordersBalance;
+    }
+
+    List<OrderBalance> getComponentsBalance() {
+        return componentsBalance;
+    }
+
+    void setComponentsBalance(final List<OrderBalance> componentsBalance) {
+        this.componentsBalance = componentsBalance;
+    }
+
+    List<OrderBalance> getProductsBalance() {
+        return productsBalance;
+    }
+
+    void setProductsBalance(final List<OrderBalance> productsBalance) {
+        this.productsBalance = productsBalance;
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.qcadoo.mes.productionCounting.xls;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.qcadoo.mes.productionCounting.xls.dto.LaborTime;
+import com.qcadoo.mes.productionCounting.xls.dto.LaborTimeDetails;
+import com.qcadoo.mes.productionCounting.xls.dto.MaterialCost;
+import com.qcadoo.mes.productionCounting.xls.dto.PieceworkDetails;
+import com.qcadoo.mes.productionCounting.xls.dto.ProducedQuantity;
+import com.qcadoo.mes.productionCounting.xls.dto.ProductionCost;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Runs independent production balance queries concurrently. Every query is executed on a pool thread, in the tenant of
+ * the calling thread and in its own read-only transaction, so it gets its own connection. Balances depending on costs are
+ * computed afterwards in the calling thread.
+ */
+@Service
+class ProductionBalanceSheetsDataLoader {
+
+    private static final int L_POOL_SIZE = 4;
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(L_POOL_SIZE, runnable -> {
+        Thread thread = new Thread(runnable, "productionBalance-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private ProductionBalanceRepository productionBalanceRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    ProductionBalanceSheetsData load(final Entity productionBalance, final List<Long> ordersIds) {
+        ProductionBalanceSheetsData data = new ProductionBalanceSheetsData();
+
+        Future<List<ProducedQuantity>> producedQuantities = submit(data, ProductionBalanceSheetsData.PRODUCED_QUANTITIES,
+                () -> productionBalanceRepository.getProducedQuantities(ordersIds));
+        Future<List<MaterialCost>> materialCosts = submit(data, ProductionBalanceSheetsData.MATERIAL_COSTS,
+                () -> productionBalanceRepository.getMaterialCosts(productionBalance, ordersIds));
+        Future<List<ProductionCost>> productionCosts = submit(data, ProductionBalanceSheetsData.PRODUCTION_COSTS,
+                () -> productionBalanceRepository.getProductionCosts(productionBalance, ordersIds));
+        Future<List<LaborTime>> laborTime = submit(data, ProductionBalanceSheetsData.LABOR_TIME,
+                () -> productionBalanceRepository.getLaborTime(ordersIds));
+        Future<List<LaborTimeDetails>> laborTimeDetails = submit(data, ProductionBalanceSheetsData.LABOR_TIME_DETAILS,
+                () -> productionBalanceRepository.getLaborTimeDetails(productionBalance, ordersIds));
+        Future<List<PieceworkDetails>> pieceworkDetails = submit(data, ProductionBalanceSheetsData.PIECEWORK,
+                () -> productionBalanceRepository.getPieceworkDetails(ordersIds));
+
+        data.setProducedQuantities(get(producedQuantities));
+        data.setMaterialCosts(get(materialCosts));
+        data.setProductionCosts(get(productionCosts));
+        data.setLaborTime(get(laborTime));
+        data.setLaborTimeDetails(get(laborTimeDetails));
+        data.setPieceworkDetails(get(pieceworkDetails));
+
+        long startTime = System.currentTimeMillis();
+        data.setOrdersBalance(productionBalanceRepository.getOrdersBalance(productionBalance, ordersIds, data.getMaterialCosts(),
+                data.getProductionCosts()));
+        data.addQueryTime(ProductionBalanceSheetsData.ORDERS_BALANCE, System.currentTimeMillis() - startTime);
+
+        startTime = System.currentTimeMillis();
+        data.setComponentsBalance(productionBalanceRepository.getComponentsBalance(productionBalance, ordersIds,
+                data.getOrdersBalance()));
+        data.addQueryTime(ProductionBalanceSheetsData.COMPONENTS_BALANCE, System.currentTimeMillis() - startTime);
+
+        startTime = System.currentTimeMillis();
+        data.setProductsBalance(productionBalanceRepository.getProductsBalance(productionBalance, ordersIds,
+                data.getComponentsBalance()));
+        data.addQueryTime(ProductionBalanceSheetsData.PRODUCTS_BALANCE, System.currentTimeMillis() - startTime);
+
+        return data;
+    }
+
+    private <T> Future<T> submit(final ProductionBalanceSheetsData data, final String sheet, final Callable<T> query) {
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        final int tenantId = multiTenantService.getCurrentTenantId();
+
+        return executorService.submit(() -> {
+            AtomicReference<T> result = new AtomicReference<>();
+
+            multiTenantService.doInMultiTenantContext(tenantId, new MultiTenantCallback() {
+
+                @Override
+                public void invoke() {
+                    result.set(transactionTemplate.execute(status -> {
+                        long startTime = System.currentTimeMillis();
+                        try {
+                            return query.call();
+                        } catch (Exception e) {
+                            throw new IllegalStateException("Problem with production balance query: " + sheet, e);
+                        } finally {
+                            data.addQueryTime(sheet, System.currentTimeMillis() - startTime);
+                        }
+                    }));
+                }
+
+            });
+
+            return result.get();
+        });
+    }
+
+    private <T> T get(final Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Production balance generation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Problem with production balance generation", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.qcadoo.mes.productionCounting.xls;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
@@ -16,6 +17,8 @@ import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.IndexedColors;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
@@ -42,11 +45,36 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
     private NumberService numberService;
 
     @Autowired
-    private ProductionBalanceRepository productionBalanceRepository;
+    private ProductionBalanceSheetsDataLoader productionBalanceSheetsDataLoader;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final ThreadLocal<ProductionBalanceSheetsData> sheetsData = new ThreadLocal<>();
 
     private static final List<String> PRODUCTION_QUANTITIES_HEADERS = Lists.newArrayList("orderNumber", "productNumber",
             "productName", "plannedQuantity", "producedQuantity", "wastesQuantity", "producedWastes", "deviation", "productUnit");
 
+    /**
+     * Generates the report and stores sheets generation times without saving the production balance again. Sheets data
+     * prefetched in addSeries is always released, also when generation fails.
+     */
+    public void generateBalanceDocument(final Entity productionBalance, final Locale locale) throws IOException {
+        try {
+            generateDocument(productionBalance, locale);
+        } finally {
+            sheetsData.remove();
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource("id", productionBalance.getId());
+        parameters.addValue("sheetsGenerationTimes",
+                productionBalance.getStringField(ProductionBalanceFields.SHEETS_GENERATION_TIMES));
+
+        jdbcTemplate.update(
+                "UPDATE productioncounting_productionbalance SET sheetsgenerationtimes = :sheetsGenerationTimes WHERE id = :id",
+                parameters);
+    }
+
     @Override
     protected void addHeader(HSSFSheet sheet, Locale locale, Entity entity) {
 
@@ -64,11 +92,14 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
 
     @Override
     protected void addSeries(HSSFSheet sheet, Entity entity) {
-        List<Long> ordersIds = getOrdersIds(entity);
+        ProductionBalanceSheetsData data = productionBalanceSheetsDataLoader.load(entity, getOrdersIds(entity));
+        sheetsData.set(data);
 
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        createProducedQuantitiesSheet(sheet, ordersIds, stylesContainer);
+        long startTime = System.currentTimeMillis();
+        createProducedQuantitiesSheet(sheet, data.getProducedQuantities(), stylesContainer);
+        data.addRenderingTime(ProductionBalanceSheetsData.PRODUCED_QUANTITIES, System.currentTimeMillis() - startTime);
     }
 
     @Override
@@ -78,36 +109,51 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
 
     @Override
     protected void addExtraSheets(final HSSFWorkbook workbook, Entity entity, Locale locale) {
-        List<Long> ordersIds = getOrdersIds(entity);
-        List<MaterialCost> materialCosts = productionBalanceRepository.getMaterialCosts(entity, ordersIds);
-        createMaterialCostsSheet(materialCosts, createSheet(workbook,
+        ProductionBalanceSheetsData data = sheetsData.get();
+        sheetsData.remove();
+        if (data == null) {
+            data = productionBalanceSheetsDataLoader.load(entity, getOrdersIds(entity));
+        }
+
+        long startTime = System.currentTimeMillis();
+        createMaterialCostsSheet(data.getMaterialCosts(), createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts", locale)),
                 locale);
+        startTime = addRenderingTime(data, ProductionBalanceSheetsData.MATERIAL_COSTS, startTime);
         createLaborTimeSheet(createSheet(workbook, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
-        List<LaborTimeDetails> laborTimeDetailsList = productionBalanceRepository.getLaborTimeDetails(entity, ordersIds);
-        createLaborTimeDetailsSheet(laborTimeDetailsList, createSheet(workbook,
+                data.getLaborTime(), locale);
+        startTime = addRenderingTime(data, ProductionBalanceSheetsData.LABOR_TIME, startTime);
+        createLaborTimeDetailsSheet(data.getLaborTimeDetails(), createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails", locale)),
                 locale);
+        startTime = addRenderingTime(data, ProductionBalanceSheetsData.LABOR_TIME_DETAILS, startTime);
         createPieceworkSheet(createSheet(workbook, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
-        List<ProductionCost> productionCosts = productionBalanceRepository.getProductionCosts(entity, ordersIds);
-        createProductionCostsSheet(productionCosts, createSheet(workbook,
+                data.getPieceworkDetails(), locale);
+        startTime = addRenderingTime(data, ProductionBalanceSheetsData.PIECEWORK, startTime);
+        createProductionCostsSheet(data.getProductionCosts(), createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.productionCosts", locale)),
                 locale);
-        List<OrderBalance> ordersBalance = productionBalanceRepository.getOrdersBalance(entity, ordersIds, materialCosts,
-                productionCosts);
-        createOrdersBalanceSheet(ordersBalance, createSheet(workbook,
+        startTime = addRenderingTime(data, ProductionBalanceSheetsData.PRODUCTION_COSTS, startTime);
+        createOrdersBalanceSheet(data.getOrdersBalance(), createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance", locale)),
                 locale);
-        List<OrderBalance> componentsBalance = productionBalanceRepository.getComponentsBalance(entity, ordersIds, ordersBalance);
-        createOrdersBalanceSheet(componentsBalance, createSheet(workbook,
+        startTime = addRenderingTime(data, ProductionBalanceSheetsData.ORDERS_BALANCE, startTime);
+        createOrdersBalanceSheet(data.getComponentsBalance(), createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.componentsBalance", locale)),
                 locale);
-        List<OrderBalance> productsBalance = productionBalanceRepository.getProductsBalance(entity, ordersIds, componentsBalance);
-        createProductsBalanceSheet(productsBalance, createSheet(workbook,
+        startTime = addRenderingTime(data, ProductionBalanceSheetsData.COMPONENTS_BALANCE, startTime);
+        createProductsBalanceSheet(data.getProductsBalance(), createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.productsBalance", locale)),
                 locale);
+        addRenderingTime(data, ProductionBalanceSheetsData.PRODUCTS_BALANCE, startTime);
+
+        entity.setField(ProductionBalanceFields.SHEETS_GENERATION_TIMES, data.describeTimes());
+    }
+
+    private long addRenderingTime(final ProductionBalanceSheetsData data, final String sheet, final long startTime) {
+        long endTime = System.currentTimeMillis();
+        data.addRenderingTime(sheet, endTime - startTime);
+        return endTime;
     }
 
     private List<Long> getOrdersIds(final Entity productionBalance) {
@@ -116,8 +162,8 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         return orders.stream().map(Entity::getId).collect(Collectors.toList());
     }
 
-    private void createProducedQuantitiesSheet(HSSFSheet sheet, List<Long> ordersIds, StylesContainer stylesContainer) {
-        List<ProducedQuantity> producedQuantities = productionBalanceRepository.getProducedQuantities(ordersIds);
+    private void createProducedQuantitiesSheet(HSSFSheet sheet, List<ProducedQuantity> producedQuantities,
+            StylesContainer stylesContainer) {
         int rowIndex = 1;
         for (ProducedQuantity producedQuantity : producedQuantities) {
             HSSFRow row = sheet.createRow(rowIndex);
@@ -217,7 +263,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createPieceworkSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
+    private void createPieceworkSheet(HSSFSheet sheet, List<PieceworkDetails> pieceworkDetailsList, Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
         final int rowOffset = 1;
@@ -230,7 +276,6 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 translationService.translate(PieceworkSheetConstants.TOTAL_EXECUTED_OPERATION_CYCLES, locale), 2,
                 CellStyle.ALIGN_LEFT);
 
-        List<PieceworkDetails> pieceworkDetailsList = productionBalanceRepository.getPieceworkDetails(ordersIds);
         int rowCounter = 0;
         for (PieceworkDetails pieceworkDetails : pieceworkDetailsList) {
             row = sheet.createRow(rowOffset + rowCounter);
@@ -244,7 +289,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createLaborTimeSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
+    private void createLaborTimeSheet(HSSFSheet sheet, List<LaborTime> laborTimeList, Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
         final int rowOffset = 1;
@@ -262,7 +307,6 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.LABOR_TIME, locale), 5,
                 CellStyle.ALIGN_LEFT);
 
-        List<LaborTime> laborTimeList = productionBalanceRepository.getLaborTime(ordersIds);
         int rowCounter = 0;
         for (LaborTime laborTime : laborTimeList) {
             row = sheet.createRow(rowOffset + rowCounter);
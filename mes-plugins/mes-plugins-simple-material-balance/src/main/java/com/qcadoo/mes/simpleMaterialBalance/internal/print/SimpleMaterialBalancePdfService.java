@@ -36,6 +36,7 @@ import java.util.Map.Entry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.lowagie.text.Chunk;
 import com.lowagie.text.Document;
@@ -175,17 +176,24 @@ public final class SimpleMaterialBalancePdfService extends PdfDocumentService {
         List<Entity> simpleMaterialBalanceLocationComponents = simpleMaterialBalance
                 .getHasManyField(L_SIMPLE_MATERIAL_BALANCE_LOCATIONS_COMPONENTS);
 
+        Map<Long, Entity> products = productQuantitiesService.getProducts(neededProductQuantities.keySet());
+        List<Map<Long, BigDecimal>> quantitiesInLocations = Lists.newArrayList();
+        for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
+            quantitiesInLocations.add(materialFlowService.calculateShouldBeInLocation(simpleMaterialBalanceLocationComponent
+                    .getBelongsToField(L_LOCATION).getId(), neededProductQuantities.keySet(), (Date) simpleMaterialBalance
+                    .getField(L_DATE)));
+        }
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
+            Entity product = products.get(neededProductQuantity.getKey());
 
             table.addCell(new Phrase(product.getField(L_NUMBER).toString(), FontUtils.getDejavuRegular7Dark()));
             table.addCell(new Phrase(product.getField(L_NAME).toString(), FontUtils.getDejavuRegular7Dark()));
             table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_RIGHT);
             table.addCell(new Phrase(numberService.format(neededProductQuantity.getValue()), FontUtils.getDejavuRegular7Dark()));
             BigDecimal available = BigDecimal.ZERO;
-            for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
-                available = available.add(materialFlowService.calculateShouldBeInLocation(simpleMaterialBalanceLocationComponent
-                        .getBelongsToField(L_LOCATION).getId(), product.getId(), (Date) simpleMaterialBalance.getField(L_DATE)));
+            for (Map<Long, BigDecimal> quantitiesInLocation : quantitiesInLocations) {
+                available = available.add(quantitiesInLocation.get(product.getId()));
             }
             table.addCell(new Phrase(numberService.format(available), FontUtils.getDejavuRegular7Dark()));
             table.addCell(new Phrase(numberService.format(available.subtract(neededProductQuantity.getValue(),
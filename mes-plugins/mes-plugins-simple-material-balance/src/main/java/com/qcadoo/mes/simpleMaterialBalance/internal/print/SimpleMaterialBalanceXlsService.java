@@ -36,6 +36,7 @@ import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.materialFlow.MaterialFlowService;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
@@ -118,8 +119,16 @@ public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
         List<Entity> simpleMaterialBalanceLocationComponents = simpleMaterialBalance
                 .getHasManyField(L_SIMPLE_MATERIAL_BALANCE_LOCATIONS_COMPONENTS);
 
+        Map<Long, Entity> products = productQuantitiesService.getProducts(neededProductQuantities.keySet());
+        List<Map<Long, BigDecimal>> quantitiesInLocations = Lists.newArrayList();
+        for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
+            quantitiesInLocations.add(materialFlowService.calculateShouldBeInLocation(simpleMaterialBalanceLocationComponent
+                    .getBelongsToField(L_LOCATION).getId(), neededProductQuantities.keySet(), (Date) simpleMaterialBalance
+                    .getField(L_DATE)));
+        }
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
+            Entity product = products.get(neededProductQuantity.getKey());
 
             HSSFRow row = sheet.createRow(rowNum++);
             row.createCell(0).setCellValue(product.getField(L_NUMBER).toString());
@@ -127,10 +136,8 @@ public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
             row.createCell(2).setCellValue(product.getField(L_UNIT).toString());
             row.createCell(3).setCellValue(numberService.format(neededProductQuantity.getValue()));
             BigDecimal available = BigDecimal.ZERO;
-            for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
-                available = available.add(materialFlowService.calculateShouldBeInLocation(simpleMaterialBalanceLocationComponent
-                        .getBelongsToField(L_LOCATION).getId(), product.getId(), (Date) simpleMaterialBalance.getField(L_DATE)),
-                        numberService.getMathContext());
+            for (Map<Long, BigDecimal> quantitiesInLocation : quantitiesInLocations) {
+                available = available.add(quantitiesInLocation.get(product.getId()), numberService.getMathContext());
             }
             row.createCell(4).setCellValue(numberService.format(available));
             row.createCell(5)
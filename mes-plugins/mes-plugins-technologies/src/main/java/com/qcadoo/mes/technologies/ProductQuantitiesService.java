@@ -24,6 +24,7 @@
 package com.qcadoo.mes.technologies;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -167,6 +168,14 @@ public interface ProductQuantitiesService {
      */
     Entity getProduct(final Long productId);
 
+    /**
+     * Gets products with given ids using one query per thousand ids
+     *
+     * @param productsIds
+     * @return products by their ids
+     */
+    Map<Long, Entity> getProducts(final Collection<Long> productsIds);
+
     void traverseProductQuantitiesAndOperationRuns(Entity technology, BigDecimal givenQuantity, Entity operationComponent,
             Entity previousOperationComponent,
             OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
@@ -25,6 +25,7 @@ package com.qcadoo.mes.technologies;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -66,6 +67,8 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
 
     private static final String L_QUANTITY = "quantity";
 
+    private static final int L_PRODUCTS_BATCH_SIZE = 1000;
+
     @Autowired
     private NumberService numberService;
 
@@ -640,4 +643,18 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     public Entity getProduct(final Long productId) {
         return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).get(productId);
     }
+
+    @Override
+    public Map<Long, Entity> getProducts(final Collection<Long> productsIds) {
+        Map<Long, Entity> products = Maps.newHashMapWithExpectedSize(productsIds.size());
+        DataDefinition productDD = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
+
+        for (List<Long> productsIdsPartition : Lists.partition(Lists.newArrayList(productsIds), L_PRODUCTS_BATCH_SIZE)) {
+            for (Entity product : productDD.find().add(SearchRestrictions.in("id", productsIdsPartition)).list().getEntities()) {
+                products.put(product.getId(), product);
+            }
+        }
+
+        return products;
+    }
 }
@@ -0,0 +1,208 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Keeps the where used index (technologies_productUsage) of accepted and checked technologies. For every product there are
+ * rows with operation product in components consuming it, directly (depth 1) or through intermediates produced by other
+ * technologies (depth 2 and more), up to technologies of final products.
+ *
+ * Rows are recalculated only for products used by the technology which becomes or stops being accepted.
+ */
+@Service
+public class ProductUsageService {
+
+    private static final int L_MAX_DEPTH = 25;
+
+    private static final int L_PRODUCTS_BATCH_SIZE = 1000;
+
+    private static final String L_TECHNOLOGY_ID = "technologyId";
+
+    private static final String L_ACCEPTED = "accepted";
+
+    private static final String L_PRODUCTS_IDS = "productsIds";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Rebuilds the whole index
+     */
+    @Transactional
+    public void rebuild() {
+        jdbcTemplate.getJdbcOperations().update("DELETE FROM technologies_productusage");
+
+        jdbcTemplate.update(getInsertUsagesQuery(false), getParameters(null, false));
+    }
+
+    /**
+     * Builds the index when it is empty, e.g. after enabling the plugin
+     */
+    @Transactional
+    public void rebuildIfEmpty() {
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM technologies_productusage LIMIT 1",
+                new MapSqlParameterSource(), Long.class);
+
+        if (ids.isEmpty()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Updates the index when the technology is saved with state changing from or to accepted or checked. Called in
+     * technology's onSave hook, before the new state is stored.
+     *
+     * @param technology
+     *            technology
+     */
+    public void updateForTechnology(final Entity technology) {
+        if (technology.getId() == null) {
+            return;
+        }
+
+        boolean accepted = isAccepted(technology.getStringField(TechnologyFields.STATE))
+                && (technology.getStringField(TechnologyFields.TECHNOLOGY_TYPE) == null);
+
+        List<Boolean> wasAccepted = jdbcTemplate.queryForList("SELECT technologytype IS NULL AND state IN ('"
+                + TechnologyStateStringValues.ACCEPTED + "', '" + TechnologyStateStringValues.CHECKED
+                + "') FROM technologies_technology WHERE id = :technologyId",
+                new MapSqlParameterSource(L_TECHNOLOGY_ID, technology.getId()), Boolean.class);
+
+        if (!wasAccepted.isEmpty() && (wasAccepted.get(0) == accepted)) {
+            return;
+        }
+
+        MapSqlParameterSource parameters = getParameters(technology.getId(), accepted);
+
+        List<Long> productsIds = jdbcTemplate.queryForList(getUsedProductsQuery(), parameters, Long.class);
+
+        for (List<Long> productsIdsPartition : Lists.partition(productsIds, L_PRODUCTS_BATCH_SIZE)) {
+            parameters.addValue(L_PRODUCTS_IDS, productsIdsPartition);
+
+            jdbcTemplate.update("DELETE FROM technologies_productusage WHERE product_id IN (:productsIds)", parameters);
+            jdbcTemplate.update(getInsertUsagesQuery(true), parameters);
+        }
+    }
+
+    /**
+     * Gets ids of accepted and checked technologies using the product, directly or through intermediates
+     *
+     * @param productId
+     *            product id
+     * @return technologies ids
+     */
+    public List<Long> getTechnologiesIds(final Long productId) {
+        return jdbcTemplate.queryForList(
+                "SELECT DISTINCT technology_id FROM technologies_productusage WHERE product_id = :productId",
+                new MapSqlParameterSource("productId", productId), Long.class);
+    }
+
+    private boolean isAccepted(final String state) {
+        return TechnologyStateStringValues.ACCEPTED.equals(state) || TechnologyStateStringValues.CHECKED.equals(state);
+    }
+
+    private MapSqlParameterSource getParameters(final Long technologyId, final boolean accepted) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue(L_TECHNOLOGY_ID, technologyId);
+        parameters.addValue(L_ACCEPTED, accepted);
+        parameters.addValue("maxDepth", L_MAX_DEPTH);
+
+        return parameters;
+    }
+
+    private void appendAcceptedTechnologies(final StringBuilder query) {
+        query.append("WITH RECURSIVE acceptedtechnology AS ( ");
+        query.append("SELECT t.id, t.product_id FROM technologies_technology t ");
+        query.append("WHERE t.technologytype IS NULL AND CASE WHEN t.id = CAST(:technologyId AS bigint) THEN :accepted ");
+        query.append("ELSE t.state IN ('").append(TechnologyStateStringValues.ACCEPTED).append("', '");
+        query.append(TechnologyStateStringValues.CHECKED).append("') END ");
+        query.append(") ");
+    }
+
+    private String getUsedProductsQuery() {
+        StringBuilder query = new StringBuilder();
+
+        appendAcceptedTechnologies(query);
+
+        query.append(", usedproduct (product_id) AS ( ");
+        query.append("SELECT opic.product_id FROM technologies_operationproductincomponent opic ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON toc.id = opic.operationcomponent_id ");
+        query.append("WHERE toc.technology_id = :technologyId ");
+        query.append("UNION ");
+        query.append("SELECT opic.product_id FROM usedproduct up ");
+        query.append("JOIN acceptedtechnology atech ON atech.product_id = up.product_id ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON toc.technology_id = atech.id ");
+        query.append("JOIN technologies_operationproductincomponent opic ON opic.operationcomponent_id = toc.id ");
+        query.append(") ");
+        query.append("SELECT product_id FROM usedproduct");
+
+        return query.toString();
+    }
+
+    private String getInsertUsagesQuery(final boolean forProducts) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("INSERT INTO technologies_productusage ");
+        query.append("(product_id, technology_id, operationproductincomponent_id, depth) ");
+
+        appendAcceptedTechnologies(query);
+
+        query.append(", usage (product_id, technology_id, operationproductincomponent_id, depth) AS ( ");
+        query.append("SELECT opic.product_id, atech.id, opic.id, 1 FROM technologies_operationproductincomponent opic ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON toc.id = opic.operationcomponent_id ");
+        query.append("JOIN acceptedtechnology atech ON atech.id = toc.technology_id ");
+
+        if (forProducts) {
+            query.append("WHERE opic.product_id IN (:productsIds) ");
+        }
+
+        query.append("UNION ");
+        query.append("SELECT u.product_id, atech.id, opic.id, u.depth + 1 FROM usage u ");
+        query.append("JOIN acceptedtechnology ut ON ut.id = u.technology_id ");
+        query.append("JOIN technologies_operationproductincomponent opic ON opic.product_id = ut.product_id ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON toc.id = opic.operationcomponent_id ");
+        query.append("JOIN acceptedtechnology atech ON atech.id = toc.technology_id ");
+        query.append("WHERE u.depth < :maxDepth ");
+        query.append(") ");
+        query.append("SELECT product_id, technology_id, operationproductincomponent_id, MIN(depth) FROM usage ");
+        query.append("GROUP BY product_id, technology_id, operationproductincomponent_id");
+
+        return query.toString();
+    }
+
+}
@@ -0,0 +1,300 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.states.service.StateChangeEntityBuilder;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.states.constants.TechnologyState;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateChangeDescriber;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.security.api.SecurityService;
+
+/**
+ * Copies technology with its operation components tree, operation product components and workstations using set based
+ * queries. Only the technology itself is saved through its data definition, so only hooks computing derived data (state,
+ * master, tree numbering) are fired.
+ */
+@Service
+public class TechnologyDeepCopyService {
+
+    private static final String L_TECHNOLOGY_TABLE = "technologies_technology";
+
+    private static final String L_OPERATION_COMPONENT_TABLE = "technologies_technologyoperationcomponent";
+
+    private static final String L_OPERATION_PRODUCT_IN_COMPONENT_TABLE = "technologies_operationproductincomponent";
+
+    private static final String L_OPERATION_PRODUCT_OUT_COMPONENT_TABLE = "technologies_operationproductoutcomponent";
+
+    private static final String L_WORKSTATIONS_TABLE = "jointable_technologyoperationcomponent_workstation";
+
+    private static final String L_ID_MAP_TABLE = "technologies_technologycopyidmap";
+
+    private static final String L_SOURCE_TECHNOLOGY_ID = "sourceTechnologyId";
+
+    private static final String L_COPY_TECHNOLOGY_ID = "copyTechnologyId";
+
+    private static final String L_USER_LOGIN = "userLogin";
+
+    private static final Set<String> L_REMAPPED_COLUMNS = ImmutableSet.of("id", "technology_id", "parent_id",
+            "operationcomponent_id");
+
+    private static final Map<String, String> L_AUDIT_COLUMNS = ImmutableMap.of("createdate", "now()", "updatedate", "now()",
+            "createuser", ":userLogin", "updateuser", ":userLogin");
+
+    // time calculation of operation component is not copyable, time norms plugin creates new ones for the copy
+    private static final Map<String, String> L_OPERATION_COMPONENT_OVERRIDDEN_COLUMNS = ImmutableMap.of(
+            "techopercomptimecalculation_id", "NULL");
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private StateChangeEntityBuilder stateChangeEntityBuilder;
+
+    @Autowired
+    private TechnologyStateChangeDescriber describer;
+
+    @Autowired
+    private SecurityService securityService;
+
+    /**
+     * Creates deep copy of given technology in draft state.
+     *
+     * @param technology
+     *            technology to copy
+     * @param number
+     *            number of the copy
+     * @return saved copy of technology
+     */
+    @Transactional
+    public Entity deepCopy(final Entity technology, final String number) {
+        Long sourceTechnologyId = technology.getId();
+        Long copyTechnologyId = copyTechnology(sourceTechnologyId, number);
+
+        copyOperationComponents(sourceTechnologyId, copyTechnologyId);
+        verifyCopy(sourceTechnologyId, copyTechnologyId);
+
+        DataDefinition technologyDD = getTechnologyDD();
+        Entity copyOfTechnology = technologyDD.get(copyTechnologyId);
+
+        stateChangeEntityBuilder.buildInitial(describer, copyOfTechnology, TechnologyState.DRAFT);
+
+        return technologyDD.save(copyOfTechnology);
+    }
+
+    private Long copyTechnology(final Long sourceTechnologyId, final String number) {
+        Map<String, String> overriddenColumns = ImmutableMap.<String, String> builder().put("number", ":number")
+                .put("state", "'" + TechnologyState.DRAFT.getStringValue() + "'").put("master", "false")
+                .put("template", "false").put("externalsynchronized", "true").build();
+
+        List<String> columns = getCopiedColumns(L_TECHNOLOGY_TABLE);
+
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO ").append(L_TECHNOLOGY_TABLE).append(" (").append(StringUtils.join(columns, ", "))
+                .append(") ");
+        query.append("SELECT ").append(StringUtils.join(selectedColumns(columns, "t", overriddenColumns), ", ")).append(" ");
+        query.append("FROM ").append(L_TECHNOLOGY_TABLE).append(" t WHERE t.id = :sourceTechnologyId ");
+        query.append("RETURNING id");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_SOURCE_TECHNOLOGY_ID, sourceTechnologyId);
+        parameters.addValue("number", number);
+        parameters.addValue(L_USER_LOGIN, securityService.getCurrentUserName());
+
+        return jdbcTemplate.queryForObject(query.toString(), parameters, Long.class);
+    }
+
+    /**
+     * Copies operation components tree of technology with their product components and workstations. Plugins keeping
+     * additional data per operation component advise this method to fill it for the copy.
+     *
+     * @param sourceTechnologyId
+     *            source technology id
+     * @param copyTechnologyId
+     *            copied technology id
+     */
+    public void copyOperationComponents(final Long sourceTechnologyId, final Long copyTechnologyId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_SOURCE_TECHNOLOGY_ID, sourceTechnologyId);
+        parameters.addValue(L_COPY_TECHNOLOGY_ID, copyTechnologyId);
+        parameters.addValue(L_USER_LOGIN, securityService.getCurrentUserName());
+
+        jdbcTemplate.getJdbcOperations().execute(
+                "CREATE TEMPORARY TABLE IF NOT EXISTS " + L_ID_MAP_TABLE
+                        + " (source_id bigint PRIMARY KEY, copy_id bigint NOT NULL) ON COMMIT DELETE ROWS");
+        jdbcTemplate.getJdbcOperations().update("DELETE FROM " + L_ID_MAP_TABLE);
+
+        StringBuilder idMapQuery = new StringBuilder();
+        idMapQuery.append("INSERT INTO ").append(L_ID_MAP_TABLE).append(" (source_id, copy_id) ");
+        idMapQuery.append("SELECT id, nextval(pg_get_serial_sequence('").append(L_OPERATION_COMPONENT_TABLE)
+                .append("', 'id')) ");
+        idMapQuery.append("FROM ").append(L_OPERATION_COMPONENT_TABLE).append(" WHERE technology_id = :sourceTechnologyId");
+
+        jdbcTemplate.update(idMapQuery.toString(), parameters);
+
+        List<String> columns = getCopiedColumns(L_OPERATION_COMPONENT_TABLE);
+
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO ").append(L_OPERATION_COMPONENT_TABLE).append(" (id, technology_id, parent_id, ")
+                .append(StringUtils.join(columns, ", ")).append(") ");
+        query.append("SELECT m.copy_id, :copyTechnologyId, pm.copy_id, ")
+                .append(StringUtils.join(selectedColumns(columns, "toc", L_OPERATION_COMPONENT_OVERRIDDEN_COLUMNS), ", "))
+                .append(" ");
+        query.append("FROM ").append(L_OPERATION_COMPONENT_TABLE).append(" toc ");
+        query.append("JOIN ").append(L_ID_MAP_TABLE).append(" m ON m.source_id = toc.id ");
+        query.append("LEFT JOIN ").append(L_ID_MAP_TABLE).append(" pm ON pm.source_id = toc.parent_id");
+
+        jdbcTemplate.update(query.toString(), parameters);
+
+        copyOperationProductComponents(L_OPERATION_PRODUCT_IN_COMPONENT_TABLE, parameters);
+        copyOperationProductComponents(L_OPERATION_PRODUCT_OUT_COMPONENT_TABLE, parameters);
+
+        StringBuilder workstationsQuery = new StringBuilder();
+        workstationsQuery.append("INSERT INTO ").append(L_WORKSTATIONS_TABLE)
+                .append(" (technologyoperationcomponent_id, workstation_id) ");
+        workstationsQuery.append("SELECT m.copy_id, w.workstation_id FROM ").append(L_WORKSTATIONS_TABLE).append(" w ");
+        workstationsQuery.append("JOIN ").append(L_ID_MAP_TABLE).append(" m ON m.source_id = w.technologyoperationcomponent_id");
+
+        jdbcTemplate.update(workstationsQuery.toString(), parameters);
+    }
+
+    private void copyOperationProductComponents(final String table, final MapSqlParameterSource parameters) {
+        List<String> columns = getCopiedColumns(table);
+
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO ").append(table).append(" (operationcomponent_id, ").append(StringUtils.join(columns, ", "))
+                .append(") ");
+        query.append("SELECT m.copy_id, ").append(StringUtils.join(selectedColumns(columns, "opc", L_AUDIT_COLUMNS), ", "))
+                .append(" ");
+        query.append("FROM ").append(table).append(" opc ");
+        query.append("JOIN ").append(L_ID_MAP_TABLE).append(" m ON m.source_id = opc.operationcomponent_id");
+
+        jdbcTemplate.update(query.toString(), parameters);
+    }
+
+    private void verifyCopy(final Long sourceTechnologyId, final Long copyTechnologyId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_SOURCE_TECHNOLOGY_ID, sourceTechnologyId);
+        parameters.addValue(L_COPY_TECHNOLOGY_ID, copyTechnologyId);
+
+        StringBuilder treeQuery = new StringBuilder();
+        treeQuery.append("SELECT ");
+        treeQuery.append("(SELECT COUNT(*) FROM ").append(L_OPERATION_COMPONENT_TABLE)
+                .append(" WHERE technology_id = :sourceTechnologyId) - ");
+        treeQuery.append("(SELECT COUNT(*) FROM ").append(L_OPERATION_COMPONENT_TABLE)
+                .append(" WHERE technology_id = :copyTechnologyId) + ");
+        treeQuery.append("(SELECT COUNT(*) FROM ").append(L_ID_MAP_TABLE).append(" m ");
+        treeQuery.append("JOIN ").append(L_OPERATION_COMPONENT_TABLE).append(" s ON s.id = m.source_id ");
+        treeQuery.append("LEFT JOIN ").append(L_OPERATION_COMPONENT_TABLE).append(" c ON c.id = m.copy_id ");
+        treeQuery.append("LEFT JOIN ").append(L_ID_MAP_TABLE).append(" pm ON pm.source_id = s.parent_id ");
+        treeQuery.append("WHERE c.id IS NULL OR c.technology_id <> :copyTechnologyId ");
+        treeQuery.append("OR c.parent_id IS DISTINCT FROM pm.copy_id OR c.operation_id IS DISTINCT FROM s.operation_id ");
+        treeQuery.append("OR c.nodenumber IS DISTINCT FROM s.nodenumber OR c.priority IS DISTINCT FROM s.priority)");
+
+        long differences = jdbcTemplate.queryForObject(treeQuery.toString(), parameters, Long.class);
+
+        differences += countProductComponentsDifferences(L_OPERATION_PRODUCT_IN_COMPONENT_TABLE, parameters);
+        differences += countProductComponentsDifferences(L_OPERATION_PRODUCT_OUT_COMPONENT_TABLE, parameters);
+
+        if (differences != 0) {
+            throw new IllegalStateException(String.format(
+                    "Copy of technology %d differs from its source in %d operation components or products", sourceTechnologyId,
+                    differences));
+        }
+    }
+
+    private long countProductComponentsDifferences(final String table, final MapSqlParameterSource parameters) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT COUNT(*) FROM (");
+        query.append("(SELECT m.copy_id, opc.product_id, opc.quantity FROM ").append(table).append(" opc ");
+        query.append("JOIN ").append(L_ID_MAP_TABLE).append(" m ON m.source_id = opc.operationcomponent_id ");
+        query.append("EXCEPT ALL ");
+        query.append("SELECT opc.operationcomponent_id, opc.product_id, opc.quantity FROM ").append(table).append(" opc ");
+        query.append("JOIN ").append(L_ID_MAP_TABLE).append(" m ON m.copy_id = opc.operationcomponent_id) ");
+        query.append("UNION ALL ");
+        query.append("(SELECT opc.operationcomponent_id, opc.product_id, opc.quantity FROM ").append(table).append(" opc ");
+        query.append("JOIN ").append(L_ID_MAP_TABLE).append(" m ON m.copy_id = opc.operationcomponent_id ");
+        query.append("EXCEPT ALL ");
+        query.append("SELECT m.copy_id, opc.product_id, opc.quantity FROM ").append(table).append(" opc ");
+        query.append("JOIN ").append(L_ID_MAP_TABLE).append(" m ON m.source_id = opc.operationcomponent_id)");
+        query.append(") differences");
+
+        return jdbcTemplate.queryForObject(query.toString(), parameters, Long.class);
+    }
+
+    private List<String> getCopiedColumns(final String table) {
+        List<String> columns = jdbcTemplate.queryForList(
+                "SELECT column_name FROM information_schema.columns WHERE table_schema = current_schema() "
+                        + "AND table_name = :table ORDER BY ordinal_position",
+                new MapSqlParameterSource("table", table), String.class);
+
+        List<String> copiedColumns = Lists.newArrayList();
+
+        for (String column : columns) {
+            if (!L_REMAPPED_COLUMNS.contains(column)) {
+                copiedColumns.add(column);
+            }
+        }
+
+        return copiedColumns;
+    }
+
+    private List<String> selectedColumns(final List<String> columns, final String alias,
+            final Map<String, String> overriddenColumns) {
+        List<String> selectedColumns = Lists.newArrayList();
+
+        for (String column : columns) {
+            if (overriddenColumns.containsKey(column)) {
+                selectedColumns.add(overriddenColumns.get(column));
+            } else if (L_AUDIT_COLUMNS.containsKey(column)) {
+                selectedColumns.add(L_AUDIT_COLUMNS.get(column));
+            } else {
+                selectedColumns.add(alias + "." + column);
+            }
+        }
+
+        return selectedColumns;
+    }
+
+    private DataDefinition getTechnologyDD() {
+        return dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY);
+    }
+
+}
@@ -58,6 +58,8 @@ public final class TechnologiesConstants {
 
     public static final String MODEL_TECHNOLOGY_OPERATION_COMPONENT_MERGE_PRODUCT_OUT = "technologyOperationComponentMergeProductOut";
 
+    public static final String MODEL_PRODUCT_USAGE = "productUsage";
+
     public static final String OPERATION_COMPONENTS = "operationComponents";
 
     // VIEW
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.technologies.hooks;
 
 import com.qcadoo.mes.states.service.StateChangeEntityBuilder;
+import com.qcadoo.mes.technologies.ProductUsageService;
 import com.qcadoo.mes.technologies.TechnologyService;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
@@ -60,6 +61,9 @@ public class TechnologyModelHooks {
     @Autowired
     private TreeNumberingService treeNumberingService;
 
+    @Autowired
+    private ProductUsageService productUsageService;
+
     public void onCreate(final DataDefinition technologyDD, final Entity technology) {
         setInitialState(technology);
     }
@@ -75,6 +79,7 @@ public class TechnologyModelHooks {
             technology.setField(TechnologyFields.TEMPLATE, false);
         }
         setNewMasterTechnology(technologyDD, technology);
+        productUsageService.updateForTechnology(technology);
     }
 
     public void onUpdate(final DataDefinition technologyDD, final Entity technology) {
@@ -29,6 +29,8 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 
+import com.qcadoo.mes.basic.cache.EntityCacheScope;
+import com.qcadoo.mes.basic.cache.EntityCacheService;
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.annotation.RunForStateTransition;
 import com.qcadoo.mes.states.annotation.RunForStateTransitions;
@@ -55,6 +57,9 @@ public class TechnologyValidationAspect extends AbstractStateListenerAspect {
     @Autowired
     private TechnologyTreeValidators technologyTreeValidators;
 
+    @Autowired
+    private EntityCacheService entityCacheService;
+
     @Pointcut(TechnologyStateChangeAspect.SELECTOR_POINTCUT)
     protected void targetServicePointcut() {
     }
@@ -64,20 +69,22 @@ public class TechnologyValidationAspect extends AbstractStateListenerAspect {
             @RunForStateTransition(targetState = TechnologyStateStringValues.CHECKED) })
     @Before(PHASE_EXECUTION_POINTCUT)
     public void preValidationOnAcceptingOrChecking(final StateChangeContext stateChangeContext, final int phase) {
-        if (!technologyValidationService.checkIfTechnologyTreeIsSet(stateChangeContext)) {
-            return;
-        }
-        technologyValidationService.checkConsumingManyProductsFromOneSubOp(stateChangeContext);
-        Entity technology = stateChangeContext.getOwner();
-        technologyTreeValidators.checkConsumingTheSameProductFromManySubOperations(technology.getDataDefinition(), technology,
-                true);
-        technologyValidationService.checkIfTechnologyHasAtLeastOneComponent(stateChangeContext);
-        // TODO DEV_TEAM when we fixed problem with referenced technology
-        // technologyValidationService.checkIfAllReferenceTechnologiesAreAceepted(stateChangeContext);
-        technologyValidationService.checkTopComponentsProducesProductForTechnology(stateChangeContext);
-        technologyValidationService.checkIfOperationsUsesSubOperationsProds(stateChangeContext);
-        if (PluginUtils.isEnabled("timeNormsForOperations")) {
-            technologyValidationService.checkIfTreeOperationIsValid(stateChangeContext);
+        try (EntityCacheScope scope = entityCacheService.open("technologyPreValidation")) {
+            if (!technologyValidationService.checkIfTechnologyTreeIsSet(stateChangeContext)) {
+                return;
+            }
+            technologyValidationService.checkConsumingManyProductsFromOneSubOp(stateChangeContext);
+            Entity technology = stateChangeContext.getOwner();
+            technologyTreeValidators.checkConsumingTheSameProductFromManySubOperations(technology.getDataDefinition(), technology,
+                    true);
+            technologyValidationService.checkIfTechnologyHasAtLeastOneComponent(stateChangeContext);
+            // TODO DEV_TEAM when we fixed problem with referenced technology
+            // technologyValidationService.checkIfAllReferenceTechnologiesAreAceepted(stateChangeContext);
+            technologyValidationService.checkTopComponentsProducesProductForTechnology(stateChangeContext);
+            technologyValidationService.checkIfOperationsUsesSubOperationsProds(stateChangeContext);
+            if (PluginUtils.isEnabled("timeNormsForOperations")) {
+                technologyValidationService.checkIfTreeOperationIsValid(stateChangeContext);
+            }
         }
     }
 
@@ -33,6 +33,7 @@ import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.cache.EntityCacheService;
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.messages.constants.StateMessageType;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
@@ -62,6 +63,9 @@ public class TechnologyValidationService {
     @Autowired
     private TranslationService translationService;
 
+    @Autowired
+    private EntityCacheService entityCacheService;
+
     @Autowired
     private ProductQuantitiesService productQuantitiyService;
 
@@ -87,7 +91,7 @@ public class TechnologyValidationService {
 
     public boolean checkTopComponentsProducesProductForTechnology(final StateChangeContext stateContext) {
         Entity technology = stateContext.getOwner();
-        final Entity savedTechnology = technology.getDataDefinition().get(technology.getId());
+        final Entity savedTechnology = entityCacheService.reload(technology);
         final Entity product = savedTechnology.getBelongsToField(TechnologyFields.PRODUCT);
         final EntityTree operations = savedTechnology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
         final EntityTreeNode root = operations.getRoot();
@@ -106,7 +110,7 @@ public class TechnologyValidationService {
 
     public boolean checkIfTechnologyHasAtLeastOneComponent(final StateChangeContext stateContext) {
         Entity technology = stateContext.getOwner();
-        final Entity savedTechnology = technology.getDataDefinition().get(technology.getId());
+        final Entity savedTechnology = entityCacheService.reload(technology);
         final EntityTree operations = savedTechnology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
         if (operations != null && !operations.isEmpty()) {
             for (Entity operation : operations) {
@@ -264,7 +268,7 @@ public class TechnologyValidationService {
         if (technology == null || technology.getId() == null) {
             return true;
         }
-        Entity techFromDB = technology.getDataDefinition().get(technology.getId());
+        Entity techFromDB = entityCacheService.reload(technology);
         if (techFromDB == null) {
             return true;
         }
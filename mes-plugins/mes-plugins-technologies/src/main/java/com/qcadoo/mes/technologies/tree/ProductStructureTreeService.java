@@ -25,12 +25,20 @@ package com.qcadoo.mes.technologies.tree;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
@@ -45,12 +53,24 @@ import com.qcadoo.view.api.ComponentState.MessageType;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FormComponent;
 
+/**
+ * Generates product structure of technology, including technologies of intermediate products. Operations and products of
+ * all technologies in the structure are loaded with one recursive query, the tree is assembled in memory. Technologies used
+ * more than once are expanded only once, which also breaks cycles, and technologies are nested at most 25 levels deep.
+ */
 @Service
 public class ProductStructureTreeService {
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private static final int L_MAX_DEPTH = 25;
+
+    private static final int L_ENTITIES_BATCH_SIZE = 1000;
+
     private static final String L_TECHNOLOGY = "technology";
 
     private static final String L_OPERATION = "operation";
@@ -61,10 +81,6 @@ public class ProductStructureTreeService {
 
     private static final String L_NUMBER = "number";
 
-    private static final String L_OPERATION_PRODUCT_OUT_COMPONENTS = "operationProductOutComponents";
-
-    private static final String L_OPERATION_PRODUCT_IN_COMPONENTS = "operationProductInComponents";
-
     private static final String L_FINAL_PRODUCT = "finalProduct";
 
     private static final String L_INTERMEDIATE = "intermediate";
@@ -83,6 +99,12 @@ public class ProductStructureTreeService {
 
     private static final String L_STANDARD_PERFORMANCE_TECHNOLOGY = "standardPerformanceTechnology";
 
+    private static final String L_TECHNOLOGY_AND_OPERATION_EXISTS = "technologies.technologyDetails.window.productStructure.productStructureForm.technologyAndOperationExists";
+
+    private static final String L_DUPLICATE_PRODUCT_FOR_TECHNOLOGY = "technologies.technologyDetails.window.productStructure.productStructureForm.duplicateProductForTechnology";
+
+    private static final String L_STRUCTURE_TOO_DEEP = "technologies.technologyDetails.window.productStructure.productStructureForm.structureTooDeep";
+
     private void addChild(final List<Entity> tree, final Entity child, final Entity parent, final String entityType) {
         child.setField("parent", parent);
         child.setId((long) tree.size() + 1);
@@ -93,193 +115,239 @@ public class ProductStructureTreeService {
         tree.add(child);
     }
 
-    private Entity findOperationForProductAndTechnology(final Entity product, final Entity technology) {
-        DataDefinition operationComponentsDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT);
-        List<Entity> operations = operationComponentsDD.find().add(SearchRestrictions.belongsTo(L_TECHNOLOGY, technology)).list()
-                .getEntities();
-        for (Entity operation : operations) {
-
-            Entity isResult = operation.getHasManyField(L_OPERATION_PRODUCT_OUT_COMPONENTS).find()
-                    .add(SearchRestrictions.belongsTo(L_PRODUCT, product)).setMaxResults(1).uniqueResult();
-            if (isResult != null) {
-                return operation;
+    private void generateTreeForSubproducts(final ProductStructure structure, final StructureOperation operation,
+            final Long technologyId, final int depth, final StructureNode parent, final Set<Long> usedTechnologies) {
+        for (StructureComponent productInComponent : operation.getInComponents()) {
+            Long productId = productInComponent.getProductId();
+            StructureOperation subOperation = operation.findChildProducing(productId);
+            BigDecimal quantity = operation.findQuantityOfProduct(productId);
+            Long subTechnologyId = productInComponent.getDefaultTechnologyId();
+
+            if (subTechnologyId != null) {
+                if (usedTechnologies.contains(subTechnologyId)) {
+                    structure.addMessage(L_DUPLICATE_PRODUCT_FOR_TECHNOLOGY, productId);
+                } else if (subOperation == null) {
+                    if (depth >= L_MAX_DEPTH) {
+                        structure.addMessage(L_STRUCTURE_TOO_DEEP, productId);
+
+                        continue;
+                    }
+
+                    StructureOperation operationForTechnology = structure.findOperationForProductAndTechnology(productId,
+                            subTechnologyId);
+
+                    StructureNode child = new StructureNode(parent, L_COMPONENT, subTechnologyId, operationForTechnology,
+                            productId, quantity, subTechnologyId);
+
+                    structure.addNode(child);
+                    usedTechnologies.add(subTechnologyId);
+
+                    if (operationForTechnology != null) {
+                        generateTreeForSubproducts(structure, operationForTechnology, subTechnologyId, depth + 1, child,
+                                usedTechnologies);
+                    }
+                } else {
+                    StructureNode child = new StructureNode(parent, L_INTERMEDIATE, technologyId, subOperation, productId,
+                            quantity, null);
+
+                    structure.addNode(child);
+                    structure.addMessage(L_TECHNOLOGY_AND_OPERATION_EXISTS, productId);
+
+                    generateTreeForSubproducts(structure, subOperation, technologyId, depth, child, usedTechnologies);
+                }
+            } else if (subOperation != null) {
+                StructureNode child = new StructureNode(parent, L_INTERMEDIATE, technologyId, subOperation, productId, quantity,
+                        technologyId);
+
+                structure.addNode(child);
+
+                generateTreeForSubproducts(structure, subOperation, technologyId, depth, child, usedTechnologies);
+            } else {
+                structure.addNode(new StructureNode(parent, L_MATERIAL, technologyId, operation, productId, quantity,
+                        technologyId));
             }
         }
-        return null;
     }
 
-    private Entity findOperationForProductWithinChildren(final Entity product, final Entity toc) {
-        List<Entity> operations = toc.getHasManyField(TechnologyOperationComponentFields.CHILDREN);
-        for (Entity operation : operations) {
+    public EntityTree generateProductStructureTree(final ViewDefinitionState view, final Entity technology) {
+        ProductStructure structure = getProductStructure(technology.getId());
 
-            Entity isResult = operation.getHasManyField(L_OPERATION_PRODUCT_OUT_COMPONENTS).find()
-                    .add(SearchRestrictions.belongsTo(L_PRODUCT, product)).setMaxResults(1).uniqueResult();
-            if (isResult != null) {
-                return operation;
-            }
-        }
-        return null;
+        Long productId = technology.getBelongsToField(L_PRODUCT).getId();
+        StructureOperation operation = structure.findOperationForProductAndTechnology(productId, technology.getId());
+
+        StructureNode root = new StructureNode(null, L_FINAL_PRODUCT, technology.getId(), operation, productId,
+                operation.findQuantityOfProduct(productId), technology.getId());
+
+        structure.addNode(root);
+
+        Set<Long> usedTechnologies = Sets.newHashSet(technology.getId());
+
+        generateTreeForSubproducts(structure, operation, technology.getId(), 0, root, usedTechnologies);
+
+        return EntityTreeUtilsService.getDetachedEntityTree(createTreeNodes(structure, view));
     }
 
-    private Entity findTechnologyForProduct(final Entity product) {
-        DataDefinition technologyDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                TechnologiesConstants.MODEL_TECHNOLOGY);
-        List<Entity> technologiesForProduct = technologyDD
-                .find()
-                .add(SearchRestrictions.isNull(TechnologyFields.TECHNOLOGY_TYPE))
-                .add(SearchRestrictions.and(
-                        SearchRestrictions.belongsTo(L_PRODUCT, product),
-                        SearchRestrictions.or(SearchRestrictions.eq("state", "02accepted"),
-                                SearchRestrictions.eq("state", "05checked")))).list().getEntities();
-        Entity result = null;
-        for (Entity technology : technologiesForProduct) {
-            boolean isMaster = technology.getBooleanField("master");
-            if (isMaster) {
-                return technology;
-            } else if (result != null) {
-                if (result.getStringField(L_NUMBER).compareTo(technology.getStringField(L_NUMBER)) < 0) {
-                    result = technology;
+    private List<Entity> createTreeNodes(final ProductStructure structure, final ViewDefinitionState view) {
+        Set<Long> technologiesIds = Sets.newHashSet();
+        Set<Long> operationsIds = Sets.newHashSet();
+        Set<Long> productsIds = Sets.newHashSet();
+        Set<Long> divisionsIds = Sets.newHashSet();
+
+        for (StructureNode node : structure.getNodes()) {
+            technologiesIds.add(node.getTechnologyId());
+            productsIds.add(node.getProductId());
+
+            if (node.getOperation() != null) {
+                operationsIds.add(node.getOperation().getId());
+
+                if (node.getOperation().getDivisionId() != null) {
+                    divisionsIds.add(node.getOperation().getDivisionId());
                 }
-            } else {
-                result = technology;
             }
         }
-        return result;
-    }
 
-    private BigDecimal findQuantityOfProductInOperation(final Entity product, final Entity operation) {
-        EntityList outProducts = operation.getHasManyField(L_OPERATION_PRODUCT_OUT_COMPONENTS);
+        for (StructureMessage message : structure.getMessages()) {
+            productsIds.add(message.getProductId());
+        }
+
+        Map<Long, Entity> technologies = getEntities(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY, technologiesIds);
+        Map<Long, Entity> operations = getEntities(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT, operationsIds);
+        Map<Long, Entity> products = getEntities(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT, productsIds);
+        Map<Long, Entity> divisions = getEntities(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_DIVISION, divisionsIds);
+
+        DataDefinition treeNodeDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_PRODUCT_STRUCTURE_TREE_NODE);
+
+        List<Entity> productStructureList = new ArrayList<>();
+        Map<StructureNode, Entity> treeNodes = Maps.newHashMap();
+
+        for (StructureNode node : structure.getNodes()) {
+            Entity treeNode = treeNodeDD.create();
+
+            treeNode.setField(L_TECHNOLOGY, technologies.get(node.getTechnologyId()));
+            treeNode.setField(L_PRODUCT, products.get(node.getProductId()));
+            treeNode.setField(L_QUANTITY, node.getQuantity());
+
+            if (node.getOperation() != null) {
+                treeNode.setField(L_OPERATION, operations.get(node.getOperation().getId()));
+                treeNode.setField(L_DIVISION, divisions.get(node.getOperation().getDivisionId()));
+            }
+
+            if (node.getGroupTechnologyId() != null) {
+                Entity groupTechnology = technologies.get(node.getGroupTechnologyId());
 
-        Entity productComponent = outProducts.find().add(SearchRestrictions.belongsTo(L_PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
-        if (productComponent != null) {
-            return productComponent.getDecimalField(L_QUANTITY);
+                treeNode.setField(L_TECHNOLOGY_GROUP, groupTechnology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP));
+                treeNode.setField(L_STANDARD_PERFORMANCE_TECHNOLOGY,
+                        groupTechnology.getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY));
+            }
+
+            addChild(productStructureList, treeNode, treeNodes.get(node.getParent()), node.getEntityType());
+            treeNodes.put(node, treeNode);
         }
-        EntityList inProducts = operation.getHasManyField(L_OPERATION_PRODUCT_IN_COMPONENTS);
-        productComponent = inProducts.find().add(SearchRestrictions.belongsTo(L_PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
-        if (productComponent != null) {
-            return productComponent.getDecimalField(L_QUANTITY);
+
+        if (view != null) {
+            FormComponent productStructureForm = (FormComponent) view.getComponentByReference("productStructureForm");
+
+            for (StructureMessage message : structure.getMessages()) {
+                Entity product = products.get(message.getProductId());
+
+                productStructureForm.addMessage(message.getMessage(), MessageType.INFO, false,
+                        product.getStringField("number") + " " + product.getStringField("name"));
+            }
         }
-        return null;
+
+        return productStructureList;
     }
 
-    private void generateTreeForSubproducts(final Entity operation, final Entity technology, final List<Entity> tree,
-            final Entity parent, final ViewDefinitionState view, final List<Long> usedTechnologies) {
-        EntityList productInComponents = operation.getHasManyField(L_OPERATION_PRODUCT_IN_COMPONENTS);
-        DataDefinition treeNodeDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                TechnologiesConstants.MODEL_PRODUCT_STRUCTURE_TREE_NODE);
-        for (Entity productInComp : productInComponents) {
-            Entity child = treeNodeDD.create();
-            Entity product = productInComp.getBelongsToField(L_PRODUCT);
-            Entity subOperation = findOperationForProductWithinChildren(product, operation);
-            BigDecimal quantity = findQuantityOfProductInOperation(product, operation);
-            Entity subTechnology = findTechnologyForProduct(product);
-
-            if (subTechnology != null) {
-                if (!usedTechnologies.contains(subTechnology.getId())) {
-                    if (subOperation == null) {
-                        Entity operationForTechnology = findOperationForProductAndTechnology(product, subTechnology);
-                        Entity technologyGroup = subTechnology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
-                        BigDecimal standardPerformanceTechnology = subTechnology
-                                .getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY);
-
-                        child.setField(L_TECHNOLOGY, subTechnology);
-                        child.setField(L_OPERATION, operationForTechnology);
-                        child.setField(L_PRODUCT, product);
-                        child.setField(L_QUANTITY, quantity);
-                        child.setField(L_DIVISION,
-                                operationForTechnology.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
-                        child.setField(L_TECHNOLOGY_GROUP, technologyGroup);
-                        child.setField(L_STANDARD_PERFORMANCE_TECHNOLOGY, standardPerformanceTechnology);
-                        addChild(tree, child, parent, L_COMPONENT);
-                        usedTechnologies.add(subTechnology.getId());
-                        generateTreeForSubproducts(operationForTechnology, subTechnology, tree, child, view, usedTechnologies);
-                    } else {
-
-                        child.setField(L_TECHNOLOGY, technology);
-                        child.setField(L_PRODUCT, product);
-                        child.setField(L_QUANTITY, quantity);
-                        child.setField(L_OPERATION, subOperation);
-                        child.setField(L_DIVISION, subOperation.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
-                        addChild(tree, child, parent, L_INTERMEDIATE);
-                        if (view != null) {
-                            FormComponent productStructureForm = (FormComponent) view
-                                    .getComponentByReference("productStructureForm");
-                            productStructureForm
-                                    .addMessage(
-                                            "technologies.technologyDetails.window.productStructure.productStructureForm.technologyAndOperationExists",
-                                            MessageType.INFO, false,
-                                            product.getStringField("number") + " " + product.getStringField("name"));
-                        }
-                        generateTreeForSubproducts(subOperation, technology, tree, child, view, usedTechnologies);
-                    }
-                } else if (view != null) {
-                    FormComponent productStructureForm = (FormComponent) view.getComponentByReference("productStructureForm");
-                    productStructureForm
-                            .addMessage(
-                                    "technologies.technologyDetails.window.productStructure.productStructureForm.duplicateProductForTechnology",
-                                    MessageType.INFO, false,
-                                    product.getStringField("number") + " " + product.getStringField("name"));
-                }
-            } else {
-                Entity technologyGroup = technology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
-                BigDecimal standardPerformanceTechnology = technology
-                        .getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY);
-                child.setField(L_TECHNOLOGY, technology);
-                child.setField(L_PRODUCT, product);
-                child.setField(L_QUANTITY, quantity);
-                child.setField(L_TECHNOLOGY_GROUP, technologyGroup);
-                child.setField(L_STANDARD_PERFORMANCE_TECHNOLOGY, standardPerformanceTechnology);
-
-                if (subOperation != null) {
-                    child.setField(L_OPERATION, subOperation);
-                    child.setField(L_DIVISION, subOperation.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
-
-                    addChild(tree, child, parent, L_INTERMEDIATE);
-                    generateTreeForSubproducts(subOperation, technology, tree, child, view, usedTechnologies);
-                } else {
-                    child.setField(L_OPERATION, operation);
-                    child.setField(L_DIVISION, operation.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
-                    child.setField(L_TECHNOLOGY_GROUP, technologyGroup);
-                    child.setField(L_STANDARD_PERFORMANCE_TECHNOLOGY, standardPerformanceTechnology);
+    private Map<Long, Entity> getEntities(final String pluginIdentifier, final String modelName, final Collection<Long> ids) {
+        Map<Long, Entity> entities = Maps.newHashMap();
 
-                    addChild(tree, child, parent, L_MATERIAL);
-                }
+        if (ids.isEmpty()) {
+            return entities;
+        }
+
+        DataDefinition dataDefinition = dataDefinitionService.get(pluginIdentifier, modelName);
+
+        for (List<Long> idsPartition : Lists.partition(Lists.newArrayList(ids), L_ENTITIES_BATCH_SIZE)) {
+            for (Entity entity : dataDefinition.find().add(SearchRestrictions.in("id", idsPartition)).list().getEntities()) {
+                entities.put(entity.getId(), entity);
             }
         }
 
+        return entities;
     }
 
-    public EntityTree generateProductStructureTree(final ViewDefinitionState view, final Entity technology) {
-        DataDefinition treeNodeDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                TechnologiesConstants.MODEL_PRODUCT_STRUCTURE_TREE_NODE);
-        Entity root = treeNodeDD.create();
-        Entity product = technology.getBelongsToField(L_PRODUCT);
-        Entity operation = findOperationForProductAndTechnology(product, technology);
-        BigDecimal quantity = findQuantityOfProductInOperation(product, operation);
-        Entity technologyGroup = technology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
-        BigDecimal standardPerformanceTechnology = technology.getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY);
-        root.setField(L_TECHNOLOGY, technology);
-        root.setField(L_PRODUCT, product);
-        root.setField(L_OPERATION, operation);
-        root.setField(L_QUANTITY, quantity);
-        root.setField(L_DIVISION, operation.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
-        root.setField(L_TECHNOLOGY_GROUP, technologyGroup);
-        root.setField(L_STANDARD_PERFORMANCE_TECHNOLOGY, standardPerformanceTechnology);
+    private ProductStructure getProductStructure(final Long technologyId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
 
-        List<Entity> productStructureList = new ArrayList<>();
-        addChild(productStructureList, root, null, L_FINAL_PRODUCT);
+        parameters.addValue("technologyId", technologyId);
+        parameters.addValue("maxDepth", L_MAX_DEPTH);
+
+        ProductStructure structure = new ProductStructure();
 
-        List<Long> usedTechnologies = new ArrayList<>();
-        usedTechnologies.add(technology.getId());
+        jdbcTemplate.query(getProductStructureQuery(), parameters, resultSet -> {
+            StructureOperation operation = structure.getOrCreateOperation(resultSet.getLong("operationId"),
+                    resultSet.getLong("technologyId"), (Long) resultSet.getObject("parentId"),
+                    (Long) resultSet.getObject("divisionId"));
 
-        generateTreeForSubproducts(operation, technology, productStructureList, root, view, usedTechnologies);
+            Long productId = (Long) resultSet.getObject("productId");
 
-        return EntityTreeUtilsService.getDetachedEntityTree(productStructureList);
+            if (productId != null) {
+                StructureComponent component = new StructureComponent(productId, resultSet.getBigDecimal("quantity"),
+                        (Long) resultSet.getObject("defaultTechnologyId"));
+
+                if ("01in".equals(resultSet.getString("role"))) {
+                    operation.getInComponents().add(component);
+                } else {
+                    operation.getOutComponents().add(component);
+                }
+            }
+        });
+
+        structure.linkChildren();
+
+        return structure;
     }
 
+    private String getProductStructureQuery() {
+        StringBuilder query = new StringBuilder();
+
+        query.append("WITH RECURSIVE defaulttechnology AS ( ");
+        query.append("SELECT DISTINCT ON (t.product_id) t.product_id, t.id AS technology_id ");
+        query.append("FROM technologies_technology t ");
+        query.append("WHERE t.technologytype IS NULL AND t.state IN ('02accepted', '05checked') ");
+        query.append("ORDER BY t.product_id, t.master DESC, t.number COLLATE \"C\" DESC, t.id ");
+        query.append("), structure (technology_id, depth) AS ( ");
+        query.append("SELECT CAST(:technologyId AS bigint), 0 ");
+        query.append("UNION ");
+        query.append("SELECT dt.technology_id, s.depth + 1 ");
+        query.append("FROM structure s ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON toc.technology_id = s.technology_id ");
+        query.append("JOIN technologies_operationproductincomponent opic ON opic.operationcomponent_id = toc.id ");
+        query.append("JOIN defaulttechnology dt ON dt.product_id = opic.product_id ");
+        query.append("WHERE s.depth < :maxDepth ");
+        query.append(") ");
+        query.append("SELECT toc.id AS operationId, toc.technology_id AS technologyId, toc.parent_id AS parentId, ");
+        query.append("toc.division_id AS divisionId, opc.role, opc.product_id AS productId, opc.quantity, ");
+        query.append("dt.technology_id AS defaultTechnologyId ");
+        query.append("FROM (SELECT DISTINCT technology_id FROM structure) st ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON toc.technology_id = st.technology_id ");
+        query.append("LEFT JOIN (");
+        query.append("SELECT opic.id, opic.operationcomponent_id, opic.product_id, opic.quantity, '01in' AS role ");
+        query.append("FROM technologies_operationproductincomponent opic ");
+        query.append("UNION ALL ");
+        query.append("SELECT opoc.id, opoc.operationcomponent_id, opoc.product_id, opoc.quantity, '02out' AS role ");
+        query.append("FROM technologies_operationproductoutcomponent opoc ");
+        query.append(") opc ON opc.operationcomponent_id = toc.id ");
+        query.append("LEFT JOIN defaulttechnology dt ON dt.product_id = opc.product_id ");
+        query.append("ORDER BY toc.id, opc.role, opc.id");
+
+        return query.toString();
+    }
+
+
     public EntityTree getOperationComponentsFromTechnology(final Entity technology) {
 
         EntityTree productStructureTree = generateProductStructureTree(null, technology);
@@ -336,4 +404,250 @@ public class ProductStructureTreeService {
         tree.add(child);
         return child;
     }
+
+    private static final class ProductStructure {
+
+        private final Map<Long, StructureOperation> operations = Maps.newLinkedHashMap();
+
+        private final List<StructureNode> nodes = Lists.newArrayList();
+
+        private final List<StructureMessage> messages = Lists.newArrayList();
+
+        StructureOperation getOrCreateOperation(final Long id, final Long technologyId, final Long parentId,
+                final Long divisionId) {
+            return operations.computeIfAbsent(id, key -> new StructureOperation(id, technologyId, parentId, divisionId));
+        }
+
+        void linkChildren() {
+            for (StructureOperation operation : operations.values()) {
+                StructureOperation parent = operations.get(operation.getParentId());
+
+                if (parent != null) {
+                    parent.getChildren().add(operation);
+                }
+            }
+        }
+
+        StructureOperation findOperationForProductAndTechnology(final Long productId, final Long technologyId) {
+            for (StructureOperation operation : operations.values()) {
+                if (operation.getTechnologyId().equals(technologyId) && operation.produces(productId)) {
+                    return operation;
+                }
+            }
+
+            return null;
+        }
+
+        void addNode(final StructureNode node) {
+            nodes.add(node);
+        }
+
+        List<StructureNode> getNodes() {
+            return nodes;
+        }
+
+        void addMessage(final String message, final Long productId) {
+            messages.add(new StructureMessage(message, productId));
+        }
+
+        List<StructureMessage> getMessages() {
+            return messages;
+        }
+
+    }
+
+    private static final class StructureOperation {
+
+        private final Long id;
+
+        private final Long technologyId;
+
+        private final Long parentId;
+
+        private final Long divisionId;
+
+        private final List<StructureComponent> inComponents = Lists.newArrayList();
+
+        private final List<StructureComponent> outComponents = Lists.newArrayList();
+
+        private final List<StructureOperation> children = Lists.newArrayList();
+
+        StructureOperation(final Long id, final Long technologyId, final Long parentId, final Long divisionId) {
+            this.id = id;
+            this.technologyId = technologyId;
+            this.parentId = parentId;
+            this.divisionId = divisionId;
+        }
+
+        Long getId() {
+            return id;
+        }
+
+        Long getTechnologyId() {
+            return technologyId;
+        }
+
+        Long getParentId() {
+            return parentId;
+        }
+
+        Long getDivisionId() {
+            return divisionId;
+        }
+
+        List<StructureComponent> getInComponents() {
+            return inComponents;
+        }
+
+        List<StructureComponent> getOutComponents() {
+            return outComponents;
+        }
+
+        List<StructureOperation> getChildren() {
+            return children;
+        }
+
+        boolean produces(final Long productId) {
+            return findComponent(outComponents, productId) != null;
+        }
+
+        StructureOperation findChildProducing(final Long productId) {
+            for (StructureOperation child : children) {
+                if (child.produces(productId)) {
+                    return child;
+                }
+            }
+
+            return null;
+        }
+
+        BigDecimal findQuantityOfProduct(final Long productId) {
+            StructureComponent component = findComponent(outComponents, productId);
+
+            if (component == null) {
+                component = findComponent(inComponents, productId);
+            }
+
+            return (component == null) ? null : component.getQuantity();
+        }
+
+        private StructureComponent findComponent(final List<StructureComponent> components, final Long productId) {
+            for (StructureComponent component : components) {
+                if (component.getProductId().equals(productId)) {
+                    return component;
+                }
+            }
+
+            return null;
+        }
+
+    }
+
+    private static final class StructureComponent {
+
+        private final Long productId;
+
+        private final BigDecimal quantity;
+
+        private final Long defaultTechnologyId;
+
+        StructureComponent(final Long productId, final BigDecimal quantity, final Long defaultTechnologyId) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.defaultTechnologyId = defaultTechnologyId;
+        }
+
+        Long getProductId() {
+            return productId;
+        }
+
+        BigDecimal getQuantity() {
+            return quantity;
+        }
+
+        Long getDefaultTechnologyId() {
+            return defaultTechnologyId;
+        }
+
+    }
+
+    private static final class StructureNode {
+
+        private final StructureNode parent;
+
+        private final String entityType;
+
+        private final Long technologyId;
+
+        private final StructureOperation operation;
+
+        private final Long productId;
+
+        private final BigDecimal quantity;
+
+        private final Long groupTechnologyId;
+
+        StructureNode(final StructureNode parent, final String entityType, final Long technologyId,
+                final StructureOperation operation, final Long productId, final BigDecimal quantity,
+                final Long groupTechnologyId) {
+            this.parent = parent;
+            this.entityType = entityType;
+            this.technologyId = technologyId;
+            this.operation = operation;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.groupTechnologyId = groupTechnologyId;
+        }
+
+        StructureNode getParent() {
+            return parent;
+        }
+
+        String getEntityType() {
+            return entityType;
+        }
+
+        Long getTechnologyId() {
+            return technologyId;
+        }
+
+        StructureOperation getOperation() {
+            return operation;
+        }
+
+        Long getProductId() {
+            return productId;
+        }
+
+        BigDecimal getQuantity() {
+            return quantity;
+        }
+
+        Long getGroupTechnologyId() {
+            return groupTechnologyId;
+        }
+
+    }
+
+    private static final class StructureMessage {
+
+        private final String message;
+
+        private final Long productId;
+
+        StructureMessage(final String message, final Long productId) {
+            this.message = message;
+            this.productId = productId;
+        }
+
+        String getMessage() {
+            return message;
+        }
+
+        Long getProductId() {
+            return productId;
+        }
+
+    }
+
 }
@@ -0,0 +1,53 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.timeNormsForOperations.aop;
+
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+
+import com.qcadoo.mes.timeNormsForOperations.constants.TimeNormsConstants;
+import com.qcadoo.plugin.api.RunIfEnabled;
+
+@Aspect
+@Configurable
+@RunIfEnabled(TimeNormsConstants.PLUGIN_IDENTIFIER)
+public class TechnologyDeepCopyServiceTNFOAspect {
+
+    @Autowired
+    private TechnologyDeepCopyServiceTNFOOverrideUtil technologyDeepCopyServiceTNFOOverrideUtil;
+
+    @Pointcut("execution(public void com.qcadoo.mes.technologies.TechnologyDeepCopyService.copyOperationComponents(..)) "
+            + "&& args(sourceTechnologyId, copyTechnologyId)")
+    public void copyOperationComponentsExecution(final Long sourceTechnologyId, final Long copyTechnologyId) {
+    }
+
+    @AfterReturning("copyOperationComponentsExecution(sourceTechnologyId, copyTechnologyId)")
+    public void afterCopyOperationComponentsExecution(final Long sourceTechnologyId, final Long copyTechnologyId) {
+        technologyDeepCopyServiceTNFOOverrideUtil.createTechOperCompTimeCalculations(copyTechnologyId);
+    }
+
+}
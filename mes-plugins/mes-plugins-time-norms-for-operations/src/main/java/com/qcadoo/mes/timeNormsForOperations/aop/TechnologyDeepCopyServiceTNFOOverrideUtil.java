@@ -0,0 +1,59 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.timeNormsForOperations.aop;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+@Service
+public class TechnologyDeepCopyServiceTNFOOverrideUtil {
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Gives every operation component of copied technology its own, empty time calculation, as
+     * TechnologyOperationComponentHooksTNFO.createTechOperCompTimeCalculations does on entity copy.
+     *
+     * @param technologyId
+     *            copied technology id
+     */
+    public void createTechOperCompTimeCalculations(final Long technologyId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("technologyId", technologyId);
+
+        StringBuilder query = new StringBuilder();
+        query.append("WITH calculations AS (SELECT toc.id AS operationcomponent_id, ");
+        query.append("nextval(pg_get_serial_sequence('timenormsforoperations_techopercomptimecalculation', 'id')) AS id ");
+        query.append("FROM technologies_technologyoperationcomponent toc WHERE toc.technology_id = :technologyId), ");
+        query.append("inserted AS (INSERT INTO timenormsforoperations_techopercomptimecalculation ");
+        query.append("(id, duration, machineworktime, laborworktime) SELECT id, 0, 0, 0 FROM calculations) ");
+        query.append("UPDATE technologies_technologyoperationcomponent toc SET techopercomptimecalculation_id = c.id ");
+        query.append("FROM calculations c WHERE c.operationcomponent_id = toc.id");
+
+        jdbcTemplate.update(query.toString(), parameters);
+    }
+
+}
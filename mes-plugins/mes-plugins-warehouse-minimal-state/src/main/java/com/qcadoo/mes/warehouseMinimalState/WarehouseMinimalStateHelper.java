@@ -25,10 +25,12 @@ package com.qcadoo.mes.warehouseMinimalState;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -52,6 +54,22 @@ public class WarehouseMinimalStateHelper {
                 .setMaxResults(1).uniqueResult().getDecimalField("orderedQuantity");
     }
 
+    public Map<Long, BigDecimal> getOrderedQuantitiesForLocation(final Long warehouse) {
+        String query = "select op.product.id as productId, COALESCE(sum(op.orderedQuantity),0) as orderedQuantity "
+                + "from #deliveries_orderedProduct op, #deliveries_delivery del where op.delivery.id=del.id "
+                + "and del.location.id = :warehouseId "
+                + "and del.state in ('01draft', '02prepared', '03duringCorrection', '05approved') and del.active=true "
+                + "group by op.product.id";
+        List<Entity> orderedQuantities = getResourceStockDtoDD().find(query).setParameter("warehouseId", warehouse).list()
+                .getEntities();
+        Map<Long, BigDecimal> orderedQuantitiesByProduct = Maps.newHashMapWithExpectedSize(orderedQuantities.size());
+        for (Entity orderedQuantity : orderedQuantities) {
+            orderedQuantitiesByProduct.put((Long) orderedQuantity.getField("productId"),
+                    orderedQuantity.getDecimalField("orderedQuantity"));
+        }
+        return orderedQuantitiesByProduct;
+    }
+
     // WARNING unused argument is used in aspect in plugin integration
     public List<Entity> getWarehouseStockWithTooSmallMinState(final Entity warehouse, final List<Entity> product) {
 
@@ -0,0 +1,152 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.warehouseMinimalState;
+
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.deliveries.states.constants.DeliveryStateStringValues;
+import com.qcadoo.mes.warehouseMinimalState.constants.WarehouseMinimalStateConstants;
+import com.qcadoo.plugin.api.RunIfEnabled;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Computes stock, quantity ordered in open deliveries and minimal state of all products having minimal state defined, with
+ * one query per refresh. Stock and ordered quantities are taken from resourceStockDto, the same source the minimal state
+ * report uses. The result is kept in minimalStateSnapshot and refreshed on schedule, so notifications can check
+ * products below minimum without recalculating stocks.
+ */
+@Service
+@RunIfEnabled(WarehouseMinimalStateConstants.PLUGIN_IDENTIFIER)
+public class WarehouseMinimalStateService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarehouseMinimalStateService.class);
+
+    private static final String L_LOCATION_ID = "locationId";
+
+    private static final List<String> L_OPEN_DELIVERY_STATES = Lists.newArrayList(DeliveryStateStringValues.DRAFT,
+            DeliveryStateStringValues.PREPARED, DeliveryStateStringValues.DURING_CORRECTION, DeliveryStateStringValues.APPROVED);
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Scheduled(cron = "${warehouseMinimalStateCron:0 0 * * * *}")
+    public void refreshOnSchedule() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                int belowMinimum = refreshSnapshot(null);
+
+                LOG.info("Minimal state snapshot refreshed, products below minimum: " + belowMinimum);
+            }
+
+        });
+    }
+
+    /**
+     * Recalculates minimal state snapshot of given warehouse or, when warehouse is null, of all warehouses.
+     *
+     * @param locationId
+     *            warehouse id, may be null
+     * @return number of products below minimal state
+     */
+    @Transactional
+    public int refreshSnapshot(final Long locationId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue(L_LOCATION_ID, locationId);
+        parameters.addValue("states", L_OPEN_DELIVERY_STATES);
+        parameters.addValue("calculationDate", new Date());
+
+        StringBuilder deleteQuery = new StringBuilder();
+        deleteQuery.append("DELETE FROM warehouseminimalstate_minimalstatesnapshot ");
+        appendLocationRestriction(deleteQuery, "WHERE", "location_id", locationId);
+
+        jdbcTemplate.update(deleteQuery.toString(), parameters);
+        jdbcTemplate.update(insertSnapshotQuery(locationId), parameters);
+
+        return countBelowMinimum(locationId);
+    }
+
+    public int countBelowMinimum(final Long locationId) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT COUNT(*) FROM warehouseminimalstate_minimalstatesnapshot WHERE belowminimum = true ");
+        appendLocationRestriction(query, "AND", "location_id", locationId);
+
+        return jdbcTemplate.queryForObject(query.toString(), new MapSqlParameterSource(L_LOCATION_ID, locationId),
+                Integer.class);
+    }
+
+    public boolean hasProductsBelowMinimum() {
+        return !jdbcTemplate.queryForList(
+                "SELECT id FROM warehouseminimalstate_minimalstatesnapshot WHERE belowminimum = true LIMIT 1",
+                new MapSqlParameterSource(), Long.class).isEmpty();
+    }
+
+    private String insertSnapshotQuery(final Long locationId) {
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO warehouseminimalstate_minimalstatesnapshot ");
+        query.append("(product_id, location_id, minimumstate, optimalorderquantity, quantity, orderedquantity, ");
+        query.append("belowminimum, calculationdate) ");
+        query.append("SELECT ms.product_id, ms.location_id, ms.minimumstate, ms.optimalorderquantity, ");
+        query.append("COALESCE(s.quantity, 0), COALESCE(s.orderedquantity, oq.quantity, 0), ");
+        query.append("COALESCE(s.quantity, 0) + COALESCE(s.orderedquantity, oq.quantity, 0) ");
+        query.append("< COALESCE(s.minimumstate, ms.minimumstate), :calculationDate ");
+        query.append("FROM warehouseminimalstate_warehouseminimumstate ms ");
+        query.append("LEFT JOIN materialflowresources_resourcestockdto s ");
+        query.append("ON s.product_id = ms.product_id AND s.location_id = ms.location_id ");
+        query.append("LEFT JOIN (SELECT op.product_id, d.location_id, SUM(op.orderedquantity) AS quantity ");
+        query.append("FROM deliveries_orderedproduct op JOIN deliveries_delivery d ON d.id = op.delivery_id ");
+        query.append("WHERE d.active = true AND d.state IN (:states) ");
+        appendLocationRestriction(query, "AND", "d.location_id", locationId);
+        query.append("GROUP BY op.product_id, d.location_id) oq ");
+        query.append("ON oq.product_id = ms.product_id AND oq.location_id = ms.location_id ");
+        query.append("WHERE ms.minimumstate > 0 ");
+        appendLocationRestriction(query, "AND", "ms.location_id", locationId);
+
+        return query.toString();
+    }
+
+    private void appendLocationRestriction(final StringBuilder query, final String keyword, final String column,
+            final Long locationId) {
+        if (locationId != null) {
+            query.append(keyword).append(" ").append(column).append(" = :locationId ");
+        }
+    }
+
+}
@@ -31,4 +31,6 @@ public interface WarehouseMinimalStateConstants {
     // MODEL
 
     public static final String MODEL_WAREHOUSE_MINIMUM_STATE = "warehouseMinimumState";
+
+    public static final String MODEL_MINIMAL_STATE_SNAPSHOT = "minimalStateSnapshot";
 }
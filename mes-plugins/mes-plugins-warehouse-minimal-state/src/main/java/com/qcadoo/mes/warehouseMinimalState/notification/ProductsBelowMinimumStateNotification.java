@@ -0,0 +1,64 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.warehouseMinimalState.notification;
+
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.warehouseMinimalState.WarehouseMinimalStateService;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.view.api.notifications.Notification;
+import com.qcadoo.view.api.notifications.NotificationDataComponent;
+import com.qcadoo.view.api.notifications.NotificationType;
+
+@Component
+public class ProductsBelowMinimumStateNotification implements NotificationDataComponent {
+
+    private static final String L_ROLE_MIN_STATES = "ROLE_DOCUMENTS_CORRECTIONS_MIN_STATES";
+
+    @Autowired
+    private TranslationService translationService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private WarehouseMinimalStateService warehouseMinimalStateService;
+
+    @Override
+    public Optional<Notification> registerNotification() {
+        if (securityService.getCurrentUserId() != null && securityService.hasCurrentUserRole(L_ROLE_MIN_STATES)
+                && warehouseMinimalStateService.hasProductsBelowMinimum()) {
+            String code = "warehouseMinimalState.notification.productsBelowMinimumState";
+            return Optional.of(new Notification(NotificationType.information,
+                    translationService.translate(code, LocaleContextHolder.getLocale()), true, true));
+        }
+        return Optional.empty();
+    }
+
+}
@@ -157,9 +157,11 @@ public class DocumentPdf extends ReportPdfView {
         List<Entity> stocks = warehouseMinimalStateHelper.getWarehouseStockWithTooSmallMinState(warehouse,minimumStates.stream().map(res -> res.getBelongsToField("product")).collect(Collectors.toList()));
         Map<Long, Entity> stocksByProduct = stocks.stream()
                 .collect(Collectors.toMap(res -> res.getIntegerField("product_id").longValue(), (res) -> res));
+        Map<Long, BigDecimal> orderedQuantitiesByProduct = warehouseMinimalStateHelper
+                .getOrderedQuantitiesForLocation(warehouse.getId());
         boolean rowsWereAdded = false;
         for (Entity minimumState : minimumStates) {
-            rowsWereAdded |= addRow(minimumState, stocksByProduct, warehouseTable);
+            rowsWereAdded |= addRow(minimumState, stocksByProduct, orderedQuantitiesByProduct, warehouseTable);
         }
         if (rowsWereAdded) {
             document.add(new Paragraph(subtitle, FontUtils.getDejavuBold11Light()));
@@ -183,14 +185,13 @@ public class DocumentPdf extends ReportPdfView {
         return Lists.newArrayList(40, 65, 25, 40, 40, 40, 40, 60);
     }
 
-    private boolean addRow(Entity minimalState, Map<Long, Entity> stocksByProduct, PdfPTable table) {
+    private boolean addRow(Entity minimalState, Map<Long, Entity> stocksByProduct,
+            Map<Long, BigDecimal> orderedQuantitiesByProduct, PdfPTable table) {
         boolean rowAdded = false;
         Entity product = minimalState.getBelongsToField(WarehouseMinimumStateFields.PRODUCT);
-        Entity warehouse = minimalState.getBelongsToField(WarehouseMinimumStateFields.LOCATION);
         Entity stock = stocksByProduct.get(product.getId());
         if (stock == null) {
-            BigDecimal ordered = warehouseMinimalStateHelper.getOrderedQuantityForProductAndLocation(warehouse.getId(),
-                    product.getId());
+            BigDecimal ordered = BigDecimalUtils.convertNullToZero(orderedQuantitiesByProduct.get(product.getId()));
 
             if (warehouseMinimalStateHelper.checkIfLowerThanMinimum(product.getId(), ordered,
                     minimalState.getDecimalField("minimumState"))) {
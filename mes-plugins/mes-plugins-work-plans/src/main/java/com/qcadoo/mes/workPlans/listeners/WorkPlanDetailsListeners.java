@@ -27,6 +27,9 @@ import com.google.common.collect.Lists;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.PageSize;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.reports.ReportJobProgress;
+import com.qcadoo.mes.basic.reports.ReportJobService;
+import com.qcadoo.mes.basic.reports.ReportJobTask;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.util.OrderHelperService;
 import com.qcadoo.mes.technologies.BarcodeOperationComponentService;
@@ -56,11 +59,14 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
 @Service
 public class WorkPlanDetailsListeners {
 
+    private static final String L_ROLE_PLANNING = "ROLE_PLANNING";
+
     @Autowired
     private SecurityService securityService;
 
@@ -85,6 +91,9 @@ public class WorkPlanDetailsListeners {
     @Autowired
     private BarcodeOperationComponentService barcodeOperationComponentService;
 
+    @Autowired
+    private ReportJobService reportJobService;
+
     @Transactional
     public void generateWorkPlan(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         if (state instanceof FormComponent) {
@@ -138,15 +147,12 @@ public class WorkPlanDetailsListeners {
                 return;
             }
 
-            try {
-                generateWorkPlanDocuments(state, workPlan);
-                checkIfInactiveOrders(state, orders);
-                state.performEvent(view, "reset", new String[0]);
-            } catch (IOException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            } catch (DocumentException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            }
+            reportJobService.submit(WorkPlansConstants.PLUGIN_IDENTIFIER, WorkPlansConstants.MODEL_WORK_PLAN, workPlan.getId(),
+                    L_ROLE_PLANNING, new WorkPlanReportJobTask(workPlan.getId(), state.getLocale()));
+
+            checkIfInactiveOrders(state, orders);
+            state.performEvent(view, "reset", new String[0]);
+            state.addMessage("workPlans.workPlanDetails.window.workPlan.documentsQueued", MessageType.INFO);
         }
     }
 
@@ -187,18 +193,56 @@ public class WorkPlanDetailsListeners {
     }
 
     @Transactional
-    private void generateWorkPlanDocuments(final ComponentState state, final Entity workPlan) throws IOException,
-            DocumentException {
+    private Entity generateWorkPlanDocuments(final Entity workPlan, final Locale locale, final ReportJobProgress progress)
+            throws IOException, DocumentException {
         Entity workPlanWithFilename = fileService.updateReportFileName(workPlan, WorkPlanFields.DATE,
                 "workPlans.workPlan.report.fileName");
-        workPlanPdfService.generateDocument(workPlanWithFilename, state.getLocale());
+        progress.update(10);
+        workPlanPdfService.generateDocument(workPlanWithFilename, locale);
         if (workPlan.getStringField(WorkPlanFields.TYPE).compareTo(WorkPlanType.BY_DIVISION.getStringValue()) == 0) {
+            progress.update(50);
             String fileNameForDivision = "workPlans.workPlan.report.fileNameForDivision";
             Entity workPlanForDivision = fileService.updateReportFileName(workPlanWithFilename, WorkPlanFields.DATE,
                     fileNameForDivision);
-            workPlanForDivisionPdfService.generateDocument(workPlanForDivision, state.getLocale(), fileNameForDivision,
+            workPlanForDivisionPdfService.generateDocument(workPlanForDivision, locale, fileNameForDivision,
                     PageSize.A4.rotate());
+            return workPlanForDivision;
+        }
+        return workPlanWithFilename;
+    }
+
+    private final class WorkPlanReportJobTask implements ReportJobTask {
+
+        private final Long workPlanId;
+
+        private final Locale locale;
+
+        private WorkPlanReportJobTask(final Long workPlanId, final Locale locale) {
+            this.workPlanId = workPlanId;
+            this.locale = locale;
+        }
+
+        @Override
+        public String generate(final ReportJobProgress progress) throws IOException, DocumentException {
+            Entity workPlan = workPlanService.getWorkPlan(workPlanId);
+
+            return generateWorkPlanDocuments(workPlan, locale, progress).getStringField(WorkPlanFields.FILE_NAME);
+        }
+
+        @Override
+        public void onFailure() {
+            Entity workPlan = workPlanService.getWorkPlan(workPlanId);
+
+            if (workPlan != null) {
+                workPlan.setField(WorkPlanFields.GENERATED, false);
+                workPlan.setField(WorkPlanFields.DATE, null);
+                workPlan.setField(WorkPlanFields.WORKER, null);
+                workPlan.setField(WorkPlanFields.FILE_NAME, null);
+
+                workPlan.getDataDefinition().fastSave(workPlan);
+            }
         }
+
     }
 
     public void printWorkPlan(final ViewDefinitionState view, final ComponentState state, final String[] args) {